@@ -0,0 +1,80 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link Host#hashCode()} and {@link Host#equals(Object)}, which are used by
+ * the maps of the peers and of the reference implementations. The hosts are
+ * new instances of the same values, as they are when they are deserialized
+ * from each message, so the hash code of the address isn't cached.
+ * 
+ * @author agent 2026/10/17
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+@SuppressWarnings("javadoc")
+public class HostBenchmark {
+
+	private String address;
+	private Host host;
+	private Host sameHost;
+	private Host otherPortHost;
+
+	@Setup
+	public void setUp() {
+		this.address = "203.0.113.54"; //$NON-NLS-1$
+		this.host = new Host(this.address, 54321);
+		this.sameHost = new Host(new String(this.address), 54321);
+		this.otherPortHost = new Host(new String(this.address), 54322);
+	}
+
+	@Benchmark
+	public int hashCodeOfNewHost() {
+		// new String() drops the cached hash of the address
+		return new Host(new String(this.address), 54321).hashCode();
+	}
+
+	@Benchmark
+	public int hashCodeOfSameHost() {
+		return this.host.hashCode();
+	}
+
+	@Benchmark
+	public boolean equalsSameValue() {
+		return this.host.equals((Object) this.sameHost);
+	}
+
+	@Benchmark
+	public boolean equalsOtherPort() {
+		return this.host.equals((Object) this.otherPortHost);
+	}
+}
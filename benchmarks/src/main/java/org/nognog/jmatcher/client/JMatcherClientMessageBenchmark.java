@@ -0,0 +1,80 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link JMatcherClientMessage#serialize(JMatcherClientMessage)} and
+ * {@link JMatcherClientMessage#deserialize(String)}, which every message
+ * between the peers goes through.
+ * 
+ * @author agent 2026/10/17
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+@SuppressWarnings("javadoc")
+public class JMatcherClientMessageBenchmark {
+
+	/**
+	 * The sender name is optional, and is sent with CONNECT_REQUEST
+	 */
+	@Param({ "", "connector-name" })
+	String senderName;
+
+	private JMatcherClientMessage message;
+	private String serializedMessage;
+
+	@Setup
+	public void setUp() {
+		final String name = this.senderName.isEmpty() ? null : this.senderName;
+		this.message = new JMatcherClientMessage(JMatcherClientMessageType.CONNECT_REQUEST, name);
+		this.serializedMessage = JMatcherClientMessage.serialize(this.message);
+	}
+
+	@Benchmark
+	public String serialize() {
+		return JMatcherClientMessage.serialize(this.message);
+	}
+
+	@Benchmark
+	public JMatcherClientMessage deserialize() {
+		return JMatcherClientMessage.deserialize(this.serializedMessage);
+	}
+
+	/**
+	 * A message from another application, which is given up
+	 */
+	@Benchmark
+	public JMatcherClientMessage deserializeInvalid() {
+		return JMatcherClientMessage.deserialize("not a jmatcher message"); //$NON-NLS-1$
+	}
+}
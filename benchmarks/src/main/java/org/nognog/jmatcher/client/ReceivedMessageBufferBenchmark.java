@@ -0,0 +1,120 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.nognog.jmatcher.Host;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link ReceivedMessageBuffer} under contention. In a peer, one receiver
+ * thread stores the messages and the threads of the application poll them,
+ * either any message or the messages of a host. Each group runs one storing
+ * thread against polling threads, and the buffer is cleared after each
+ * iteration in case the store outruns the polls.
+ * 
+ * @author agent 2026/10/17
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@SuppressWarnings("javadoc")
+public class ReceivedMessageBufferBenchmark {
+
+	static final int NUMBER_OF_HOSTS = 4;
+	static final long POLL_TIMEOUT = 1; // [msec]
+	static final String MESSAGE = "message"; //$NON-NLS-1$
+
+	@State(Scope.Group)
+	public static class BufferState {
+		ReceivedMessageBuffer buffer;
+		Host[] hosts;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			this.buffer = new ReceivedMessageBuffer();
+			this.hosts = new Host[NUMBER_OF_HOSTS];
+			for (int i = 0; i < NUMBER_OF_HOSTS; i++) {
+				this.hosts[i] = new Host("192.168.0." + (i + 1), 50000 + i); //$NON-NLS-1$
+			}
+		}
+
+		@TearDown(Level.Iteration)
+		public void clear() {
+			this.buffer.clear();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class StoreCursor {
+		int next;
+
+		Host nextHost(BufferState state) {
+			this.next = (this.next + 1) % NUMBER_OF_HOSTS;
+			return state.hosts[this.next];
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class PollerHost {
+		static final AtomicInteger nextPollerId = new AtomicInteger();
+		final int hostIndex = nextPollerId.getAndIncrement() % NUMBER_OF_HOSTS;
+	}
+
+	@Benchmark
+	@Group("any")
+	@GroupThreads(1)
+	public boolean anyStore(BufferState state, StoreCursor cursor) {
+		return state.buffer.store(cursor.nextHost(state), MESSAGE);
+	}
+
+	@Benchmark
+	@Group("any")
+	@GroupThreads(3)
+	public ReceivedMessage anyPoll(BufferState state) {
+		return state.buffer.poll(POLL_TIMEOUT);
+	}
+
+	@Benchmark
+	@Group("perHost")
+	@GroupThreads(1)
+	public boolean perHostStore(BufferState state, StoreCursor cursor) {
+		return state.buffer.store(cursor.nextHost(state), MESSAGE);
+	}
+
+	@Benchmark
+	@Group("perHost")
+	@GroupThreads(NUMBER_OF_HOSTS)
+	public ReceivedMessage perHostPoll(BufferState state, PollerHost poller) {
+		return state.buffer.poll(state.hosts[poller.hostIndex], POLL_TIMEOUT);
+	}
+}
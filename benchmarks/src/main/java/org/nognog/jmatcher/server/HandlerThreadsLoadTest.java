@@ -0,0 +1,220 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.daemon.DaemonContext;
+import org.apache.commons.daemon.DaemonController;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.nognog.jmatcher.JMatcher;
+import org.nognog.jmatcher.tcp.TCPFrameSerializer;
+import org.nognog.jmatcher.tcp.request.PlainTCPRequest;
+import org.nognog.jmatcher.tcp.response.PlainTCPResponse;
+import org.nognog.jmatcher.tcp.response.PreEntryResponse;
+import org.nognog.jmatcher.tcp.response.TCPResponse;
+import org.nognog.jmatcher.udp.request.EnableEntryRequest;
+import org.nognog.jmatcher.udp.request.UDPRequestSerializer;
+
+/**
+ * A load test of the blocking TCP front end with each {@link ThreadMode}.
+ * Inviters are registered one after another and kept registered, so that
+ * every one of them holds a handler of the daemon as a real inviter does.
+ * The inviters are driven by one selector thread of this test. It prints the
+ * time to register all of them, the peak number of platform threads and the
+ * heap which is used while they are registered. {@link ThreadMode#VIRTUAL}
+ * needs Java 21 or later, and the daemon falls back to platform threads
+ * otherwise.
+ * 
+ * <pre>
+ * gradle :benchmarks:handlerThreadsLoadTest -PloadTestArgs="platform,virtual 10000"
+ * </pre>
+ * 
+ * Each inviter uses two file descriptors of this process, one for each end
+ * of its channel, so the limit of descriptors has to be raised for 10k
+ * inviters.
+ * 
+ * @author agent 2026/10/17
+ */
+public class HandlerThreadsLoadTest {
+
+	private static final int maxPendingEntries = 128; // not to overflow the backlog
+	private static final long timeout = 60000; // [msec]
+
+	private final int numberOfInviters;
+	private final TCPFrameSerializer serializer;
+
+	/**
+	 * @param numberOfInviters
+	 */
+	HandlerThreadsLoadTest(int numberOfInviters) {
+		this.numberOfInviters = numberOfInviters;
+		this.serializer = TCPFrameSerializer.getInstance();
+	}
+
+	/**
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		final String[] threadModes = (args.length > 0) ? args[0].split(",") : new String[] { "platform", "virtual" }; //$NON-NLS-1$ //$NON-NLS-2$
+		final int numberOfInviters = (args.length > 1) ? Integer.parseInt(args[1]) : 10000;
+		Configurator.setRootLevel(Level.WARN);
+		final HandlerThreadsLoadTest loadTest = new HandlerThreadsLoadTest(numberOfInviters);
+		System.out.println("inviters = " + numberOfInviters + ", java = " + System.getProperty("java.version")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		for (String threadMode : threadModes) {
+			loadTest.run(threadMode.trim());
+		}
+	}
+
+	private void run(String threadMode) throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new LoadTestDaemonContext(JMatcherDaemon.HANDLER_THREADS_ARGUMENT + "=" + threadMode)); //$NON-NLS-1$
+		daemon.setMatchingMapCapacity(this.numberOfInviters);
+		daemon.start();
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		final List<SocketChannel> channels = new ArrayList<>();
+		try (final Selector selector = Selector.open(); final DatagramChannel udpChannel = DatagramChannel.open()) {
+			udpChannel.connect(new InetSocketAddress("localhost", JMatcher.PORT)); //$NON-NLS-1$
+			System.gc();
+			final long heapBefore = usedHeap();
+			threads.resetPeakThreadCount();
+			final long startTime = System.nanoTime();
+			final int registered = this.register(selector, udpChannel, channels);
+			final long elapsedTime = System.nanoTime() - startTime;
+			System.gc();
+			final long heapOfInviters = usedHeap() - heapBefore;
+			System.out.println(String.format("%-8s (%s) : registered %d in %,d ms, peak threads %d, heap %,d KiB", threadMode, daemon.getThreadMode(), //$NON-NLS-1$
+					Integer.valueOf(registered), Long.valueOf(elapsedTime / 1000000), Integer.valueOf(threads.getPeakThreadCount()), Long.valueOf(heapOfInviters / 1024)));
+		} finally {
+			for (SocketChannel channel : channels) {
+				channel.close();
+			}
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	private static long usedHeap() {
+		final Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Drive the inviters through the pre-entry and the entry.
+	 * 
+	 * @return the number of registered inviters
+	 */
+	private int register(Selector selector, DatagramChannel udpChannel, List<SocketChannel> channels) throws IOException {
+		final InetSocketAddress serverAddress = new InetSocketAddress("localhost", JMatcher.PORT); //$NON-NLS-1$
+		final ByteBuffer udpRequest = ByteBuffer.allocate(UDPRequestSerializer.BINARY_REQUEST_SIZE);
+		final long deadline = System.currentTimeMillis() + timeout;
+		int opened = 0;
+		int pending = 0;
+		int registered = 0;
+		while (registered < this.numberOfInviters && System.currentTimeMillis() < deadline) {
+			while (opened < this.numberOfInviters && pending < maxPendingEntries) {
+				final SocketChannel channel = SocketChannel.open();
+				channel.configureBlocking(false);
+				channel.connect(serverAddress);
+				channel.register(selector, SelectionKey.OP_CONNECT, new Inviter());
+				channels.add(channel);
+				opened++;
+				pending++;
+			}
+			selector.select(100);
+			for (SelectionKey key : selector.selectedKeys()) {
+				final SocketChannel channel = (SocketChannel) key.channel();
+				final Inviter inviter = (Inviter) key.attachment();
+				if (key.isConnectable()) {
+					channel.finishConnect();
+					final ByteBuffer request = ByteBuffer.allocate(64);
+					request.put(TCPFrameSerializer.createPreamble(TCPFrameSerializer.VERSION));
+					this.serializer.serialize(PlainTCPRequest.ENTRY, request);
+					request.flip();
+					channel.write(request);
+					key.interestOps(SelectionKey.OP_READ);
+					continue;
+				}
+				if (channel.read(inviter.readBuffer) < 0) {
+					throw new IOException("the server closed an inviter"); //$NON-NLS-1$
+				}
+				inviter.readBuffer.flip();
+				try {
+					if (!inviter.readPreamble) {
+						inviter.readPreamble = TCPFrameSerializer.readPreamble(inviter.readBuffer) >= 0;
+					}
+					TCPResponse response;
+					while (inviter.readPreamble && (response = this.serializer.deserializeResponse(inviter.readBuffer)) != null) {
+						if (response instanceof PreEntryResponse) {
+							udpRequest.clear();
+							UDPRequestSerializer.getInstance().serialize(new EnableEntryRequest(((PreEntryResponse) response).getKeyNumber()), udpRequest);
+							udpRequest.flip();
+							udpChannel.write(udpRequest);
+						} else if (response == PlainTCPResponse.COMPLETE_ENTRY) {
+							// the handler keeps waiting for requests of this inviter
+							registered++;
+							pending--;
+							key.interestOps(0);
+						} else {
+							throw new IOException("unexpected response : " + response); //$NON-NLS-1$
+						}
+					}
+				} finally {
+					inviter.readBuffer.compact();
+				}
+			}
+			selector.selectedKeys().clear();
+		}
+		return registered;
+	}
+
+	private static class Inviter {
+		final ByteBuffer readBuffer = ByteBuffer.allocate(64);
+		boolean readPreamble;
+
+		Inviter() {
+		}
+	}
+
+	private static class LoadTestDaemonContext implements DaemonContext {
+		private final String[] arguments;
+
+		LoadTestDaemonContext(String... arguments) {
+			this.arguments = arguments;
+		}
+
+		@Override
+		public DaemonController getController() {
+			return null;
+		}
+
+		@Override
+		public String[] getArguments() {
+			return this.arguments;
+		}
+	}
+}
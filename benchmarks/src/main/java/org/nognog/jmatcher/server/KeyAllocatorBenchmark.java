@@ -0,0 +1,124 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The server-side allocation of keys: {@link KeyAllocator} alone, and the
+ * whole life of a key in {@link MatchingTable} (a pre-entry with a new key,
+ * the lookup of a ConnectionRequest, and the removal). The allocator is
+ * filled to the given ratio of its bound first, because the cost of an
+ * allocation is the number of keys in use it skips.
+ * 
+ * @author agent 2026/10/17
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+@SuppressWarnings("javadoc")
+public class KeyAllocatorBenchmark {
+
+	static final int BOUND_OF_KEY_NUMBER = 1000000;
+
+	@Param({ "0", "50", "90" })
+	int occupancyPercent;
+
+	private KeyAllocator allocator;
+	private MatchingTable table;
+	private InetAddress address;
+
+	private static final PreEntryListener owner = new PreEntryListener() {
+		@Override
+		public void enabled(int keyNumber) {
+			// nothing to do
+		}
+
+		@Override
+		public void expired(int keyNumber) {
+			// nothing to do
+		}
+
+		@Override
+		public void requested(int keyNumber) {
+			// nothing to do
+		}
+	};
+
+	@Setup(Level.Trial)
+	public void setUp() throws UnknownHostException {
+		this.allocator = newFilledAllocator(this.occupancyPercent);
+		// the pre-entries don't expire, so the timing wheel isn't started
+		this.table = new MatchingTable(new HashedTimingWheel("benchmark-timer")); //$NON-NLS-1$
+		this.table.setKeyAllocator(newFilledAllocator(this.occupancyPercent));
+		this.address = InetAddress.getByName("10.0.0.1"); //$NON-NLS-1$
+	}
+
+	private static KeyAllocator newFilledAllocator(int occupancyPercent) {
+		// no quarantine, so a released key is reused at once and the
+		// occupancy stays the same
+		final KeyAllocator result = new KeyAllocator(BOUND_OF_KEY_NUMBER, BOUND_OF_KEY_NUMBER, 0, 0, new Random(54));
+		final int numberOfKeys = (int) ((long) BOUND_OF_KEY_NUMBER * occupancyPercent / 100);
+		for (int i = 0; i < numberOfKeys; i++) {
+			result.allocate();
+		}
+		return result;
+	}
+
+	@Benchmark
+	@Threads(1)
+	public int allocateAndRelease() {
+		final int keyNumber = this.allocator.allocate();
+		this.allocator.release(keyNumber);
+		return keyNumber;
+	}
+
+	@Benchmark
+	@Threads(4)
+	public int allocateAndReleaseContended() {
+		final int keyNumber = this.allocator.allocate();
+		this.allocator.release(keyNumber);
+		return keyNumber;
+	}
+
+	@Benchmark
+	@Threads(1)
+	public boolean entryWithNewKey() {
+		final int keyNumber = this.table.putPreEntryWithNewKey(this.address, 10000, owner, 0);
+		final boolean found = this.table.containsKey(keyNumber);
+		this.table.remove(keyNumber, owner);
+		return found;
+	}
+}
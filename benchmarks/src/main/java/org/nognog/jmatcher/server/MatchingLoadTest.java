@@ -0,0 +1,519 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.daemon.DaemonContext;
+import org.apache.commons.daemon.DaemonController;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.nognog.jmatcher.JMatcher;
+import org.nognog.jmatcher.tcp.TCPFrameSerializer;
+import org.nognog.jmatcher.tcp.request.PlainTCPRequest;
+import org.nognog.jmatcher.tcp.response.CheckConnectionResponse;
+import org.nognog.jmatcher.tcp.response.PlainTCPResponse;
+import org.nognog.jmatcher.tcp.response.PreEntryResponse;
+import org.nognog.jmatcher.tcp.response.TCPResponse;
+import org.nognog.jmatcher.udp.request.ConnectionRequest;
+import org.nognog.jmatcher.udp.request.EnableEntryRequest;
+import org.nognog.jmatcher.udp.request.UDPRequestSerializer;
+import org.nognog.jmatcher.udp.response.ConnectionResponse;
+import org.nognog.jmatcher.udp.response.UDPResponse;
+import org.nognog.jmatcher.udp.response.UDPResponseSerializer;
+
+/**
+ * An in-process load generator of the whole matching. It starts a daemon on
+ * loopback, registers the inviters, and then sends ConnectionRequests for
+ * the keys of random registered inviters at a fixed rate while a part of the
+ * inviters leaves and is replaced every second. The inviters and the
+ * connectors speak the binary protocols from one selector thread of this
+ * test, so thousands of them cost a few threads; an inviter takes its
+ * requesting hosts from the pushes of the server as a real one does. It
+ * prints the latencies of the entries and of the matches, the ratio of the
+ * matched requests, and the resources which the process used.
+ * 
+ * <pre>
+ * gradle :benchmarks:matchingLoadTest -PloadTestArgs="1000 2000 10 0.05 tcpMode=reactor"
+ * </pre>
+ * 
+ * The arguments are the number of inviters, the ConnectionRequests per
+ * second, the seconds to measure, and the ratio of the inviters which are
+ * replaced per second. The rest are given to the daemon as its arguments.
+ * Each inviter uses two file descriptors of this process, so the limit of
+ * descriptors has to be raised for thousands of inviters. The numbers of the
+ * process include this test itself.
+ * 
+ * @author agent 2026/10/17
+ */
+public class MatchingLoadTest {
+
+	private static final int maxPendingEntries = 128; // not to overflow the backlog
+	private static final int numberOfConnectors = 512; // requests in flight
+	private static final long registrationTimeout = 60000; // [msec]
+	private static final long requestTimeout = UDPClientRequestHandler.WAIT_TIME_FOR_MATCHING_TIMING + 1000; // [msec]
+
+	private final int numberOfInviters;
+	private final int requestRate; // [/sec]
+	private final long measurementTime; // [msec]
+	private final double churn; // [/sec]
+	private final String[] daemonArguments;
+
+	private final TCPFrameSerializer serializer = TCPFrameSerializer.getInstance();
+	private final InetSocketAddress serverAddress = new InetSocketAddress("localhost", JMatcher.PORT); //$NON-NLS-1$
+	private final Random random = new Random(54);
+	private final ByteBuffer udpBuffer = ByteBuffer.allocate(UDPResponseSerializer.MAX_BINARY_RESPONSE_SIZE);
+
+	private Selector selector;
+	private DatagramChannel enableChannel;
+	private final List<Inviter> registeredInviters = new ArrayList<>();
+	private final List<Connector> connectors = new ArrayList<>();
+	private final ArrayDeque<Connector> idleConnectors = new ArrayDeque<>();
+	private int pendingEntries;
+
+	private final Latencies entryLatencies = new Latencies();
+	private final Latencies matchLatencies = new Latencies();
+	private int failedEntries;
+	private int leftInviters;
+	private long sentRequests;
+	private long skippedRequests;
+	private long matchedRequests;
+	private long failedRequests;
+	private long timedOutRequests;
+	private long pushedHosts;
+
+	/**
+	 * @param numberOfInviters
+	 * @param requestRate
+	 *            [/sec]
+	 * @param measurementTime
+	 *            [msec]
+	 * @param churn
+	 *            ratio of the inviters which are replaced per second
+	 * @param daemonArguments
+	 */
+	MatchingLoadTest(int numberOfInviters, int requestRate, long measurementTime, double churn, String[] daemonArguments) {
+		this.numberOfInviters = numberOfInviters;
+		this.requestRate = requestRate;
+		this.measurementTime = measurementTime;
+		this.churn = churn;
+		this.daemonArguments = daemonArguments;
+	}
+
+	/**
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		final int numberOfInviters = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+		final int requestRate = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+		final int seconds = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+		final double churn = (args.length > 3) ? Double.parseDouble(args[3]) : 0.05;
+		final String[] daemonArguments = (args.length > 4) ? Arrays.copyOfRange(args, 4, args.length) : new String[0];
+		if (!Boolean.getBoolean(UDPReactorLoadTest.CONFIGURED_LOGGING_PROPERTY)) {
+			Configurator.setRootLevel(Level.WARN);
+		}
+		System.out.println(String.format("inviters = %d, requests = %d/s, %d s, churn = %.1f%%/s, daemon = %s", Integer.valueOf(numberOfInviters), Integer.valueOf(requestRate), //$NON-NLS-1$
+				Integer.valueOf(seconds), Double.valueOf(churn * 100), Arrays.toString(daemonArguments)));
+		new MatchingLoadTest(numberOfInviters, requestRate, TimeUnit.SECONDS.toMillis(seconds), churn, daemonArguments).run();
+	}
+
+	private void run() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new LoadTestDaemonContext(this.daemonArguments));
+		// the leaving inviters hold their keys until the server sees them
+		daemon.setMatchingMapCapacity(this.numberOfInviters * 2);
+		daemon.start();
+		try {
+			this.selector = Selector.open();
+			this.enableChannel = DatagramChannel.open();
+			this.enableChannel.bind(null);
+			for (int i = 0; i < numberOfConnectors; i++) {
+				final DatagramChannel channel = DatagramChannel.open();
+				channel.configureBlocking(false);
+				channel.connect(this.serverAddress);
+				final Connector connector = new Connector(channel);
+				channel.register(this.selector, SelectionKey.OP_READ, connector);
+				this.connectors.add(connector);
+				this.idleConnectors.add(connector);
+			}
+
+			final long registrationStartTime = System.nanoTime();
+			final long registrationDeadline = System.currentTimeMillis() + registrationTimeout;
+			while (this.registeredInviters.size() < this.numberOfInviters && System.currentTimeMillis() < registrationDeadline) {
+				this.openInviters();
+				this.poll(100);
+			}
+			System.out.println(String.format("registered %d inviters in %,d ms", Integer.valueOf(this.registeredInviters.size()), //$NON-NLS-1$
+					Long.valueOf(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - registrationStartTime))));
+			this.entryLatencies.clear();
+			this.failedEntries = 0;
+
+			this.measure(daemon);
+		} finally {
+			this.closeChannels();
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	private void measure(JMatcherDaemon daemon) throws IOException {
+		final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		threads.resetPeakThreadCount();
+		final long cpuTimeBefore = getProcessCpuTime(os);
+		final DaemonMetrics metrics = daemon.getMetrics();
+		final long rejectedEntriesBefore = metrics.getRejectedEntryCount() + metrics.getExpiredEntryCount();
+		final long rejectedRequestsBefore = metrics.getRejectedRequestCount();
+
+		final long startTime = System.nanoTime();
+		final long endTime = startTime + TimeUnit.MILLISECONDS.toNanos(this.measurementTime);
+		long lastTime = startTime;
+		long lastTimeoutCheck = startTime;
+		double churnDue = 0;
+		long now;
+		while ((now = System.nanoTime()) < endTime) {
+			final long dueRequests = (now - startTime) * this.requestRate / TimeUnit.SECONDS.toNanos(1);
+			while (this.sentRequests + this.skippedRequests < dueRequests) {
+				this.sendRequest(now);
+			}
+			churnDue += this.churn * this.registeredInviters.size() * (now - lastTime) / TimeUnit.SECONDS.toNanos(1);
+			while (churnDue >= 1 && !this.registeredInviters.isEmpty()) {
+				final Inviter leaving = this.registeredInviters.get(this.random.nextInt(this.registeredInviters.size()));
+				this.removeRegistered(leaving);
+				this.closeInviter(leaving);
+				this.leftInviters++;
+				churnDue--;
+			}
+			lastTime = now;
+			this.openInviters();
+			if (now - lastTimeoutCheck > TimeUnit.MILLISECONDS.toNanos(100)) {
+				this.checkTimeouts(now);
+				lastTimeoutCheck = now;
+			}
+			this.poll(1);
+		}
+		final long drainDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(requestTimeout);
+		while (this.idleConnectors.size() < numberOfConnectors && (now = System.nanoTime()) < drainDeadline) {
+			this.poll(10);
+			this.checkTimeouts(now);
+		}
+		this.checkTimeouts(Long.MAX_VALUE);
+		final long elapsedTime = System.nanoTime() - startTime;
+		final long cpuTimeAfter = getProcessCpuTime(os);
+		final long cpuTime = (cpuTimeBefore < 0 || cpuTimeAfter < 0) ? -1 : cpuTimeAfter - cpuTimeBefore;
+
+		System.out.println(String.format("entries  : %d registered, %d failed, %d left, latency %s", Integer.valueOf(this.entryLatencies.size()), //$NON-NLS-1$
+				Integer.valueOf(this.failedEntries), Integer.valueOf(this.leftInviters), this.entryLatencies));
+		final long completedRequests = this.matchedRequests + this.failedRequests + this.timedOutRequests;
+		System.out.println(String.format("requests : %d sent (%d skipped), %d matched (%.2f%%), %d failed, %d timed out, latency %s", Long.valueOf(this.sentRequests), //$NON-NLS-1$
+				Long.valueOf(this.skippedRequests), Long.valueOf(this.matchedRequests), Double.valueOf(completedRequests == 0 ? 0 : 100.0 * this.matchedRequests / completedRequests),
+				Long.valueOf(this.failedRequests), Long.valueOf(this.timedOutRequests), this.matchLatencies));
+		System.out.println(String.format("inviters : %d hosts pushed", Long.valueOf(this.pushedHosts))); //$NON-NLS-1$
+		final Runtime runtime = Runtime.getRuntime();
+		System.out.println(String.format("process  : cpu %s, peak threads %d, heap %,d KiB, load average %.2f", //$NON-NLS-1$
+				(cpuTime < 0) ? "n/a" : String.format("%,d ms (%.0f%% of a core)", Long.valueOf(TimeUnit.NANOSECONDS.toMillis(cpuTime)), Double.valueOf(100.0 * cpuTime / elapsedTime)), //$NON-NLS-1$ //$NON-NLS-2$
+				Integer.valueOf(threads.getPeakThreadCount()), Long.valueOf((runtime.totalMemory() - runtime.freeMemory()) / 1024), Double.valueOf(os.getSystemLoadAverage())));
+		System.out.println(String.format("daemon   : %d entries, %d entries rejected or expired, %d requests shed", Integer.valueOf(daemon.getMatchingTable().size()), //$NON-NLS-1$
+				Long.valueOf(metrics.getRejectedEntryCount() + metrics.getExpiredEntryCount() - rejectedEntriesBefore), Long.valueOf(metrics.getRejectedRequestCount() - rejectedRequestsBefore)));
+	}
+
+	/**
+	 * @return the cpu time of this process [nsec], or -1 if the runtime
+	 *         doesn't tell it
+	 */
+	private static long getProcessCpuTime(OperatingSystemMXBean os) {
+		// com.sun.management.OperatingSystemMXBean isn't in every runtime
+		try {
+			final Class<?> type = Class.forName("com.sun.management.OperatingSystemMXBean"); //$NON-NLS-1$
+			if (!type.isInstance(os)) {
+				return -1;
+			}
+			return ((Long) type.getMethod("getProcessCpuTime").invoke(os)).longValue(); //$NON-NLS-1$
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+	private void openInviters() throws IOException {
+		while (this.registeredInviters.size() + this.pendingEntries < this.numberOfInviters && this.pendingEntries < maxPendingEntries) {
+			final SocketChannel channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.connect(this.serverAddress);
+			channel.register(this.selector, SelectionKey.OP_CONNECT, new Inviter(channel));
+			this.pendingEntries++;
+		}
+	}
+
+	private void poll(long timeout) throws IOException {
+		this.selector.select(timeout);
+		for (SelectionKey key : this.selector.selectedKeys()) {
+			if (!key.isValid()) {
+				continue;
+			}
+			if (key.attachment() instanceof Inviter) {
+				this.handleInviter(key, (Inviter) key.attachment());
+			} else {
+				this.handleConnector((Connector) key.attachment());
+			}
+		}
+		this.selector.selectedKeys().clear();
+	}
+
+	private void handleInviter(SelectionKey key, Inviter inviter) {
+		try {
+			if (key.isConnectable()) {
+				inviter.channel.finishConnect();
+				final ByteBuffer request = ByteBuffer.allocate(64);
+				request.put(TCPFrameSerializer.createPreamble(TCPFrameSerializer.VERSION));
+				this.serializer.serialize(PlainTCPRequest.ENTRY, request);
+				request.flip();
+				inviter.channel.write(request);
+				key.interestOps(SelectionKey.OP_READ);
+				return;
+			}
+			if (inviter.channel.read(inviter.readBuffer) < 0) {
+				throw new IOException("the server closed an inviter"); //$NON-NLS-1$
+			}
+			inviter.readBuffer.flip();
+			try {
+				if (!inviter.readPreamble) {
+					inviter.readPreamble = TCPFrameSerializer.readPreamble(inviter.readBuffer) >= 0;
+				}
+				TCPResponse response;
+				while (inviter.readPreamble && (response = this.serializer.deserializeResponse(inviter.readBuffer)) != null) {
+					this.handleResponse(inviter, response);
+				}
+			} finally {
+				inviter.readBuffer.compact();
+			}
+		} catch (IOException e) {
+			if (inviter.index >= 0) {
+				this.removeRegistered(inviter);
+			} else {
+				this.failedEntries++;
+				this.pendingEntries--;
+			}
+			this.closeInviter(inviter);
+		}
+	}
+
+	private void handleResponse(Inviter inviter, TCPResponse response) throws IOException {
+		if (response instanceof PreEntryResponse) {
+			final Integer keyNumber = ((PreEntryResponse) response).getKeyNumber();
+			if (keyNumber == null) {
+				throw new IOException("the server is full"); //$NON-NLS-1$
+			}
+			inviter.keyNumber = keyNumber.intValue();
+			this.udpBuffer.clear();
+			UDPRequestSerializer.getInstance().serialize(new EnableEntryRequest(keyNumber), this.udpBuffer);
+			this.udpBuffer.flip();
+			this.enableChannel.send(this.udpBuffer, this.serverAddress);
+		} else if (response == PlainTCPResponse.COMPLETE_ENTRY) {
+			this.entryLatencies.record(System.nanoTime() - inviter.startTime);
+			this.pendingEntries--;
+			inviter.index = this.registeredInviters.size();
+			this.registeredInviters.add(inviter);
+		} else if (response instanceof CheckConnectionResponse) {
+			// the server has released the requesting hosts by this push
+			this.pushedHosts += ((CheckConnectionResponse) response).getRequestingHosts().length;
+		} else {
+			throw new IOException("unexpected response : " + response); //$NON-NLS-1$
+		}
+	}
+
+	private void removeRegistered(Inviter inviter) {
+		final Inviter last = this.registeredInviters.remove(this.registeredInviters.size() - 1);
+		if (last != inviter) {
+			this.registeredInviters.set(inviter.index, last);
+			last.index = inviter.index;
+		}
+		inviter.index = -1;
+	}
+
+	private void closeInviter(Inviter inviter) {
+		try {
+			inviter.channel.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	private void sendRequest(long now) {
+		if (this.registeredInviters.isEmpty() || this.idleConnectors.isEmpty()) {
+			this.skippedRequests++;
+			return;
+		}
+		final Connector connector = this.idleConnectors.poll();
+		final Inviter inviter = this.registeredInviters.get(this.random.nextInt(this.registeredInviters.size()));
+		this.udpBuffer.clear();
+		UDPRequestSerializer.getInstance().serialize(new ConnectionRequest(Integer.valueOf(inviter.keyNumber)), this.udpBuffer);
+		this.udpBuffer.flip();
+		this.sentRequests++;
+		try {
+			connector.channel.write(this.udpBuffer);
+			connector.sentTime = now;
+		} catch (IOException e) {
+			this.failedRequests++;
+			this.idleConnectors.add(connector);
+		}
+	}
+
+	private void handleConnector(Connector connector) {
+		this.udpBuffer.clear();
+		UDPResponse response;
+		try {
+			if (connector.channel.read(this.udpBuffer) <= 0) {
+				return;
+			}
+			this.udpBuffer.flip();
+			response = UDPResponseSerializer.getInstance().deserialize(this.udpBuffer);
+		} catch (IOException e) {
+			response = null;
+		}
+		if (connector.sentTime == 0) {
+			return; // the response of a request which has timed out
+		}
+		if (response instanceof ConnectionResponse && ((ConnectionResponse) response).getHost() != null) {
+			this.matchedRequests++;
+			this.matchLatencies.record(System.nanoTime() - connector.sentTime);
+		} else {
+			this.failedRequests++;
+		}
+		connector.sentTime = 0;
+		this.idleConnectors.add(connector);
+	}
+
+	private void checkTimeouts(long now) {
+		final long timeout = TimeUnit.MILLISECONDS.toNanos(requestTimeout);
+		for (Connector connector : this.connectors) {
+			if (connector.sentTime != 0 && now - connector.sentTime > timeout) {
+				this.timedOutRequests++;
+				connector.sentTime = 0;
+				this.idleConnectors.add(connector);
+			}
+		}
+	}
+
+	private void closeChannels() throws IOException {
+		if (this.selector == null) {
+			return;
+		}
+		for (SelectionKey key : this.selector.keys()) {
+			key.channel().close();
+		}
+		this.selector.close();
+		if (this.enableChannel != null) {
+			this.enableChannel.close();
+		}
+	}
+
+	private static class Inviter {
+		final SocketChannel channel;
+		final ByteBuffer readBuffer = ByteBuffer.allocate(1024);
+		final long startTime = System.nanoTime();
+		boolean readPreamble;
+		int keyNumber;
+		int index = -1; // in the registered inviters
+
+		Inviter(SocketChannel channel) {
+			this.channel = channel;
+		}
+	}
+
+	private static class Connector {
+		final DatagramChannel channel;
+		long sentTime; // 0 while it is idle
+
+		Connector(DatagramChannel channel) {
+			this.channel = channel;
+		}
+	}
+
+	/**
+	 * Every latency of a phase, which is sorted to find the percentiles
+	 */
+	private static class Latencies {
+		private long[] values = new long[1024];
+		private int size;
+
+		Latencies() {
+		}
+
+		void record(long nanos) {
+			if (this.size == this.values.length) {
+				this.values = Arrays.copyOf(this.values, this.size * 2);
+			}
+			this.values[this.size++] = nanos;
+		}
+
+		int size() {
+			return this.size;
+		}
+
+		void clear() {
+			this.size = 0;
+		}
+
+		@Override
+		public String toString() {
+			if (this.size == 0) {
+				return "n/a"; //$NON-NLS-1$
+			}
+			final long[] sorted = Arrays.copyOf(this.values, this.size);
+			Arrays.sort(sorted);
+			return String.format("p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms", Double.valueOf(percentile(sorted, 50)), Double.valueOf(percentile(sorted, 90)), //$NON-NLS-1$
+					Double.valueOf(percentile(sorted, 99)), Double.valueOf(sorted[sorted.length - 1] / 1e6));
+		}
+
+		private static double percentile(long[] sorted, int percentile) {
+			final int index = (int) Math.ceil(sorted.length * percentile / 100.0) - 1;
+			return sorted[Math.max(0, index)] / 1e6;
+		}
+	}
+
+	private static class LoadTestDaemonContext implements DaemonContext {
+		private final String[] arguments;
+
+		LoadTestDaemonContext(String... arguments) {
+			this.arguments = arguments;
+		}
+
+		@Override
+		public DaemonController getController() {
+			return null;
+		}
+
+		@Override
+		public String[] getArguments() {
+			return this.arguments;
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+
+import org.nognog.jmatcher.Host;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link MatchingTable} against the maps which the daemon used before it:
+ * a ConcurrentHashMap of Host and a ConcurrentHashMap of the waiting sets.
+ * Each state prints the heap which is retained per entry when it is filled.
+ * 
+ * @author agent 2026/10/17
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+@SuppressWarnings("javadoc")
+public class MatchingTableBenchmark {
+
+	static final int BOUND_OF_KEY_NUMBER = JMatcherDaemon.DEFAULT_BOUND_OF_KEY_NUMBER;
+	static final int NUMBER_OF_CHURN_KEYS = 1024;
+
+	private static final PreEntryListener owner = new PreEntryListener() {
+		@Override
+		public void enabled(int keyNumber) {
+			// nothing to do
+		}
+
+		@Override
+		public void expired(int keyNumber) {
+			// nothing to do
+		}
+
+		@Override
+		public void requested(int keyNumber) {
+			// nothing to do
+		}
+	};
+
+	@State(Scope.Benchmark)
+	public static class Keys {
+		@Param({ "100000", "1000000", "10000000" })
+		int size;
+
+		int[] keys; // keys of the entries in random order
+		InetAddress[] addresses;
+
+		@Setup(Level.Trial)
+		public void setUp() throws UnknownHostException {
+			final Random random = new Random(54);
+			final int interval = BOUND_OF_KEY_NUMBER / this.size;
+			this.keys = new int[this.size];
+			for (int i = 0; i < this.size; i++) {
+				this.keys[i] = i * interval + random.nextInt(interval);
+			}
+			for (int i = this.size - 1; i > 0; i--) {
+				final int j = random.nextInt(i + 1);
+				final int tmp = this.keys[i];
+				this.keys[i] = this.keys[j];
+				this.keys[j] = tmp;
+			}
+			this.addresses = new InetAddress[256];
+			for (int i = 0; i < this.addresses.length; i++) {
+				this.addresses[i] = InetAddress.getByAddress(new byte[] { 10, 0, (byte) i, 1 });
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next;
+
+		int nextKey(Keys keys) {
+			final int key = keys.keys[this.next];
+			if (++this.next == keys.keys.length) {
+				this.next = 0;
+			}
+			return key;
+		}
+
+		int nextChurnKey() {
+			// negative keys are never used by the filled entries
+			this.next = (this.next + 1) % NUMBER_OF_CHURN_KEYS;
+			return -1 - this.next;
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class TableState {
+		MatchingTable table;
+
+		@Setup(Level.Trial)
+		public void setUp(Keys keys) {
+			final long before = usedMemory();
+			this.table = new MatchingTable(new HashedTimingWheel("benchmark-timer")); //$NON-NLS-1$
+			for (int i = 0; i < keys.size; i++) {
+				this.table.putPreEntry(keys.keys[i], keys.addresses[i & 0xFF], i & 0xFFFF, owner, 0);
+				this.table.enable(keys.keys[i], keys.addresses[i & 0xFF], i & 0xFFFF);
+			}
+			printRetainedMemory("table", before, keys.size); //$NON-NLS-1$
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class MapsState {
+		ConcurrentHashMap<Integer, Host> matchingMap;
+		ConcurrentHashMap<Integer, CopyOnWriteArraySet<Object>> waitingMap;
+
+		@Setup(Level.Trial)
+		public void setUp(Keys keys) {
+			final long before = usedMemory();
+			this.matchingMap = new ConcurrentHashMap<>();
+			this.waitingMap = new ConcurrentHashMap<>();
+			for (int i = 0; i < keys.size; i++) {
+				this.matchingMap.put(Integer.valueOf(keys.keys[i]), new Host(keys.addresses[i & 0xFF].getHostAddress(), i & 0xFFFF));
+			}
+			printRetainedMemory("maps", before, keys.size); //$NON-NLS-1$
+		}
+	}
+
+	static long usedMemory() {
+		final Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	static void printRetainedMemory(String name, long before, int size) {
+		final long retained = usedMemory() - before;
+		System.out.println(name + " : " + size + " entries, " + (retained / size) + " bytes/entry"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	/**
+	 * The lookup of a ConnectionRequest
+	 */
+	@Benchmark
+	public boolean tableContainsKey(TableState state, Keys keys, Cursor cursor) {
+		return state.table.containsKey(cursor.nextKey(keys));
+	}
+
+	@Benchmark
+	public boolean mapsContainsKey(MapsState state, Keys keys, Cursor cursor) {
+		return state.matchingMap.containsKey(Integer.valueOf(cursor.nextKey(keys)));
+	}
+
+	/**
+	 * The lookup which materializes the host for a response
+	 */
+	@Benchmark
+	public Host tableGet(TableState state, Keys keys, Cursor cursor) {
+		return state.table.get(cursor.nextKey(keys));
+	}
+
+	@Benchmark
+	public Host mapsGet(MapsState state, Keys keys, Cursor cursor) {
+		return state.matchingMap.get(Integer.valueOf(cursor.nextKey(keys)));
+	}
+
+	/**
+	 * An inviter comes, enables its entry, and leaves
+	 */
+	@Benchmark
+	public boolean tableEntryChurn(TableState state, Keys keys, Cursor cursor) {
+		final int key = cursor.nextChurnKey();
+		final InetAddress address = keys.addresses[key & 0xFF];
+		state.table.putPreEntry(key, address, 10000, owner, 0);
+		state.table.enable(key, address, 10001);
+		return state.table.remove(key, owner);
+	}
+
+	@Benchmark
+	public boolean mapsEntryChurn(MapsState state, Keys keys, Cursor cursor) {
+		final Integer key = Integer.valueOf(cursor.nextChurnKey());
+		final String address = keys.addresses[key.intValue() & 0xFF].getHostAddress();
+		final PreEntryHost preEntryHost = new PreEntryHost(address, 10000);
+		state.matchingMap.put(key, preEntryHost);
+		state.matchingMap.replace(key, preEntryHost, new Host(address, 10001));
+		state.waitingMap.remove(key);
+		return state.matchingMap.remove(key) != null;
+	}
+}
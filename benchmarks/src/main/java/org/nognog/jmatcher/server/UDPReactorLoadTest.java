@@ -0,0 +1,218 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.daemon.DaemonContext;
+import org.apache.commons.daemon.DaemonController;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.nognog.jmatcher.JMatcher;
+import org.nognog.jmatcher.udp.UDPProtocol;
+import org.nognog.jmatcher.udp.request.ConnectionRequest;
+import org.nognog.jmatcher.udp.request.UDPRequestSerializer;
+
+/**
+ * A load test of the UDP intake of the daemon in {@link IOMode#REACTOR}. For
+ * each number of reactors, clients on many source ports keep a window of
+ * ConnectionRequests for an unknown key in flight, and the test counts the
+ * failure responses which come back, so every packet goes through the whole
+ * decode, dispatch and response path. The scaling only shows on a multi-core
+ * box.
+ * 
+ * <pre>
+ * gradle :benchmarks:udpLoadTest -PloadTestArgs="1,2,4,8 10"
+ * </pre>
+ * 
+ * The arguments are the numbers of reactors, the seconds to measure each of
+ * them, the number of client channels and the number of client threads. The
+ * log is turned down to WARN unless the system property
+ * {@value #CONFIGURED_LOGGING_PROPERTY} is true, which measures the daemon
+ * with the log4j2.xml it ships with.
+ * 
+ * @author agent 2026/10/17
+ */
+public class UDPReactorLoadTest {
+
+	/**
+	 * name of the system property which keeps the configured log levels
+	 */
+	public static final String CONFIGURED_LOGGING_PROPERTY = "jmatcher.loadTest.configuredLogging"; //$NON-NLS-1$
+
+	private static final int window = 16; // requests in flight per channel
+	private static final long lostTimeout = 100; // [msec]
+	private static final long warmupTime = 2000; // [msec]
+
+	private final int numberOfChannels;
+	private final int numberOfThreads;
+	private final long measurementTime;
+	private final ByteBuffer request;
+
+	/**
+	 * @param numberOfChannels
+	 * @param numberOfThreads
+	 * @param measurementTime
+	 *            [msec]
+	 */
+	UDPReactorLoadTest(int numberOfChannels, int numberOfThreads, long measurementTime) {
+		this.numberOfChannels = numberOfChannels;
+		this.numberOfThreads = numberOfThreads;
+		this.measurementTime = measurementTime;
+		this.request = ByteBuffer.allocate(UDPRequestSerializer.BINARY_REQUEST_SIZE);
+		UDPRequestSerializer.getInstance().serialize(new ConnectionRequest(Integer.valueOf(JMatcherDaemon.DEFAULT_BOUND_OF_KEY_NUMBER - 1)), this.request);
+		this.request.flip();
+		if (UDPProtocol.of(this.request) != UDPProtocol.BINARY) {
+			throw new IllegalStateException();
+		}
+	}
+
+	/**
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		final int processors = Runtime.getRuntime().availableProcessors();
+		final String[] numbersOfReactors = (args.length > 0) ? args[0].split(",") : new String[] { "1", "2", String.valueOf(processors) }; //$NON-NLS-1$ //$NON-NLS-2$
+		final long seconds = (args.length > 1) ? Long.parseLong(args[1]) : 10;
+		final int numberOfChannels = (args.length > 2) ? Integer.parseInt(args[2]) : 256;
+		final int numberOfThreads = (args.length > 3) ? Integer.parseInt(args[3]) : Math.max(1, processors / 2);
+		if (!Boolean.getBoolean(CONFIGURED_LOGGING_PROPERTY)) {
+			Configurator.setRootLevel(Level.WARN);
+		}
+		final UDPReactorLoadTest loadTest = new UDPReactorLoadTest(numberOfChannels, numberOfThreads, seconds * 1000);
+		System.out.println("processors = " + processors + ", SO_REUSEPORT = " + (UDPReactor.findReusePortOption() != null) + ", channels = " + numberOfChannels + ", client threads = " + numberOfThreads); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		for (String numberOfReactors : numbersOfReactors) {
+			loadTest.run(Integer.parseInt(numberOfReactors.trim()));
+		}
+	}
+
+	private void run(final int numberOfReactors) throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new LoadTestDaemonContext(JMatcherDaemon.UDP_MODE_ARGUMENT + "=reactor", JMatcherDaemon.UDP_REACTORS_ARGUMENT + "=" + numberOfReactors)); //$NON-NLS-1$ //$NON-NLS-2$
+		daemon.start();
+		try {
+			final AtomicLong received = new AtomicLong();
+			final AtomicLong lost = new AtomicLong();
+			final long startTime = System.currentTimeMillis();
+			final long measurementStartTime = startTime + warmupTime;
+			final long endTime = measurementStartTime + this.measurementTime;
+			final CountDownLatch finished = new CountDownLatch(this.numberOfThreads);
+			for (int i = 0; i < this.numberOfThreads; i++) {
+				final int numberOfChannelsOfThread = this.numberOfChannels / this.numberOfThreads + ((i < this.numberOfChannels % this.numberOfThreads) ? 1 : 0);
+				final Thread thread = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							UDPReactorLoadTest.this.drive(numberOfChannelsOfThread, measurementStartTime, endTime, received, lost);
+						} catch (IOException e) {
+							e.printStackTrace();
+						} finally {
+							finished.countDown();
+						}
+					}
+				}, "load-client-" + i); //$NON-NLS-1$
+				thread.start();
+			}
+			finished.await();
+			final double packetsPerSecond = received.get() * 1000.0 / this.measurementTime;
+			System.out.println(String.format("reactors = %2d : %,12.0f packets/s (lost %d)", Integer.valueOf(numberOfReactors), Double.valueOf(packetsPerSecond), Long.valueOf(lost.get()))); //$NON-NLS-1$
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	/**
+	 * Keep {@link #window} requests in flight on each channel. A channel
+	 * whose responses stop for {@link #lostTimeout} counts its requests in
+	 * flight as lost and starts again.
+	 */
+	void drive(int numberOfChannelsOfThread, long measurementStartTime, long endTime, AtomicLong received, AtomicLong lost) throws IOException {
+		final DatagramChannel[] channels = new DatagramChannel[numberOfChannelsOfThread];
+		final int[] inFlight = new int[numberOfChannelsOfThread];
+		final long[] lastReceivedTime = new long[numberOfChannelsOfThread];
+		final ByteBuffer receiveBuffer = ByteBuffer.allocate(64);
+		final InetSocketAddress serverAddress = new InetSocketAddress("localhost", JMatcher.PORT); //$NON-NLS-1$
+		long countOfReceived = 0;
+		long countOfLost = 0;
+		try {
+			for (int i = 0; i < channels.length; i++) {
+				channels[i] = DatagramChannel.open();
+				channels[i].configureBlocking(false);
+				channels[i].connect(serverAddress);
+			}
+			long now = System.currentTimeMillis();
+			while (now < endTime) {
+				final boolean measuring = now >= measurementStartTime;
+				for (int i = 0; i < channels.length; i++) {
+					receiveBuffer.clear();
+					while (channels[i].read(receiveBuffer) > 0) {
+						receiveBuffer.clear();
+						inFlight[i]--;
+						lastReceivedTime[i] = now;
+						if (measuring) {
+							countOfReceived++;
+						}
+					}
+					if (inFlight[i] > 0 && now - lastReceivedTime[i] > lostTimeout) {
+						if (measuring) {
+							countOfLost += inFlight[i];
+						}
+						inFlight[i] = 0;
+					}
+					while (inFlight[i] < window && channels[i].write(this.request.duplicate()) > 0) {
+						if (inFlight[i] == 0) {
+							lastReceivedTime[i] = now;
+						}
+						inFlight[i]++;
+					}
+				}
+				now = System.currentTimeMillis();
+			}
+		} finally {
+			for (DatagramChannel channel : channels) {
+				if (channel != null) {
+					channel.close();
+				}
+			}
+			received.addAndGet(countOfReceived);
+			lost.addAndGet(countOfLost);
+		}
+	}
+
+	private static class LoadTestDaemonContext implements DaemonContext {
+		private final String[] arguments;
+
+		LoadTestDaemonContext(String... arguments) {
+			this.arguments = arguments;
+		}
+
+		@Override
+		public DaemonController getController() {
+			return null;
+		}
+
+		@Override
+		public String[] getArguments() {
+			return this.arguments;
+		}
+	}
+}
@@ -0,0 +1,223 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.tcp;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.nognog.jmatcher.Host;
+import org.nognog.jmatcher.tcp.request.PlainTCPRequest;
+import org.nognog.jmatcher.tcp.request.TCPRequest;
+import org.nognog.jmatcher.tcp.response.CheckConnectionResponse;
+import org.nognog.jmatcher.tcp.response.TCPResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One poll of the entry channel (a CHECK_CONNECTION_REQUEST and its
+ * {@link CheckConnectionResponse}) in both {@link TCPProtocol}s, written and
+ * read through in-memory pipes by both the inviter and the server side. The
+ * score is the CPU time of a whole poll, and each iteration prints the bytes
+ * of the first poll and of a poll in the steady state.
+ * 
+ * @author agent 2026/10/17
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+@SuppressWarnings("javadoc")
+public class TCPProtocolBenchmark {
+
+	/**
+	 * The server never resets its ObjectOutputStream, so its handle table
+	 * keeps every response. The streams here are reset at this interval to
+	 * keep the heap of the benchmark bounded, which costs the object stream
+	 * a few class descriptors per interval.
+	 */
+	static final int RESET_INTERVAL = 4096;
+
+	@Param({ "OBJECT_STREAM", "BINARY" })
+	TCPProtocol protocol;
+
+	@Param({ "0", "1", "8" })
+	int numberOfHosts;
+
+	private Pipe toServer;
+	private Pipe toInviter;
+	private ObjectOutputStream inviterOOS;
+	private ObjectInputStream inviterOIS;
+	private ObjectOutputStream serverOOS;
+	private ObjectInputStream serverOIS;
+	private DataInputStream inviterInput;
+	private DataInputStream serverInput;
+	private TCPFrameSerializer serializer;
+	private Host[] hosts;
+	private long numberOfPolls;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws IOException, ClassNotFoundException {
+		this.toServer = new Pipe();
+		this.toInviter = new Pipe();
+		this.serializer = TCPFrameSerializer.getInstance();
+		if (this.protocol == TCPProtocol.OBJECT_STREAM) {
+			this.inviterOOS = new ObjectOutputStream(this.toServer);
+			this.serverOIS = new ObjectInputStream(this.toServer.input);
+			this.serverOOS = new ObjectOutputStream(this.toInviter);
+			this.inviterOIS = new ObjectInputStream(this.toInviter.input);
+		} else {
+			this.toServer.write(TCPFrameSerializer.createPreamble(TCPFrameSerializer.VERSION));
+			this.serverInput = new DataInputStream(this.toServer.input);
+			TCPFrameSerializer.readPreamble(this.serverInput);
+			this.toInviter.write(TCPFrameSerializer.createPreamble(TCPFrameSerializer.VERSION));
+			this.inviterInput = new DataInputStream(this.toInviter.input);
+			TCPFrameSerializer.readPreamble(this.inviterInput);
+		}
+		this.hosts = new Host[this.numberOfHosts];
+		for (int i = 0; i < this.numberOfHosts; i++) {
+			this.hosts[i] = new Host("203.0.113." + (i + 1), 50000 + i); //$NON-NLS-1$
+		}
+		this.numberOfPolls = 0;
+		this.toServer.numberOfWrittenBytes = 0;
+		this.toInviter.numberOfWrittenBytes = 0;
+		this.poll();
+		System.out.println(this.protocol + " : first poll with " + this.numberOfHosts + " hosts, " + this.toServer.numberOfWrittenBytes + " + " //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ this.toInviter.numberOfWrittenBytes + " bytes"); //$NON-NLS-1$
+		this.numberOfPolls = 0;
+		this.toServer.numberOfWrittenBytes = 0;
+		this.toInviter.numberOfWrittenBytes = 0;
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		System.out.println(this.protocol + " : " + this.numberOfHosts + " hosts, " + ((double) this.toServer.numberOfWrittenBytes / this.numberOfPolls) + " + " //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ ((double) this.toInviter.numberOfWrittenBytes / this.numberOfPolls) + " bytes/poll"); //$NON-NLS-1$
+	}
+
+	@Benchmark
+	public TCPResponse poll() throws IOException, ClassNotFoundException {
+		this.numberOfPolls++;
+		if (this.protocol == TCPProtocol.OBJECT_STREAM) {
+			if (this.numberOfPolls % RESET_INTERVAL == 0) {
+				this.inviterOOS.reset();
+				this.serverOOS.reset();
+			}
+			this.inviterOOS.writeObject(PlainTCPRequest.CHECK_CONNECTION_REQUEST);
+			this.inviterOOS.flush();
+			final TCPRequest request = (TCPRequest) this.serverOIS.readObject();
+			this.serverOOS.writeObject(this.createResponse(request));
+			this.serverOOS.flush();
+			return (TCPResponse) this.inviterOIS.readObject();
+		}
+		this.serializer.write(this.toServer, PlainTCPRequest.CHECK_CONNECTION_REQUEST);
+		final TCPRequest request = this.serializer.readRequest(this.serverInput);
+		this.serializer.write(this.toInviter, this.createResponse(request));
+		return this.serializer.readResponse(this.inviterInput);
+	}
+
+	private TCPResponse createResponse(TCPRequest request) {
+		if (request != PlainTCPRequest.CHECK_CONNECTION_REQUEST) {
+			throw new AssertionError(request);
+		}
+		// the server creates a new array of new hosts for each poll
+		final Host[] requestingHosts = new Host[this.hosts.length];
+		for (int i = 0; i < requestingHosts.length; i++) {
+			requestingHosts[i] = new Host(this.hosts[i].getAddress(), this.hosts[i].getPort());
+		}
+		return new CheckConnectionResponse(requestingHosts);
+	}
+
+	/**
+	 * a growable in-memory pipe for a single thread, which counts the written
+	 * bytes
+	 */
+	static class Pipe extends OutputStream {
+		byte[] bytes = new byte[1024];
+		int readPosition;
+		int writePosition;
+		long numberOfWrittenBytes;
+
+		final InputStream input = new InputStream() {
+			@Override
+			public int read() {
+				if (Pipe.this.readPosition == Pipe.this.writePosition) {
+					return -1;
+				}
+				return Pipe.this.bytes[Pipe.this.readPosition++] & 0xFF;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				final int available = Pipe.this.writePosition - Pipe.this.readPosition;
+				if (available == 0) {
+					return (len == 0) ? 0 : -1;
+				}
+				final int length = Math.min(len, available);
+				System.arraycopy(Pipe.this.bytes, Pipe.this.readPosition, b, off, length);
+				Pipe.this.readPosition += length;
+				return length;
+			}
+
+			@Override
+			public int available() {
+				return Pipe.this.writePosition - Pipe.this.readPosition;
+			}
+		};
+
+		@Override
+		public void write(int b) {
+			this.ensureCapacity(1);
+			this.bytes[this.writePosition++] = (byte) b;
+			this.numberOfWrittenBytes++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			this.ensureCapacity(len);
+			System.arraycopy(b, off, this.bytes, this.writePosition, len);
+			this.writePosition += len;
+			this.numberOfWrittenBytes += len;
+		}
+
+		private void ensureCapacity(int length) {
+			if (this.readPosition == this.writePosition) {
+				this.readPosition = 0;
+				this.writePosition = 0;
+			}
+			if (this.writePosition + length > this.bytes.length) {
+				this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.writePosition + length));
+			}
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.udp;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.nognog.jmatcher.Host;
+import org.nognog.jmatcher.udp.request.ConnectionRequest;
+import org.nognog.jmatcher.udp.request.UDPRequest;
+import org.nognog.jmatcher.udp.request.UDPRequestSerializer;
+import org.nognog.jmatcher.udp.response.ConnectionResponse;
+import org.nognog.jmatcher.udp.response.UDPResponse;
+import org.nognog.jmatcher.udp.response.UDPResponseSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link UDPRequestSerializer} and {@link UDPResponseSerializer} in both
+ * {@link UDPProtocol}s. The text benchmarks include the conversion between
+ * the string and the bytes of the datagram, as the peers and the server do.
+ * 
+ * @author agent 2026/10/17
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+@SuppressWarnings("javadoc")
+public class UDPSerializerBenchmark {
+
+	private final UDPRequestSerializer requestSerializer = UDPRequestSerializer.getInstance();
+	private final UDPResponseSerializer responseSerializer = UDPResponseSerializer.getInstance();
+
+	private ConnectionRequest request;
+	private ConnectionResponse response;
+	private byte[] textRequest;
+	private byte[] textResponse;
+	private ByteBuffer binaryRequest;
+	private ByteBuffer binaryResponse;
+	private ByteBuffer buffer;
+
+	@Setup
+	public void setUp() {
+		this.request = new ConnectionRequest(Integer.valueOf(12345678));
+		this.response = new ConnectionResponse(new Host("203.0.113.54", 54321)); //$NON-NLS-1$
+		this.textRequest = this.requestSerializer.serialize(this.request).getBytes();
+		this.textResponse = this.responseSerializer.serialize(this.response).getBytes();
+		this.binaryRequest = ByteBuffer.allocate(UDPRequestSerializer.BINARY_REQUEST_SIZE);
+		this.requestSerializer.serialize(this.request, this.binaryRequest);
+		this.binaryRequest.flip();
+		this.binaryResponse = ByteBuffer.allocate(UDPResponseSerializer.MAX_BINARY_RESPONSE_SIZE);
+		this.responseSerializer.serialize(this.response, this.binaryResponse);
+		this.binaryResponse.flip();
+		this.buffer = ByteBuffer.allocate(UDPResponseSerializer.MAX_BINARY_RESPONSE_SIZE);
+	}
+
+	@Benchmark
+	public byte[] serializeTextRequest() {
+		return this.requestSerializer.serialize(this.request).getBytes();
+	}
+
+	@Benchmark
+	public ByteBuffer serializeBinaryRequest() {
+		this.buffer.clear();
+		this.requestSerializer.serialize(this.request, this.buffer);
+		return this.buffer;
+	}
+
+	@Benchmark
+	public UDPRequest deserializeTextRequest() {
+		return this.requestSerializer.deserialize(new String(this.textRequest));
+	}
+
+	@Benchmark
+	public UDPRequest deserializeBinaryRequest() {
+		return this.requestSerializer.deserialize(this.binaryRequest.duplicate());
+	}
+
+	/**
+	 * What the server reads from a request to dispatch it
+	 */
+	@Benchmark
+	public int readBinaryRequestHeader() {
+		final ByteBuffer datagram = this.binaryRequest.duplicate();
+		return UDPRequestSerializer.readRequestType(datagram) ^ UDPRequestSerializer.readKeyNumber(datagram);
+	}
+
+	@Benchmark
+	public byte[] serializeTextResponse() {
+		return this.responseSerializer.serialize(this.response).getBytes();
+	}
+
+	@Benchmark
+	public ByteBuffer serializeBinaryResponse() {
+		this.buffer.clear();
+		this.responseSerializer.serialize(this.response, this.buffer);
+		return this.buffer;
+	}
+
+	@Benchmark
+	public UDPResponse deserializeTextResponse() {
+		return this.responseSerializer.deserialize(new String(this.textResponse));
+	}
+
+	@Benchmark
+	public UDPResponse deserializeBinaryResponse() {
+		return this.responseSerializer.deserialize(this.binaryResponse.duplicate());
+	}
+}
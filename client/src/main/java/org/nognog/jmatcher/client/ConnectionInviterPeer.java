@@ -14,9 +14,12 @@
 
 package org.nognog.jmatcher.client;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
@@ -24,6 +27,7 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -37,12 +41,24 @@ import org.apache.logging.log4j.Logger;
 import org.nognog.jmatcher.Host;
 import org.nognog.jmatcher.JMatcher;
 import org.nognog.jmatcher.SpecialHostAddress;
+import org.nognog.jmatcher.tcp.TCPFrameSerializer;
+import org.nognog.jmatcher.tcp.TCPProtocol;
 import org.nognog.jmatcher.tcp.request.PlainTCPRequest;
+import org.nognog.jmatcher.tcp.request.ReattachRequest;
+import org.nognog.jmatcher.tcp.request.TCPRequest;
 import org.nognog.jmatcher.tcp.response.CheckConnectionResponse;
 import org.nognog.jmatcher.tcp.response.PlainTCPResponse;
 import org.nognog.jmatcher.tcp.response.PreEntryResponse;
 import org.nognog.jmatcher.tcp.response.TCPResponse;
+import org.nognog.jmatcher.udp.UDPProtocol;
 import org.nognog.jmatcher.udp.request.EnableEntryRequest;
+import org.nognog.jmatcher.udp.request.LeaseRequest;
+import org.nognog.jmatcher.udp.request.ReleaseLeaseRequest;
+import org.nognog.jmatcher.udp.request.RenewLeaseRequest;
+import org.nognog.jmatcher.udp.request.UDPRequest;
+import org.nognog.jmatcher.udp.response.LeaseResponse;
+import org.nognog.jmatcher.udp.response.UDPResponse;
+import org.nognog.jmatcher.udp.response.UDPResponseSerializer;
 
 /**
  * This is a class to communicate with JMatcherConnectionClients. This class is
@@ -61,11 +77,21 @@ public class ConnectionInviterPeer implements Peer {
 	private int portTellerPort = JMatcher.PORT;
 	protected Thread communicationThread;
 	protected Thread portTellerThread;
+	protected Thread pushReceiverThread;
 
 	private Socket tcpSocket;
 	private Integer lastEntryKey;
+	private TCPProtocol tcpProtocol = TCPProtocol.BINARY;
+	private TCPProtocol tcpProtocolInUse;
 	private ObjectInputStream ois;
 	private ObjectOutputStream oos;
+	private DataInputStream binaryInput;
+	private OutputStream binaryOutput;
+	private boolean pushedRequestingHosts;
+	private boolean usingLease;
+	private volatile boolean leasing;
+	private int leaseTime;
+	private InetSocketAddress serverAddress;
 	private DatagramSocket udpSocket;
 	private int receiveBuffSize = defaultBuffSize;
 	private int udpSoTimeoutCache;
@@ -86,6 +112,9 @@ public class ConnectionInviterPeer implements Peer {
 	static final int defaultBuffSize = Math.max(256, JMatcherClientMessage.buffSizeToReceiveSerializedMessage);
 	static final int defaultUdpSocketTimeoutMillSec = 1000; // [msec]
 	static final long intervalToUpdateRequestingHosts = 2000; // [msec]
+	// the server closes the entry channel which has been idle for its
+	// entryIdleTimeout if it is set
+	static final long intervalToSendHeartbeat = 10000; // [msec]
 
 	/**
 	 * @param name
@@ -221,6 +250,46 @@ public class ConnectionInviterPeer implements Peer {
 		this.portTellerPort = portTellerPort;
 	}
 
+	/**
+	 * @return the protocol of the entry channel
+	 */
+	public TCPProtocol getTCPProtocol() {
+		return this.tcpProtocol;
+	}
+
+	/**
+	 * Set the protocol of the entry channel. If {@link TCPProtocol#BINARY} is
+	 * set and the server doesn't understand it, {@link TCPProtocol#OBJECT_STREAM}
+	 * is used instead. It has to be called before {@link #startInvitation()}
+	 * 
+	 * @param tcpProtocol
+	 *            the protocol to set
+	 */
+	public void setTCPProtocol(TCPProtocol tcpProtocol) {
+		this.tcpProtocol = tcpProtocol;
+		this.tcpProtocolInUse = null;
+	}
+
+	/**
+	 * @return true if the entry is registered by a UDP lease
+	 */
+	public boolean isUsingLease() {
+		return this.usingLease;
+	}
+
+	/**
+	 * Register the entry by a UDP lease instead of the entry channel of TCP.
+	 * The key is leased in one round trip to the server, and this renews the
+	 * lease by small heartbeats on the UDP socket, so the server doesn't keep
+	 * a connection for this. The server has to support leases. It has to be
+	 * called before {@link #startInvitation()}
+	 * 
+	 * @param usingLease
+	 */
+	public void setUsingLease(boolean usingLease) {
+		this.usingLease = usingLease;
+	}
+
 	@SuppressWarnings("unused")
 	protected void setupTCPSocket(final Socket tcpSocket) throws SocketException {
 		// overridden when configure the option of this tcp-socket
@@ -267,7 +336,7 @@ public class ConnectionInviterPeer implements Peer {
 	 * @return true if this is inviting other peers
 	 */
 	public boolean isInviting() {
-		return this.tcpSocket != null && !this.tcpSocket.isClosed();
+		return this.leasing || (this.tcpSocket != null && !this.tcpSocket.isClosed());
 	}
 
 	/**
@@ -306,6 +375,29 @@ public class ConnectionInviterPeer implements Peer {
 	 *             thrown if an I/O error occurs
 	 */
 	public Integer startInvitation() throws IOException {
+		return this.startInvitation(PlainTCPRequest.ENTRY);
+	}
+
+	/**
+	 * Start the invitation again under the key which this had been given,
+	 * after the connection to the server has been lost (e.g. the server has
+	 * restarted). The server keeps the keys of the registered inviters for a
+	 * while if it journals them. If this uses a lease, the lease of the key is
+	 * renewed.
+	 * 
+	 * @param keyNumber
+	 *            the key which this had been given
+	 * @return entry key number, or null is returned if it has been started or
+	 *         the server doesn't keep the key. A new invitation should be
+	 *         started by {@link #startInvitation()} in the latter case.
+	 * @throws IOException
+	 *             thrown if an I/O error occurs
+	 */
+	public Integer resumeInvitation(int keyNumber) throws IOException {
+		return this.startInvitation(new ReattachRequest(keyNumber));
+	}
+
+	private Integer startInvitation(TCPRequest entryRequest) throws IOException {
 		this.log(Level.INFO, "starting a invitation."); //$NON-NLS-1$
 		if (this.isCommunicating()) {
 			this.log(Level.INFO, "it is already communicating."); //$NON-NLS-1$
@@ -314,25 +406,39 @@ public class ConnectionInviterPeer implements Peer {
 		for (int i = 0; i < this.retryCount; i++) {
 			this.closeAllConnections();
 			try {
-				this.setupTCPConnection();
-				final Integer keyNumber = this.makePreEntry();
-				if (keyNumber == null) {
-					this.closeAllConnections();
-					return null;
-				}
-				this.setupUDPConnection();
-				if (this.enableEntry(keyNumber)) {
-					this.startPortTellerThread();
-					if (this.portTellerThread == null) {
+				final Integer keyNumber;
+				if (this.usingLease) {
+					this.setupUDPConnection();
+					keyNumber = this.leaseEntry(entryRequest);
+					if (keyNumber == null) {
 						this.closeAllConnections();
 						return null;
 					}
-					this.startCommunicationThread();
-					this.lastEntryKey = keyNumber;
-					this.udpSoTimeoutCache = this.udpSocket.getSoTimeout();
-					this.log(Level.INFO, "succeeded in starting the invitation"); //$NON-NLS-1$
-					return keyNumber;
+				} else {
+					this.setupTCPConnection();
+					keyNumber = this.makePreEntry(entryRequest);
+					if (keyNumber == null) {
+						this.closeAllConnections();
+						return null;
+					}
+					this.setupUDPConnection();
+					if (!this.enableEntry(keyNumber)) {
+						continue;
+					}
 				}
+				this.startPortTellerThread();
+				if (this.portTellerThread == null) {
+					this.closeAllConnections();
+					return null;
+				}
+				this.startCommunicationThread();
+				if (this.pushedRequestingHosts) {
+					this.startPushReceiverThread();
+				}
+				this.lastEntryKey = keyNumber;
+				this.udpSoTimeoutCache = this.udpSocket.getSoTimeout();
+				this.log(Level.INFO, "succeeded in starting the invitation"); //$NON-NLS-1$
+				return keyNumber;
 			} catch (IOException | ClassNotFoundException | ClassCastException e) {
 				this.log(Level.ERROR, "failed to start the invitation", e); //$NON-NLS-1$
 				// failed
@@ -347,17 +453,67 @@ public class ConnectionInviterPeer implements Peer {
 
 	private void setupTCPConnection() throws UnknownHostException, IOException, SocketException {
 		this.log(Level.INFO, "doing setup a TCP connection to make entry to jmatcher-server"); //$NON-NLS-1$
+		if (this.tcpProtocolInUse == null) {
+			this.tcpProtocolInUse = this.tcpProtocol;
+		}
+		this.pushedRequestingHosts = false;
+		this.openTCPSocket();
+		if (this.tcpProtocolInUse == TCPProtocol.BINARY) {
+			try {
+				this.exchangePreambles();
+			} catch (IOException e) {
+				// a server which only understands the object stream closes the
+				// channel when it reads the preamble
+				this.log(Level.INFO, "the server doesn't understand the binary protocol, falling back to the object stream"); //$NON-NLS-1$
+				this.closeTCPCommunication();
+				this.tcpProtocolInUse = TCPProtocol.OBJECT_STREAM;
+				this.openTCPSocket();
+			}
+		}
+		if (this.tcpProtocolInUse == TCPProtocol.OBJECT_STREAM) {
+			this.oos = new ObjectOutputStream(this.tcpSocket.getOutputStream());
+			this.ois = new ObjectInputStream(this.tcpSocket.getInputStream());
+		}
+		this.log(Level.INFO, "finised doing setup a TCP connection"); //$NON-NLS-1$
+	}
+
+	private void openTCPSocket() throws UnknownHostException, IOException, SocketException {
 		this.tcpSocket = new Socket(this.jmatcherServer, this.jmatcherServerPort);
 		this.setupTCPSocket(this.tcpSocket);
-		this.oos = new ObjectOutputStream(this.tcpSocket.getOutputStream());
-		this.ois = new ObjectInputStream(this.tcpSocket.getInputStream());
-		this.log(Level.INFO, "finised doing setup a TCP connection"); //$NON-NLS-1$
 	}
 
-	private Integer makePreEntry() throws IOException, ClassNotFoundException {
-		this.oos.writeObject(PlainTCPRequest.ENTRY);
+	private void exchangePreambles() throws IOException {
+		this.binaryOutput = this.tcpSocket.getOutputStream();
+		this.binaryInput = new DataInputStream(new BufferedInputStream(this.tcpSocket.getInputStream()));
+		this.binaryOutput.write(TCPFrameSerializer.createPreamble(TCPFrameSerializer.VERSION));
+		this.binaryOutput.flush();
+		final int version = TCPFrameSerializer.readPreamble(this.binaryInput);
+		if (version < 1 || version > TCPFrameSerializer.VERSION) {
+			throw new IOException("unsupported version : " + version); //$NON-NLS-1$
+		}
+		// an older server has to be asked for the requesting hosts
+		this.pushedRequestingHosts = version >= TCPFrameSerializer.PUSH_VERSION;
+	}
+
+	private void writeTCPRequest(TCPRequest request) throws IOException {
+		if (this.tcpProtocolInUse == TCPProtocol.BINARY) {
+			TCPFrameSerializer.getInstance().write(this.binaryOutput, request);
+			return;
+		}
+		this.oos.writeObject(request);
 		this.oos.flush();
-		final TCPResponse entryResponse = (TCPResponse) this.ois.readObject();
+	}
+
+	private TCPResponse readTCPResponse() throws IOException, ClassNotFoundException {
+		if (this.tcpProtocolInUse == TCPProtocol.BINARY) {
+			return TCPFrameSerializer.getInstance().readResponse(this.binaryInput);
+		}
+		return (TCPResponse) this.ois.readObject();
+	}
+
+	private Integer makePreEntry(TCPRequest entryRequest) throws IOException, ClassNotFoundException {
+		this.writeTCPRequest(entryRequest);
+		final TCPResponse entryResponse = this.readTCPResponse();
 		if (entryResponse == PlainTCPResponse.FAILURE) {
 			return null;
 		}
@@ -370,6 +526,70 @@ public class ConnectionInviterPeer implements Peer {
 		return keyNumber;
 	}
 
+	/**
+	 * @param entryRequest
+	 *            a {@link ReattachRequest} renews the lease of its key, which
+	 *            the server has restored
+	 * @return the leased key, or null if the server refuses the lease
+	 * @throws IOException
+	 *             thrown if the server doesn't answer
+	 */
+	private Integer leaseEntry(TCPRequest entryRequest) throws IOException {
+		this.serverAddress = new InetSocketAddress(this.jmatcherServer, this.jmatcherServerPort);
+		if (this.serverAddress.isUnresolved()) {
+			throw new UnknownHostException(this.jmatcherServer);
+		}
+		final UDPRequest leaseRequest;
+		if (entryRequest instanceof ReattachRequest) {
+			leaseRequest = new RenewLeaseRequest(Integer.valueOf(((ReattachRequest) entryRequest).getKeyNumber()));
+		} else {
+			leaseRequest = new LeaseRequest();
+		}
+		JMatcherClientUtil.sendUDPRequest(this.udpSocket, leaseRequest, this.serverAddress, UDPProtocol.BINARY);
+		while (true) {
+			// a timeout is thrown if the server doesn't answer
+			final DatagramPacket packet = JMatcherClientUtil.receiveUDPPacket(this.udpSocket, UDPResponseSerializer.MAX_LEASE_RESPONSE_SIZE);
+			if (!JMatcherClientUtil.packetCameFrom(this.serverAddress, packet)) {
+				continue;
+			}
+			final UDPResponse response = UDPResponseSerializer.getInstance().deserialize(ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength()));
+			if (!(response instanceof LeaseResponse)) {
+				continue;
+			}
+			final LeaseResponse leaseResponse = (LeaseResponse) response;
+			if (leaseResponse.getKeyNumber() == null) {
+				this.log(Level.INFO, "failed to lease a key. there is a possibility that the server is currently full."); //$NON-NLS-1$
+				return null;
+			}
+			this.leaseTime = leaseResponse.getLeaseTime();
+			// it is released by the key if the invitation fails to start
+			this.lastEntryKey = leaseResponse.getKeyNumber();
+			this.leasing = true;
+			this.log(Level.INFO, "succeeded in leasing, key = ", leaseResponse.getKeyNumber(), ", lease time = ", Integer.valueOf(this.leaseTime)); //$NON-NLS-1$ //$NON-NLS-2$
+			return leaseResponse.getKeyNumber();
+		}
+	}
+
+	private void renewLease() throws IOException {
+		JMatcherClientUtil.sendUDPRequest(this.udpSocket, new RenewLeaseRequest(this.lastEntryKey), this.serverAddress, UDPProtocol.BINARY);
+		this.log(Level.DEBUG, "communication thread : renewed the lease"); //$NON-NLS-1$
+	}
+
+	private void releaseLease() {
+		if (!this.leasing) {
+			return;
+		}
+		this.leasing = false;
+		if (this.udpSocket == null || this.lastEntryKey == null) {
+			return;
+		}
+		try {
+			JMatcherClientUtil.sendUDPRequest(this.udpSocket, new ReleaseLeaseRequest(this.lastEntryKey), this.serverAddress, UDPProtocol.BINARY);
+		} catch (IOException e) {
+			// the lease expires on the server
+		}
+	}
+
 	private void setupUDPConnection() throws SocketException {
 		this.log(Level.INFO, "doing setup a UDP connection to communicate with other peer"); //$NON-NLS-1$
 		this.udpSocket = new DatagramSocket();
@@ -379,8 +599,10 @@ public class ConnectionInviterPeer implements Peer {
 	}
 
 	private boolean enableEntry(final Integer keyNumber) throws IOException, ClassNotFoundException {
-		JMatcherClientUtil.sendUDPRequest(this.udpSocket, new EnableEntryRequest(keyNumber), new InetSocketAddress(this.jmatcherServer, this.jmatcherServerPort));
-		final TCPResponse response = (TCPResponse) this.ois.readObject();
+		// a server which speaks the binary protocol on TCP speaks it on UDP too
+		final UDPProtocol udpProtocol = (this.tcpProtocolInUse == TCPProtocol.BINARY) ? UDPProtocol.BINARY : UDPProtocol.TEXT;
+		JMatcherClientUtil.sendUDPRequest(this.udpSocket, new EnableEntryRequest(keyNumber), new InetSocketAddress(this.jmatcherServer, this.jmatcherServerPort), udpProtocol);
+		final TCPResponse response = this.readTCPResponse();
 		if (response == PlainTCPResponse.COMPLETE_ENTRY) {
 			return true;
 		}
@@ -417,6 +639,7 @@ public class ConnectionInviterPeer implements Peer {
 			return;
 		}
 		this.log(Level.DEBUG, "closing all connections"); //$NON-NLS-1$
+		this.releaseLease();
 		this.closeTCPCommunication();
 		this.closeUDPCommunication();
 		this.log(Level.DEBUG, "clearing the information of hosts"); //$NON-NLS-1$
@@ -428,6 +651,7 @@ public class ConnectionInviterPeer implements Peer {
 		this.log(Level.DEBUG, "cleared the information of hosts"); //$NON-NLS-1$
 		this.waitForCommunicationThread();
 		this.waitForPortTellerThread();
+		this.waitForPushReceiverThread();
 		this.log(Level.DEBUG, "closed all connections"); //$NON-NLS-1$
 	}
 
@@ -435,9 +659,13 @@ public class ConnectionInviterPeer implements Peer {
 		this.log(Level.DEBUG, "closing the tcp connection"); //$NON-NLS-1$
 		JMatcherClientUtil.close(this.ois);
 		JMatcherClientUtil.close(this.oos);
+		JMatcherClientUtil.close(this.binaryInput);
+		JMatcherClientUtil.close(this.binaryOutput);
 		JMatcherClientUtil.close(this.tcpSocket);
 		this.ois = null;
 		this.oos = null;
+		this.binaryInput = null;
+		this.binaryOutput = null;
 		this.tcpSocket = null;
 		this.log(Level.DEBUG, "closed the tcp connection"); //$NON-NLS-1$
 	}
@@ -475,11 +703,20 @@ public class ConnectionInviterPeer implements Peer {
 		}
 	}
 
+	private void waitForPushReceiverThread() {
+		try {
+			this.pushReceiverThread.join(defaultUdpSocketTimeoutMillSec * 2);
+		} catch (InterruptedException | NullPointerException e) {
+			// end
+		}
+	}
+
 	/**
 	 * request to stop invitation
 	 */
 	public void stopInvitation() {
 		this.log(Level.INFO, "stopping the invitation"); //$NON-NLS-1$
+		this.releaseLease();
 		this.closeTCPCommunication();
 		this.log(Level.INFO, "stopped the invitation"); //$NON-NLS-1$
 	}
@@ -556,18 +793,84 @@ public class ConnectionInviterPeer implements Peer {
 		this.communicationThread.start();
 	}
 
+	private void startPushReceiverThread() {
+		this.pushReceiverThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					ConnectionInviterPeer.this.performPushReceiverLoop();
+				} finally {
+					ConnectionInviterPeer.this.pushReceiverThread = null;
+					ConnectionInviterPeer.this.log(Level.INFO, "end push-receiver thread"); //$NON-NLS-1$
+				}
+			}
+		});
+		this.log(Level.INFO, "start push-receiver thread"); //$NON-NLS-1$
+		this.pushReceiverThread.start();
+	}
+
+	/**
+	 * Receive the requesting hosts which the server pushes down the entry
+	 * channel, and send hole-punching messages to them at once. The
+	 * communication thread doesn't read the channel while this is running.
+	 */
+	protected void performPushReceiverLoop() {
+		try {
+			while (this.isInviting()) {
+				final TCPResponse response = this.readTCPResponse();
+				if (!(response instanceof CheckConnectionResponse)) {
+					// ignore an invalid response from the server
+					continue;
+				}
+				if (this.connectingHosts.size() >= this.maxSizeOfConnectingHosts) {
+					this.log(Level.DEBUG, "push-receiver thread : ignored requesting hosts because connecting hosts are full"); //$NON-NLS-1$
+					continue;
+				}
+				for (Host newRequestingHost : this.addRequestingHosts(((CheckConnectionResponse) response).getRequestingHosts())) {
+					this.sendHolePunchingMessage(newRequestingHost);
+				}
+			}
+		} catch (IOException e) {
+			// IOException is mainly caused by closing socket
+		} catch (ClassNotFoundException e) {
+			throw new RuntimeException("unexpected fatal expection occured", e); //$NON-NLS-1$
+		}
+	}
+
 	protected void performCommunicationLoop() {
 		try {
 			long lastUpdatedTime = 0;
+			long lastRenewedTime = System.currentTimeMillis();
+			long lastHeartbeatTime = System.currentTimeMillis();
 			while (this.udpSocket != null) {
-				if (this.isInviting() && this.connectingHosts.size() < this.maxSizeOfConnectingHosts && this.isTheTimeToUpdateRuestingHosts(lastUpdatedTime)) {
+				if (this.leasing && this.isTheTimeToRenewLease(lastRenewedTime)) {
+					// the renewal is answered with the requesting hosts
+					this.renewLease();
+					lastRenewedTime = System.currentTimeMillis();
+				}
+				if (!this.leasing && this.isInviting() && this.isTheTimeToSendHeartbeat(lastHeartbeatTime)) {
 					try {
-						this.updateRequestingHosts();
+						this.sendHeartbeat();
 					} catch (IOException e) {
-						// closed tcp socket while updating
-						// (stopped inviting while updating)
+						// closed tcp socket while sending
+						// (stopped inviting while sending)
 						continue;
 					}
+					lastHeartbeatTime = System.currentTimeMillis();
+				}
+				if (this.isInviting() && this.connectingHosts.size() < this.maxSizeOfConnectingHosts && this.isTheTimeToUpdateRuestingHosts(lastUpdatedTime)) {
+					// the hosts are pushed by the server if it can, then they
+					// are only punched again here
+					if (!this.pushedRequestingHosts && !this.leasing) {
+						try {
+							this.updateRequestingHosts();
+						} catch (IOException e) {
+							// closed tcp socket while updating
+							// (stopped inviting while updating)
+							continue;
+						}
+						lastHeartbeatTime = System.currentTimeMillis();
+					}
 					lastUpdatedTime = System.currentTimeMillis();
 					this.sendHolePunchingMessage();
 				}
@@ -584,22 +887,29 @@ public class ConnectionInviterPeer implements Peer {
 		}
 	}
 
+	/**
+	 * Tell the server that this inviter is still alive, by a
+	 * CHECK_CONNECTION_REQUEST which it already understands. Its response is
+	 * read by the push-receiver thread if the server pushes the requesting
+	 * hosts.
+	 * 
+	 * @throws IOException
+	 */
+	private void sendHeartbeat() throws IOException {
+		this.log(Level.DEBUG, "communication thread : sending heartbeat"); //$NON-NLS-1$
+		if (this.pushedRequestingHosts) {
+			this.writeTCPRequest(PlainTCPRequest.CHECK_CONNECTION_REQUEST);
+			return;
+		}
+		this.updateRequestingHosts();
+	}
+
 	private void updateRequestingHosts() throws IOException {
 		this.log(Level.DEBUG, "communication thread : updating requesting hosts"); //$NON-NLS-1$
-		this.oos.writeObject(PlainTCPRequest.CHECK_CONNECTION_REQUEST);
-		this.oos.flush();
+		this.writeTCPRequest(PlainTCPRequest.CHECK_CONNECTION_REQUEST);
 		try {
-			final CheckConnectionResponse response = (CheckConnectionResponse) this.ois.readObject();
-			final Host[] newRequestingHosts = response.getRequestingHosts();
-			if (newRequestingHosts != null) {
-				for (Host newRequestingHost : newRequestingHosts) {
-					if (SpecialHostAddress.ON_INTERNAL_NETWORK_HOST.equals(newRequestingHost.getAddress())) {
-						continue;
-					}
-					this.requestingHosts.add(newRequestingHost);
-					this.socketAddressCache.put(newRequestingHost, new InetSocketAddress(newRequestingHost.getAddress(), newRequestingHost.getPort()));
-				}
-			}
+			final CheckConnectionResponse response = (CheckConnectionResponse) this.readTCPResponse();
+			this.addRequestingHosts(response.getRequestingHosts());
 		} catch (ClassCastException e) {
 			// ignore when got an invalid response from te server
 		} catch (ClassNotFoundException e) {
@@ -609,18 +919,53 @@ public class ConnectionInviterPeer implements Peer {
 		this.log(Level.DEBUG, this.requestingHosts);
 	}
 
+	/**
+	 * @param newRequestingHosts
+	 *            it can be null
+	 * @return the hosts which have been added
+	 */
+	private List<Host> addRequestingHosts(Host[] newRequestingHosts) {
+		final List<Host> addedHosts = new ArrayList<>();
+		if (newRequestingHosts == null) {
+			return addedHosts;
+		}
+		for (Host newRequestingHost : newRequestingHosts) {
+			if (SpecialHostAddress.ON_INTERNAL_NETWORK_HOST.equals(newRequestingHost.getAddress())) {
+				continue;
+			}
+			this.socketAddressCache.put(newRequestingHost, new InetSocketAddress(newRequestingHost.getAddress(), newRequestingHost.getPort()));
+			if (this.requestingHosts.add(newRequestingHost)) {
+				addedHosts.add(newRequestingHost);
+			}
+		}
+		return addedHosts;
+	}
+
 	@SuppressWarnings("static-method")
 	private boolean isTheTimeToUpdateRuestingHosts(long lastUpdatedTime) {
 		return System.currentTimeMillis() - lastUpdatedTime > intervalToUpdateRequestingHosts;
 	}
 
+	@SuppressWarnings("static-method")
+	private boolean isTheTimeToSendHeartbeat(long lastHeartbeatTime) {
+		return System.currentTimeMillis() - lastHeartbeatTime > intervalToSendHeartbeat;
+	}
+
+	private boolean isTheTimeToRenewLease(long lastRenewedTime) {
+		return System.currentTimeMillis() - lastRenewedTime > this.leaseTime / 3;
+	}
+
 	private void sendHolePunchingMessage() throws IOException {
 		for (Host requestingHost : this.requestingHosts) {
-			JMatcherClientUtil.sendJMatcherClientMessage(this.udpSocket, JMatcherClientMessageType.CONNECT_REQUEST, this.name, requestingHost);
-			this.log(Level.DEBUG, "communication thread : sent hole-panching message to ", requestingHost); //$NON-NLS-1$
+			this.sendHolePunchingMessage(requestingHost);
 		}
 	}
 
+	private void sendHolePunchingMessage(Host requestingHost) throws IOException {
+		JMatcherClientUtil.sendJMatcherClientMessage(this.udpSocket, JMatcherClientMessageType.CONNECT_REQUEST, this.name, requestingHost);
+		this.log(Level.DEBUG, "sent hole-panching message to ", requestingHost); //$NON-NLS-1$
+	}
+
 	/**
 	 * @throws IOException
 	 *             It's thrown if failed to connect to the server
@@ -630,11 +975,15 @@ public class ConnectionInviterPeer implements Peer {
 		try {
 			synchronized (this.udpSocket) {
 				this.udpSoTimeoutCache = this.udpSocket.getSoTimeout();
-				packet = JMatcherClientUtil.receiveUDPPacket(this.udpSocket, this.receiveBuffSize);
+				packet = JMatcherClientUtil.receiveUDPPacket(this.udpSocket, this.leasing ? Math.max(this.receiveBuffSize, UDPResponseSerializer.MAX_LEASE_RESPONSE_SIZE) : this.receiveBuffSize);
 			}
 		} catch (SocketTimeoutException e) {
 			return;
 		}
+		if (this.leasing && JMatcherClientUtil.packetCameFrom(this.serverAddress, packet)) {
+			this.handleLeaseResponse(packet);
+			return;
+		}
 		this.log(Level.DEBUG, "communication thread : received message from ", packet.getSocketAddress()); //$NON-NLS-1$
 		final Host from = this.specifyHost(packet);
 		if (from == null) {
@@ -661,6 +1010,30 @@ public class ConnectionInviterPeer implements Peer {
 		}
 	}
 
+	/**
+	 * Take the requesting hosts which the server has answered to a renewal or
+	 * pushed, and send hole-punching messages to them at once
+	 */
+	private void handleLeaseResponse(final DatagramPacket packet) throws IOException {
+		final UDPResponse response = UDPResponseSerializer.getInstance().deserialize(ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength()));
+		if (!(response instanceof LeaseResponse)) {
+			return;
+		}
+		final LeaseResponse leaseResponse = (LeaseResponse) response;
+		if (leaseResponse.getKeyNumber() == null) {
+			this.log(Level.INFO, "communication thread : the lease has been lost"); //$NON-NLS-1$
+			this.leasing = false;
+			return;
+		}
+		if (this.connectingHosts.size() >= this.maxSizeOfConnectingHosts) {
+			this.log(Level.DEBUG, "communication thread : ignored requesting hosts because connecting hosts are full"); //$NON-NLS-1$
+			return;
+		}
+		for (Host newRequestingHost : this.addRequestingHosts(leaseResponse.getRequestingHosts())) {
+			this.sendHolePunchingMessage(newRequestingHost);
+		}
+	}
+
 	private void handleCancelMessage(final Host from) throws IOException {
 		this.log(Level.INFO, "communication thread : cancelling connection to ", from); //$NON-NLS-1$
 		boolean alreadyCancelled = true;
@@ -31,6 +31,7 @@ import org.apache.logging.log4j.Logger;
 import org.nognog.jmatcher.Host;
 import org.nognog.jmatcher.JMatcher;
 import org.nognog.jmatcher.SpecialHostAddress;
+import org.nognog.jmatcher.udp.UDPProtocol;
 import org.nognog.jmatcher.udp.request.ConnectionRequest;
 import org.nognog.jmatcher.udp.response.ConnectionResponse;
 
@@ -51,6 +52,7 @@ public class Connector {
 	private int internalNetworkPortTellerPort = JMatcher.PORT;
 	private int retryCount = defaultRetryCount;
 	private int receiveBuffSize = defaultBuffSize;
+	private UDPProtocol udpProtocol = UDPProtocol.BINARY;
 
 	private static final int defaultRetryCount = 2;
 	private static final int defaultBuffSize = JMatcherClientMessage.buffSizeToReceiveSerializedMessage;
@@ -173,6 +175,25 @@ public class Connector {
 		this.receiveBuffSize = Math.max(receiveBuffSize, JMatcherClientMessage.buffSizeToReceiveSerializedMessage);
 	}
 
+	/**
+	 * @return the protocol of the requests to the server
+	 */
+	public UDPProtocol getUDPProtocol() {
+		return this.udpProtocol;
+	}
+
+	/**
+	 * Set the protocol of the requests to the server. If
+	 * {@link UDPProtocol#BINARY} is set and the server doesn't answer, the
+	 * retries use {@link UDPProtocol#TEXT}.
+	 * 
+	 * @param udpProtocol
+	 *            the protocol to set
+	 */
+	public void setUDPProtocol(UDPProtocol udpProtocol) {
+		this.udpProtocol = udpProtocol;
+	}
+
 	@SuppressWarnings("static-method")
 	protected void setupUDPSocket(final DatagramSocket udpSocket) throws SocketException {
 		// overridden when configure the option of udp-socket
@@ -250,14 +271,20 @@ public class Connector {
 	}
 
 	private Host getTargetHostFromServer(int key, DatagramSocket socket) throws IOException {
+		UDPProtocol protocol = this.udpProtocol;
 		for (int i = 0; i < this.retryCount; i++) {
 			try {
-				JMatcherClientUtil.sendUDPRequest(socket, new ConnectionRequest(Integer.valueOf(key)), new InetSocketAddress(this.jmatcherServer, this.jmatcherServerPort));
+				JMatcherClientUtil.sendUDPRequest(socket, new ConnectionRequest(Integer.valueOf(key)), new InetSocketAddress(this.jmatcherServer, this.jmatcherServerPort), protocol);
 				this.log(Level.DEBUG, "sent connection request to ", this.jmatcherServer, ":", Integer.valueOf(this.jmatcherServerPort)); //$NON-NLS-1$ //$NON-NLS-2$
 				final ConnectionResponse response = (ConnectionResponse) JMatcherClientUtil.receiveUDPResponse(socket, this.receiveBuffSize);
 				this.log(Level.DEBUG, "received connection response"); //$NON-NLS-1$
 				return response.getHost();
-			} catch (SocketTimeoutException | ClassCastException | IllegalArgumentException | NullPointerException e) {
+			} catch (SocketTimeoutException e) {
+				// a server which doesn't understand the binary protocol doesn't
+				// answer
+				this.log(Level.DEBUG, "timed out while getting target host from server", e); //$NON-NLS-1$
+				protocol = UDPProtocol.TEXT;
+			} catch (ClassCastException | IllegalArgumentException | NullPointerException e) {
 				// failed
 				this.log(Level.DEBUG, "caught exception while getting target host from server", e); //$NON-NLS-1$
 			}
@@ -21,8 +21,10 @@ import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
 
 import org.nognog.jmatcher.Host;
+import org.nognog.jmatcher.udp.UDPProtocol;
 import org.nognog.jmatcher.udp.request.UDPRequest;
 import org.nognog.jmatcher.udp.request.UDPRequestSerializer;
 import org.nognog.jmatcher.udp.response.UDPResponse;
@@ -34,9 +36,14 @@ import org.nognog.jmatcher.udp.response.UDPResponseSerializer;
 @SuppressWarnings("javadoc")
 public class JMatcherClientUtil {
 
-	static void sendUDPRequest(DatagramSocket datagramSocket, UDPRequest request, SocketAddress address) throws IOException {
-		final String serializedRequest = UDPRequestSerializer.getInstance().serialize(request);
-		sendMessage(datagramSocket, serializedRequest, address);
+	static void sendUDPRequest(DatagramSocket datagramSocket, UDPRequest request, SocketAddress address, UDPProtocol protocol) throws IOException {
+		if (protocol == UDPProtocol.TEXT) {
+			sendMessage(datagramSocket, UDPRequestSerializer.getInstance().serialize(request), address);
+			return;
+		}
+		final ByteBuffer buffer = ByteBuffer.allocate(UDPRequestSerializer.BINARY_REQUEST_SIZE);
+		UDPRequestSerializer.getInstance().serialize(request, buffer);
+		datagramSocket.send(new DatagramPacket(buffer.array(), buffer.position(), address));
 	}
 
 	static void sendJMatcherClientMessage(DatagramSocket datagramSocket, JMatcherClientMessageType type, String senderName, Host host) throws IOException {
@@ -58,7 +65,8 @@ public class JMatcherClientUtil {
 	}
 
 	static UDPResponse receiveUDPResponse(DatagramSocket socket, int buffSize) throws IOException {
-		return UDPResponseSerializer.getInstance().deserialize(receiveMessage(socket, buffSize));
+		final DatagramPacket packet = receiveUDPPacket(socket, buffSize);
+		return UDPResponseSerializer.getInstance().deserialize(ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength()));
 	}
 
 	public static String receiveMessage(DatagramSocket socket, int buffSize) throws IOException {
@@ -29,12 +29,15 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.daemon.DaemonContext;
+import org.apache.commons.daemon.DaemonController;
 import org.apache.logging.log4j.LogManager;
 import org.junit.Test;
 import org.nognog.jmatcher.Host;
 import org.nognog.jmatcher.JMatcher;
 import org.nognog.jmatcher.client.Connector.ConnectorPeer;
 import org.nognog.jmatcher.server.JMatcherDaemon;
+import org.nognog.jmatcher.tcp.TCPProtocol;
 
 import mockit.Deencapsulation;
 import mockit.Mocked;
@@ -59,7 +62,27 @@ public class ConnectionInviterPeerTest {
 		daemon.init(null);
 		daemon.start();
 		try {
-			this.doTestStartInvitation(daemon, JMatcher.PORT - 1);
+			this.doTestStartInvitation(daemon, JMatcher.PORT - 1, TCPProtocol.BINARY);
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.nognog.jmatcher.client.ConnectionInviterPeer#startInvitation()}
+	 * with {@link TCPProtocol#OBJECT_STREAM}.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testStartInvitationWithObjectStream() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(null);
+		daemon.start();
+		try {
+			this.doTestStartInvitation(daemon, JMatcher.PORT - 1, TCPProtocol.OBJECT_STREAM);
 		} finally {
 			daemon.stop();
 			daemon.destroy();
@@ -68,14 +91,18 @@ public class ConnectionInviterPeerTest {
 
 	/**
 	 * @param daemon
+	 * @param portTellerPort
+	 * @param tcpProtocol
 	 * @throws IOException
 	 * @throws InterruptedException
 	 */
-	private void doTestStartInvitation(JMatcherDaemon daemon, int portTellerPort) throws IOException, InterruptedException {
+	private void doTestStartInvitation(JMatcherDaemon daemon, int portTellerPort, TCPProtocol tcpProtocol) throws IOException, InterruptedException {
 		final String wrongJmatcherHost = "rokalfost"; //$NON-NLS-1$
 		final int wrongPort = 80;
 		try (final ConnectionInviterPeer inviter = new ConnectionInviterPeer(null, wrongJmatcherHost, wrongPort)) {
 			inviter.setPortTellerPort(portTellerPort);
+			inviter.setTCPProtocol(tcpProtocol);
+			assertThat(inviter.getTCPProtocol(), is(tcpProtocol));
 			assertThat(inviter.getJmatcherServer(), is(wrongJmatcherHost));
 			assertThat(inviter.getConnectingHosts(), is(not(nullValue())));
 			assertThat(inviter.getConnectingHosts().size(), is(0));
@@ -101,37 +128,37 @@ public class ConnectionInviterPeerTest {
 			// ---- start invitation correctly ----
 			final Integer entryKey1 = inviter.startInvitation();
 			assertThat(entryKey1, is(not(nullValue())));
-			assertThat(daemon.getMatchingMap().keySet().contains(entryKey1), is(true));
-			assertThat(daemon.getMatchingMap().keySet().size(), is(1));
+			assertThat(daemon.getMatchingTable().containsKey(entryKey1.intValue()), is(true));
+			assertThat(daemon.getMatchingTable().size(), is(1));
 			// ---- start invitation in case it has already started ----
 			final Integer entryKey2 = inviter.startInvitation();
 			assertThat(entryKey2, is(nullValue()));
-			assertThat(daemon.getMatchingMap().keySet().contains(entryKey1), is(true));
-			assertThat(daemon.getMatchingMap().keySet().size(), is(1));
+			assertThat(daemon.getMatchingTable().containsKey(entryKey1.intValue()), is(true));
+			assertThat(daemon.getMatchingTable().size(), is(1));
 			// ---- stop invitation ----
 			inviter.stopInvitation();
 			Thread.sleep(500); // wait for end of TCPClientRequestHandler
-			assertThat(daemon.getMatchingMap().keySet().contains(entryKey1), is(false));
-			assertThat(daemon.getMatchingMap().keySet().size(), is(0));
+			assertThat(daemon.getMatchingTable().containsKey(entryKey1.intValue()), is(false));
+			assertThat(daemon.getMatchingTable().size(), is(0));
 			// ---- start invitation in case it still has connection in udp ----
 			final Integer entryKey3 = inviter.startInvitation();
 			assertThat(entryKey3, is(nullValue()));
-			assertThat(daemon.getMatchingMap().keySet().contains(entryKey1), is(false));
-			assertThat(daemon.getMatchingMap().keySet().size(), is(0));
+			assertThat(daemon.getMatchingTable().containsKey(entryKey1.intValue()), is(false));
+			assertThat(daemon.getMatchingTable().size(), is(0));
 
 			inviter.stopCommunication();
 			// ---- start invitation again after close all ----
 			final Integer entryKey4 = inviter.startInvitation();
 			assertThat(entryKey4, is(not(nullValue())));
-			assertThat(daemon.getMatchingMap().keySet().contains(entryKey4), is(true));
-			assertThat(daemon.getMatchingMap().keySet().size(), is(1));
+			assertThat(daemon.getMatchingTable().containsKey(entryKey4.intValue()), is(true));
+			assertThat(daemon.getMatchingTable().size(), is(1));
 
 			inviter.stopCommunication();
 			daemon.setMatchingMapCapacity(0);
 			// ---- start invitation in case the matching map is full ----
 			final Integer entryKey5 = inviter.startInvitation();
 			assertThat(entryKey5, is(nullValue()));
-			assertThat(daemon.getMatchingMap().size(), is(0));
+			assertThat(daemon.getMatchingTable().size(), is(0));
 			daemon.setMatchingMapCapacity(JMatcherDaemon.DEFAULT_MATCHING_MAP_CAPACITY);
 			// ---- start invitation after the matching map become not full ----
 			final Integer entryKey6 = inviter.startInvitation();
@@ -143,7 +170,7 @@ public class ConnectionInviterPeerTest {
 			assertThat(entryKey7, is(not(nullValue())));
 			inviter.stopCommunication();
 			Thread.sleep(500); // wait for end of TCPClientRequestHandler
-			assertThat(daemon.getMatchingMap().keySet().size(), is(0));
+			assertThat(daemon.getMatchingTable().size(), is(0));
 		}
 	}
 
@@ -163,6 +190,38 @@ public class ConnectionInviterPeerTest {
 		}
 	}
 
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public final void testInvitationWithLease() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		// the daemon doesn't lease keys by default
+		daemon.init(new TestDaemonContext(JMatcherDaemon.LEASE_TIME_ARGUMENT + "=30000")); //$NON-NLS-1$
+		daemon.start();
+		final String jmatcherHost = "localhost"; //$NON-NLS-1$
+		try (ConnectionInviterPeer connectionInviter = new ConnectionInviterPeer(null, jmatcherHost)) {
+			connectionInviter.setPortTellerPort(JMatcher.PORT - 1);
+			connectionInviter.setUsingLease(true);
+			final Integer entryKey = connectionInviter.startInvitation();
+			assertThat(entryKey, is(not(nullValue())));
+			assertThat(connectionInviter.isInviting(), is(true));
+			assertThat(daemon.getMetrics().getGrantedLeaseCount(), is(1L));
+			final int numberOfParallelConnectionClient = 10;
+			this.testConnect(jmatcherHost, JMatcher.PORT - 1, entryKey, numberOfParallelConnectionClient, numberOfParallelConnectionClient);
+			assertThat(connectionInviter.getConnectingHosts().size(), is(numberOfParallelConnectionClient));
+			assertThat(daemon.getMatchingTable().size(), is(1));
+			connectionInviter.stopInvitation();
+			assertThat(connectionInviter.isInviting(), is(false));
+			Thread.sleep(500); // wait for the release to arrive
+			assertThat(daemon.getMatchingTable().size(), is(0));
+			assertThat(connectionInviter.getConnectingHosts().size(), is(numberOfParallelConnectionClient));
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
 	/**
 	 * @param daemon
 	 * @throws IOException
@@ -182,7 +241,7 @@ public class ConnectionInviterPeerTest {
 			assertThat(connectionInviter.getConnectingHosts().size(), is(numberOfParallelConnectionClient));
 			this.testConnect(jmatcherHost, portTellerPort, entryKey, 1, 1);
 			assertThat(connectionInviter.getConnectingHosts().size(), is(numberOfParallelConnectionClient + 1));
-			assertThat(daemon.getMatchingMap().size(), is(1));
+			assertThat(daemon.getMatchingTable().size(), is(1));
 			connectionInviter.stopInvitation();
 			assertThat(connectionInviter.getConnectingHosts().size(), is(numberOfParallelConnectionClient + 1));
 			connectionInviter.stopCommunication();
@@ -193,7 +252,7 @@ public class ConnectionInviterPeerTest {
 			} catch (InterruptedException e) {
 				// nothing
 			}
-			assertThat(daemon.getMatchingMap().size(), is(0));
+			assertThat(daemon.getMatchingTable().size(), is(0));
 		}
 	}
 
@@ -526,4 +585,22 @@ public class ConnectionInviterPeerTest {
 			}
 		}
 	}
+
+	private static class TestDaemonContext implements DaemonContext {
+		private final String[] arguments;
+
+		TestDaemonContext(String... arguments) {
+			this.arguments = arguments;
+		}
+
+		@Override
+		public DaemonController getController() {
+			return null;
+		}
+
+		@Override
+		public String[] getArguments() {
+			return this.arguments;
+		}
+	}
 }
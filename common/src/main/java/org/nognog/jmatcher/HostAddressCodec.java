@@ -0,0 +1,86 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Conversion between the textual addresses of {@link Host} and their binary
+ * form, which is shared by the binary protocols of TCP and UDP
+ * 
+ * @author agent 2026/10/17
+ */
+public final class HostAddressCodec {
+
+	private HostAddressCodec() {
+	}
+
+	/**
+	 * Put the address as 4 bytes if it is a dotted IPv4 literal (e.g. the
+	 * result of {@link java.net.InetAddress#getHostAddress()}). Nothing is put
+	 * otherwise.
+	 * 
+	 * @param buffer
+	 * @param address
+	 * @return true if the address has been put
+	 */
+	public static boolean putIPv4Address(ByteBuffer buffer, String address) {
+		if (address == null) {
+			return false;
+		}
+		final int length = address.length();
+		if (length < 7 || length > 15) {
+			return false;
+		}
+		int packed = 0;
+		int octet = -1;
+		int numberOfOctets = 0;
+		for (int i = 0; i <= length; i++) {
+			final char c = (i == length) ? '.' : address.charAt(i);
+			if (c == '.') {
+				if (octet < 0 || numberOfOctets == 4) {
+					return false;
+				}
+				packed = (packed << 8) | octet;
+				numberOfOctets++;
+				octet = -1;
+			} else if (c >= '0' && c <= '9') {
+				if (octet == 0) {
+					// a leading zero wouldn't be restored
+					return false;
+				}
+				octet = (octet < 0) ? (c - '0') : octet * 10 + (c - '0');
+				if (octet > 255) {
+					return false;
+				}
+			} else {
+				return false;
+			}
+		}
+		if (numberOfOctets != 4) {
+			return false;
+		}
+		buffer.putInt(packed);
+		return true;
+	}
+
+	/**
+	 * @param buffer
+	 * @return the dotted IPv4 literal of the next 4 bytes
+	 */
+	public static String getIPv4Address(ByteBuffer buffer) {
+		return new StringBuilder(15).append(buffer.get() & 0xFF).append('.').append(buffer.get() & 0xFF).append('.').append(buffer.get() & 0xFF).append('.').append(buffer.get() & 0xFF).toString();
+	}
+}
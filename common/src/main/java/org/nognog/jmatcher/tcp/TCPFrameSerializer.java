@@ -0,0 +1,483 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.tcp;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.nognog.jmatcher.Host;
+import org.nognog.jmatcher.HostAddressCodec;
+import org.nognog.jmatcher.tcp.request.PlainTCPRequest;
+import org.nognog.jmatcher.tcp.request.ReattachRequest;
+import org.nognog.jmatcher.tcp.request.TCPRequest;
+import org.nognog.jmatcher.tcp.response.CheckConnectionResponse;
+import org.nognog.jmatcher.tcp.response.PlainTCPResponse;
+import org.nognog.jmatcher.tcp.response.PreEntryResponse;
+import org.nognog.jmatcher.tcp.response.TCPResponse;
+
+/**
+ * Serializer of {@link TCPProtocol#BINARY}. Each side starts the channel with
+ * a preamble of 4 bytes ('J', 'M', version, 0), which can't be mistaken for
+ * the stream header of {@link java.io.ObjectOutputStream} (0xACED). The
+ * server answers with the version it is going to use. After the preambles,
+ * every request and response is a frame of
+ * 
+ * <pre>
+ * length (u16, size of the rest) | type (u8) | payload
+ * </pre>
+ * 
+ * and hosts in a payload are written as
+ * 
+ * <pre>
+ * kind (u8) | address (4 bytes of IPv4, or u8 length + UTF-8) | port (u16) | [name (u8 length + UTF-8)]
+ * </pre>
+ * 
+ * where the highest bit of kind tells whether the name follows.
+ * <p>
+ * From {@link #PUSH_VERSION}, the server doesn't wait to be asked: it sends a
+ * {@link CheckConnectionResponse} down the entry channel as soon as hosts
+ * request connection to the entry, so the inviter stops sending
+ * {@link PlainTCPRequest#CHECK_CONNECTION_REQUEST}.
+ * </p>
+ * <p>
+ * From {@link #HEARTBEAT_VERSION}, the inviter keeps sending
+ * {@link PlainTCPRequest#CHECK_CONNECTION_REQUEST} as a heartbeat however the
+ * requesting hosts are told, so the server may close an entry channel which
+ * has been idle for long.
+ * </p>
+ * 
+ * @author agent 2026/10/17
+ */
+public class TCPFrameSerializer {
+	/**
+	 * the newest version of the binary protocol
+	 */
+	public static final int VERSION = 3;
+
+	/**
+	 * the first version in which the server pushes the requesting hosts
+	 */
+	public static final int PUSH_VERSION = 2;
+
+	/**
+	 * the first version in which the inviter sends heartbeats on its entry
+	 * channel
+	 */
+	public static final int HEARTBEAT_VERSION = 3;
+
+	/**
+	 * size of the preamble
+	 */
+	public static final int PREAMBLE_SIZE = 4;
+
+	/**
+	 * size of the length field of a frame
+	 */
+	public static final int LENGTH_FIELD_SIZE = 2;
+
+	/**
+	 * the maximum size of a frame, including its length field
+	 */
+	public static final int MAX_FRAME_SIZE = LENGTH_FIELD_SIZE + 0xFFFF;
+
+	private static final byte firstMagicByte = 'J';
+	private static final byte secondMagicByte = 'M';
+
+	private static final byte entryRequestType = 0x01;
+	private static final byte checkConnectionRequestType = 0x02;
+	private static final byte reattachRequestType = 0x03;
+	private static final byte preEntryResponseType = (byte) 0x81;
+	private static final byte completeEntryResponseType = (byte) 0x82;
+	private static final byte failureResponseType = (byte) 0x83;
+	private static final byte checkConnectionResponseType = (byte) 0x84;
+
+	private static final int ipv4AddressKind = 4;
+	private static final int textAddressKind = 1;
+	private static final int hasNameFlag = 0x80;
+	private static final int maxTextLength = 0xFF;
+
+	private static final Charset utf8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+	private static final TCPFrameSerializer instance = new TCPFrameSerializer();
+
+	private TCPFrameSerializer() {
+	}
+
+	/**
+	 * @return instance
+	 */
+	public static TCPFrameSerializer getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @param firstByte
+	 * @param secondByte
+	 * @return true if they are the first two bytes of a preamble
+	 */
+	public static boolean isPreamble(int firstByte, int secondByte) {
+		return (byte) firstByte == firstMagicByte && (byte) secondByte == secondMagicByte;
+	}
+
+	/**
+	 * @param version
+	 * @return the preamble of the version
+	 */
+	public static byte[] createPreamble(int version) {
+		return new byte[] { firstMagicByte, secondMagicByte, (byte) version, 0 };
+	}
+
+	/**
+	 * @param buffer
+	 * @return version which is written in the preamble, or -1 if the buffer
+	 *         doesn't contain a whole preamble. The position of the buffer is
+	 *         advanced only if the preamble is read.
+	 * @throws ProtocolException
+	 *             thrown if the buffer doesn't start with a preamble
+	 */
+	public static int readPreamble(ByteBuffer buffer) throws ProtocolException {
+		if (buffer.remaining() < PREAMBLE_SIZE) {
+			return -1;
+		}
+		final int position = buffer.position();
+		if (!isPreamble(buffer.get(position), buffer.get(position + 1))) {
+			throw new ProtocolException("invalid preamble"); //$NON-NLS-1$
+		}
+		final int version = buffer.get(position + 2) & 0xFF;
+		buffer.position(position + PREAMBLE_SIZE);
+		return version;
+	}
+
+	/**
+	 * @param in
+	 * @return version which is written in the preamble
+	 * @throws IOException
+	 *             thrown if an I/O error occurs or the preamble is invalid
+	 */
+	public static int readPreamble(DataInputStream in) throws IOException {
+		final byte[] preamble = new byte[PREAMBLE_SIZE];
+		in.readFully(preamble);
+		return readPreamble(ByteBuffer.wrap(preamble));
+	}
+
+	/**
+	 * @param request
+	 * @param buffer
+	 *            buffer which the frame is put into
+	 * @throws BufferOverflowException
+	 *             thrown if the buffer doesn't have enough space
+	 */
+	@SuppressWarnings("static-method")
+	public void serialize(TCPRequest request, ByteBuffer buffer) {
+		final int lengthPosition = beginFrame(buffer);
+		if (request == PlainTCPRequest.ENTRY) {
+			buffer.put(entryRequestType);
+		} else if (request == PlainTCPRequest.CHECK_CONNECTION_REQUEST) {
+			buffer.put(checkConnectionRequestType);
+		} else if (request instanceof ReattachRequest) {
+			buffer.put(reattachRequestType);
+			buffer.putInt(((ReattachRequest) request).getKeyNumber());
+		} else {
+			throw new IllegalArgumentException("unsupported request : " + request); //$NON-NLS-1$
+		}
+		endFrame(buffer, lengthPosition);
+	}
+
+	/**
+	 * @param response
+	 * @param buffer
+	 *            buffer which the frame is put into
+	 * @throws BufferOverflowException
+	 *             thrown if the buffer doesn't have enough space
+	 */
+	@SuppressWarnings("static-method")
+	public void serialize(TCPResponse response, ByteBuffer buffer) {
+		final int lengthPosition = beginFrame(buffer);
+		if (response == PlainTCPResponse.COMPLETE_ENTRY) {
+			buffer.put(completeEntryResponseType);
+		} else if (response == PlainTCPResponse.FAILURE) {
+			buffer.put(failureResponseType);
+		} else if (response instanceof PreEntryResponse) {
+			final Integer keyNumber = ((PreEntryResponse) response).getKeyNumber();
+			if (keyNumber == null) {
+				buffer.put(failureResponseType);
+			} else {
+				buffer.put(preEntryResponseType);
+				buffer.putInt(keyNumber.intValue());
+			}
+		} else if (response instanceof CheckConnectionResponse) {
+			buffer.put(checkConnectionResponseType);
+			final Host[] hosts = ((CheckConnectionResponse) response).getRequestingHosts();
+			if (hosts == null) {
+				buffer.putShort((short) 0);
+			} else {
+				if (hosts.length > 0xFFFF) {
+					throw new IllegalArgumentException("too many hosts : " + hosts.length); //$NON-NLS-1$
+				}
+				buffer.putShort((short) hosts.length);
+				for (Host host : hosts) {
+					putHost(buffer, host);
+				}
+			}
+		} else {
+			throw new IllegalArgumentException("unsupported response : " + response); //$NON-NLS-1$
+		}
+		endFrame(buffer, lengthPosition);
+	}
+
+	/**
+	 * @param response
+	 * @return a buffer which contains just the frame of the response, ready to
+	 *         be written
+	 */
+	public ByteBuffer serialize(TCPResponse response) {
+		int capacity = 64;
+		while (true) {
+			final ByteBuffer buffer = ByteBuffer.allocate(capacity);
+			try {
+				this.serialize(response, buffer);
+				buffer.flip();
+				return buffer;
+			} catch (BufferOverflowException e) {
+				if (capacity >= MAX_FRAME_SIZE) {
+					throw new IllegalArgumentException("too large response"); //$NON-NLS-1$
+				}
+				capacity = Math.min(capacity * 4, MAX_FRAME_SIZE);
+			}
+		}
+	}
+
+	/**
+	 * @param out
+	 * @param request
+	 * @throws IOException
+	 */
+	public void write(OutputStream out, TCPRequest request) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(LENGTH_FIELD_SIZE + 1 + 4);
+		this.serialize(request, buffer);
+		out.write(buffer.array(), 0, buffer.position());
+		out.flush();
+	}
+
+	/**
+	 * @param out
+	 * @param response
+	 * @throws IOException
+	 */
+	public void write(OutputStream out, TCPResponse response) throws IOException {
+		final ByteBuffer buffer = this.serialize(response);
+		out.write(buffer.array(), 0, buffer.limit());
+		out.flush();
+	}
+
+	/**
+	 * @param buffer
+	 * @return the request of the first frame in the buffer, or null if the
+	 *         buffer doesn't contain a whole frame yet. The position of the
+	 *         buffer is advanced only if a request is returned.
+	 * @throws ProtocolException
+	 *             thrown if the frame isn't a valid request
+	 */
+	@SuppressWarnings("static-method")
+	public TCPRequest deserializeRequest(ByteBuffer buffer) throws ProtocolException {
+		final ByteBuffer frame = sliceFrame(buffer);
+		if (frame == null) {
+			return null;
+		}
+		final byte type = frame.get();
+		final TCPRequest request;
+		if (type == entryRequestType) {
+			request = PlainTCPRequest.ENTRY;
+		} else if (type == checkConnectionRequestType) {
+			request = PlainTCPRequest.CHECK_CONNECTION_REQUEST;
+		} else if (type == reattachRequestType) {
+			if (frame.remaining() < 4) {
+				throw new ProtocolException("truncated request"); //$NON-NLS-1$
+			}
+			request = new ReattachRequest(frame.getInt());
+		} else {
+			throw new ProtocolException("unknown request type : " + type); //$NON-NLS-1$
+		}
+		// a newer version may append fields, which are ignored
+		buffer.position(buffer.position() + LENGTH_FIELD_SIZE + frame.limit());
+		return request;
+	}
+
+	/**
+	 * @param buffer
+	 * @return the response of the first frame in the buffer, or null if the
+	 *         buffer doesn't contain a whole frame yet. The position of the
+	 *         buffer is advanced only if a response is returned.
+	 * @throws ProtocolException
+	 *             thrown if the frame isn't a valid response
+	 */
+	@SuppressWarnings("static-method")
+	public TCPResponse deserializeResponse(ByteBuffer buffer) throws ProtocolException {
+		final ByteBuffer frame = sliceFrame(buffer);
+		if (frame == null) {
+			return null;
+		}
+		final TCPResponse response;
+		try {
+			response = readResponse(frame);
+		} catch (BufferUnderflowException e) {
+			throw new ProtocolException("truncated response"); //$NON-NLS-1$
+		}
+		buffer.position(buffer.position() + LENGTH_FIELD_SIZE + frame.limit());
+		return response;
+	}
+
+	/**
+	 * @param in
+	 * @return the request of the next frame
+	 * @throws IOException
+	 *             thrown if an I/O error occurs or the frame is invalid
+	 */
+	public TCPRequest readRequest(DataInputStream in) throws IOException {
+		return this.deserializeRequest(readFrame(in));
+	}
+
+	/**
+	 * @param in
+	 * @return the response of the next frame
+	 * @throws IOException
+	 *             thrown if an I/O error occurs or the frame is invalid
+	 */
+	public TCPResponse readResponse(DataInputStream in) throws IOException {
+		return this.deserializeResponse(readFrame(in));
+	}
+
+	private static ByteBuffer readFrame(DataInputStream in) throws IOException {
+		final int length = in.readUnsignedShort();
+		final byte[] frame = new byte[LENGTH_FIELD_SIZE + length];
+		frame[0] = (byte) (length >>> 8);
+		frame[1] = (byte) length;
+		in.readFully(frame, LENGTH_FIELD_SIZE, length);
+		return ByteBuffer.wrap(frame);
+	}
+
+	private static int beginFrame(ByteBuffer buffer) {
+		final int lengthPosition = buffer.position();
+		buffer.putShort((short) 0);
+		return lengthPosition;
+	}
+
+	private static void endFrame(ByteBuffer buffer, int lengthPosition) {
+		final int length = buffer.position() - lengthPosition - LENGTH_FIELD_SIZE;
+		if (length > 0xFFFF) {
+			throw new IllegalArgumentException("too large frame"); //$NON-NLS-1$
+		}
+		buffer.putShort(lengthPosition, (short) length);
+	}
+
+	/**
+	 * @return the body of the first frame, or null if it is incomplete
+	 */
+	private static ByteBuffer sliceFrame(ByteBuffer buffer) throws ProtocolException {
+		if (buffer.remaining() < LENGTH_FIELD_SIZE) {
+			return null;
+		}
+		final int length = buffer.getShort(buffer.position()) & 0xFFFF;
+		if (length == 0) {
+			throw new ProtocolException("empty frame"); //$NON-NLS-1$
+		}
+		if (buffer.remaining() < LENGTH_FIELD_SIZE + length) {
+			return null;
+		}
+		final ByteBuffer frame = buffer.duplicate();
+		frame.position(buffer.position() + LENGTH_FIELD_SIZE);
+		frame.limit(frame.position() + length);
+		return frame.slice();
+	}
+
+	private static TCPResponse readResponse(ByteBuffer frame) throws ProtocolException {
+		final byte type = frame.get();
+		switch (type) {
+		case completeEntryResponseType:
+			return PlainTCPResponse.COMPLETE_ENTRY;
+		case failureResponseType:
+			return PlainTCPResponse.FAILURE;
+		case preEntryResponseType:
+			return new PreEntryResponse(Integer.valueOf(frame.getInt()));
+		case checkConnectionResponseType:
+			final int numberOfHosts = frame.getShort() & 0xFFFF;
+			if (numberOfHosts == 0) {
+				return new CheckConnectionResponse(null);
+			}
+			final Host[] hosts = new Host[numberOfHosts];
+			for (int i = 0; i < numberOfHosts; i++) {
+				hosts[i] = getHost(frame);
+			}
+			return new CheckConnectionResponse(hosts);
+		default:
+			throw new ProtocolException("unknown response type : " + type); //$NON-NLS-1$
+		}
+	}
+
+	private static void putHost(ByteBuffer buffer, Host host) {
+		final int kindPosition = buffer.position();
+		buffer.put((byte) 0);
+		int kind;
+		if (HostAddressCodec.putIPv4Address(buffer, host.getAddress())) {
+			kind = ipv4AddressKind;
+		} else {
+			kind = textAddressKind;
+			putText(buffer, host.getAddress());
+		}
+		buffer.putShort((short) host.getPort());
+		if (host.getName() != null) {
+			kind |= hasNameFlag;
+			putText(buffer, host.getName());
+		}
+		buffer.put(kindPosition, (byte) kind);
+	}
+
+	private static Host getHost(ByteBuffer frame) throws ProtocolException {
+		final int kind = frame.get() & 0xFF;
+		final String address;
+		if ((kind & ~hasNameFlag) == ipv4AddressKind) {
+			address = HostAddressCodec.getIPv4Address(frame);
+		} else if ((kind & ~hasNameFlag) == textAddressKind) {
+			address = getText(frame);
+		} else {
+			throw new ProtocolException("unknown address kind : " + kind); //$NON-NLS-1$
+		}
+		final int port = frame.getShort() & 0xFFFF;
+		final String name = ((kind & hasNameFlag) != 0) ? getText(frame) : null;
+		return new Host(address, port, name);
+	}
+
+	private static void putText(ByteBuffer buffer, String text) {
+		final byte[] bytes = (text == null) ? new byte[0] : text.getBytes(utf8);
+		if (bytes.length > maxTextLength) {
+			throw new IllegalArgumentException("too long text : " + text); //$NON-NLS-1$
+		}
+		buffer.put((byte) bytes.length);
+		buffer.put(bytes);
+	}
+
+	private static String getText(ByteBuffer frame) {
+		final int length = frame.get() & 0xFF;
+		final byte[] bytes = new byte[length];
+		frame.get(bytes);
+		return new String(bytes, utf8);
+	}
+}
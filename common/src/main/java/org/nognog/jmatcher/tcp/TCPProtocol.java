@@ -0,0 +1,35 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.tcp;
+
+/**
+ * Formats of the entry channel between an inviter and jmatcher-server
+ * 
+ * @author agent 2026/10/17
+ */
+public enum TCPProtocol {
+	/**
+	 * requests and responses are written with
+	 * {@link java.io.ObjectOutputStream}. It is the legacy format, which is
+	 * understood by every server.
+	 */
+	OBJECT_STREAM,
+
+	/**
+	 * requests and responses are written as length-prefixed binary frames of
+	 * {@link TCPFrameSerializer}
+	 */
+	BINARY,
+}
@@ -0,0 +1,67 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.tcp.request;
+
+/**
+ * A request of an inviter which has lost its entry channel, e.g. because the
+ * server has restarted, to get the key which it had been given again. The
+ * server answers with a
+ * {@link org.nognog.jmatcher.tcp.response.PreEntryResponse} of the key if it
+ * has kept the key for the inviter, and the entry is enabled as a new one
+ * after that.
+ * 
+ * @author agent 2026/10/17
+ */
+public class ReattachRequest implements TCPRequest {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1693734017585231410L;
+	private int keyNumber;
+
+	/**
+	 * @param keyNumber
+	 *            the key which the inviter had been given
+	 */
+	public ReattachRequest(int keyNumber) {
+		this.keyNumber = keyNumber;
+	}
+
+	/**
+	 * @return the keyNumber
+	 */
+	public int getKeyNumber() {
+		return this.keyNumber;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ReattachRequest)) {
+			return false;
+		}
+		return this.keyNumber == ((ReattachRequest) obj).keyNumber;
+	}
+
+	@Override
+	public int hashCode() {
+		return this.keyNumber;
+	}
+
+	@Override
+	public String toString() {
+		return "ReattachRequest(" + this.keyNumber + ")"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
@@ -0,0 +1,76 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.udp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Formats of the UDP requests and responses between peers and jmatcher-server.
+ * A binary datagram starts with {@link #BINARY_MAGIC} and a version byte,
+ * which can't be mistaken for the first character of a text one. The server
+ * answers a request in the format of the request.
+ * 
+ * @author agent 2026/10/17
+ */
+public enum UDPProtocol {
+	/**
+	 * the legacy format of decimal strings, which is understood by every
+	 * server
+	 */
+	TEXT,
+
+	/**
+	 * the fixed-layout format of
+	 * {@link org.nognog.jmatcher.udp.request.UDPRequestSerializer} and
+	 * {@link org.nognog.jmatcher.udp.response.UDPResponseSerializer}
+	 */
+	BINARY;
+
+	/**
+	 * the first byte of a binary datagram
+	 */
+	public static final byte BINARY_MAGIC = (byte) 0xA5;
+
+	/**
+	 * the newest version of the binary format. A newer version only appends
+	 * fields, so a decoder accepts any version.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * size of the magic and the version
+	 */
+	public static final int BINARY_HEADER_SIZE = 2;
+
+	/**
+	 * @param datagram
+	 *            from its position to its limit
+	 * @return the format of the datagram
+	 */
+	public static UDPProtocol of(ByteBuffer datagram) {
+		if (datagram.remaining() >= BINARY_HEADER_SIZE && datagram.get(datagram.position()) == BINARY_MAGIC) {
+			return BINARY;
+		}
+		return TEXT;
+	}
+
+	/**
+	 * @param buffer
+	 */
+	public static void putBinaryHeader(ByteBuffer buffer) {
+		buffer.put(BINARY_MAGIC);
+		buffer.put((byte) VERSION);
+	}
+}
@@ -0,0 +1,46 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+
+package org.nognog.jmatcher.udp.request;
+
+/**
+ * A request of an inviter for a new key, which is leased to the UDP endpoint
+ * of the request without the entry channel of TCP. The key number of the
+ * request is always 0. It is written only in
+ * {@link org.nognog.jmatcher.udp.UDPProtocol#BINARY}.
+ * 
+ * @author agent 2026/10/17
+ */
+public class LeaseRequest implements UDPRequest {
+
+	private Integer keyNumber;
+
+	/**
+	 * 
+	 */
+	public LeaseRequest() {
+		this.keyNumber = Integer.valueOf(0);
+	}
+
+	@Override
+	public Integer getKeyNumber() {
+		return this.keyNumber;
+	}
+
+	@Override
+	public void setKeyNumber(Integer keyNumber) {
+		this.keyNumber = keyNumber;
+	}
+}
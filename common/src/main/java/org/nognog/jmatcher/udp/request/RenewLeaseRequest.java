@@ -0,0 +1,48 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+
+package org.nognog.jmatcher.udp.request;
+
+/**
+ * A heartbeat of an inviter which renews the lease of its key. It is answered
+ * with the hosts which are requesting connection to the entry, or with a
+ * refusal if the lease has been lost. An inviter whose entry has been restored
+ * after a restart of the server also re-attaches with it. It is written only
+ * in {@link org.nognog.jmatcher.udp.UDPProtocol#BINARY}.
+ * 
+ * @author agent 2026/10/17
+ */
+public class RenewLeaseRequest implements UDPRequest {
+
+	private Integer keyNumber;
+
+	/**
+	 * @param keyNumber
+	 *            the leased key
+	 */
+	public RenewLeaseRequest(Integer keyNumber) {
+		this.keyNumber = keyNumber;
+	}
+
+	@Override
+	public Integer getKeyNumber() {
+		return this.keyNumber;
+	}
+
+	@Override
+	public void setKeyNumber(Integer keyNumber) {
+		this.keyNumber = keyNumber;
+	}
+}
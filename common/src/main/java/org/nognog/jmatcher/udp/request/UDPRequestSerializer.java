@@ -14,21 +14,76 @@
 
 package org.nognog.jmatcher.udp.request;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.nognog.jmatcher.udp.UDPProtocol;
+
 /**
+ * A request is written either as a decimal string (the digit of its type and
+ * its key number) or, in {@link UDPProtocol#BINARY}, as
+ * 
+ * <pre>
+ * magic (0xA5) | version (u8) | type (u8) | key number (s32)
+ * </pre>
+ * 
+ * The ByteBuffer methods read both formats without creating any object. The
+ * requests of a lease ({@link LeaseRequest}, {@link RenewLeaseRequest} and
+ * {@link ReleaseLeaseRequest}) are written only in {@link UDPProtocol#BINARY},
+ * because their response doesn't have a text format.
+ * 
  * @author goshi 2015/12/23
  */
 public class UDPRequestSerializer {
+	/**
+	 * type of {@link ConnectionRequest}
+	 */
+	public static final int CONNECTION_REQUEST = 0;
+
+	/**
+	 * type of {@link EnableEntryRequest}
+	 */
+	public static final int ENABLE_ENTRY_REQUEST = 1;
+
+	/**
+	 * type of {@link LeaseRequest}
+	 */
+	public static final int LEASE_REQUEST = 2;
+
+	/**
+	 * type of {@link RenewLeaseRequest}
+	 */
+	public static final int RENEW_LEASE_REQUEST = 3;
+
+	/**
+	 * type of {@link ReleaseLeaseRequest}
+	 */
+	public static final int RELEASE_LEASE_REQUEST = 4;
+
+	/**
+	 * returned by {@link #readRequestType(ByteBuffer)} for an invalid request
+	 */
+	public static final int INVALID_REQUEST = -1;
+
+	/**
+	 * size of a request in {@link UDPProtocol#BINARY}
+	 */
+	public static final int BINARY_REQUEST_SIZE = UDPProtocol.BINARY_HEADER_SIZE + 1 + 4;
+
+	private static final int maxNumberOfKeyDigits = 10;
+
 	private static final UDPRequestSerializer instance = new UDPRequestSerializer();
 
 	private final Map<Class<?>, Integer> classToNumber;
 
 	private UDPRequestSerializer() {
 		this.classToNumber = new HashMap<>();
-		this.classToNumber.put(ConnectionRequest.class, Integer.valueOf(0));
-		this.classToNumber.put(EnableEntryRequest.class, Integer.valueOf(1));
+		this.classToNumber.put(ConnectionRequest.class, Integer.valueOf(CONNECTION_REQUEST));
+		this.classToNumber.put(EnableEntryRequest.class, Integer.valueOf(ENABLE_ENTRY_REQUEST));
+		this.classToNumber.put(LeaseRequest.class, Integer.valueOf(LEASE_REQUEST));
+		this.classToNumber.put(RenewLeaseRequest.class, Integer.valueOf(RENEW_LEASE_REQUEST));
+		this.classToNumber.put(ReleaseLeaseRequest.class, Integer.valueOf(RELEASE_LEASE_REQUEST));
 	}
 
 	/**
@@ -40,11 +95,11 @@ public class UDPRequestSerializer {
 
 	/**
 	 * @param udpRequest
-	 * @return serialized udpRequest
+	 * @return serialized udpRequest, or null if it can't be written as text
 	 */
 	public String serialize(UDPRequest udpRequest) {
 		final Integer classNumber = this.classToNumber.get(udpRequest.getClass());
-		if (classNumber == null) {
+		if (classNumber == null || classNumber.intValue() > ENABLE_ENTRY_REQUEST) {
 			return null;
 		}
 		final StringBuilder sb = new StringBuilder();
@@ -73,4 +128,112 @@ public class UDPRequestSerializer {
 		return null;
 	}
 
+	/**
+	 * Put the request in {@link UDPProtocol#BINARY}
+	 * 
+	 * @param udpRequest
+	 * @param buffer
+	 * @throws java.nio.BufferOverflowException
+	 *             thrown if the buffer has less than
+	 *             {@link #BINARY_REQUEST_SIZE} bytes remaining
+	 */
+	public void serialize(UDPRequest udpRequest, ByteBuffer buffer) {
+		final Integer classNumber = this.classToNumber.get(udpRequest.getClass());
+		if (classNumber == null) {
+			throw new IllegalArgumentException("unsupported request : " + udpRequest); //$NON-NLS-1$
+		}
+		UDPProtocol.putBinaryHeader(buffer);
+		buffer.put(classNumber.byteValue());
+		buffer.putInt(udpRequest.getKeyNumber().intValue());
+	}
+
+	/**
+	 * @param datagram
+	 *            from its position to its limit, which is written in either
+	 *            format
+	 * @return deserialized udpRequest, or null if it is invalid
+	 */
+	@SuppressWarnings("static-method")
+	public UDPRequest deserialize(ByteBuffer datagram) {
+		final int type = readRequestType(datagram);
+		if (type == CONNECTION_REQUEST) {
+			return new ConnectionRequest(Integer.valueOf(readKeyNumber(datagram)));
+		}
+		if (type == ENABLE_ENTRY_REQUEST) {
+			return new EnableEntryRequest(Integer.valueOf(readKeyNumber(datagram)));
+		}
+		if (type == LEASE_REQUEST) {
+			return new LeaseRequest();
+		}
+		if (type == RENEW_LEASE_REQUEST) {
+			return new RenewLeaseRequest(Integer.valueOf(readKeyNumber(datagram)));
+		}
+		if (type == RELEASE_LEASE_REQUEST) {
+			return new ReleaseLeaseRequest(Integer.valueOf(readKeyNumber(datagram)));
+		}
+		return null;
+	}
+
+	/**
+	 * It doesn't change the position of the datagram.
+	 * 
+	 * @param datagram
+	 *            from its position to its limit, which is written in either
+	 *            format
+	 * @return the type of the request, or {@link #INVALID_REQUEST} if the
+	 *         type or the key number is invalid
+	 */
+	public static int readRequestType(ByteBuffer datagram) {
+		if (readKeyNumber(datagram) < 0) {
+			return INVALID_REQUEST;
+		}
+		final int position = datagram.position();
+		if (UDPProtocol.of(datagram) == UDPProtocol.BINARY) {
+			final int type = datagram.get(position + UDPProtocol.BINARY_HEADER_SIZE);
+			if (type >= CONNECTION_REQUEST && type <= RELEASE_LEASE_REQUEST) {
+				return type;
+			}
+			return INVALID_REQUEST;
+		}
+		final int type = datagram.get(position) - '0';
+		if (type == CONNECTION_REQUEST || type == ENABLE_ENTRY_REQUEST) {
+			return type;
+		}
+		return INVALID_REQUEST;
+	}
+
+	/**
+	 * It doesn't change the position of the datagram.
+	 * 
+	 * @param datagram
+	 *            from its position to its limit, which is written in either
+	 *            format
+	 * @return the key number, or -1 if it is invalid
+	 */
+	public static int readKeyNumber(ByteBuffer datagram) {
+		final int position = datagram.position();
+		if (UDPProtocol.of(datagram) == UDPProtocol.BINARY) {
+			// a newer version may append fields
+			if (datagram.remaining() < BINARY_REQUEST_SIZE) {
+				return -1;
+			}
+			return Math.max(-1, datagram.getInt(position + UDPProtocol.BINARY_HEADER_SIZE + 1));
+		}
+		final int numberOfDigits = datagram.remaining() - 1;
+		if (numberOfDigits < 1 || numberOfDigits > maxNumberOfKeyDigits) {
+			return -1;
+		}
+		long keyNumber = 0;
+		for (int i = 1; i <= numberOfDigits; i++) {
+			final int digit = datagram.get(position + i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			keyNumber = keyNumber * 10 + digit;
+		}
+		if (keyNumber > Integer.MAX_VALUE) {
+			return -1;
+		}
+		return (int) keyNumber;
+	}
 }
@@ -0,0 +1,69 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+
+package org.nognog.jmatcher.udp.response;
+
+import org.nognog.jmatcher.Host;
+
+/**
+ * The answer to a {@link org.nognog.jmatcher.udp.request.LeaseRequest} or a
+ * {@link org.nognog.jmatcher.udp.request.RenewLeaseRequest}, which is also
+ * pushed to the inviter when hosts request connection to its entry. It is
+ * written only in {@link org.nognog.jmatcher.udp.UDPProtocol#BINARY}.
+ * 
+ * @author agent 2026/10/17
+ */
+public class LeaseResponse implements UDPResponse {
+
+	private Integer keyNumber;
+	private int leaseTime;
+	private Host[] requestingHosts;
+
+	/**
+	 * @param keyNumber
+	 *            the leased key, or null if the lease is refused or has been
+	 *            lost
+	 * @param leaseTime
+	 *            [msec] the time until the lease expires unless it is renewed
+	 * @param requestingHosts
+	 *            the hosts which are requesting connection to the entry
+	 */
+	public LeaseResponse(Integer keyNumber, int leaseTime, Host[] requestingHosts) {
+		this.keyNumber = keyNumber;
+		this.leaseTime = leaseTime;
+		this.requestingHosts = requestingHosts;
+	}
+
+	/**
+	 * @return the leased key, or null if the lease is refused or has been lost
+	 */
+	public Integer getKeyNumber() {
+		return this.keyNumber;
+	}
+
+	/**
+	 * @return [msec] the time until the lease expires unless it is renewed
+	 */
+	public int getLeaseTime() {
+		return this.leaseTime;
+	}
+
+	/**
+	 * @return the hosts which are requesting connection to the entry
+	 */
+	public Host[] getRequestingHosts() {
+		return this.requestingHosts;
+	}
+}
@@ -14,15 +14,80 @@
 
 package org.nognog.jmatcher.udp.response;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
 import org.nognog.jmatcher.Host;
+import org.nognog.jmatcher.HostAddressCodec;
+import org.nognog.jmatcher.SpecialHostAddress;
+import org.nognog.jmatcher.udp.UDPProtocol;
 
 /**
- * Now, it supports ConnectionResponse only. If classes of UDPResponse increase,
- * it will be improved drastically
+ * A {@link ConnectionResponse} is written either as text (address:port) or, in
+ * {@link UDPProtocol#BINARY}, as
+ * 
+ * <pre>
+ * magic (0xA5) | version (u8) | type (u8) | host
+ * </pre>
+ * 
+ * and a {@link LeaseResponse} is written only in {@link UDPProtocol#BINARY},
+ * as
+ * 
+ * <pre>
+ * magic (0xA5) | version (u8) | type (u8) | key number (s32) | lease time (s32) | number of hosts (u8) | host...
+ * </pre>
+ * 
+ * where the key number is -1 if the lease is refused. A host is written as
+ * 
+ * <pre>
+ * kind (u8) | [address] | [port (u16)]
+ * </pre>
+ * 
+ * where kind tells whether the host is absent, on the internal network of
+ * the requester (no address), an IPv4 address (4 bytes) or any other address
+ * (u8 length + UTF-8).
  * 
  * @author goshi 2015/12/23
  */
 public class UDPResponseSerializer {
+	/**
+	 * type of {@link ConnectionResponse}
+	 */
+	public static final int CONNECTION_RESPONSE = 0;
+
+	/**
+	 * type of {@link LeaseResponse}
+	 */
+	public static final int LEASE_RESPONSE = 1;
+
+	/**
+	 * the maximum size of a response in {@link UDPProtocol#BINARY}
+	 */
+	public static final int MAX_BINARY_RESPONSE_SIZE = UDPProtocol.BINARY_HEADER_SIZE + 1 + 1 + 1 + 0xFF + 2;
+
+	/**
+	 * the size of a {@link LeaseResponse} without hosts
+	 */
+	public static final int LEASE_RESPONSE_HEADER_SIZE = UDPProtocol.BINARY_HEADER_SIZE + 1 + 4 + 4 + 1;
+
+	/**
+	 * the maximum size of a {@link LeaseResponse} which a server sends. It
+	 * splits the requesting hosts into as many responses as they need.
+	 */
+	public static final int MAX_LEASE_RESPONSE_SIZE = 448;
+
+	/**
+	 * the maximum number of hosts in a {@link LeaseResponse}
+	 */
+	public static final int MAX_HOSTS_IN_LEASE_RESPONSE = 0xFF;
+
+	private static final int noHostKind = 0;
+	private static final int textAddressKind = 1;
+	private static final int internalNetworkHostKind = 2;
+	private static final int ipv4AddressKind = 4;
+
+	private static final Charset utf8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+
 	private static final UDPResponseSerializer instance = new UDPResponseSerializer();
 
 	private static final String noValueConnectionResponse = ""; //$NON-NLS-1$
@@ -39,10 +104,13 @@ public class UDPResponseSerializer {
 
 	/**
 	 * @param udpResponse
-	 * @return serialized udpRequest
+	 * @return serialized udpRequest, or null if it can't be written as text
 	 */
 	@SuppressWarnings("static-method")
 	public String serialize(UDPResponse udpResponse) {
+		if (udpResponse instanceof LeaseResponse) {
+			return null;
+		}
 		try {
 			final ConnectionResponse connectionResponse = (ConnectionResponse) udpResponse;
 			if (connectionResponse.getHost().getAddress() == null) {
@@ -75,4 +143,211 @@ public class UDPResponseSerializer {
 		}
 	}
 
+	/**
+	 * Put the response in {@link UDPProtocol#BINARY}
+	 * 
+	 * @param udpResponse
+	 * @param buffer
+	 * @throws java.nio.BufferOverflowException
+	 *             thrown if the buffer doesn't have enough space
+	 */
+	@SuppressWarnings("static-method")
+	public void serialize(UDPResponse udpResponse, ByteBuffer buffer) {
+		if (udpResponse instanceof LeaseResponse) {
+			serializeLeaseResponse((LeaseResponse) udpResponse, buffer);
+			return;
+		}
+		if (!(udpResponse instanceof ConnectionResponse)) {
+			throw new IllegalArgumentException("unsupported response : " + udpResponse); //$NON-NLS-1$
+		}
+		UDPProtocol.putBinaryHeader(buffer);
+		buffer.put((byte) CONNECTION_RESPONSE);
+		putHost(((ConnectionResponse) udpResponse).getHost(), buffer);
+	}
+
+	private static void serializeLeaseResponse(LeaseResponse leaseResponse, ByteBuffer buffer) {
+		final Host[] hosts = leaseResponse.getRequestingHosts();
+		final int numberOfHosts = (hosts == null) ? 0 : hosts.length;
+		final int keyNumber = (leaseResponse.getKeyNumber() == null) ? -1 : leaseResponse.getKeyNumber().intValue();
+		putLeaseResponse(keyNumber, leaseResponse.getLeaseTime(), hosts, 0, numberOfHosts, buffer);
+	}
+
+	/**
+	 * Put a {@link LeaseResponse} of a range of the hosts in
+	 * {@link UDPProtocol#BINARY}, without making the response
+	 * 
+	 * @param keyNumber
+	 *            -1 if the lease is refused
+	 * @param leaseTime
+	 * @param hosts
+	 *            it can be null if the range is empty
+	 * @param from
+	 *            the first index of the hosts, inclusive
+	 * @param to
+	 *            the last index of the hosts, exclusive
+	 * @param buffer
+	 * @throws java.nio.BufferOverflowException
+	 *             thrown if the buffer doesn't have enough space
+	 */
+	@SuppressWarnings("static-method")
+	public void serializeLeaseResponse(int keyNumber, int leaseTime, Host[] hosts, int from, int to, ByteBuffer buffer) {
+		putLeaseResponse(keyNumber, leaseTime, hosts, from, to, buffer);
+	}
+
+	private static void putLeaseResponse(int keyNumber, int leaseTime, Host[] hosts, int from, int to, ByteBuffer buffer) {
+		final int numberOfHosts = to - from;
+		if (numberOfHosts > MAX_HOSTS_IN_LEASE_RESPONSE) {
+			throw new IllegalArgumentException("too many hosts : " + numberOfHosts); //$NON-NLS-1$
+		}
+		UDPProtocol.putBinaryHeader(buffer);
+		buffer.put((byte) LEASE_RESPONSE);
+		buffer.putInt(keyNumber);
+		buffer.putInt(leaseTime);
+		buffer.put((byte) numberOfHosts);
+		for (int i = from; i < to; i++) {
+			putHost(hosts[i], buffer);
+		}
+	}
+
+	/**
+	 * @param host
+	 *            it can be null
+	 * @return the size of the host in a response of {@link UDPProtocol#BINARY}
+	 */
+	public static int getBinarySize(Host host) {
+		if (host == null || host.getAddress() == null) {
+			return 1;
+		}
+		if (SpecialHostAddress.ON_INTERNAL_NETWORK_HOST.equals(host.getAddress())) {
+			return 1 + 2;
+		}
+		final ByteBuffer ipv4Address = ByteBuffer.allocate(4);
+		if (HostAddressCodec.putIPv4Address(ipv4Address, host.getAddress())) {
+			return 1 + 4 + 2;
+		}
+		return 1 + 1 + host.getAddress().getBytes(utf8).length + 2;
+	}
+
+	private static void putHost(Host host, ByteBuffer buffer) {
+		if (host == null || host.getAddress() == null) {
+			buffer.put((byte) noHostKind);
+			return;
+		}
+		final int kindPosition = buffer.position();
+		buffer.put((byte) ipv4AddressKind);
+		if (SpecialHostAddress.ON_INTERNAL_NETWORK_HOST.equals(host.getAddress())) {
+			buffer.put(kindPosition, (byte) internalNetworkHostKind);
+		} else if (!HostAddressCodec.putIPv4Address(buffer, host.getAddress())) {
+			buffer.put(kindPosition, (byte) textAddressKind);
+			final byte[] address = host.getAddress().getBytes(utf8);
+			if (address.length > 0xFF) {
+				throw new IllegalArgumentException("too long address : " + host.getAddress()); //$NON-NLS-1$
+			}
+			buffer.put((byte) address.length);
+			buffer.put(address);
+		}
+		buffer.putShort((short) host.getPort());
+	}
+
+	/**
+	 * @param datagram
+	 *            from its position to its limit, which is written in either
+	 *            format. Its position is advanced to its limit.
+	 * @return deserialized udpResponse, or null if it is invalid
+	 */
+	@SuppressWarnings("static-method")
+	public UDPResponse deserialize(ByteBuffer datagram) {
+		try {
+			if (UDPProtocol.of(datagram) == UDPProtocol.BINARY) {
+				return deserializeBinary(datagram);
+			}
+			return deserializeText(datagram);
+		} catch (RuntimeException e) {
+			return null;
+		} finally {
+			datagram.position(datagram.limit());
+		}
+	}
+
+	private static UDPResponse deserializeBinary(ByteBuffer datagram) {
+		datagram.position(datagram.position() + UDPProtocol.BINARY_HEADER_SIZE);
+		final int type = datagram.get();
+		if (type == LEASE_RESPONSE) {
+			return deserializeLeaseResponse(datagram);
+		}
+		if (type != CONNECTION_RESPONSE) {
+			return null;
+		}
+		return new ConnectionResponse(getHost(datagram));
+	}
+
+	private static UDPResponse deserializeLeaseResponse(ByteBuffer datagram) {
+		final int keyNumber = datagram.getInt();
+		final int leaseTime = datagram.getInt();
+		final Host[] hosts = new Host[datagram.get() & 0xFF];
+		for (int i = 0; i < hosts.length; i++) {
+			hosts[i] = getHost(datagram);
+		}
+		return new LeaseResponse((keyNumber < 0) ? null : Integer.valueOf(keyNumber), leaseTime, hosts);
+	}
+
+	/**
+	 * @return the host, or null if it is absent
+	 * @throws IllegalArgumentException
+	 *             thrown if the kind is unknown
+	 */
+	private static Host getHost(ByteBuffer datagram) {
+		final int kind = datagram.get();
+		final String address;
+		switch (kind) {
+		case noHostKind:
+			return null;
+		case internalNetworkHostKind:
+			address = SpecialHostAddress.ON_INTERNAL_NETWORK_HOST.getAddress();
+			break;
+		case ipv4AddressKind:
+			address = HostAddressCodec.getIPv4Address(datagram);
+			break;
+		case textAddressKind:
+			final byte[] bytes = new byte[datagram.get() & 0xFF];
+			datagram.get(bytes);
+			address = new String(bytes, utf8);
+			break;
+		default:
+			throw new IllegalArgumentException("unknown kind : " + kind); //$NON-NLS-1$
+		}
+		return new Host(address, datagram.getShort() & 0xFFFF);
+	}
+
+	private static UDPResponse deserializeText(ByteBuffer datagram) {
+		final int position = datagram.position();
+		final int limit = datagram.limit();
+		if (position == limit) {
+			return new ConnectionResponse(null);
+		}
+		int colonIndex = -1;
+		for (int i = position; i < limit; i++) {
+			if (datagram.get(i) == ':') {
+				colonIndex = i;
+				break;
+			}
+		}
+		if (colonIndex < 0 || colonIndex == limit - 1) {
+			return null;
+		}
+		int port = 0;
+		for (int i = colonIndex + 1; i < limit; i++) {
+			final int digit = datagram.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return null;
+			}
+			port = port * 10 + digit;
+			if (port > 0xFFFF) {
+				return null;
+			}
+		}
+		final byte[] address = new byte[colonIndex - position];
+		datagram.get(address);
+		return new ConnectionResponse(new Host(new String(address, utf8), port));
+	}
 }
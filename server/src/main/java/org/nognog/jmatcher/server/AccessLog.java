@@ -0,0 +1,78 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The access log of the daemon, which records the requests and responses at
+ * INFO on the logger {@value #LOGGER_NAME}. Only one of every
+ * {@link #getSamplingInterval()} of them is recorded, so the front ends don't
+ * pay for a log line per packet, and a caller builds its line only if
+ * {@link #isSampled()} returns true.
+ * 
+ * @author agent 2026/10/17
+ */
+public class AccessLog {
+	/**
+	 * name of the logger of the access log
+	 */
+	public static final String LOGGER_NAME = "org.nognog.jmatcher.server.access"; //$NON-NLS-1$
+
+	private static Logger logger = LogManager.getLogger(LOGGER_NAME);
+
+	private final int samplingInterval;
+
+	/**
+	 * @param samplingInterval
+	 *            one of this number of requests is recorded
+	 */
+	public AccessLog(int samplingInterval) {
+		if (samplingInterval < 1) {
+			throw new IllegalArgumentException("invalid sampling interval : " + samplingInterval); //$NON-NLS-1$
+		}
+		this.samplingInterval = samplingInterval;
+	}
+
+	/**
+	 * @return one of this number of requests is recorded
+	 */
+	public int getSamplingInterval() {
+		return this.samplingInterval;
+	}
+
+	/**
+	 * The sample is random rather than every n-th, so that the threads don't
+	 * share a counter.
+	 * 
+	 * @return true if the caller should record its request
+	 */
+	public boolean isSampled() {
+		if (!logger.isInfoEnabled()) {
+			return false;
+		}
+		return this.samplingInterval == 1 || ThreadLocalRandom.current().nextInt(this.samplingInterval) == 0;
+	}
+
+	/**
+	 * @param message
+	 */
+	public void log(CharSequence message) {
+		logger.info(message.toString());
+	}
+}
@@ -0,0 +1,325 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nognog.jmatcher.udp.UDPProtocol;
+import org.nognog.jmatcher.udp.request.UDPRequestSerializer;
+
+/**
+ * The link of this daemon to the other nodes of a cluster. The key space is
+ * partitioned among the nodes by {@link PartitionedKeyAllocator}, so the
+ * owner of a key is known from the key. A UDP request for a key of another
+ * node is forwarded to the owner with the address of its client, and the
+ * owner handles it as if the client had sent it, except that the response is
+ * sent back to this node, which relays it to the client from the port the
+ * client sent the request to. The client can't tell the difference, and its
+ * NAT sees the response from the address it expects.
+ * <p>
+ * The nodes talk over their own UDP ports, which are given by
+ * {@link JMatcherDaemon#CLUSTER_NODES_ARGUMENT}, and a packet from any other
+ * address is ignored. A forwarded request is:
+ * 
+ * <pre>
+ * magic, version, FORWARDED_REQUEST, forward id (4), protocol (1),
+ * request type (1), key number (4), address length (1), address (4 or 16), port (2)
+ * </pre>
+ * 
+ * and a forwarded response is the response in the format of the client:
+ * 
+ * <pre>
+ * magic, version, FORWARDED_RESPONSE, forward id (4), response...
+ * </pre>
+ * 
+ * @author agent 2026/10/17
+ */
+public class ClusterLink extends Thread {
+
+	static final byte FORWARDED_REQUEST = 1;
+	static final byte FORWARDED_RESPONSE = 2;
+	static final int BUFFER_SIZE = 512;
+
+	private static final int FORWARD_HEADER_SIZE = UDPProtocol.BINARY_HEADER_SIZE + 1 + 4;
+	// the owner answers by WAIT_TIME_FOR_MATCHING_TIMING unless it is down
+	private static final long FORWARD_TIMEOUT = UDPClientRequestHandler.WAIT_TIME_FOR_MATCHING_TIMING * 2; // [msec]
+
+	private final JMatcherDaemon jmatcherDaemon;
+	private final InetSocketAddress[] nodes;
+	private final int nodeIndex;
+	private final DatagramChannel channel;
+	private final AtomicInteger nextForwardId;
+	private final ConcurrentHashMap<Integer, Forward> forwards;
+	private int countOfReceivedPacket;
+
+	private static Logger logger = LogManager.getLogger(ClusterLink.class);
+
+	/**
+	 * @param daemon
+	 * @param nodes
+	 *            the cluster ports of all the nodes, which are in the same
+	 *            order on every node
+	 * @param nodeIndex
+	 *            the index of this node
+	 * @throws IOException
+	 */
+	public ClusterLink(JMatcherDaemon daemon, InetSocketAddress[] nodes, int nodeIndex) throws IOException {
+		super("cluster-link"); //$NON-NLS-1$
+		if (nodes.length == 0 || nodeIndex < 0 || nodeIndex >= nodes.length) {
+			throw new IllegalArgumentException("invalid cluster node : " + nodeIndex + " of " + Arrays.toString(nodes)); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		this.jmatcherDaemon = daemon;
+		this.nodes = nodes.clone();
+		this.nodeIndex = nodeIndex;
+		this.nextForwardId = new AtomicInteger();
+		this.forwards = new ConcurrentHashMap<>();
+		this.channel = DatagramChannel.open();
+		try {
+			this.channel.bind(new InetSocketAddress(nodes[nodeIndex].getPort()));
+		} catch (IOException e) {
+			this.channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param value
+	 *            host:port,host:port,...
+	 * @return the addresses
+	 */
+	static InetSocketAddress[] parseNodes(String value) {
+		final String[] hostAndPorts = value.split(","); //$NON-NLS-1$
+		final InetSocketAddress[] result = new InetSocketAddress[hostAndPorts.length];
+		for (int i = 0; i < hostAndPorts.length; i++) {
+			final String hostAndPort = hostAndPorts[i].trim();
+			final int separatorIndex = hostAndPort.lastIndexOf(':');
+			if (separatorIndex <= 0) {
+				throw new IllegalArgumentException("invalid cluster node : " + hostAndPort); //$NON-NLS-1$
+			}
+			try {
+				result[i] = new InetSocketAddress(hostAndPort.substring(0, separatorIndex), Integer.parseInt(hostAndPort.substring(separatorIndex + 1)));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("invalid cluster node : " + hostAndPort, e); //$NON-NLS-1$
+			}
+			if (result[i].isUnresolved()) {
+				throw new IllegalArgumentException("unknown cluster node : " + hostAndPort); //$NON-NLS-1$
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the number of the nodes
+	 */
+	public int getNumberOfNodes() {
+		return this.nodes.length;
+	}
+
+	/**
+	 * @return the index of this node
+	 */
+	public int getNodeIndex() {
+		return this.nodeIndex;
+	}
+
+	/**
+	 * @param keyNumber
+	 * @return true if the key belongs to this node
+	 */
+	public boolean owns(int keyNumber) {
+		return PartitionedKeyAllocator.partitionOf(keyNumber, this.nodes.length) == this.nodeIndex;
+	}
+
+	/**
+	 * Forward the request to the owner of its key. The response of a
+	 * ConnectionRequest or a RenewLeaseRequest is relayed to the client by the
+	 * sender of the handler.
+	 * 
+	 * @param handler
+	 * @throws IOException
+	 */
+	void forward(UDPClientRequestHandler handler) throws IOException {
+		final int forwardId = this.nextForwardId.getAndIncrement();
+		if (handler.getRequestType() == UDPRequestSerializer.CONNECTION_REQUEST || handler.getRequestType() == UDPRequestSerializer.RENEW_LEASE_REQUEST) {
+			final Forward forward = new Forward(handler.getSender(), handler.getClientAddress());
+			this.forwards.put(Integer.valueOf(forwardId), forward);
+			forward.timeout = this.jmatcherDaemon.getTimingWheel().newTimeout(new Runnable() {
+				@Override
+				public void run() {
+					ClusterLink.this.forwards.remove(Integer.valueOf(forwardId), forward);
+				}
+			}, FORWARD_TIMEOUT, TimeUnit.MILLISECONDS);
+		}
+		final InetSocketAddress clientAddress = handler.getClientAddress();
+		final byte[] address = clientAddress.getAddress().getAddress();
+		final ByteBuffer message = ByteBuffer.allocate(BUFFER_SIZE);
+		UDPProtocol.putBinaryHeader(message);
+		message.put(FORWARDED_REQUEST);
+		message.putInt(forwardId);
+		message.put((byte) handler.getProtocol().ordinal());
+		message.put((byte) handler.getRequestType());
+		message.putInt(handler.getKeyNumber());
+		message.put((byte) address.length);
+		message.put(address);
+		message.putShort((short) clientAddress.getPort());
+		message.flip();
+		this.channel.send(message, this.nodes[PartitionedKeyAllocator.partitionOf(handler.getKeyNumber(), this.nodes.length)]);
+		this.jmatcherDaemon.getMetrics().requestForwarded();
+	}
+
+	@Override
+	public void run() {
+		logger.info("started cluster link of node " + this.nodeIndex + " " + this.channel.socket().getLocalSocketAddress()); //$NON-NLS-1$ //$NON-NLS-2$
+		final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		while (!this.jmatcherDaemon.isStopping()) {
+			try {
+				buffer.clear();
+				final SocketAddress source = this.channel.receive(buffer);
+				buffer.flip();
+				if (!this.isNode(source)) {
+					continue;
+				}
+				this.handle(buffer, (InetSocketAddress) source);
+				this.countOfReceivedPacket++;
+			} catch (ClosedChannelException e) {
+				if (!this.jmatcherDaemon.isStopping()) {
+					logger.fatal("cluster link thread : channel is closed unexpectedly", e); //$NON-NLS-1$
+				}
+				return;
+			} catch (IOException e) {
+				if (!this.jmatcherDaemon.isStopping()) {
+					logger.error("cluster link thread : error occured", e); //$NON-NLS-1$
+				}
+			} catch (RuntimeException e) {
+				// a broken packet of a node
+				logger.error("cluster link thread : invalid packet", e); //$NON-NLS-1$
+			}
+		}
+	}
+
+	private boolean isNode(SocketAddress address) {
+		for (int i = 0; i < this.nodes.length; i++) {
+			if (i != this.nodeIndex && this.nodes[i].equals(address)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void handle(ByteBuffer message, InetSocketAddress source) throws IOException {
+		if (message.remaining() < FORWARD_HEADER_SIZE || UDPProtocol.of(message) != UDPProtocol.BINARY) {
+			return;
+		}
+		message.position(message.position() + UDPProtocol.BINARY_HEADER_SIZE);
+		final byte type = message.get();
+		final int forwardId = message.getInt();
+		if (type == FORWARDED_REQUEST) {
+			this.handleForwardedRequest(message, source, forwardId);
+		} else if (type == FORWARDED_RESPONSE) {
+			this.handleForwardedResponse(message, forwardId);
+		}
+	}
+
+	private void handleForwardedRequest(ByteBuffer message, InetSocketAddress forwarder, int forwardId) throws IOException {
+		final UDPProtocol protocol = UDPProtocol.values()[message.get()];
+		final int requestType = message.get();
+		final int keyNumber = message.getInt();
+		final byte[] address = new byte[message.get()];
+		message.get(address);
+		final int port = message.getShort() & 0xFFFF;
+		final InetSocketAddress clientAddress = new InetSocketAddress(InetAddress.getByAddress(address), port);
+		final String name = new StringBuilder().append("CLUSTER(").append(this.countOfReceivedPacket).append(")").toString(); //$NON-NLS-1$ //$NON-NLS-2$
+		final UDPClientRequestHandler handler = new UDPClientRequestHandler(this.jmatcherDaemon, new ForwardedResponseSender(forwarder, forwardId), clientAddress, protocol, requestType, keyNumber,
+				name);
+		// a handler doesn't block, so it is run here as the udp reactors do
+		handler.run();
+	}
+
+	private void handleForwardedResponse(ByteBuffer message, int forwardId) throws IOException {
+		final Forward forward = this.forwards.remove(Integer.valueOf(forwardId));
+		if (forward == null) {
+			return; // it has timed out
+		}
+		forward.timeout.cancel();
+		forward.sender.send(message, forward.clientAddress);
+	}
+
+	/**
+	 * close the channel
+	 */
+	public void closeSocket() {
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			logger.error("Failed to close cluster channel", e); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * A ConnectionRequest which has been forwarded to its owner
+	 */
+	private static class Forward {
+		final UDPResponseSender sender;
+		final InetSocketAddress clientAddress;
+		volatile HashedTimingWheel.Timeout timeout;
+
+		Forward(UDPResponseSender sender, InetSocketAddress clientAddress) {
+			this.sender = sender;
+			this.clientAddress = clientAddress;
+		}
+	}
+
+	/**
+	 * It sends the responses of a forwarded request back to the node which
+	 * forwarded it
+	 */
+	private class ForwardedResponseSender implements UDPResponseSender {
+		private final InetSocketAddress forwarder;
+		private final int forwardId;
+
+		ForwardedResponseSender(InetSocketAddress forwarder, int forwardId) {
+			this.forwarder = forwarder;
+			this.forwardId = forwardId;
+		}
+
+		@Override
+		public void send(ByteBuffer message, InetSocketAddress address) throws IOException {
+			final ByteBuffer forwardedMessage = ByteBuffer.allocate(FORWARD_HEADER_SIZE + message.remaining());
+			UDPProtocol.putBinaryHeader(forwardedMessage);
+			forwardedMessage.put(FORWARDED_RESPONSE);
+			forwardedMessage.putInt(this.forwardId);
+			forwardedMessage.put(message);
+			forwardedMessage.flip();
+			ClusterLink.this.channel.send(forwardedMessage, this.forwarder);
+		}
+
+		@Override
+		public SocketAddress getLocalSocketAddress() {
+			return ClusterLink.this.channel.socket().getLocalSocketAddress();
+		}
+	}
+}
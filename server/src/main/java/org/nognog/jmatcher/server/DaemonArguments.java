@@ -0,0 +1,109 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Arguments which are given to the daemon by commons-daemon (e.g.
+ * <code>jsvc ... JMatcherDaemon udpMode=reactor</code>). Each argument is
+ * written as <code>name=value</code>, and leading hyphens are ignored.
+ *
+ * @author agent 2026/10/17
+ */
+final class DaemonArguments {
+
+	private final Map<String, String> values;
+
+	/**
+	 * @param arguments
+	 *            it can be null
+	 */
+	DaemonArguments(String[] arguments) {
+		this.values = new HashMap<>();
+		if (arguments == null) {
+			return;
+		}
+		for (String argument : arguments) {
+			if (argument == null) {
+				continue;
+			}
+			final String trimmed = trimHyphens(argument.trim());
+			final int separatorIndex = trimmed.indexOf('=');
+			if (separatorIndex <= 0) {
+				throw new IllegalArgumentException("invalid argument : " + argument); //$NON-NLS-1$
+			}
+			this.values.put(trimmed.substring(0, separatorIndex), trimmed.substring(separatorIndex + 1));
+		}
+	}
+
+	private static String trimHyphens(String argument) {
+		int beginIndex = 0;
+		while (beginIndex < argument.length() && argument.charAt(beginIndex) == '-') {
+			beginIndex++;
+		}
+		return argument.substring(beginIndex);
+	}
+
+	/**
+	 * @param name
+	 * @param defaultValue
+	 * @return value of the argument, or defaultValue if it is not given
+	 */
+	String getString(String name, String defaultValue) {
+		final String value = this.values.get(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		return value;
+	}
+
+	/**
+	 * @param name
+	 * @param defaultValue
+	 * @return value of the argument, or defaultValue if it is not given
+	 */
+	int getInt(String name, int defaultValue) {
+		final String value = this.values.get(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("invalid value of " + name + " : " + value, e); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	/**
+	 * @param name
+	 * @param type
+	 * @param defaultValue
+	 * @return value of the argument, or defaultValue if it is not given
+	 */
+	<E extends Enum<E>> E getEnum(String name, Class<E> type, E defaultValue) {
+		final String value = this.values.get(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Enum.valueOf(type, value.toUpperCase(Locale.ENGLISH));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("invalid value of " + name + " : " + value, e); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+}
@@ -0,0 +1,256 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latencies of the daemon, which are updated on the paths of
+ * the requests and read through {@link DaemonStatus}. Every counter counts
+ * from the start of the daemon.
+ * 
+ * @author agent 2026/10/17
+ */
+public class DaemonMetrics {
+	private final AtomicLong preEntryCount = new AtomicLong();
+	private final AtomicLong enabledEntryCount = new AtomicLong();
+	private final AtomicLong expiredEntryCount = new AtomicLong();
+	private final AtomicLong rejectedEntryCount = new AtomicLong();
+	private final AtomicLong connectionRequestCount = new AtomicLong();
+	private final AtomicLong matchCount = new AtomicLong();
+	private final AtomicLong timedOutRequestCount = new AtomicLong();
+	private final AtomicLong rejectedRequestCount = new AtomicLong();
+	private final AtomicLong waitingRequestCount = new AtomicLong();
+	private final AtomicLong forwardedRequestCount = new AtomicLong();
+	private final AtomicLong invalidRequestCount = new AtomicLong();
+	private final AtomicLong throttledRequestCount = new AtomicLong();
+	private final AtomicLong duplicateRequestCount = new AtomicLong();
+	private final AtomicLong grantedLeaseCount = new AtomicLong();
+	private final AtomicLong expiredLeaseCount = new AtomicLong();
+	private final AtomicLong reclaimedEntryCount = new AtomicLong();
+	private final LatencyHistogram enableLatency = new LatencyHistogram();
+	private final LatencyHistogram matchLatency = new LatencyHistogram();
+
+	void preEntryPut() {
+		this.preEntryCount.incrementAndGet();
+	}
+
+	void entryEnabled(long nanosSincePreEntry) {
+		this.enabledEntryCount.incrementAndGet();
+		this.enableLatency.record(nanosSincePreEntry);
+	}
+
+	void entryExpired() {
+		this.expiredEntryCount.incrementAndGet();
+	}
+
+	void entryRejected() {
+		this.rejectedEntryCount.incrementAndGet();
+	}
+
+	void connectionRequested() {
+		this.connectionRequestCount.incrementAndGet();
+	}
+
+	void requestWaiting() {
+		this.waitingRequestCount.incrementAndGet();
+	}
+
+	void requestMatched(long nanosSinceRequest) {
+		this.waitingRequestCount.decrementAndGet();
+		this.matchCount.incrementAndGet();
+		this.matchLatency.record(nanosSinceRequest);
+	}
+
+	void requestFailed(boolean timedOut) {
+		this.waitingRequestCount.decrementAndGet();
+		if (timedOut) {
+			this.timedOutRequestCount.incrementAndGet();
+		}
+	}
+
+	void requestRejected() {
+		this.rejectedRequestCount.incrementAndGet();
+	}
+
+	void requestForwarded() {
+		this.forwardedRequestCount.incrementAndGet();
+	}
+
+	void requestInvalid() {
+		this.invalidRequestCount.incrementAndGet();
+	}
+
+	void requestThrottled() {
+		this.throttledRequestCount.incrementAndGet();
+	}
+
+	void requestDuplicated() {
+		this.duplicateRequestCount.incrementAndGet();
+	}
+
+	void leaseGranted() {
+		this.grantedLeaseCount.incrementAndGet();
+	}
+
+	void leaseExpired() {
+		this.expiredLeaseCount.incrementAndGet();
+	}
+
+	void entryReclaimed() {
+		this.reclaimedEntryCount.incrementAndGet();
+	}
+
+	/**
+	 * @return the number of pre-entries which have been put
+	 */
+	public long getPreEntryCount() {
+		return this.preEntryCount.get();
+	}
+
+	/**
+	 * @return the number of pre-entries which have been enabled
+	 */
+	public long getEnabledEntryCount() {
+		return this.enabledEntryCount.get();
+	}
+
+	/**
+	 * @return the number of pre-entries which have expired before they were
+	 *         enabled
+	 */
+	public long getExpiredEntryCount() {
+		return this.expiredEntryCount.get();
+	}
+
+	/**
+	 * @return the number of inviters which have been refused because the
+	 *         matching table or the handlers were full
+	 */
+	public long getRejectedEntryCount() {
+		return this.rejectedEntryCount.get();
+	}
+
+	/**
+	 * @return the number of ConnectionRequests which have been handled
+	 */
+	public long getConnectionRequestCount() {
+		return this.connectionRequestCount.get();
+	}
+
+	/**
+	 * @return the number of ConnectionRequests which have been released to
+	 *         their inviters
+	 */
+	public long getMatchCount() {
+		return this.matchCount.get();
+	}
+
+	/**
+	 * @return the number of ConnectionRequests which have timed out while
+	 *         they were waiting for their inviters
+	 */
+	public long getTimedOutRequestCount() {
+		return this.timedOutRequestCount.get();
+	}
+
+	/**
+	 * @return the number of UDP requests which have been shed because the
+	 *         handlers were full
+	 */
+	public long getRejectedRequestCount() {
+		return this.rejectedRequestCount.get();
+	}
+
+	/**
+	 * @return the number of UDP requests which have been forwarded to the
+	 *         other nodes of the cluster
+	 */
+	public long getForwardedRequestCount() {
+		return this.forwardedRequestCount.get();
+	}
+
+	/**
+	 * @return the number of UDP datagrams which have been dropped because they
+	 *         weren't valid requests
+	 */
+	public long getInvalidRequestCount() {
+		return this.invalidRequestCount.get();
+	}
+
+	/**
+	 * @return the number of UDP requests which have been refused because
+	 *         their source sent too many or too many connectors were waiting
+	 *         for their key
+	 */
+	public long getThrottledRequestCount() {
+		return this.throttledRequestCount.get();
+	}
+
+	/**
+	 * @return the number of retransmitted ConnectionRequests which have joined
+	 *         or replayed their originals
+	 */
+	public long getDuplicateRequestCount() {
+		return this.duplicateRequestCount.get();
+	}
+
+	/**
+	 * @return the number of inviters which have been registered by
+	 *         LeaseRequests
+	 */
+	public long getGrantedLeaseCount() {
+		return this.grantedLeaseCount.get();
+	}
+
+	/**
+	 * @return the number of leases which have expired because their inviters
+	 *         stopped renewing them
+	 */
+	public long getExpiredLeaseCount() {
+		return this.expiredLeaseCount.get();
+	}
+
+	/**
+	 * @return the number of entry channels which have been closed because
+	 *         their inviters were silent for the idle timeout
+	 */
+	public long getReclaimedEntryCount() {
+		return this.reclaimedEntryCount.get();
+	}
+
+	/**
+	 * @return the number of ConnectionRequests which are waiting for their
+	 *         inviters now
+	 */
+	public long getWaitingRequestCount() {
+		return this.waitingRequestCount.get();
+	}
+
+	/**
+	 * @return the latencies from a pre-entry to its EnableEntryRequest
+	 */
+	public LatencyHistogram getEnableLatency() {
+		return this.enableLatency;
+	}
+
+	/**
+	 * @return the latencies from a ConnectionRequest to its release to the
+	 *         inviter
+	 */
+	public LatencyHistogram getMatchLatency() {
+		return this.matchLatency;
+	}
+}
@@ -0,0 +1,205 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * @author agent 2026/10/17
+ */
+public class DaemonStatus implements DaemonStatusMBean {
+	private final JMatcherDaemon jmatcherDaemon;
+
+	/**
+	 * @param daemon
+	 */
+	public DaemonStatus(JMatcherDaemon daemon) {
+		this.jmatcherDaemon = daemon;
+	}
+
+	private DaemonMetrics getMetrics() {
+		return this.jmatcherDaemon.getMetrics();
+	}
+
+	@Override
+	public long getPreEntryCount() {
+		return this.getMetrics().getPreEntryCount();
+	}
+
+	@Override
+	public long getEnabledEntryCount() {
+		return this.getMetrics().getEnabledEntryCount();
+	}
+
+	@Override
+	public long getExpiredEntryCount() {
+		return this.getMetrics().getExpiredEntryCount();
+	}
+
+	@Override
+	public long getRejectedEntryCount() {
+		return this.getMetrics().getRejectedEntryCount();
+	}
+
+	@Override
+	public long getConnectionRequestCount() {
+		return this.getMetrics().getConnectionRequestCount();
+	}
+
+	@Override
+	public long getMatchCount() {
+		return this.getMetrics().getMatchCount();
+	}
+
+	@Override
+	public long getTimedOutRequestCount() {
+		return this.getMetrics().getTimedOutRequestCount();
+	}
+
+	@Override
+	public long getRejectedRequestCount() {
+		return this.getMetrics().getRejectedRequestCount();
+	}
+
+	@Override
+	public long getForwardedRequestCount() {
+		return this.getMetrics().getForwardedRequestCount();
+	}
+
+	@Override
+	public long getInvalidRequestCount() {
+		return this.getMetrics().getInvalidRequestCount();
+	}
+
+	@Override
+	public long getThrottledRequestCount() {
+		return this.getMetrics().getThrottledRequestCount();
+	}
+
+	@Override
+	public long getDuplicateRequestCount() {
+		return this.getMetrics().getDuplicateRequestCount();
+	}
+
+	@Override
+	public long getGrantedLeaseCount() {
+		return this.getMetrics().getGrantedLeaseCount();
+	}
+
+	@Override
+	public long getExpiredLeaseCount() {
+		return this.getMetrics().getExpiredLeaseCount();
+	}
+
+	@Override
+	public long getReclaimedEntryCount() {
+		return this.getMetrics().getReclaimedEntryCount();
+	}
+
+	@Override
+	public int getMatchingTableSize() {
+		return this.jmatcherDaemon.getMatchingTable().size();
+	}
+
+	@Override
+	public int getMatchingTableCapacity() {
+		return this.jmatcherDaemon.getMatchingMapCapacity();
+	}
+
+	@Override
+	public long getWaitingRequestCount() {
+		return this.getMetrics().getWaitingRequestCount();
+	}
+
+	@Override
+	public int getTCPQueueSize() {
+		return getQueueSize(this.jmatcherDaemon.getTCPExecutorService());
+	}
+
+	@Override
+	public int getTCPActiveHandlers() {
+		return getActiveCount(this.jmatcherDaemon.getTCPExecutorService());
+	}
+
+	@Override
+	public int getTCPHandlerThreads() {
+		return getPoolSize(this.jmatcherDaemon.getTCPExecutorService());
+	}
+
+	@Override
+	public int getUDPQueueSize() {
+		return getQueueSize(this.jmatcherDaemon.getUDPExecutorService());
+	}
+
+	@Override
+	public int getUDPActiveHandlers() {
+		return getActiveCount(this.jmatcherDaemon.getUDPExecutorService());
+	}
+
+	@Override
+	public int getUDPHandlerThreads() {
+		return getPoolSize(this.jmatcherDaemon.getUDPExecutorService());
+	}
+
+	@Override
+	public boolean isStandby() {
+		return this.jmatcherDaemon.isStandby();
+	}
+
+	@Override
+	public long getReplicationLag() {
+		final ReplicationSource source = this.jmatcherDaemon.getReplicationSource();
+		return (source == null) ? -1 : source.getLag();
+	}
+
+	@Override
+	public long getReplicationLagMillis() {
+		if (this.jmatcherDaemon.isStandby()) {
+			return this.jmatcherDaemon.getReplicationStandby().getLagMillis();
+		}
+		final ReplicationSource source = this.jmatcherDaemon.getReplicationSource();
+		return (source == null) ? -1 : source.getLagMillis();
+	}
+
+	@Override
+	public int getReplicatedEntryCount() {
+		if (!this.jmatcherDaemon.isStandby()) {
+			return -1;
+		}
+		return this.jmatcherDaemon.getReplicationStandby().getNumberOfEntries();
+	}
+
+	private static int getQueueSize(ExecutorService executor) {
+		if (executor instanceof ThreadPoolExecutor) {
+			return ((ThreadPoolExecutor) executor).getQueue().size();
+		}
+		return -1;
+	}
+
+	private static int getActiveCount(ExecutorService executor) {
+		if (executor instanceof ThreadPoolExecutor) {
+			return ((ThreadPoolExecutor) executor).getActiveCount();
+		}
+		return -1;
+	}
+
+	private static int getPoolSize(ExecutorService executor) {
+		if (executor instanceof ThreadPoolExecutor) {
+			return ((ThreadPoolExecutor) executor).getPoolSize();
+		}
+		return -1;
+	}
+}
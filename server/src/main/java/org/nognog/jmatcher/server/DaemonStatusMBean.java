@@ -0,0 +1,184 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+/**
+ * The status of a running daemon which is exposed through JMX as
+ * <code>org.nognog.jmatcher:type=Daemon</code>. The counters count from the
+ * start of the daemon, and the other values are read when they are asked.
+ * 
+ * @author agent 2026/10/17
+ */
+public interface DaemonStatusMBean {
+	/**
+	 * @return the number of pre-entries which have been put
+	 */
+	long getPreEntryCount();
+
+	/**
+	 * @return the number of pre-entries which have been enabled
+	 */
+	long getEnabledEntryCount();
+
+	/**
+	 * @return the number of pre-entries which have expired
+	 */
+	long getExpiredEntryCount();
+
+	/**
+	 * @return the number of inviters which have been refused because the
+	 *         daemon was full
+	 */
+	long getRejectedEntryCount();
+
+	/**
+	 * @return the number of ConnectionRequests
+	 */
+	long getConnectionRequestCount();
+
+	/**
+	 * @return the number of ConnectionRequests which have been matched
+	 */
+	long getMatchCount();
+
+	/**
+	 * @return the number of ConnectionRequests which have timed out
+	 */
+	long getTimedOutRequestCount();
+
+	/**
+	 * @return the number of UDP requests which have been shed
+	 */
+	long getRejectedRequestCount();
+
+	/**
+	 * @return the number of UDP requests which have been forwarded to the
+	 *         owners of their keys in the cluster
+	 */
+	long getForwardedRequestCount();
+
+	/**
+	 * @return the number of UDP datagrams which have been dropped because they
+	 *         weren't valid requests
+	 */
+	long getInvalidRequestCount();
+
+	/**
+	 * @return the number of UDP requests which have been refused by the rate
+	 *         limit of their source or the cap of the connectors of their key
+	 */
+	long getThrottledRequestCount();
+
+	/**
+	 * @return the number of retransmitted ConnectionRequests which have joined
+	 *         or replayed their originals
+	 */
+	long getDuplicateRequestCount();
+
+	/**
+	 * @return the number of inviters which have been registered by
+	 *         LeaseRequests
+	 */
+	long getGrantedLeaseCount();
+
+	/**
+	 * @return the number of leases which have expired because their inviters
+	 *         stopped renewing them
+	 */
+	long getExpiredLeaseCount();
+
+	/**
+	 * @return the number of entry channels which have been closed because
+	 *         their inviters were silent for the idle timeout
+	 */
+	long getReclaimedEntryCount();
+
+	/**
+	 * @return the number of entries in the matching table
+	 */
+	int getMatchingTableSize();
+
+	/**
+	 * @return the capacity of the matching table
+	 */
+	int getMatchingTableCapacity();
+
+	/**
+	 * @return the number of ConnectionRequests which are waiting for their
+	 *         inviters
+	 */
+	long getWaitingRequestCount();
+
+	/**
+	 * @return the number of accepted inviters which wait for a TCP handler,
+	 *         or -1 if the executor doesn't tell it
+	 */
+	int getTCPQueueSize();
+
+	/**
+	 * @return the number of running TCP handlers, or -1 if the executor
+	 *         doesn't tell it
+	 */
+	int getTCPActiveHandlers();
+
+	/**
+	 * @return the number of threads of the TCP handlers, or -1 if the
+	 *         executor doesn't tell it
+	 */
+	int getTCPHandlerThreads();
+
+	/**
+	 * @return the number of UDP requests which wait for a handler, or -1 if
+	 *         the executor doesn't tell it
+	 */
+	int getUDPQueueSize();
+
+	/**
+	 * @return the number of running UDP handlers, or -1 if the executor
+	 *         doesn't tell it
+	 */
+	int getUDPActiveHandlers();
+
+	/**
+	 * @return the number of threads of the UDP handlers, or -1 if the
+	 *         executor doesn't tell it
+	 */
+	int getUDPHandlerThreads();
+
+	/**
+	 * @return true if the daemon is a standby which hasn't taken over its
+	 *         primary
+	 */
+	boolean isStandby();
+
+	/**
+	 * @return the number of changes of the matching table which the standby
+	 *         hasn't applied, or -1 if no standby is connected
+	 */
+	long getReplicationLag();
+
+	/**
+	 * @return on a primary, the time since the oldest change which the standby
+	 *         hasn't applied [msec]. On a standby, the age of the last changes
+	 *         when the primary sent them [msec]. -1 if they aren't replicated.
+	 */
+	long getReplicationLagMillis();
+
+	/**
+	 * @return the number of the entries which a standby holds, or -1 if the
+	 *         daemon isn't a standby
+	 */
+	int getReplicatedEntryCount();
+}
@@ -0,0 +1,90 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A pool of direct buffers of the same size. A buffer is taken for a send and
+ * put back after it, so that a datagram is sent from native memory without a
+ * temporary copy and without a new buffer.
+ * 
+ * @author agent 2026/10/17
+ */
+public class DirectBufferPool {
+
+	private final int bufferSize;
+	private final ByteBuffer[] buffers;
+	private final ReentrantLock lock = new ReentrantLock();
+	private int count; // guarded by lock
+
+	/**
+	 * @param bufferSize
+	 * @param capacity
+	 *            the maximum number of the buffers which are kept
+	 */
+	public DirectBufferPool(int bufferSize, int capacity) {
+		if (bufferSize <= 0 || capacity <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.bufferSize = bufferSize;
+		this.buffers = new ByteBuffer[capacity];
+	}
+
+	/**
+	 * @return a cleared buffer, which must be given back by
+	 *         {@link #release(ByteBuffer)}
+	 */
+	public ByteBuffer acquire() {
+		this.lock.lock();
+		try {
+			if (this.count > 0) {
+				this.count--;
+				final ByteBuffer buffer = this.buffers[this.count];
+				this.buffers[this.count] = null;
+				return buffer;
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		// the pool grows to the number of the threads which send at once
+		return ByteBuffer.allocateDirect(this.bufferSize);
+	}
+
+	/**
+	 * @param buffer
+	 *            a buffer of {@link #acquire()}
+	 */
+	public void release(ByteBuffer buffer) {
+		buffer.clear();
+		this.lock.lock();
+		try {
+			if (this.count < this.buffers.length) {
+				this.buffers[this.count] = buffer;
+				this.count++;
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return size of the buffers
+	 */
+	public int getBufferSize() {
+		return this.bufferSize;
+	}
+}
@@ -0,0 +1,118 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.nognog.jmatcher.Host;
+import org.nognog.jmatcher.SpecialHostAddress;
+import org.nognog.jmatcher.udp.UDPProtocol;
+import org.nognog.jmatcher.udp.response.ConnectionResponse;
+import org.nognog.jmatcher.udp.response.UDPResponseSerializer;
+
+/**
+ * A ConnectionResponse which has been serialized in both {@link UDPProtocol}s.
+ * The response of a registered entry is made once when it is enabled, so the
+ * response to each of its connectors is a copy of bytes.
+ * 
+ * @author agent 2026/10/17
+ */
+public final class EncodedResponse {
+
+	/**
+	 * the response which tells that there is no such entry
+	 */
+	public static final EncodedResponse NO_HOST = new EncodedResponse(new ConnectionResponse(null), null, null);
+
+	private final Host host;
+	private final byte[] binary;
+	private final byte[] text;
+	private final InetAddress entryAddress;
+	private final EncodedResponse internalNetworkResponse;
+
+	private EncodedResponse(ConnectionResponse response, InetAddress entryAddress, EncodedResponse internalNetworkResponse) {
+		this.host = response.getHost();
+		final ByteBuffer buffer = ByteBuffer.allocate(UDPResponseSerializer.MAX_BINARY_RESPONSE_SIZE);
+		UDPResponseSerializer.getInstance().serialize(response, buffer);
+		buffer.flip();
+		this.binary = new byte[buffer.remaining()];
+		buffer.get(this.binary);
+		this.text = UDPResponseSerializer.getInstance().serialize(response).getBytes(StandardCharsets.UTF_8);
+		this.entryAddress = entryAddress;
+		this.internalNetworkResponse = internalNetworkResponse;
+	}
+
+	/**
+	 * @param address
+	 *            address of the entry
+	 * @param port
+	 *            port of the entry
+	 * @return the response which tells the entry to its connectors
+	 */
+	public static EncodedResponse of(InetAddress address, int port) {
+		final EncodedResponse internalNetworkResponse = new EncodedResponse(new ConnectionResponse(new Host(SpecialHostAddress.ON_INTERNAL_NETWORK_HOST.getAddress(), port)), null, null);
+		return new EncodedResponse(new ConnectionResponse(new Host(address.getHostAddress(), port)), address, internalNetworkResponse);
+	}
+
+	/**
+	 * @param requesterAddress
+	 * @param enabledToReturnSpecialInternalAddress
+	 * @return the response which tells this entry to the requester, which is
+	 *         on the internal network of the entry if they share the address
+	 */
+	public EncodedResponse forRequester(InetAddress requesterAddress, boolean enabledToReturnSpecialInternalAddress) {
+		if (enabledToReturnSpecialInternalAddress && this.internalNetworkResponse != null && this.entryAddress.equals(requesterAddress)) {
+			return this.internalNetworkResponse;
+		}
+		return this;
+	}
+
+	/**
+	 * @return true if this is the response to a requester on the internal
+	 *         network of the entry
+	 */
+	public boolean isInternalNetworkResponse() {
+		return this.host != null && this.entryAddress == null;
+	}
+
+	/**
+	 * @return the host which is told, or null
+	 */
+	public Host getHost() {
+		return this.host;
+	}
+
+	/**
+	 * @param protocol
+	 * @return size of the response in the protocol
+	 */
+	public int size(UDPProtocol protocol) {
+		return (protocol == UDPProtocol.BINARY) ? this.binary.length : this.text.length;
+	}
+
+	/**
+	 * @param protocol
+	 * @param buffer
+	 *            which the response is put to
+	 * @throws java.nio.BufferOverflowException
+	 *             thrown if the buffer has less than {@link #size(UDPProtocol)}
+	 *             bytes remaining
+	 */
+	public void put(UDPProtocol protocol, ByteBuffer buffer) {
+		buffer.put((protocol == UDPProtocol.BINARY) ? this.binary : this.text);
+	}
+}
@@ -0,0 +1,319 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A hashed timing wheel. One thread advances the wheel every tick and runs the
+ * tasks which have expired in the bucket of the tick, so scheduling and
+ * cancelling cost O(1) and a pending deadline costs no thread. Tasks are run
+ * on the thread of the wheel, so they must not block.
+ * 
+ * @author agent 2026/10/17
+ */
+public class HashedTimingWheel {
+
+	/**
+	 * The default duration of a tick [msec]
+	 */
+	public static final long DEFAULT_TICK_DURATION = 100;
+
+	/**
+	 * The default number of buckets
+	 */
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+
+	private final long tickDuration; // [nsec]
+	private final Bucket[] wheel;
+	private final int mask;
+	private final Queue<Timeout> newTimeouts;
+	private final Queue<Timeout> cancelledTimeouts;
+	private final Thread workerThread;
+	private volatile boolean stopped;
+	private long startTime;
+	private long tick;
+
+	private static Logger logger = LogManager.getLogger(HashedTimingWheel.class);
+
+	/**
+	 * @param name
+	 *            name of the thread
+	 */
+	public HashedTimingWheel(String name) {
+		this(name, DEFAULT_TICK_DURATION, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+	}
+
+	/**
+	 * @param name
+	 *            name of the thread
+	 * @param tickDuration
+	 * @param unit
+	 *            unit of tickDuration
+	 * @param wheelSize
+	 *            number of buckets, which is rounded up to a power of two
+	 */
+	public HashedTimingWheel(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+		if (tickDuration <= 0 || wheelSize <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.tickDuration = unit.toNanos(tickDuration);
+		int normalizedWheelSize = 1;
+		while (normalizedWheelSize < wheelSize) {
+			normalizedWheelSize <<= 1;
+		}
+		this.wheel = new Bucket[normalizedWheelSize];
+		for (int i = 0; i < this.wheel.length; i++) {
+			this.wheel[i] = new Bucket();
+		}
+		this.mask = normalizedWheelSize - 1;
+		this.newTimeouts = new ConcurrentLinkedQueue<>();
+		this.cancelledTimeouts = new ConcurrentLinkedQueue<>();
+		this.workerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				HashedTimingWheel.this.work();
+			}
+		}, name);
+		this.workerThread.setDaemon(true);
+	}
+
+	/**
+	 * start the thread of this wheel
+	 */
+	public void start() {
+		this.startTime = System.nanoTime();
+		this.workerThread.start();
+	}
+
+	/**
+	 * Stop the thread of this wheel. Tasks which haven't expired are
+	 * discarded.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void stop() throws InterruptedException {
+		this.stopped = true;
+		this.workerThread.interrupt();
+		this.workerThread.join();
+	}
+
+	/**
+	 * @param task
+	 *            it is run on the thread of this wheel when the delay has
+	 *            passed
+	 * @param delay
+	 * @param unit
+	 *            unit of delay
+	 * @return handle of the task
+	 */
+	public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+		if (task == null) {
+			throw new IllegalArgumentException();
+		}
+		final Timeout timeout = new Timeout(this, task, System.nanoTime() + unit.toNanos(delay));
+		this.newTimeouts.add(timeout);
+		return timeout;
+	}
+
+	private void work() {
+		while (!this.stopped) {
+			final long deadline = this.waitForNextTick();
+			if (deadline < 0) {
+				return;
+			}
+			this.removeCancelledTimeouts();
+			this.transferNewTimeouts();
+			this.wheel[(int) (this.tick & this.mask)].expireTimeouts(deadline);
+			this.tick++;
+		}
+	}
+
+	/**
+	 * @return time of the tick in the clock of System.nanoTime(), or -1 if
+	 *         this wheel is stopped
+	 */
+	private long waitForNextTick() {
+		final long deadline = this.startTime + this.tickDuration * (this.tick + 1);
+		while (true) {
+			final long sleepTime = deadline - System.nanoTime();
+			if (sleepTime <= 0) {
+				return deadline;
+			}
+			try {
+				TimeUnit.NANOSECONDS.sleep(sleepTime);
+			} catch (InterruptedException e) {
+				if (this.stopped) {
+					return -1;
+				}
+			}
+		}
+	}
+
+	private void transferNewTimeouts() {
+		Timeout timeout;
+		while ((timeout = this.newTimeouts.poll()) != null) {
+			if (timeout.state.get() == Timeout.CANCELLED) {
+				continue;
+			}
+			final long calculatedTick = (timeout.deadline - this.startTime + this.tickDuration - 1) / this.tickDuration;
+			// a timeout which should have expired already is put in this tick
+			final long targetTick = Math.max(calculatedTick, this.tick);
+			timeout.remainingRounds = (targetTick - this.tick) / this.wheel.length;
+			this.wheel[(int) (targetTick & this.mask)].add(timeout);
+		}
+	}
+
+	private void removeCancelledTimeouts() {
+		Timeout timeout;
+		while ((timeout = this.cancelledTimeouts.poll()) != null) {
+			if (timeout.bucket != null) {
+				timeout.bucket.remove(timeout);
+			}
+		}
+	}
+
+	/**
+	 * Handle of a scheduled task
+	 */
+	public static final class Timeout {
+		static final int INIT = 0;
+		static final int CANCELLED = 1;
+		static final int EXPIRED = 2;
+
+		private final HashedTimingWheel timingWheel;
+		private final Runnable task;
+		private final long deadline;
+		private final AtomicInteger state;
+
+		// these fields are touched by the thread of the wheel only
+		long remainingRounds;
+		Bucket bucket;
+		Timeout next;
+		Timeout prev;
+
+		Timeout(HashedTimingWheel timingWheel, Runnable task, long deadline) {
+			this.timingWheel = timingWheel;
+			this.task = task;
+			this.deadline = deadline;
+			this.state = new AtomicInteger(INIT);
+		}
+
+		/**
+		 * @return true if the task is cancelled by this call, or false if it
+		 *         has already expired or been cancelled
+		 */
+		public boolean cancel() {
+			if (!this.state.compareAndSet(INIT, CANCELLED)) {
+				return false;
+			}
+			this.timingWheel.cancelledTimeouts.add(this);
+			return true;
+		}
+
+		/**
+		 * @return true if the task has been cancelled
+		 */
+		public boolean isCancelled() {
+			return this.state.get() == CANCELLED;
+		}
+
+		/**
+		 * @return true if the task has been run
+		 */
+		public boolean isExpired() {
+			return this.state.get() == EXPIRED;
+		}
+
+		void expire() {
+			if (!this.state.compareAndSet(INIT, EXPIRED)) {
+				return;
+			}
+			try {
+				this.task.run();
+			} catch (Throwable t) {
+				logger.error("a task of the timing wheel threw an exception", t); //$NON-NLS-1$
+			}
+		}
+	}
+
+	/**
+	 * doubly linked list of timeouts
+	 */
+	private static final class Bucket {
+		private Timeout head;
+		private Timeout tail;
+
+		void add(Timeout timeout) {
+			timeout.bucket = this;
+			if (this.head == null) {
+				this.head = this.tail = timeout;
+			} else {
+				this.tail.next = timeout;
+				timeout.prev = this.tail;
+				this.tail = timeout;
+			}
+		}
+
+		void expireTimeouts(long deadline) {
+			Timeout timeout = this.head;
+			while (timeout != null) {
+				final Timeout next = timeout.next;
+				if (timeout.remainingRounds <= 0) {
+					this.remove(timeout);
+					if (timeout.deadline <= deadline) {
+						timeout.expire();
+					} else {
+						// it can't happen unless the clock goes wrong
+						throw new IllegalStateException("timeout.deadline > deadline"); //$NON-NLS-1$
+					}
+				} else if (timeout.isCancelled()) {
+					this.remove(timeout);
+				} else {
+					timeout.remainingRounds--;
+				}
+				timeout = next;
+			}
+		}
+
+		void remove(Timeout timeout) {
+			if (timeout.bucket != this) {
+				return;
+			}
+			final Timeout next = timeout.next;
+			if (timeout.prev != null) {
+				timeout.prev.next = next;
+			}
+			if (timeout.next != null) {
+				timeout.next.prev = timeout.prev;
+			}
+			if (timeout == this.head) {
+				this.head = next;
+			}
+			if (timeout == this.tail) {
+				this.tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+		}
+	}
+}
@@ -0,0 +1,34 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+/**
+ * How a front end of the daemon handles its sockets.
+ * 
+ * @author agent 2026/10/17
+ */
+public enum IOMode {
+	/**
+	 * a blocking socket is read by one thread, and every request is handed to
+	 * the executor of the daemon
+	 */
+	BLOCKING,
+
+	/**
+	 * a non-blocking channel is multiplexed by a selector on a small fixed set
+	 * of event-loop threads
+	 */
+	REACTOR,
+}
@@ -0,0 +1,105 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+
+package org.nognog.jmatcher.server;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Watches the entry channel of a registered inviter, and closes it when the
+ * inviter has sent nothing for {@link JMatcherDaemon#getEntryIdleTimeout()},
+ * so that a half-open connection of an inviter which has vanished without a
+ * FIN doesn't hold its key. The inviters send CHECK_CONNECTION_REQUESTs as
+ * heartbeats. It is run by the timing wheel of the daemon instead of a thread
+ * of each channel: a request only records its time, and the task reschedules
+ * itself until the channel has been idle for the whole timeout.
+ * 
+ * @author agent 2026/10/17
+ */
+class IdleEntryMonitor implements Runnable {
+	private final JMatcherDaemon jmatcherDaemon;
+	private final int idleTimeout;
+	private final Runnable closer;
+	private volatile int keyNumber;
+	private volatile long activeTime;
+	private volatile HashedTimingWheel.Timeout timeout;
+	private volatile boolean stopped;
+
+	private static Logger logger = LogManager.getLogger(IdleEntryMonitor.class);
+
+	/**
+	 * @param jmatcherDaemon
+	 * @param closer
+	 *            closes the channel and removes its entry. It is run on the
+	 *            thread of the timing wheel, so it must not block.
+	 */
+	IdleEntryMonitor(JMatcherDaemon jmatcherDaemon, Runnable closer) {
+		this.jmatcherDaemon = jmatcherDaemon;
+		this.idleTimeout = jmatcherDaemon.getEntryIdleTimeout();
+		this.closer = closer;
+	}
+
+	/**
+	 * Start watching the channel. It does nothing if the idle timeout of the
+	 * daemon is 0.
+	 * 
+	 * @param entryKeyNumber
+	 *            key of the registered entry
+	 */
+	void start(int entryKeyNumber) {
+		if (this.idleTimeout <= 0) {
+			return;
+		}
+		this.keyNumber = entryKeyNumber;
+		this.activeTime = System.nanoTime();
+		this.timeout = this.jmatcherDaemon.getTimingWheel().newTimeout(this, this.idleTimeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Record that the inviter has sent a request
+	 */
+	void touch() {
+		this.activeTime = System.nanoTime();
+	}
+
+	/**
+	 * Stop watching the channel because it is closed
+	 */
+	void stop() {
+		this.stopped = true;
+		final HashedTimingWheel.Timeout currentTimeout = this.timeout;
+		if (currentTimeout != null) {
+			currentTimeout.cancel();
+		}
+	}
+
+	@Override
+	public void run() {
+		if (this.stopped) {
+			return;
+		}
+		final long remainingTime = this.idleTimeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.activeTime);
+		if (remainingTime > 0) {
+			this.timeout = this.jmatcherDaemon.getTimingWheel().newTimeout(this, remainingTime, TimeUnit.MILLISECONDS);
+			return;
+		}
+		this.jmatcherDaemon.getMetrics().entryReclaimed();
+		logger.info(new StringBuilder().append("Reclaimed idle entry : ").append(this.keyNumber)); //$NON-NLS-1$
+		this.closer.run();
+	}
+}
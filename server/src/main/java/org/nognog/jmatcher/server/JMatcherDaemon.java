@@ -14,17 +14,28 @@
 
 package org.nognog.jmatcher.server;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.apache.commons.daemon.Daemon;
 import org.apache.commons.daemon.DaemonContext;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.nognog.jmatcher.Host;
+import org.nognog.jmatcher.JMatcher;
 
 /**
  * @author goshi 2015/10/28
@@ -46,56 +57,660 @@ public class JMatcherDaemon implements Daemon {
 	 */
 	public static final int UDP_BUFFER_SIZE = 12; // should be 16?
 
+	/**
+	 * Size of the direct buffers which the UDP responses are sent from
+	 */
+	public static final int RESPONSE_BUFFER_SIZE = 512;
+
+	/**
+	 * Name of the daemon argument which selects the {@link IOMode} of the UDP
+	 * front end (e.g. udpMode=reactor). The default is
+	 * {@link IOMode#BLOCKING}.
+	 */
+	public static final String UDP_MODE_ARGUMENT = "udpMode"; //$NON-NLS-1$
+
+	/**
+	 * Name of the daemon argument which selects the {@link IOMode} of the TCP
+	 * front end (e.g. tcpMode=reactor). The default is
+	 * {@link IOMode#BLOCKING}.
+	 */
+	public static final String TCP_MODE_ARGUMENT = "tcpMode"; //$NON-NLS-1$
+
+	/**
+	 * Name of the daemon argument which is the number of selector threads of
+	 * the TCP front end in {@link IOMode#REACTOR}
+	 */
+	public static final String TCP_EVENT_LOOPS_ARGUMENT = "tcpEventLoops"; //$NON-NLS-1$
+
+	/**
+	 * The default number of selector threads of the TCP front end
+	 */
+	public static final int DEFAULT_TCP_EVENT_LOOPS = 2;
+
+	/**
+	 * Name of the daemon argument which is the number of receive loops of the
+	 * UDP front end in {@link IOMode#REACTOR}
+	 */
+	public static final String UDP_REACTORS_ARGUMENT = "udpReactors"; //$NON-NLS-1$
+
+	/**
+	 * The default number of receive loops of the UDP front end
+	 */
+	public static final int DEFAULT_UDP_REACTORS = 1;
+
+	/**
+	 * Name of the daemon argument which selects the {@link ThreadMode} of the
+	 * handlers (e.g. handlerThreads=virtual). The default is
+	 * {@link ThreadMode#PLATFORM}, which is also used if the runtime doesn't
+	 * support virtual threads.
+	 */
+	public static final String HANDLER_THREADS_ARGUMENT = "handlerThreads"; //$NON-NLS-1$
+
+	/**
+	 * Name of the daemon argument which is the maximum number of TCP handlers
+	 * which run at once in {@link IOMode#BLOCKING}. A registered inviter
+	 * holds its handler, so it also bounds the registered inviters. They are
+	 * unbounded if it isn't given.
+	 */
+	public static final String TCP_HANDLERS_ARGUMENT = "tcpHandlers"; //$NON-NLS-1$
+
+	/**
+	 * Name of the daemon argument which is the maximum number of accepted
+	 * inviters which wait for a TCP handler. An inviter which comes when it
+	 * is full is disconnected at once.
+	 */
+	public static final String TCP_QUEUE_ARGUMENT = "tcpQueue"; //$NON-NLS-1$
+
+	/**
+	 * The default of {@link #TCP_QUEUE_ARGUMENT}
+	 */
+	public static final int DEFAULT_TCP_QUEUE = 64;
+
+	/**
+	 * Name of the daemon argument which is the maximum number of UDP handlers
+	 * which run at once in {@link IOMode#BLOCKING}. They are unbounded if it
+	 * isn't given.
+	 */
+	public static final String UDP_HANDLERS_ARGUMENT = "udpHandlers"; //$NON-NLS-1$
+
+	/**
+	 * Name of the daemon argument which is the maximum number of UDP requests
+	 * which wait for a handler. A ConnectionRequest which comes when it is
+	 * full is answered with a failure at once.
+	 */
+	public static final String UDP_QUEUE_ARGUMENT = "udpQueue"; //$NON-NLS-1$
+
+	/**
+	 * The default of {@link #UDP_QUEUE_ARGUMENT}
+	 */
+	public static final int DEFAULT_UDP_QUEUE = 1024;
+
+	/**
+	 * Name of the daemon argument which is the sampling interval of the
+	 * {@link AccessLog} (e.g. accessLogSampling=1 records every request)
+	 */
+	public static final String ACCESS_LOG_SAMPLING_ARGUMENT = "accessLogSampling"; //$NON-NLS-1$
+
+	/**
+	 * The default of {@link #ACCESS_LOG_SAMPLING_ARGUMENT}
+	 */
+	public static final int DEFAULT_ACCESS_LOG_SAMPLING = 100;
+
+	/**
+	 * Name of the daemon argument which is the number of UDP requests per
+	 * second which a source address can send. They aren't limited if it isn't
+	 * given. See {@link UDPRequestFilter}.
+	 */
+	public static final String UDP_RATE_LIMIT_ARGUMENT = "udpRateLimit"; //$NON-NLS-1$
+
+	/**
+	 * Name of the daemon argument which is the number of UDP requests which a
+	 * source address can send at once under {@link #UDP_RATE_LIMIT_ARGUMENT}
+	 */
+	public static final String UDP_RATE_BURST_ARGUMENT = "udpRateBurst"; //$NON-NLS-1$
+
+	/**
+	 * The default of {@link #UDP_RATE_BURST_ARGUMENT}
+	 */
+	public static final int DEFAULT_UDP_RATE_BURST = 20;
+
+	/**
+	 * Name of the daemon argument which is the maximum number of
+	 * ConnectionRequests which wait for one entry at once
+	 */
+	public static final String MAX_WAITING_REQUESTS_ARGUMENT = "maxWaitingRequests"; //$NON-NLS-1$
+
+	/**
+	 * The default of {@link #MAX_WAITING_REQUESTS_ARGUMENT}
+	 */
+	public static final int DEFAULT_MAX_WAITING_REQUESTS = 64;
+
+	/**
+	 * Name of the daemon argument which is the time for which the response of
+	 * a ConnectionRequest is replayed to its retransmissions [msec]. They
+	 * aren't deduplicated if it is 0. See {@link RequestDedupCache}.
+	 */
+	public static final String REQUEST_DEDUP_TIME_ARGUMENT = "requestDedupTime"; //$NON-NLS-1$
+
+	/**
+	 * The default of {@link #REQUEST_DEDUP_TIME_ARGUMENT}
+	 */
+	public static final int DEFAULT_REQUEST_DEDUP_TIME = 2000;
+
+	/**
+	 * Name of the daemon argument which is the time for which an inviter which
+	 * has registered by a LeaseRequest keeps its key without renewing it
+	 * [msec]. The inviters can't register by LeaseRequests if it is 0. See
+	 * {@link UDPLease}.
+	 */
+	public static final String LEASE_TIME_ARGUMENT = "leaseTime"; //$NON-NLS-1$
+
+	/**
+	 * The default of {@link #LEASE_TIME_ARGUMENT}, so that the leases are
+	 * opted in
+	 */
+	public static final int DEFAULT_LEASE_TIME = 0;
+
+	/**
+	 * Name of the daemon argument which is the maximum number of the leases
+	 * which an address holds at once. See {@link UDPLeaseRegistry}.
+	 */
+	public static final String MAX_LEASES_PER_ADDRESS_ARGUMENT = "maxLeasesPerAddress"; //$NON-NLS-1$
+
+	/**
+	 * The default of {@link #MAX_LEASES_PER_ADDRESS_ARGUMENT}
+	 */
+	public static final int DEFAULT_MAX_LEASES_PER_ADDRESS = 16;
+
+	/**
+	 * Name of the daemon argument which is the time for which a registered
+	 * inviter may send nothing on its entry channel [msec]. The channel is
+	 * closed and its key is reclaimed after it, so the inviters send
+	 * CHECK_CONNECTION_REQUESTs as heartbeats. Only the channels which have
+	 * negotiated
+	 * {@link org.nognog.jmatcher.tcp.TCPFrameSerializer#HEARTBEAT_VERSION} are
+	 * watched, because the older inviters stop asking the server when their
+	 * connecting hosts are full. The channels are never closed for idleness if
+	 * it is 0. See {@link IdleEntryMonitor}.
+	 */
+	public static final String ENTRY_IDLE_TIMEOUT_ARGUMENT = "entryIdleTimeout"; //$NON-NLS-1$
+
+	/**
+	 * The default of {@link #ENTRY_IDLE_TIMEOUT_ARGUMENT}
+	 */
+	public static final int DEFAULT_ENTRY_IDLE_TIMEOUT = 60000;
+
+	/**
+	 * Name of the daemon argument which is the TCP and UDP port of the
+	 * daemon. The default is {@link JMatcher#PORT}.
+	 */
+	public static final String PORT_ARGUMENT = "port"; //$NON-NLS-1$
+
+	/**
+	 * Name of the daemon argument which lists the cluster ports of all the
+	 * nodes of a cluster in the same order on every node (e.g.
+	 * clusterNodes=10.0.0.1:11610,10.0.0.2:11610). The daemon runs alone if it
+	 * isn't given. See {@link ClusterLink}.
+	 */
+	public static final String CLUSTER_NODES_ARGUMENT = "clusterNodes"; //$NON-NLS-1$
+
+	/**
+	 * Name of the daemon argument which is the index of this daemon in
+	 * {@link #CLUSTER_NODES_ARGUMENT}
+	 */
+	public static final String CLUSTER_NODE_ARGUMENT = "clusterNode"; //$NON-NLS-1$
+
+	/**
+	 * Name of the daemon argument which is the directory of the
+	 * {@link MatchingTableJournal}. The registered entries are restored from
+	 * it when the daemon starts, and they aren't journaled if it isn't given.
+	 */
+	public static final String JOURNAL_ARGUMENT = "journal"; //$NON-NLS-1$
+
+	/**
+	 * Name of the daemon argument which is the interval of the snapshots of
+	 * the journal [msec]
+	 */
+	public static final String SNAPSHOT_INTERVAL_ARGUMENT = "snapshotInterval"; //$NON-NLS-1$
+
+	/**
+	 * The default of {@link #SNAPSHOT_INTERVAL_ARGUMENT}
+	 */
+	public static final int DEFAULT_SNAPSHOT_INTERVAL = 60000;
+
+	/**
+	 * Name of the daemon argument which is the time for which a restored entry
+	 * waits for its inviter to re-attach [msec]
+	 */
+	public static final String REATTACH_TIME_ARGUMENT = "reattachTime"; //$NON-NLS-1$
+
+	/**
+	 * The default of {@link #REATTACH_TIME_ARGUMENT}
+	 */
+	public static final int DEFAULT_REATTACH_TIME = 30000;
+
+	/**
+	 * Name of the daemon argument which is the port on which the daemon
+	 * replicates its matching table to a standby. See
+	 * {@link ReplicationSource}.
+	 */
+	public static final String REPLICATION_PORT_ARGUMENT = "replicationPort"; //$NON-NLS-1$
+
+	/**
+	 * Name of the daemon argument which is the replication port of the
+	 * primary (e.g. standbyOf=10.0.0.1:11620). If it is given, the daemon runs
+	 * as a standby, and takes over the port of the primary when it is lost.
+	 * See {@link ReplicationStandby}.
+	 */
+	public static final String STANDBY_OF_ARGUMENT = "standbyOf"; //$NON-NLS-1$
+
+	/**
+	 * Name of the daemon argument which is the time without a word from the
+	 * primary after which the standby takes over [msec]
+	 */
+	public static final String FAILOVER_TIME_ARGUMENT = "failoverTime"; //$NON-NLS-1$
+
+	/**
+	 * JMX name of the {@link DaemonStatusMBean}
+	 */
+	public static final String STATUS_MBEAN_NAME = "org.nognog.jmatcher:type=Daemon"; //$NON-NLS-1$
+
+	/**
+	 * JMX name of the {@link LatencyHistogramMBean} from a pre-entry to its
+	 * EnableEntryRequest
+	 */
+	public static final String ENABLE_LATENCY_MBEAN_NAME = "org.nognog.jmatcher:type=Latency,name=PreEntryToEnable"; //$NON-NLS-1$
+
+	/**
+	 * JMX name of the {@link LatencyHistogramMBean} from a ConnectionRequest
+	 * to its release
+	 */
+	public static final String MATCH_LATENCY_MBEAN_NAME = "org.nognog.jmatcher:type=Latency,name=RequestToRelease"; //$NON-NLS-1$
+
 	private ExecutorService executorService;
+	private ExecutorService tcpExecutorService;
+	private ExecutorService udpExecutorService;
+	private HashedTimingWheel timingWheel;
+	private AccessLog accessLog;
+	private UDPRequestFilter udpRequestFilter;
+	private RequestDedupCache requestDedupCache;
+	private UDPLeaseRegistry leaseRegistry;
+	private DirectBufferPool responseBufferPool;
+	private DaemonMetrics metrics;
+	private final List<ObjectName> registeredMBeanNames = new ArrayList<>();
 
-	private ConcurrentMap<Integer, Host> matchingMap;
-	private ConcurrentMap<Integer, CopyOnWriteArraySet<RequestingConnectionHostHandler>> waitingForSyncHandlersMap;
+	private MatchingTable matchingTable;
+	private MatchingTableJournal journal;
+	private int snapshotInterval;
+	private int reattachTime;
+	private int leaseTime;
+	private int entryIdleTimeout;
+	private ClusterLink clusterLink;
+	private int replicationPort;
+	private ReplicationSource replicationSource;
+	private ReplicationStandby replicationStandby;
+	private volatile boolean isStandby;
+	private int port;
 	private int matchingMapCapacity;
 	private int boundOfKeyNumber; // exclusive
 	private boolean enabledToReturnSpecialInternalAddress;
 
 	private Logger logger;
+	private IOMode udpMode;
+	private IOMode tcpMode;
+	private ThreadMode threadMode;
+	private int numberOfTCPEventLoops;
+	private int numberOfUDPReactors;
 	private TCPServerThread tcpServerThread;
+	private TCPReactor tcpReactor;
 	private UDPServerThread udpServerThread;
-	private boolean isStopping;
+	private UDPReactor[] udpReactors;
+	private volatile boolean isStopping;
 
 	@Override
 	public void init(DaemonContext context) throws Exception {
 		this.logger = LogManager.getLogger(JMatcherDaemon.class);
 		this.logger.info("initializing"); //$NON-NLS-1$
+		final DaemonArguments arguments = new DaemonArguments(context == null ? null : context.getArguments());
+		this.udpMode = arguments.getEnum(UDP_MODE_ARGUMENT, IOMode.class, IOMode.BLOCKING);
+		this.tcpMode = arguments.getEnum(TCP_MODE_ARGUMENT, IOMode.class, IOMode.BLOCKING);
+		this.port = arguments.getInt(PORT_ARGUMENT, JMatcher.PORT);
 
-		this.executorService = Executors.newCachedThreadPool();
-		this.matchingMap = new ConcurrentHashMap<>();
-		this.waitingForSyncHandlersMap = new ConcurrentHashMap<>();
+		this.threadMode = arguments.getEnum(HANDLER_THREADS_ARGUMENT, ThreadMode.class, ThreadMode.PLATFORM);
+		this.executorService = this.threadMode.newExecutorService();
+		if (this.executorService == null) {
+			this.logger.warn("virtual threads are not supported by this runtime, handlers run on platform threads"); //$NON-NLS-1$
+			this.threadMode = ThreadMode.PLATFORM;
+			this.executorService = this.threadMode.newExecutorService();
+		}
+		this.tcpExecutorService = this.createHandlerExecutorService(arguments, "jmatcher-tcp", TCP_HANDLERS_ARGUMENT, TCP_QUEUE_ARGUMENT, DEFAULT_TCP_QUEUE); //$NON-NLS-1$
+		this.udpExecutorService = this.createHandlerExecutorService(arguments, "jmatcher-udp", UDP_HANDLERS_ARGUMENT, UDP_QUEUE_ARGUMENT, DEFAULT_UDP_QUEUE); //$NON-NLS-1$
+		this.timingWheel = new HashedTimingWheel("jmatcher-timer"); //$NON-NLS-1$
+		this.accessLog = new AccessLog(arguments.getInt(ACCESS_LOG_SAMPLING_ARGUMENT, DEFAULT_ACCESS_LOG_SAMPLING));
+		this.metrics = new DaemonMetrics();
+		this.udpRequestFilter = new UDPRequestFilter(this.metrics, arguments.getInt(UDP_RATE_LIMIT_ARGUMENT, 0), arguments.getInt(UDP_RATE_BURST_ARGUMENT, DEFAULT_UDP_RATE_BURST),
+				UDPRequestFilter.DEFAULT_NUMBER_OF_BUCKETS);
+		this.requestDedupCache = new RequestDedupCache(arguments.getInt(REQUEST_DEDUP_TIME_ARGUMENT, DEFAULT_REQUEST_DEDUP_TIME), RequestDedupCache.DEFAULT_NUMBER_OF_SLOTS);
+		this.responseBufferPool = new DirectBufferPool(RESPONSE_BUFFER_SIZE, 256);
+		this.matchingTable = new MatchingTable(this.timingWheel, this.metrics);
+		this.matchingTable.setMaxWaitingRequests(arguments.getInt(MAX_WAITING_REQUESTS_ARGUMENT, DEFAULT_MAX_WAITING_REQUESTS));
 		this.matchingMapCapacity = DEFAULT_MATCHING_MAP_CAPACITY;
 		this.boundOfKeyNumber = DEFAULT_BOUND_OF_KEY_NUMBER;
+		final String clusterNodes = arguments.getString(CLUSTER_NODES_ARGUMENT, null);
+		if (clusterNodes != null) {
+			this.clusterLink = new ClusterLink(this, ClusterLink.parseNodes(clusterNodes), arguments.getInt(CLUSTER_NODE_ARGUMENT, -1));
+		}
+		this.matchingTable.setKeyAllocator(this.createKeyAllocator(this.boundOfKeyNumber, 0, new SecureRandom()));
+		final String journalDirectory = arguments.getString(JOURNAL_ARGUMENT, null);
+		if (journalDirectory != null) {
+			this.journal = new MatchingTableJournal(new File(journalDirectory));
+			this.snapshotInterval = arguments.getInt(SNAPSHOT_INTERVAL_ARGUMENT, DEFAULT_SNAPSHOT_INTERVAL);
+		}
+		this.reattachTime = arguments.getInt(REATTACH_TIME_ARGUMENT, DEFAULT_REATTACH_TIME);
+		this.leaseTime = arguments.getInt(LEASE_TIME_ARGUMENT, DEFAULT_LEASE_TIME);
+		this.leaseRegistry = new UDPLeaseRegistry(arguments.getInt(MAX_LEASES_PER_ADDRESS_ARGUMENT, DEFAULT_MAX_LEASES_PER_ADDRESS));
+		this.entryIdleTimeout = arguments.getInt(ENTRY_IDLE_TIMEOUT_ARGUMENT, DEFAULT_ENTRY_IDLE_TIMEOUT);
 		this.setEnabledToReturnSpecialInternalAddress(true);
-		this.tcpServerThread = new TCPServerThread(this);
-		this.udpServerThread = new UDPServerThread(this);
-		this.logger.info("initialized"); //$NON-NLS-1$
+		this.numberOfTCPEventLoops = arguments.getInt(TCP_EVENT_LOOPS_ARGUMENT, DEFAULT_TCP_EVENT_LOOPS);
+		this.numberOfUDPReactors = arguments.getInt(UDP_REACTORS_ARGUMENT, DEFAULT_UDP_REACTORS);
+		this.replicationPort = arguments.getInt(REPLICATION_PORT_ARGUMENT, 0);
+		final String standbyOf = arguments.getString(STANDBY_OF_ARGUMENT, null);
+		if (standbyOf != null) {
+			if (this.clusterLink != null) {
+				throw new IllegalArgumentException(STANDBY_OF_ARGUMENT + " can't be given with " + CLUSTER_NODES_ARGUMENT); //$NON-NLS-1$
+			}
+			final InetSocketAddress[] primaryAddresses = ClusterLink.parseNodes(standbyOf);
+			if (primaryAddresses.length != 1) {
+				throw new IllegalArgumentException("invalid value of " + STANDBY_OF_ARGUMENT + " : " + standbyOf); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			final InetSocketAddress primaryAddress = primaryAddresses[0];
+			this.replicationStandby = new ReplicationStandby(this, primaryAddress, arguments.getInt(FAILOVER_TIME_ARGUMENT, ReplicationStandby.DEFAULT_FAILOVER_TIME));
+			this.isStandby = true;
+			this.logger.info("initialized as a standby of " + primaryAddress + " (port : " + this.port + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			return;
+		}
+		this.openFrontEnds();
+		if (this.replicationPort > 0) {
+			this.replicationSource = new ReplicationSource(this, this.replicationPort, ReplicationSource.DEFAULT_RING_SIZE);
+		}
+		this.logger.info("initialized (port : " + this.port + ", tcp : " + this.tcpMode + ", udp : " + this.udpMode + ", handlers : " + this.threadMode + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	}
+
+	/**
+	 * Bind the TCP and UDP front ends to the port
+	 */
+	private void openFrontEnds() throws IOException {
+		if (this.tcpMode == IOMode.REACTOR) {
+			this.tcpReactor = new TCPReactor(this, this.numberOfTCPEventLoops);
+		} else {
+			this.tcpServerThread = new TCPServerThread(this);
+		}
+		try {
+			if (this.udpMode == IOMode.REACTOR) {
+				this.udpReactors = UDPReactor.open(this, this.numberOfUDPReactors);
+			} else {
+				this.udpServerThread = new UDPServerThread(this);
+			}
+		} catch (IOException e) {
+			if (this.tcpReactor != null) {
+				this.tcpReactor.closeSocket();
+				this.tcpReactor = null;
+			} else {
+				this.tcpServerThread.closeSocket();
+				this.tcpServerThread = null;
+			}
+			throw e;
+		}
+	}
+
+	private void startFrontEnds() {
+		if (this.tcpReactor != null) {
+			this.tcpReactor.start();
+		} else {
+			this.tcpServerThread.start();
+		}
+		if (this.udpReactors != null) {
+			for (UDPReactor udpReactor : this.udpReactors) {
+				udpReactor.start();
+			}
+		} else {
+			this.udpServerThread.start();
+		}
+	}
+
+	/**
+	 * @return an allocator of the keys of this node
+	 */
+	private KeyAllocator createKeyAllocator(int bound, int numberOfAllocatedKeys, SecureRandom random) {
+		if (this.clusterLink != null) {
+			return new PartitionedKeyAllocator(bound, this.matchingMapCapacity, numberOfAllocatedKeys, KeyAllocator.DEFAULT_QUARANTINE_TIME, random, this.clusterLink.getNumberOfNodes(),
+					this.clusterLink.getNodeIndex());
+		}
+		return new KeyAllocator(bound, this.matchingMapCapacity, numberOfAllocatedKeys, KeyAllocator.DEFAULT_QUARANTINE_TIME, random);
+	}
+
+	private ExecutorService createHandlerExecutorService(DaemonArguments arguments, String name, String handlersArgument, String queueArgument, int defaultQueueSize) {
+		final int maxHandlers = arguments.getInt(handlersArgument, 0);
+		if (maxHandlers <= 0) {
+			return this.executorService;
+		}
+		final int queueSize = arguments.getInt(queueArgument, defaultQueueSize);
+		if (queueSize < 0) {
+			throw new IllegalArgumentException("invalid value of " + queueArgument + " : " + queueSize); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		return this.threadMode.newBoundedExecutorService(name, maxHandlers, queueSize);
 	}
 
 	@Override
-	public void start() {
+	public void start() throws IOException {
 		this.logger.info("starting"); //$NON-NLS-1$
-		this.tcpServerThread.start();
-		this.udpServerThread.start();
+		this.timingWheel.start();
+		this.registerMBeans();
+		if (this.replicationStandby != null) {
+			this.replicationStandby.start();
+			this.logger.info("started as a standby"); //$NON-NLS-1$
+			return;
+		}
+		if (this.journal != null) {
+			this.restoreMatchingTable(this.journal.open());
+			this.startJournal();
+		}
+		if (this.clusterLink != null) {
+			this.clusterLink.start();
+		}
+		if (this.replicationSource != null) {
+			this.matchingTable.addLog(this.replicationSource);
+			this.replicationSource.start();
+		}
+		this.startFrontEnds();
 		this.logger.info("started"); //$NON-NLS-1$
 	}
 
+	/**
+	 * Take over the port of the lost primary with the entries which have been
+	 * replicated from it. It is called by the {@link ReplicationStandby}.
+	 * 
+	 * @param entries
+	 *            the registered entries of the primary
+	 * @throws IOException
+	 *             thrown if it fails to bind the port, and then it can be
+	 *             called again
+	 */
+	synchronized void takeOver(List<MatchingTableJournal.Entry> entries) throws IOException {
+		if (this.isStopping || !this.isStandby) {
+			return;
+		}
+		this.openFrontEnds();
+		this.restoreMatchingTable(entries);
+		if (this.journal != null) {
+			// the replicated entries overwrite the old journal
+			this.journal.open();
+			this.journal.snapshot(this.matchingTable);
+			this.startJournal();
+		}
+		if (this.replicationPort > 0) {
+			try {
+				this.replicationSource = new ReplicationSource(this, this.replicationPort, ReplicationSource.DEFAULT_RING_SIZE);
+				this.matchingTable.addLog(this.replicationSource);
+				this.replicationSource.start();
+			} catch (IOException e) {
+				this.logger.error("Failed to open the replication port", e); //$NON-NLS-1$
+			}
+		}
+		this.startFrontEnds();
+		this.isStandby = false;
+		this.logger.info("took over the primary"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Restore the entries, which wait for their inviters to re-attach
+	 */
+	private void restoreMatchingTable(List<MatchingTableJournal.Entry> entries) {
+		final long startTime = System.nanoTime();
+		int numberOfRestoredEntries = 0;
+		for (MatchingTableJournal.Entry entry : entries) {
+			if (this.matchingTable.restore(entry.keyNumber, entry.addressHigh, entry.addressLow, entry.port, this.reattachTime)) {
+				numberOfRestoredEntries++;
+			}
+		}
+		this.logger.info("restored " + numberOfRestoredEntries + " of " + entries.size() + " entries in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+
+	private void startJournal() {
+		this.matchingTable.addLog(this.journal);
+		this.scheduleSnapshot();
+	}
+
+	private void scheduleSnapshot() {
+		// the snapshot is written by a handler thread, not to block the timer
+		final Runnable snapshot = new Runnable() {
+			@Override
+			public void run() {
+				if (JMatcherDaemon.this.isStopping) {
+					return;
+				}
+				try {
+					JMatcherDaemon.this.journal.snapshot(JMatcherDaemon.this.matchingTable);
+				} catch (IOException e) {
+					JMatcherDaemon.this.logger.error("Failed to write a snapshot of the matching table", e); //$NON-NLS-1$
+				}
+				JMatcherDaemon.this.scheduleSnapshot();
+			}
+		};
+		this.timingWheel.newTimeout(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					JMatcherDaemon.this.executorService.execute(snapshot);
+				} catch (RejectedExecutionException e) {
+					// the daemon is stopping
+				}
+			}
+		}, this.snapshotInterval, TimeUnit.MILLISECONDS);
+	}
+
 	@Override
 	public void stop() throws Exception {
 		this.logger.info("stopping"); //$NON-NLS-1$
 		this.isStopping = true;
 		final int waitThreadTime = 5000;
-		this.tcpServerThread.closeSocket();
-		this.udpServerThread.closeSocket();
-		this.tcpServerThread.join(waitThreadTime);
-		this.udpServerThread.join(waitThreadTime);
+		if (this.replicationStandby != null) {
+			// it mustn't take over while the daemon stops
+			this.replicationStandby.closeSocket();
+			this.replicationStandby.join(waitThreadTime);
+		}
+		synchronized (this) {
+			this.stopTakenOverParts();
+		}
+		if (this.clusterLink != null) {
+			this.clusterLink.closeSocket();
+			this.clusterLink.join(waitThreadTime);
+		}
 		this.executorService.shutdown();
+		this.tcpExecutorService.shutdown();
+		this.udpExecutorService.shutdown();
+		this.timingWheel.stop();
+		this.unregisterMBeans();
 		this.logger.info("stopped"); //$NON-NLS-1$
 	}
 
+	/**
+	 * Stop the parts which a standby doesn't have until it takes over
+	 */
+	private void stopTakenOverParts() throws InterruptedException {
+		final int waitThreadTime = 5000;
+		if (this.replicationSource != null) {
+			this.matchingTable.removeLog(this.replicationSource);
+			this.replicationSource.closeSocket();
+		}
+		if (this.journal != null && !this.isStandby) {
+			// the entries which are removed because the daemon stops must be
+			// restored
+			try {
+				this.journal.close(this.matchingTable);
+			} catch (IOException e) {
+				this.logger.error("Failed to close the journal", e); //$NON-NLS-1$
+			}
+			this.matchingTable.removeLog(this.journal);
+		}
+		final List<Thread> frontEndThreads = new ArrayList<>();
+		if (this.tcpReactor != null) {
+			this.tcpReactor.closeSocket();
+			frontEndThreads.add(this.tcpReactor);
+		} else if (this.tcpServerThread != null) {
+			this.tcpServerThread.closeSocket();
+			frontEndThreads.add(this.tcpServerThread);
+		}
+		if (this.udpReactors != null) {
+			for (UDPReactor udpReactor : this.udpReactors) {
+				udpReactor.closeSocket();
+				frontEndThreads.add(udpReactor);
+			}
+		} else if (this.udpServerThread != null) {
+			this.udpServerThread.closeSocket();
+			frontEndThreads.add(this.udpServerThread);
+		}
+		for (Thread thread : frontEndThreads) {
+			thread.join(waitThreadTime);
+		}
+		if (this.replicationSource != null) {
+			this.replicationSource.join(waitThreadTime);
+		}
+	}
+
+	private void registerMBeans() {
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		this.registerMBean(server, new DaemonStatus(this), STATUS_MBEAN_NAME);
+		this.registerMBean(server, this.metrics.getEnableLatency(), ENABLE_LATENCY_MBEAN_NAME);
+		this.registerMBean(server, this.metrics.getMatchLatency(), MATCH_LATENCY_MBEAN_NAME);
+	}
+
+	private void registerMBean(MBeanServer server, Object mbean, String name) {
+		try {
+			final ObjectName objectName = new ObjectName(name);
+			server.registerMBean(mbean, objectName);
+			this.registeredMBeanNames.add(objectName);
+		} catch (InstanceAlreadyExistsException e) {
+			this.logger.warn(name + " is already registered by another daemon"); //$NON-NLS-1$
+		} catch (JMException e) {
+			this.logger.error("Failed to register " + name, e); //$NON-NLS-1$
+		}
+	}
+
+	private void unregisterMBeans() {
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (ObjectName name : this.registeredMBeanNames) {
+			try {
+				server.unregisterMBean(name);
+			} catch (InstanceNotFoundException e) {
+				// it has been unregistered by someone else
+			} catch (JMException e) {
+				this.logger.error("Failed to unregister " + name, e); //$NON-NLS-1$
+			}
+		}
+		this.registeredMBeanNames.clear();
+	}
+
 	@Override
 	public void destroy() {
 		this.logger.info("destroyed"); //$NON-NLS-1$
@@ -108,6 +723,84 @@ public class JMatcherDaemon implements Daemon {
 		return this.isStopping;
 	}
 
+	/**
+	 * @return the mode of the TCP front end
+	 */
+	public IOMode getTCPMode() {
+		return this.tcpMode;
+	}
+
+	/**
+	 * @return the mode of the UDP front end
+	 */
+	public IOMode getUDPMode() {
+		return this.udpMode;
+	}
+
+	/**
+	 * @return the mode of the threads which run the handlers
+	 */
+	public ThreadMode getThreadMode() {
+		return this.threadMode;
+	}
+
+	/**
+	 * @return the TCP and UDP port of this daemon
+	 */
+	public int getPort() {
+		return this.port;
+	}
+
+	/**
+	 * @return the journal of the matching table, or null if it isn't
+	 *         journaled
+	 */
+	public MatchingTableJournal getJournal() {
+		return this.journal;
+	}
+
+	/**
+	 * @return the replication to the standby, or null if the matching table
+	 *         isn't replicated
+	 */
+	public ReplicationSource getReplicationSource() {
+		return this.replicationSource;
+	}
+
+	/**
+	 * @return the replication from the primary, or null if this daemon hasn't
+	 *         been a standby
+	 */
+	public ReplicationStandby getReplicationStandby() {
+		return this.replicationStandby;
+	}
+
+	/**
+	 * @return true if this daemon is a standby which hasn't taken over the
+	 *         primary
+	 */
+	public boolean isStandby() {
+		return this.isStandby;
+	}
+
+	/**
+	 * @return the link to the other nodes of the cluster, or null if this
+	 *         daemon runs alone
+	 */
+	public ClusterLink getClusterLink() {
+		return this.clusterLink;
+	}
+
+	/**
+	 * @return the number of receive loops of the UDP front end
+	 */
+	public int getNumberOfUDPReceivers() {
+		if (this.udpReactors != null) {
+			return this.udpReactors.length;
+		}
+		return 1;
+	}
+
 	/**
 	 * @return the maxMapSize
 	 */
@@ -121,6 +814,9 @@ public class JMatcherDaemon implements Daemon {
 	 */
 	public void setMatchingMapCapacity(int mapCapacity) {
 		this.matchingMapCapacity = mapCapacity;
+		if (this.matchingTable != null) {
+			this.matchingTable.getKeyAllocator().setCapacity(mapCapacity);
+		}
 	}
 
 	/**
@@ -136,13 +832,20 @@ public class JMatcherDaemon implements Daemon {
 	 */
 	public void setBoundOfKeyNumber(int boundOfKeyNumber) {
 		this.boundOfKeyNumber = boundOfKeyNumber;
+		if (this.matchingTable != null) {
+			// the keys which are in use are taken over by the new allocator,
+			// which releases them later
+			final KeyAllocator newAllocator = this.createKeyAllocator(boundOfKeyNumber, 0, new SecureRandom());
+			this.matchingTable.adoptKeys(newAllocator);
+			this.matchingTable.setKeyAllocator(newAllocator);
+		}
 	}
 
 	/**
-	 * @return the matchingMap
+	 * @return the matchingTable
 	 */
-	public ConcurrentMap<Integer, Host> getMatchingMap() {
-		return this.matchingMap;
+	public MatchingTable getMatchingTable() {
+		return this.matchingTable;
 	}
 
 	/**
@@ -153,10 +856,88 @@ public class JMatcherDaemon implements Daemon {
 	}
 
 	/**
-	 * @return the waitingForSyncHandlersMap
+	 * @return the executor of the TCP handlers, which is
+	 *         {@link #getExecutorService()} unless it is bounded
+	 */
+	public ExecutorService getTCPExecutorService() {
+		return this.tcpExecutorService;
+	}
+
+	/**
+	 * @return the executor of the UDP handlers, which is
+	 *         {@link #getExecutorService()} unless it is bounded
 	 */
-	public ConcurrentMap<Integer, CopyOnWriteArraySet<RequestingConnectionHostHandler>> getWaitingHandlersMap() {
-		return this.waitingForSyncHandlersMap;
+	public ExecutorService getUDPExecutorService() {
+		return this.udpExecutorService;
+	}
+
+	/**
+	 * @return the access log
+	 */
+	public AccessLog getAccessLog() {
+		return this.accessLog;
+	}
+
+	/**
+	 * @return the check which the UDP front ends make before they handle a
+	 *         datagram
+	 */
+	public UDPRequestFilter getUDPRequestFilter() {
+		return this.udpRequestFilter;
+	}
+
+	/**
+	 * @return the recent ConnectionRequests, which their retransmissions are
+	 *         matched against
+	 */
+	public RequestDedupCache getRequestDedupCache() {
+		return this.requestDedupCache;
+	}
+
+	/**
+	 * @return [msec] the time for which a leased key is kept without being
+	 *         renewed, or 0 if the inviters can't lease keys
+	 */
+	public int getLeaseTime() {
+		return this.leaseTime;
+	}
+
+	/**
+	 * @return the leases which are held
+	 */
+	public UDPLeaseRegistry getLeaseRegistry() {
+		return this.leaseRegistry;
+	}
+
+	/**
+	 * @return [msec] the time for which a registered inviter may be silent on
+	 *         its entry channel, or 0 if the channels are never closed for
+	 *         idleness
+	 */
+	public int getEntryIdleTimeout() {
+		return this.entryIdleTimeout;
+	}
+
+	/**
+	 * @return the pool of the direct buffers which the UDP responses are sent
+	 *         from
+	 */
+	public DirectBufferPool getResponseBufferPool() {
+		return this.responseBufferPool;
+	}
+
+	/**
+	 * @return the counters and latencies of this daemon
+	 */
+	public DaemonMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * @return the timing wheel which fires the deadlines of the daemon
+	 */
+	public HashedTimingWheel getTimingWheel() {
+		return this.timingWheel;
 	}
 
 	/**
@@ -174,9 +955,10 @@ public class JMatcherDaemon implements Daemon {
 	}
 
 	/**
-	 * 
+	 * Log the whole matching table. It is O(n), so it is for operators and
+	 * isn't called on the path of an entry.
 	 */
 	public void logMatchingMap() {
-		this.logger.info(this.matchingMap);
+		this.logger.info(this.matchingTable);
 	}
 }
@@ -0,0 +1,348 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.security.SecureRandom;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free allocator of the key numbers in [0, bound). A shared cursor is
+ * mapped by a keyed permutation of the key space (a Feistel network with
+ * cycle walking), so the keys are unique in a cycle of the cursor and look
+ * random. A bitmap marks the keys which are in use or quarantined, and a
+ * released key stays quarantined for a while so that a connector holding an
+ * old key doesn't reach a new inviter. The number of the allocated keys is
+ * limited to the capacity atomically.
+ * 
+ * While the key space is much larger than the capacity, an allocation takes
+ * a few probes. It gives up probing after {@link #MAX_PROBES}, so it takes a
+ * constant time even if the key space is nearly full. Then it falls back to
+ * the keys which have come out of the quarantine lately, which are kept in a
+ * queue no longer than the capacity, and at last the oldest quarantined key
+ * is reused.
+ * 
+ * @author agent 2026/10/17
+ */
+public class KeyAllocator {
+
+	/**
+	 * The default time for which a released key is not reused [msec]
+	 */
+	public static final long DEFAULT_QUARANTINE_TIME = 10000;
+
+	/**
+	 * The number of the keys which an allocation tries before it falls back to
+	 * the quarantine
+	 */
+	public static final int MAX_PROBES = 16;
+
+	private static final int ROUNDS = 4;
+
+	private final int bound;
+	private final int halfBits;
+	private final long halfMask;
+	private final int[] roundKeys;
+	private final AtomicLong cursor;
+	private final AtomicLongArray markedBits; // in use or quarantined
+	private final AtomicInteger numberOfAllocatedKeys;
+	private volatile int capacity;
+	private final long quarantineTime; // [nsec]
+	private final Queue<QuarantinedKey> quarantine;
+	private final Queue<Integer> recycledKeys; // free, or taken by a probe since
+	private final AtomicInteger numberOfRecycledKeys;
+
+	/**
+	 * @param bound
+	 *            bound of the key numbers (exclusive)
+	 * @param capacity
+	 *            max number of the allocated keys
+	 */
+	public KeyAllocator(int bound, int capacity) {
+		this(bound, capacity, 0, DEFAULT_QUARANTINE_TIME, new SecureRandom());
+	}
+
+	/**
+	 * @param bound
+	 *            bound of the key numbers (exclusive)
+	 * @param capacity
+	 *            max number of the allocated keys
+	 * @param numberOfAllocatedKeys
+	 *            the number of the keys which have already been allocated by
+	 *            the previous allocator, they are released to this
+	 * @param quarantineTime
+	 *            [msec]
+	 * @param random
+	 *            it creates the keys of the permutation
+	 */
+	public KeyAllocator(int bound, int capacity, int numberOfAllocatedKeys, long quarantineTime, Random random) {
+		if (bound <= 0 || capacity < 0 || numberOfAllocatedKeys < 0 || quarantineTime < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.bound = bound;
+		int bits = 2;
+		while ((1L << bits) < bound) {
+			bits += 2;
+		}
+		this.halfBits = bits / 2;
+		this.halfMask = (1L << this.halfBits) - 1;
+		this.roundKeys = new int[ROUNDS];
+		for (int i = 0; i < ROUNDS; i++) {
+			this.roundKeys[i] = random.nextInt();
+		}
+		this.cursor = new AtomicLong(0);
+		this.markedBits = new AtomicLongArray((bound + Long.SIZE - 1) / Long.SIZE);
+		this.numberOfAllocatedKeys = new AtomicInteger(numberOfAllocatedKeys);
+		this.capacity = capacity;
+		this.quarantineTime = TimeUnit.MILLISECONDS.toNanos(quarantineTime);
+		this.quarantine = new ConcurrentLinkedQueue<>();
+		this.recycledKeys = new ConcurrentLinkedQueue<>();
+		this.numberOfRecycledKeys = new AtomicInteger(0);
+	}
+
+	/**
+	 * @return new key, or -1 if the capacity is full
+	 */
+	public int allocate() {
+		if (!this.reserve()) {
+			return -1;
+		}
+		this.releaseQuarantinedKeys(System.nanoTime());
+		final int maxProbes = Math.min(this.bound, MAX_PROBES);
+		for (int i = 0; i < maxProbes; i++) {
+			final int keyNumber = this.permute(this.cursor.getAndIncrement() % this.bound);
+			if (this.tryMark(keyNumber)) {
+				return keyNumber;
+			}
+		}
+		// (nearly) every key is in use or quarantined
+		Integer recycledKey;
+		while ((recycledKey = this.recycledKeys.poll()) != null) {
+			this.numberOfRecycledKeys.decrementAndGet();
+			if (this.tryMark(recycledKey.intValue())) {
+				return recycledKey.intValue();
+			}
+		}
+		QuarantinedKey oldest;
+		while ((oldest = this.quarantine.poll()) != null) {
+			this.unmark(oldest.keyNumber);
+			if (this.tryMark(oldest.keyNumber)) {
+				return oldest.keyNumber;
+			}
+		}
+		this.numberOfAllocatedKeys.decrementAndGet();
+		return -1;
+	}
+
+	/**
+	 * Allocate the given key. It is used to restore the entries which had
+	 * been registered before the daemon restarted.
+	 * 
+	 * @param keyNumber
+	 * @return true if the key is allocated, or false if the capacity is full
+	 *         or the key is already in use
+	 */
+	public boolean claim(int keyNumber) {
+		if (keyNumber < 0 || keyNumber >= this.bound || !this.reserve()) {
+			return false;
+		}
+		if (!this.tryMark(keyNumber)) {
+			this.numberOfAllocatedKeys.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Release the key, which is reused after the quarantine time
+	 * 
+	 * @param keyNumber
+	 */
+	public void release(int keyNumber) {
+		this.numberOfAllocatedKeys.decrementAndGet();
+		if (keyNumber < 0 || keyNumber >= this.bound) {
+			return; // a key of the previous allocator
+		}
+		if (this.quarantineTime == 0) {
+			this.recycle(keyNumber);
+			return;
+		}
+		this.quarantine.add(new QuarantinedKey(keyNumber, System.nanoTime() + this.quarantineTime));
+	}
+
+	/**
+	 * Give up the allocated key. It is used when the key turns out to be still
+	 * used by an entry which this allocator doesn't know, so the key is
+	 * unmarked at once rather than quarantined.
+	 * 
+	 * @param keyNumber
+	 */
+	public void abandon(int keyNumber) {
+		this.numberOfAllocatedKeys.decrementAndGet();
+		if (keyNumber >= 0 && keyNumber < this.bound) {
+			this.unmark(keyNumber);
+		}
+	}
+
+	/**
+	 * Take over the key of an entry of the previous allocator, so that it
+	 * isn't allocated again until the entry releases it. It is counted even if
+	 * the capacity is full.
+	 * 
+	 * @param keyNumber
+	 */
+	public void adopt(int keyNumber) {
+		this.numberOfAllocatedKeys.incrementAndGet();
+		if (keyNumber >= 0 && keyNumber < this.bound) {
+			this.tryMark(keyNumber);
+		}
+	}
+
+	/**
+	 * @return the number of the allocated keys
+	 */
+	public int getNumberOfAllocatedKeys() {
+		return this.numberOfAllocatedKeys.get();
+	}
+
+	/**
+	 * @return the bound of the key numbers (exclusive)
+	 */
+	public int getBound() {
+		return this.bound;
+	}
+
+	/**
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * @param capacity
+	 *            the capacity to set
+	 */
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	private boolean reserve() {
+		while (true) {
+			final int current = this.numberOfAllocatedKeys.get();
+			if (current >= this.capacity) {
+				return false;
+			}
+			if (this.numberOfAllocatedKeys.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private void releaseQuarantinedKeys(long now) {
+		while (true) {
+			final QuarantinedKey head = this.quarantine.peek();
+			if (head == null || head.releaseTime - now > 0) {
+				return;
+			}
+			if (this.quarantine.remove(head)) {
+				this.recycle(head.keyNumber);
+			}
+		}
+	}
+
+	private void recycle(int keyNumber) {
+		this.unmark(keyNumber);
+		if (this.numberOfRecycledKeys.incrementAndGet() > Math.max(this.capacity, MAX_PROBES)) {
+			this.numberOfRecycledKeys.decrementAndGet();
+			return;
+		}
+		this.recycledKeys.add(Integer.valueOf(keyNumber));
+	}
+
+	private boolean tryMark(int keyNumber) {
+		final int index = keyNumber / Long.SIZE;
+		final long bit = 1L << (keyNumber % Long.SIZE);
+		while (true) {
+			final long current = this.markedBits.get(index);
+			if ((current & bit) != 0) {
+				return false;
+			}
+			if (this.markedBits.compareAndSet(index, current, current | bit)) {
+				return true;
+			}
+		}
+	}
+
+	private void unmark(int keyNumber) {
+		final int index = keyNumber / Long.SIZE;
+		final long bit = 1L << (keyNumber % Long.SIZE);
+		while (true) {
+			final long current = this.markedBits.get(index);
+			if (this.markedBits.compareAndSet(index, current, current & ~bit)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @param index
+	 *            in [0, bound)
+	 * @return the key number in [0, bound) of the index
+	 */
+	int permute(long index) {
+		long x = index;
+		do {
+			x = this.encrypt(x);
+		} while (x >= this.bound);
+		return (int) x;
+	}
+
+	private long encrypt(long x) {
+		long left = x >>> this.halfBits;
+		long right = x & this.halfMask;
+		for (int roundKey : this.roundKeys) {
+			final long newRight = left ^ (round(right, roundKey) & this.halfMask);
+			left = right;
+			right = newRight;
+		}
+		return (left << this.halfBits) | right;
+	}
+
+	private static long round(long value, int roundKey) {
+		int h = (int) value ^ roundKey;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h & 0xFFFFFFFFL;
+	}
+
+	private static final class QuarantinedKey {
+		final int keyNumber;
+		final long releaseTime; // [nsec]
+
+		QuarantinedKey(int keyNumber, long releaseTime) {
+			this.keyNumber = keyNumber;
+			this.releaseTime = releaseTime;
+		}
+	}
+}
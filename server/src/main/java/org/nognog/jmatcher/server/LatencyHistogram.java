@@ -0,0 +1,123 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies with a bucket for each power of two of
+ * microseconds, so recording costs a few atomic additions and a percentile is
+ * accurate to a factor of two. It counts from the start of the daemon.
+ * 
+ * @author agent 2026/10/17
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+	private static final int NUMBER_OF_BUCKETS = Long.SIZE;
+
+	private final AtomicLongArray buckets;
+	private final AtomicLong count;
+	private final AtomicLong sum;
+	private final AtomicLong max;
+
+	/**
+	 * 
+	 */
+	public LatencyHistogram() {
+		this.buckets = new AtomicLongArray(NUMBER_OF_BUCKETS);
+		this.count = new AtomicLong();
+		this.sum = new AtomicLong();
+		this.max = new AtomicLong();
+	}
+
+	/**
+	 * @param nanos
+	 *            the latency [nsec]
+	 */
+	public void record(long nanos) {
+		final long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+		// bucket i holds [2^(i-1), 2^i - 1], and bucket 0 holds 0
+		this.buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(micros));
+		this.count.incrementAndGet();
+		this.sum.addAndGet(micros);
+		long currentMax = this.max.get();
+		while (micros > currentMax && !this.max.compareAndSet(currentMax, micros)) {
+			currentMax = this.max.get();
+		}
+	}
+
+	@Override
+	public long getCount() {
+		return this.count.get();
+	}
+
+	@Override
+	public long getMeanMicros() {
+		final long currentCount = this.count.get();
+		if (currentCount == 0) {
+			return 0;
+		}
+		return this.sum.get() / currentCount;
+	}
+
+	@Override
+	public long getMaxMicros() {
+		return this.max.get();
+	}
+
+	@Override
+	public long get50thPercentileMicros() {
+		return this.getPercentileMicros(50);
+	}
+
+	@Override
+	public long get90thPercentileMicros() {
+		return this.getPercentileMicros(90);
+	}
+
+	@Override
+	public long get99thPercentileMicros() {
+		return this.getPercentileMicros(99);
+	}
+
+	/**
+	 * @param percentile
+	 *            (0, 100]
+	 * @return the upper bound of the bucket which contains the percentile, or
+	 *         the maximum if it is smaller
+	 */
+	public long getPercentileMicros(double percentile) {
+		final long[] counts = new long[NUMBER_OF_BUCKETS];
+		long total = 0;
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+			counts[i] = this.buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		final long rank = (long) Math.ceil(total * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				final long upperBound = (i == NUMBER_OF_BUCKETS - 1) ? Long.MAX_VALUE : (1L << i) - 1;
+				return Math.min(upperBound, this.max.get());
+			}
+		}
+		return this.max.get();
+	}
+}
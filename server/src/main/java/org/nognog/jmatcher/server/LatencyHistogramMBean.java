@@ -0,0 +1,53 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+/**
+ * A latency distribution which is exposed through JMX. All values are in
+ * microseconds.
+ * 
+ * @author agent 2026/10/17
+ */
+public interface LatencyHistogramMBean {
+	/**
+	 * @return the number of recorded latencies
+	 */
+	long getCount();
+
+	/**
+	 * @return the mean
+	 */
+	long getMeanMicros();
+
+	/**
+	 * @return the maximum
+	 */
+	long getMaxMicros();
+
+	/**
+	 * @return the median, rounded up to its bucket
+	 */
+	long get50thPercentileMicros();
+
+	/**
+	 * @return the 90th percentile, rounded up to its bucket
+	 */
+	long get90thPercentileMicros();
+
+	/**
+	 * @return the 99th percentile, rounded up to its bucket
+	 */
+	long get99thPercentileMicros();
+}
@@ -0,0 +1,1003 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.nognog.jmatcher.Host;
+
+/**
+ * The matching table of the daemon, which maps a key number to the entry of
+ * an inviter. It is an open-addressing hash table of primitive int keys which
+ * is split into segments, and each segment keeps its entries in flat arrays:
+ * the state (pre-entry or registered), the address packed into two longs
+ * (IPv4 is stored as an IPv4-mapped IPv6 address), the port, the owner, and
+ * the attachment, which is the expiry of a pre-entry or the waiting
+ * {@link PendingRendezvous}es of a registered entry, and the time when the
+ * entry came into its state. Each segment is guarded by its own
+ * {@link ReentrantLock}, so neither the lookup nor the update boxes the key,
+ * and a virtual thread which waits for a segment doesn't pin its carrier.
+ * <p>
+ * The registrations and the removals are told to the {@link MatchingTableLog}s
+ * of the table, and an entry which is restored from one of them (after a
+ * restart or a failover) stays in the table without an owner until its
+ * inviter re-attaches or the re-attach time passes.
+ * </p>
+ * 
+ * @author agent 2026/10/17
+ */
+public class MatchingTable {
+	private static final int SEGMENT_BITS = 6;
+	private static final int INITIAL_SEGMENT_CAPACITY = 16;
+
+	private static final byte FREE = 0;
+	private static final byte PRE_ENTRY = 1;
+	private static final byte REGISTERED = 2;
+	private static final byte REMOVED = 3;
+	private static final byte RESTORED = 4;
+
+	private static final long IPV4_MAPPED_PREFIX = 0xFFFFL << 32;
+
+	private final Segment[] segments;
+	private final AtomicInteger size;
+	private final HashedTimingWheel timingWheel;
+	private final DaemonMetrics metrics;
+	private volatile KeyAllocator keyAllocator;
+	private volatile MatchingTableLog[] logs;
+	private volatile int maxWaitingRequests;
+
+	/**
+	 * @param timingWheel
+	 *            it expires pre-entries
+	 */
+	public MatchingTable(HashedTimingWheel timingWheel) {
+		this(timingWheel, new DaemonMetrics());
+	}
+
+	/**
+	 * @param timingWheel
+	 *            it expires pre-entries
+	 * @param metrics
+	 *            it counts the entries and the rendezvous of this table
+	 */
+	public MatchingTable(HashedTimingWheel timingWheel, DaemonMetrics metrics) {
+		this.segments = new Segment[1 << SEGMENT_BITS];
+		for (int i = 0; i < this.segments.length; i++) {
+			this.segments[i] = new Segment(INITIAL_SEGMENT_CAPACITY);
+		}
+		this.size = new AtomicInteger(0);
+		this.timingWheel = timingWheel;
+		this.metrics = metrics;
+		this.logs = new MatchingTableLog[0];
+		this.maxWaitingRequests = Integer.MAX_VALUE;
+	}
+
+	private static boolean isEntry(byte state) {
+		return state == PRE_ENTRY || state == REGISTERED || state == RESTORED;
+	}
+
+	private static int hash(int keyNumber) {
+		int h = keyNumber;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	private Segment segmentFor(int hash) {
+		return this.segments[hash >>> (Integer.SIZE - SEGMENT_BITS)];
+	}
+
+	/**
+	 * @return the allocator of the keys, or null
+	 */
+	public KeyAllocator getKeyAllocator() {
+		return this.keyAllocator;
+	}
+
+	/**
+	 * @param keyAllocator
+	 *            the allocator which allocates the keys of
+	 *            {@link #putPreEntryWithNewKey(InetAddress, int, PreEntryListener, long)}
+	 *            and gets back the keys of the removed entries
+	 */
+	public void setKeyAllocator(KeyAllocator keyAllocator) {
+		this.keyAllocator = keyAllocator;
+	}
+
+	/**
+	 * @return the maximum number of the rendezvous which wait for an entry at
+	 *         once
+	 */
+	public int getMaxWaitingRequests() {
+		return this.maxWaitingRequests;
+	}
+
+	/**
+	 * @param maxWaitingRequests
+	 *            the maximum number of the rendezvous which wait for an entry
+	 *            at once. A ConnectionRequest beyond it fails at once, so that
+	 *            a flood on one key can't pile up on its inviter.
+	 */
+	public void setMaxWaitingRequests(int maxWaitingRequests) {
+		if (maxWaitingRequests <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.maxWaitingRequests = maxWaitingRequests;
+	}
+
+	/**
+	 * @param log
+	 *            a log which the registrations and the removals are told to
+	 *            from now on
+	 */
+	synchronized void addLog(MatchingTableLog log) {
+		final MatchingTableLog[] newLogs = new MatchingTableLog[this.logs.length + 1];
+		System.arraycopy(this.logs, 0, newLogs, 0, this.logs.length);
+		newLogs[this.logs.length] = log;
+		this.logs = newLogs;
+	}
+
+	/**
+	 * @param log
+	 *            the log which isn't told any more
+	 */
+	synchronized void removeLog(MatchingTableLog log) {
+		final List<MatchingTableLog> newLogs = new ArrayList<>(Arrays.asList(this.logs));
+		newLogs.remove(log);
+		this.logs = newLogs.toArray(new MatchingTableLog[newLogs.size()]);
+	}
+
+	/**
+	 * @return the metrics of this table
+	 */
+	public DaemonMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * @return the number of the entries
+	 */
+	public int size() {
+		return this.size.get();
+	}
+
+	/**
+	 * @param keyNumber
+	 * @return true if the key is used by an entry
+	 */
+	public boolean containsKey(int keyNumber) {
+		final int hash = hash(keyNumber);
+		final Segment segment = this.segmentFor(hash);
+		segment.lock();
+		try {
+			return segment.indexOf(keyNumber, hash) >= 0;
+		} finally {
+			segment.unlock();
+		}
+	}
+
+	/**
+	 * @param keyNumber
+	 * @return the registered host, a {@link PreEntryHost} if the entry hasn't
+	 *         been enabled yet or hasn't been re-attached since it was
+	 *         restored, or null if there is no entry
+	 */
+	public Host get(int keyNumber) {
+		final int hash = hash(keyNumber);
+		final Segment segment = this.segmentFor(hash);
+		final byte state;
+		final long addressHigh;
+		final long addressLow;
+		final int port;
+		segment.lock();
+		try {
+			final int index = segment.indexOf(keyNumber, hash);
+			if (index < 0) {
+				return null;
+			}
+			state = segment.states[index];
+			addressHigh = segment.addressHighs[index];
+			addressLow = segment.addressLows[index];
+			port = segment.ports[index];
+		} finally {
+			segment.unlock();
+		}
+		final String address = unpackAddress(addressHigh, addressLow);
+		if (state != REGISTERED) {
+			return new PreEntryHost(address, port);
+		}
+		return new Host(address, port);
+	}
+
+	/**
+	 * @param keyNumber
+	 * @return the response which tells the registered entry to its connectors,
+	 *         or null if the entry isn't registered
+	 */
+	EncodedResponse getResponse(int keyNumber) {
+		final int hash = hash(keyNumber);
+		final Segment segment = this.segmentFor(hash);
+		segment.lock();
+		try {
+			final int index = segment.indexOf(keyNumber, hash);
+			if (index < 0 || segment.states[index] != REGISTERED) {
+				return null;
+			}
+			return segment.responses[index];
+		} finally {
+			segment.unlock();
+		}
+	}
+
+	/**
+	 * @param keyNumber
+	 * @param address
+	 * @param port
+	 * @return the owner of the entry if it has been registered from the
+	 *         endpoint, or null
+	 */
+	PreEntryListener getOwner(int keyNumber, InetAddress address, int port) {
+		final byte[] addressBytes = address.getAddress();
+		final long addressHigh = packAddressHigh(addressBytes);
+		final long addressLow = packAddressLow(addressBytes);
+		final int hash = hash(keyNumber);
+		final Segment segment = this.segmentFor(hash);
+		segment.lock();
+		try {
+			final int index = segment.indexOf(keyNumber, hash);
+			if (index < 0 || segment.states[index] != REGISTERED || segment.addressHighs[index] != addressHigh || segment.addressLows[index] != addressLow
+					|| segment.ports[index] != port) {
+				return null;
+			}
+			return segment.owners[index];
+		} finally {
+			segment.unlock();
+		}
+	}
+
+	/**
+	 * @param keyNumber
+	 * @param address
+	 * @return the owner of the entry if it has been registered from the
+	 *         address at any port, or null
+	 */
+	PreEntryListener getOwner(int keyNumber, InetAddress address) {
+		final byte[] addressBytes = address.getAddress();
+		final long addressHigh = packAddressHigh(addressBytes);
+		final long addressLow = packAddressLow(addressBytes);
+		final int hash = hash(keyNumber);
+		final Segment segment = this.segmentFor(hash);
+		segment.lock();
+		try {
+			final int index = segment.indexOf(keyNumber, hash);
+			if (index < 0 || segment.states[index] != REGISTERED || segment.addressHighs[index] != addressHigh || segment.addressLows[index] != addressLow) {
+				return null;
+			}
+			return segment.owners[index];
+		} finally {
+			segment.unlock();
+		}
+	}
+
+	/**
+	 * Move the registered entry to another port of the same address, when the
+	 * NAT of the inviter has mapped its endpoint again
+	 * 
+	 * @param keyNumber
+	 * @param owner
+	 *            the owner of the entry
+	 * @param address
+	 *            the address which the entry has been registered from
+	 * @param port
+	 *            the new port of the inviter
+	 * @return true if the entry is at the port
+	 */
+	boolean rebind(int keyNumber, PreEntryListener owner, InetAddress address, int port) {
+		final int hash = hash(keyNumber);
+		final Segment segment = this.segmentFor(hash);
+		segment.lock();
+		try {
+			final int index = segment.indexOf(keyNumber, hash);
+			if (index < 0 || segment.states[index] != REGISTERED || segment.owners[index] != owner) {
+				return false;
+			}
+			if (segment.ports[index] == port) {
+				return true;
+			}
+			segment.ports[index] = port;
+			segment.responses[index] = EncodedResponse.of(address, port);
+			for (MatchingTableLog log : this.logs) {
+				log.registered(keyNumber, segment.addressHighs[index], segment.addressLows[index], port);
+			}
+			return true;
+		} finally {
+			segment.unlock();
+		}
+	}
+
+	/**
+	 * Put a pre-entry if the key isn't used. It is removed, and the owner is
+	 * told it, when the delay has passed before it is enabled.
+	 * 
+	 * @param keyNumber
+	 * @param address
+	 *            address of the inviter
+	 * @param port
+	 *            port of the inviter
+	 * @param owner
+	 *            the owner of the entry, which is told when the entry is
+	 *            enabled or expires
+	 * @param expiryDelay
+	 *            [msec], the entry doesn't expire if it is not positive
+	 * @return true if the entry is put, or false if the key is already used
+	 */
+	boolean putPreEntry(int keyNumber, InetAddress address, int port, PreEntryListener owner, long expiryDelay) {
+		if (owner == null) {
+			throw new IllegalArgumentException();
+		}
+		final byte[] addressBytes = address.getAddress();
+		final long addressHigh = packAddressHigh(addressBytes);
+		final long addressLow = packAddressLow(addressBytes);
+		final int hash = hash(keyNumber);
+		final Segment segment = this.segmentFor(hash);
+		segment.lock();
+		try {
+			if (segment.indexOf(keyNumber, hash) >= 0) {
+				return false;
+			}
+			HashedTimingWheel.Timeout expiry = null;
+			if (expiryDelay > 0) {
+				expiry = this.timingWheel.newTimeout(new Expiry(keyNumber, owner), expiryDelay, TimeUnit.MILLISECONDS);
+			}
+			segment.insert(keyNumber, hash, PRE_ENTRY, addressHigh, addressLow, port, owner, expiry, System.nanoTime());
+		} finally {
+			segment.unlock();
+		}
+		this.size.incrementAndGet();
+		this.metrics.preEntryPut();
+		return true;
+	}
+
+	/**
+	 * Put a pre-entry with a new key of the key allocator
+	 * 
+	 * @param address
+	 *            address of the inviter
+	 * @param port
+	 *            port of the inviter
+	 * @param owner
+	 *            the owner of the entry
+	 * @param expiryDelay
+	 *            [msec], the entry doesn't expire if it is not positive
+	 * @return the new key, or -1 if the capacity is full
+	 */
+	int putPreEntryWithNewKey(InetAddress address, int port, PreEntryListener owner, long expiryDelay) {
+		final KeyAllocator allocator = this.keyAllocator;
+		while (true) {
+			final int keyNumber = allocator.allocate();
+			if (keyNumber < 0) {
+				this.metrics.entryRejected();
+				return -1;
+			}
+			if (this.putPreEntry(keyNumber, address, port, owner, expiryDelay)) {
+				return keyNumber;
+			}
+			// the key is still used by an entry of the previous allocator
+			allocator.abandon(keyNumber);
+		}
+	}
+
+	/**
+	 * Enable the pre-entry with the address of its UDP endpoint, and tell the
+	 * owner it
+	 * 
+	 * @param keyNumber
+	 * @param address
+	 * @param port
+	 * @return true if a pre-entry is enabled
+	 */
+	boolean enable(int keyNumber, InetAddress address, int port) {
+		final int hash = hash(keyNumber);
+		final Segment segment = this.segmentFor(hash);
+		final PreEntryListener owner;
+		final HashedTimingWheel.Timeout expiry;
+		final long enabledTime = System.nanoTime();
+		final long preEntryTime;
+		segment.lock();
+		try {
+			final int index = segment.indexOf(keyNumber, hash);
+			if (index < 0 || segment.states[index] != PRE_ENTRY) {
+				return false;
+			}
+			owner = segment.owners[index];
+			expiry = (HashedTimingWheel.Timeout) segment.attachments[index];
+			// they are made after the check, so that a repeated request
+			// doesn't allocate
+			final byte[] addressBytes = address.getAddress();
+			segment.states[index] = REGISTERED;
+			segment.addressHighs[index] = packAddressHigh(addressBytes);
+			segment.addressLows[index] = packAddressLow(addressBytes);
+			segment.ports[index] = port;
+			segment.attachments[index] = null;
+			segment.responses[index] = EncodedResponse.of(address, port);
+			preEntryTime = segment.times[index];
+			segment.times[index] = enabledTime;
+			// it is logged in the lock so that the changes of a key are in
+			// order
+			for (MatchingTableLog log : this.logs) {
+				log.registered(keyNumber, segment.addressHighs[index], segment.addressLows[index], port);
+			}
+		} finally {
+			segment.unlock();
+		}
+		if (expiry != null) {
+			expiry.cancel();
+		}
+		this.metrics.entryEnabled(enabledTime - preEntryTime);
+		owner.enabled(keyNumber);
+		return true;
+	}
+
+	/**
+	 * @param owner
+	 *            null if the entry has been restored
+	 */
+	private void expire(int keyNumber, PreEntryListener owner) {
+		final int hash = hash(keyNumber);
+		final Segment segment = this.segmentFor(hash);
+		segment.lock();
+		try {
+			final int index = segment.indexOf(keyNumber, hash);
+			if (index < 0 || segment.owners[index] != owner) {
+				return;
+			}
+			final byte state = segment.states[index];
+			if (state != PRE_ENTRY && state != RESTORED) {
+				return;
+			}
+			segment.removeAt(index);
+			this.logReleased(keyNumber);
+		} finally {
+			segment.unlock();
+		}
+		this.size.decrementAndGet();
+		this.releaseKey(keyNumber);
+		if (owner == null) {
+			// the inviter of the restored entry hasn't come back
+			return;
+		}
+		this.metrics.entryExpired();
+		owner.expired(keyNumber);
+	}
+
+	private void logReleased(int keyNumber) {
+		for (MatchingTableLog log : this.logs) {
+			log.released(keyNumber);
+		}
+	}
+
+	private void releaseKey(int keyNumber) {
+		final KeyAllocator allocator = this.keyAllocator;
+		if (allocator != null) {
+			allocator.release(keyNumber);
+		}
+	}
+
+	/**
+	 * Remove the entry, and fail the rendezvous which are waiting for it
+	 * 
+	 * @param keyNumber
+	 * @param owner
+	 *            the owner of the entry
+	 * @return true if the entry is removed
+	 */
+	boolean remove(int keyNumber, PreEntryListener owner) {
+		final int hash = hash(keyNumber);
+		final Segment segment = this.segmentFor(hash);
+		final Object attachment;
+		segment.lock();
+		try {
+			final int index = segment.indexOf(keyNumber, hash);
+			if (index < 0 || segment.owners[index] != owner) {
+				return false;
+			}
+			attachment = segment.attachments[index];
+			segment.removeAt(index);
+			this.logReleased(keyNumber);
+		} finally {
+			segment.unlock();
+		}
+		this.size.decrementAndGet();
+		this.releaseKey(keyNumber);
+		if (attachment instanceof HashedTimingWheel.Timeout) {
+			((HashedTimingWheel.Timeout) attachment).cancel();
+		} else if (attachment instanceof PendingRendezvous[]) {
+			// the requesting hosts don't have to wait for the timeout
+			for (PendingRendezvous rendezvous : (PendingRendezvous[]) attachment) {
+				rendezvous.fail();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Put an entry which was registered before the daemon restarted. It has
+	 * no owner, so it isn't requested until its inviter re-attaches by
+	 * {@link #reattach(int, InetAddress, int, PreEntryListener, long)}, and it
+	 * is removed when the delay has passed before that.
+	 * 
+	 * @param keyNumber
+	 * @param addressHigh
+	 *            address of the inviter packed by {@link #packAddressHigh(byte[])}
+	 * @param addressLow
+	 *            address of the inviter packed by {@link #packAddressLow(byte[])}
+	 * @param port
+	 *            port of the inviter
+	 * @param expiryDelay
+	 *            [msec], the entry doesn't expire if it is not positive
+	 * @return true if the entry is put, or false if the key is already used or
+	 *         the key allocator can't allocate it
+	 */
+	boolean restore(int keyNumber, long addressHigh, long addressLow, int port, long expiryDelay) {
+		final KeyAllocator allocator = this.keyAllocator;
+		if (allocator != null && !allocator.claim(keyNumber)) {
+			return false;
+		}
+		final int hash = hash(keyNumber);
+		final Segment segment = this.segmentFor(hash);
+		segment.lock();
+		try {
+			if (segment.indexOf(keyNumber, hash) >= 0) {
+				if (allocator != null) {
+					allocator.abandon(keyNumber);
+				}
+				return false;
+			}
+			HashedTimingWheel.Timeout expiry = null;
+			if (expiryDelay > 0) {
+				expiry = this.timingWheel.newTimeout(new Expiry(keyNumber, null), expiryDelay, TimeUnit.MILLISECONDS);
+			}
+			segment.insert(keyNumber, hash, RESTORED, addressHigh, addressLow, port, null, expiry, System.nanoTime());
+		} finally {
+			segment.unlock();
+		}
+		this.size.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Turn the restored entry into a pre-entry of the inviter which has come
+	 * back, which is enabled as a new one. Only the inviter at the address
+	 * which the entry was registered from can take it.
+	 * 
+	 * @param keyNumber
+	 * @param address
+	 *            address of the inviter
+	 * @param port
+	 *            port of the inviter
+	 * @param owner
+	 *            the new owner of the entry
+	 * @param expiryDelay
+	 *            [msec], the pre-entry doesn't expire if it is not positive
+	 * @return true if the entry has been re-attached
+	 */
+	boolean reattach(int keyNumber, InetAddress address, int port, PreEntryListener owner, long expiryDelay) {
+		if (owner == null) {
+			throw new IllegalArgumentException();
+		}
+		final byte[] addressBytes = address.getAddress();
+		final long addressHigh = packAddressHigh(addressBytes);
+		final long addressLow = packAddressLow(addressBytes);
+		final int hash = hash(keyNumber);
+		final Segment segment = this.segmentFor(hash);
+		final HashedTimingWheel.Timeout restoredExpiry;
+		segment.lock();
+		try {
+			final int index = segment.indexOf(keyNumber, hash);
+			if (index < 0 || segment.states[index] != RESTORED || segment.addressHighs[index] != addressHigh || segment.addressLows[index] != addressLow) {
+				return false;
+			}
+			restoredExpiry = (HashedTimingWheel.Timeout) segment.attachments[index];
+			HashedTimingWheel.Timeout expiry = null;
+			if (expiryDelay > 0) {
+				expiry = this.timingWheel.newTimeout(new Expiry(keyNumber, owner), expiryDelay, TimeUnit.MILLISECONDS);
+			}
+			segment.states[index] = PRE_ENTRY;
+			segment.ports[index] = port;
+			segment.owners[index] = owner;
+			segment.attachments[index] = expiry;
+			segment.times[index] = System.nanoTime();
+		} finally {
+			segment.unlock();
+		}
+		if (restoredExpiry != null) {
+			restoredExpiry.cancel();
+		}
+		this.metrics.preEntryPut();
+		return true;
+	}
+
+	/**
+	 * Let the allocator take over the keys of all the entries, so that it
+	 * doesn't allocate a key which is in use. Each segment is locked while its
+	 * keys are taken over.
+	 * 
+	 * @param allocator
+	 *            the allocator which replaces the current one
+	 */
+	void adoptKeys(KeyAllocator allocator) {
+		for (Segment segment : this.segments) {
+			segment.lock();
+			try {
+				for (int i = 0; i < segment.states.length; i++) {
+					if (isEntry(segment.states[i])) {
+						allocator.adopt(segment.keys[i]);
+					}
+				}
+			} finally {
+				segment.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Visit the registered and the restored entries. Each segment is locked
+	 * while its entries are visited, so the visitor must not block.
+	 * 
+	 * @param visitor
+	 */
+	void visitRegisteredEntries(EntryVisitor visitor) {
+		for (Segment segment : this.segments) {
+			segment.lock();
+			try {
+				for (int i = 0; i < segment.states.length; i++) {
+					final byte state = segment.states[i];
+					if (state == REGISTERED || state == RESTORED) {
+						visitor.visit(segment.keys[i], segment.addressHighs[i], segment.addressLows[i], segment.ports[i]);
+					}
+				}
+			} finally {
+				segment.unlock();
+			}
+		}
+	}
+
+	/**
+	 * @param keyNumber
+	 * @param rendezvous
+	 * @return true if the rendezvous is added to the registered entry, or
+	 *         false if there is no registered entry or too many rendezvous
+	 *         are waiting for it
+	 */
+	boolean addRendezvous(int keyNumber, PendingRendezvous rendezvous) {
+		final int hash = hash(keyNumber);
+		final Segment segment = this.segmentFor(hash);
+		final PreEntryListener owner;
+		segment.lock();
+		try {
+			final int index = segment.indexOf(keyNumber, hash);
+			if (index < 0 || segment.states[index] != REGISTERED) {
+				return false;
+			}
+			final PendingRendezvous[] waiting = (PendingRendezvous[]) segment.attachments[index];
+			if (waiting != null && waiting.length >= this.maxWaitingRequests) {
+				this.metrics.requestThrottled();
+				return false;
+			}
+			final PendingRendezvous[] newWaiting;
+			if (waiting == null) {
+				newWaiting = new PendingRendezvous[1];
+			} else {
+				newWaiting = new PendingRendezvous[waiting.length + 1];
+				System.arraycopy(waiting, 0, newWaiting, 0, waiting.length);
+			}
+			newWaiting[newWaiting.length - 1] = rendezvous;
+			rendezvous.setWaitingEntry(this, keyNumber);
+			segment.attachments[index] = newWaiting;
+			this.metrics.requestWaiting();
+			// the owner has already been told about the others
+			owner = (waiting == null) ? segment.owners[index] : null;
+		} finally {
+			segment.unlock();
+		}
+		if (owner != null) {
+			owner.requested(keyNumber);
+		}
+		return true;
+	}
+
+	/**
+	 * @param keyNumber
+	 * @param rendezvous
+	 */
+	void removeRendezvous(int keyNumber, PendingRendezvous rendezvous) {
+		final int hash = hash(keyNumber);
+		final Segment segment = this.segmentFor(hash);
+		segment.lock();
+		try {
+			final int index = segment.indexOf(keyNumber, hash);
+			if (index < 0 || segment.states[index] != REGISTERED) {
+				return;
+			}
+			final PendingRendezvous[] waiting = (PendingRendezvous[]) segment.attachments[index];
+			if (waiting == null) {
+				return;
+			}
+			for (int i = 0; i < waiting.length; i++) {
+				if (waiting[i] != rendezvous) {
+					continue;
+				}
+				if (waiting.length == 1) {
+					segment.attachments[index] = null;
+					return;
+				}
+				final PendingRendezvous[] newWaiting = new PendingRendezvous[waiting.length - 1];
+				System.arraycopy(waiting, 0, newWaiting, 0, i);
+				System.arraycopy(waiting, i + 1, newWaiting, i, newWaiting.length - i);
+				segment.attachments[index] = newWaiting;
+				return;
+			}
+		} finally {
+			segment.unlock();
+		}
+	}
+
+	/**
+	 * @param keyNumber
+	 * @return the rendezvous which were waiting for the registered entry, or
+	 *         null if there is no one
+	 */
+	PendingRendezvous[] takeRendezvous(int keyNumber) {
+		final int hash = hash(keyNumber);
+		final Segment segment = this.segmentFor(hash);
+		segment.lock();
+		try {
+			final int index = segment.indexOf(keyNumber, hash);
+			if (index < 0 || segment.states[index] != REGISTERED) {
+				return null;
+			}
+			final PendingRendezvous[] waiting = (PendingRendezvous[]) segment.attachments[index];
+			segment.attachments[index] = null;
+			return waiting;
+		} finally {
+			segment.unlock();
+		}
+	}
+
+	static long packAddressHigh(byte[] address) {
+		if (address.length == 4) {
+			return 0;
+		}
+		return readLong(address, 0);
+	}
+
+	static long packAddressLow(byte[] address) {
+		if (address.length == 4) {
+			return IPV4_MAPPED_PREFIX | (readLong(address, 0) >>> 32);
+		}
+		return readLong(address, 8);
+	}
+
+	private static long readLong(byte[] bytes, int offset) {
+		long result = 0;
+		for (int i = offset; i < offset + 8; i++) {
+			result <<= 8;
+			if (i < bytes.length) {
+				result |= bytes[i] & 0xFF;
+			}
+		}
+		return result;
+	}
+
+	static String unpackAddress(long addressHigh, long addressLow) {
+		if (addressHigh == 0 && (addressLow >>> 32) == 0xFFFFL) {
+			// same as Inet4Address.getHostAddress()
+			return new StringBuilder(15).append((addressLow >>> 24) & 0xFF).append('.').append((addressLow >>> 16) & 0xFF).append('.').append((addressLow >>> 8) & 0xFF).append('.')
+					.append(addressLow & 0xFF).toString();
+		}
+		final byte[] bytes = new byte[16];
+		writeBytes(addressHigh, bytes, 0, 8);
+		writeBytes(addressLow, bytes, 8, 8);
+		try {
+			return InetAddress.getByAddress(bytes).getHostAddress();
+		} catch (UnknownHostException e) {
+			// it can't happen because the length of bytes is valid
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void writeBytes(long value, byte[] bytes, int offset, int length) {
+		for (int i = 0; i < length; i++) {
+			bytes[offset + i] = (byte) (value >>> (8 * (length - 1 - i)));
+		}
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder().append('{');
+		boolean first = true;
+		for (Segment segment : this.segments) {
+			segment.lock();
+			try {
+				for (int i = 0; i < segment.states.length; i++) {
+					if (!isEntry(segment.states[i])) {
+						continue;
+					}
+					if (!first) {
+						sb.append(", "); //$NON-NLS-1$
+					}
+					first = false;
+					sb.append(segment.keys[i]).append('=').append(unpackAddress(segment.addressHighs[i], segment.addressLows[i])).append(':').append(segment.ports[i]);
+				}
+			} finally {
+				segment.unlock();
+			}
+		}
+		return sb.append('}').toString();
+	}
+
+	/**
+	 * A visitor of {@link MatchingTable#visitRegisteredEntries(EntryVisitor)}
+	 */
+	interface EntryVisitor {
+		/**
+		 * @param keyNumber
+		 * @param addressHigh
+		 * @param addressLow
+		 * @param port
+		 */
+		void visit(int keyNumber, long addressHigh, long addressLow, int port);
+	}
+
+	private class Expiry implements Runnable {
+		private final int keyNumber;
+		private final PreEntryListener owner;
+
+		Expiry(int keyNumber, PreEntryListener owner) {
+			this.keyNumber = keyNumber;
+			this.owner = owner;
+		}
+
+		@Override
+		public void run() {
+			MatchingTable.this.expire(this.keyNumber, this.owner);
+		}
+	}
+
+	/**
+	 * A part of the table with linear probing. REMOVED slots are reused by
+	 * insertion and are dropped when the segment is rehashed.
+	 */
+	private static final class Segment extends ReentrantLock {
+		private static final long serialVersionUID = 1L;
+
+		int[] keys;
+		byte[] states;
+		long[] addressHighs;
+		long[] addressLows;
+		int[] ports;
+		PreEntryListener[] owners;
+		Object[] attachments;
+		EncodedResponse[] responses; // of the registered entries
+		long[] times; // System.nanoTime() when the entry came into its state
+		int count; // entries
+		int used; // entries and REMOVED slots
+
+		Segment(int capacity) {
+			this.allocate(capacity);
+		}
+
+		private void allocate(int capacity) {
+			this.keys = new int[capacity];
+			this.states = new byte[capacity];
+			this.addressHighs = new long[capacity];
+			this.addressLows = new long[capacity];
+			this.ports = new int[capacity];
+			this.owners = new PreEntryListener[capacity];
+			this.attachments = new Object[capacity];
+			this.responses = new EncodedResponse[capacity];
+			this.times = new long[capacity];
+			this.count = 0;
+			this.used = 0;
+		}
+
+		int indexOf(int keyNumber, int hash) {
+			final int mask = this.keys.length - 1;
+			int index = hash & mask;
+			while (true) {
+				final byte state = this.states[index];
+				if (state == FREE) {
+					return -1;
+				}
+				if (state != REMOVED && this.keys[index] == keyNumber) {
+					return index;
+				}
+				index = (index + 1) & mask;
+			}
+		}
+
+		/**
+		 * It must be called after {@link #indexOf(int, int)} has failed to
+		 * find the key
+		 * 
+		 * @return the index of the entry
+		 */
+		int insert(int keyNumber, int hash, byte state, long addressHigh, long addressLow, int port, PreEntryListener owner, Object attachment, long time) {
+			if ((this.used + 1) * 4 > this.keys.length * 3) {
+				this.rehash();
+			}
+			final int mask = this.keys.length - 1;
+			int index = hash & mask;
+			while (this.states[index] != FREE && this.states[index] != REMOVED) {
+				index = (index + 1) & mask;
+			}
+			if (this.states[index] == FREE) {
+				this.used++;
+			}
+			this.count++;
+			this.keys[index] = keyNumber;
+			this.states[index] = state;
+			this.addressHighs[index] = addressHigh;
+			this.addressLows[index] = addressLow;
+			this.ports[index] = port;
+			this.owners[index] = owner;
+			this.attachments[index] = attachment;
+			this.times[index] = time;
+			return index;
+		}
+
+		void removeAt(int index) {
+			this.states[index] = REMOVED;
+			this.owners[index] = null;
+			this.attachments[index] = null;
+			this.responses[index] = null;
+			this.count--;
+		}
+
+		private void rehash() {
+			int newCapacity = this.keys.length;
+			while ((this.count + 1) * 2 > newCapacity) {
+				newCapacity <<= 1;
+			}
+			final int[] oldKeys = this.keys;
+			final byte[] oldStates = this.states;
+			final long[] oldAddressHighs = this.addressHighs;
+			final long[] oldAddressLows = this.addressLows;
+			final int[] oldPorts = this.ports;
+			final PreEntryListener[] oldOwners = this.owners;
+			final Object[] oldAttachments = this.attachments;
+			final EncodedResponse[] oldResponses = this.responses;
+			final long[] oldTimes = this.times;
+			this.allocate(newCapacity);
+			for (int i = 0; i < oldKeys.length; i++) {
+				final byte state = oldStates[i];
+				if (isEntry(state)) {
+					final int index = this.insert(oldKeys[i], hash(oldKeys[i]), state, oldAddressHighs[i], oldAddressLows[i], oldPorts[i], oldOwners[i], oldAttachments[i], oldTimes[i]);
+					this.responses[index] = oldResponses[i];
+				}
+			}
+		}
+	}
+}
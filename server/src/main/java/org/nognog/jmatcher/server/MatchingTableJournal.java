@@ -0,0 +1,428 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * An append-only journal of the registrations and the removals of a
+ * {@link MatchingTable} with compact snapshots, from which a restarted daemon
+ * restores the registered entries so that their inviters can re-attach under
+ * their keys instead of registering again all at once. The journal is a
+ * memory-mapped file, so an append is a few stores into the page cache, which
+ * survive a crash of the process (but not of the machine). The directory
+ * holds the files of the generations
+ * 
+ * <pre>
+ * snapshot.&lt;generation&gt; : the registered entries when the generation began
+ * journal.&lt;generation&gt;  : the records which were appended in the generation
+ * </pre>
+ * 
+ * and every record of them is 32 bytes of
+ * 
+ * <pre>
+ * type (u8) | 0 (3 bytes) | key (i32) | port (i32) | checksum (i32) | address (2 x i64, packed by {@link MatchingTable})
+ * </pre>
+ * 
+ * A snapshot begins a new generation. It is written to a temporary file which
+ * is renamed when it is complete, and then the files of the older
+ * generations are deleted. They are read from the latest snapshot through
+ * the journals of the generations after it, and a journal is read up to the
+ * first record whose type is 0 or whose checksum is wrong, which is where the
+ * last write before a crash may have been torn.
+ * 
+ * @author agent 2026/10/17
+ */
+public class MatchingTableJournal implements MatchingTableLog {
+
+	/**
+	 * The default number of the records which are mapped at once
+	 */
+	public static final int DEFAULT_CHUNK_RECORDS = 65536;
+
+	static final int RECORD_SIZE = 32;
+
+	static final byte REGISTERED = 1;
+	static final byte RELEASED = 2;
+
+	private static final String SNAPSHOT_PREFIX = "snapshot."; //$NON-NLS-1$
+	private static final String JOURNAL_PREFIX = "journal."; //$NON-NLS-1$
+	private static final String TEMPORARY_SUFFIX = ".tmp"; //$NON-NLS-1$
+
+	private final Path directory;
+	private final int chunkSize; // [byte]
+	private final Object snapshotLock = new Object();
+	private long generation;
+	private FileChannel journalChannel;
+	private MappedByteBuffer journalBuffer;
+	private long journalChunkPosition;
+	private boolean closed;
+
+	private static Logger logger = LogManager.getLogger(MatchingTableJournal.class);
+
+	/**
+	 * @param directory
+	 *            directory of the files, which is created if it doesn't exist
+	 */
+	public MatchingTableJournal(File directory) {
+		this(directory, DEFAULT_CHUNK_RECORDS);
+	}
+
+	/**
+	 * @param directory
+	 *            directory of the files, which is created if it doesn't exist
+	 * @param chunkRecords
+	 *            number of the records which are mapped at once. The journal
+	 *            grows by it.
+	 */
+	public MatchingTableJournal(File directory, int chunkRecords) {
+		if (chunkRecords <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.directory = directory.toPath();
+		this.chunkSize = chunkRecords * RECORD_SIZE;
+	}
+
+	/**
+	 * Read the entries in the directory, and begin a new generation with a
+	 * snapshot of them
+	 * 
+	 * @return the entries which were registered when the journal was written
+	 *         last, in the order of the registrations
+	 * @throws IOException
+	 */
+	List<Entry> open() throws IOException {
+		synchronized (this.snapshotLock) {
+			Files.createDirectories(this.directory);
+			final List<Long> snapshotGenerations = new ArrayList<>();
+			final List<Long> journalGenerations = new ArrayList<>();
+			try (final DirectoryStream<Path> files = Files.newDirectoryStream(this.directory)) {
+				for (Path file : files) {
+					final String name = file.getFileName().toString();
+					if (name.endsWith(TEMPORARY_SUFFIX)) {
+						// a snapshot which was being written
+						Files.delete(file);
+					} else if (name.startsWith(SNAPSHOT_PREFIX)) {
+						snapshotGenerations.add(parseGeneration(name, SNAPSHOT_PREFIX));
+					} else if (name.startsWith(JOURNAL_PREFIX)) {
+						journalGenerations.add(parseGeneration(name, JOURNAL_PREFIX));
+					}
+				}
+			}
+			final long latestSnapshotGeneration = snapshotGenerations.isEmpty() ? -1 : Collections.max(snapshotGenerations).longValue();
+			long latestGeneration = latestSnapshotGeneration;
+			final Map<Integer, Entry> entries = new LinkedHashMap<>();
+			if (latestSnapshotGeneration >= 0) {
+				this.read(this.snapshotFile(latestSnapshotGeneration), entries);
+			}
+			Collections.sort(journalGenerations);
+			for (Long journalGeneration : journalGenerations) {
+				if (journalGeneration.longValue() >= latestSnapshotGeneration) {
+					this.read(this.journalFile(journalGeneration.longValue()), entries);
+					latestGeneration = Math.max(latestGeneration, journalGeneration.longValue());
+				}
+			}
+			final List<Entry> result = new ArrayList<>(entries.values());
+			final ByteBuffer records = ByteBuffer.allocate(result.size() * RECORD_SIZE);
+			for (Entry entry : result) {
+				putRecord(records, REGISTERED, entry.keyNumber, entry.port, entry.addressHigh, entry.addressLow);
+			}
+			final long newGeneration = latestGeneration + 1;
+			this.writeSnapshot(newGeneration, records);
+			synchronized (this) {
+				this.openJournal(newGeneration);
+			}
+			this.deleteGenerationsBefore(newGeneration);
+			return result;
+		}
+	}
+
+	private static Long parseGeneration(String name, String prefix) throws IOException {
+		try {
+			return Long.valueOf(name.substring(prefix.length()));
+		} catch (NumberFormatException e) {
+			throw new IOException("unknown file in the journal directory : " + name, e); //$NON-NLS-1$
+		}
+	}
+
+	private Path snapshotFile(long snapshotGeneration) {
+		return this.directory.resolve(SNAPSHOT_PREFIX + snapshotGeneration);
+	}
+
+	private Path journalFile(long journalGeneration) {
+		return this.directory.resolve(JOURNAL_PREFIX + journalGeneration);
+	}
+
+	private void read(Path file, Map<Integer, Entry> entries) throws IOException {
+		final ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(file));
+		while (records.remaining() >= RECORD_SIZE) {
+			if (records.get(records.position()) == 0) {
+				return;
+			}
+			if (!applyRecord(records, entries)) {
+				logger.warn(file.getFileName() + " ends with a broken record"); //$NON-NLS-1$
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Read a record, and apply it to the entries
+	 * 
+	 * @param records
+	 *            it has a record at least
+	 * @param entries
+	 *            the entries in the order of the registrations
+	 * @return false if the record is broken
+	 */
+	static boolean applyRecord(ByteBuffer records, Map<Integer, Entry> entries) {
+		final byte type = records.get();
+		records.position(records.position() + 3);
+		final int keyNumber = records.getInt();
+		final int port = records.getInt();
+		final int checksum = records.getInt();
+		final long addressHigh = records.getLong();
+		final long addressLow = records.getLong();
+		if ((type != REGISTERED && type != RELEASED) || checksum != checksum(type, keyNumber, port, addressHigh, addressLow)) {
+			return false;
+		}
+		final Integer key = Integer.valueOf(keyNumber);
+		// a registration is moved to the end as a new one
+		entries.remove(key);
+		if (type == REGISTERED) {
+			entries.put(key, new Entry(keyNumber, addressHigh, addressLow, port));
+		}
+		return true;
+	}
+
+	/**
+	 * Append the registration of the entry
+	 * 
+	 * @param keyNumber
+	 * @param addressHigh
+	 * @param addressLow
+	 * @param port
+	 */
+	@Override
+	public synchronized void registered(int keyNumber, long addressHigh, long addressLow, int port) {
+		this.append(REGISTERED, keyNumber, port, addressHigh, addressLow);
+	}
+
+	/**
+	 * Append the removal of the entry
+	 * 
+	 * @param keyNumber
+	 */
+	@Override
+	public synchronized void released(int keyNumber) {
+		this.append(RELEASED, keyNumber, 0, 0, 0);
+	}
+
+	private void append(byte type, int keyNumber, int port, long addressHigh, long addressLow) {
+		if (this.journalBuffer == null) {
+			return;
+		}
+		if (this.journalBuffer.remaining() < RECORD_SIZE) {
+			try {
+				this.mapNextChunk();
+			} catch (IOException e) {
+				logger.error("Failed to extend the journal, the entries aren't journaled until the next snapshot", e); //$NON-NLS-1$
+				this.journalBuffer = null;
+				return;
+			}
+		}
+		putRecord(this.journalBuffer, type, keyNumber, port, addressHigh, addressLow);
+	}
+
+	static void putRecord(ByteBuffer buffer, byte type, int keyNumber, int port, long addressHigh, long addressLow) {
+		final int position = buffer.position();
+		// the type is put last so that a reader never sees a half of a record
+		buffer.position(position + 4);
+		buffer.putInt(keyNumber);
+		buffer.putInt(port);
+		buffer.putInt(checksum(type, keyNumber, port, addressHigh, addressLow));
+		buffer.putLong(addressHigh);
+		buffer.putLong(addressLow);
+		buffer.put(position, type);
+	}
+
+	private static int checksum(byte type, int keyNumber, int port, long addressHigh, long addressLow) {
+		long h = type;
+		h = (h ^ keyNumber) * 0x9E3779B97F4A7C15L;
+		h = (h ^ port) * 0x9E3779B97F4A7C15L;
+		h = (h ^ addressHigh) * 0x9E3779B97F4A7C15L;
+		h = (h ^ addressLow) * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * Write a snapshot of the table, which begins a new generation, and delete
+	 * the files of the older generations
+	 * 
+	 * @param table
+	 * @throws IOException
+	 */
+	public void snapshot(MatchingTable table) throws IOException {
+		synchronized (this.snapshotLock) {
+			final long newGeneration;
+			synchronized (this) {
+				if (this.closed) {
+					return;
+				}
+				newGeneration = this.generation + 1;
+				// an entry which is changed after this is in both of the
+				// snapshot and the new journal, and they are read in order
+				this.openJournal(newGeneration);
+			}
+			final SnapshotWriter writer = new SnapshotWriter(table.size());
+			table.visitRegisteredEntries(writer);
+			this.writeSnapshot(newGeneration, writer.records);
+			this.deleteGenerationsBefore(newGeneration);
+		}
+	}
+
+	private void openJournal(long newGeneration) throws IOException {
+		final FileChannel previousChannel = this.journalChannel;
+		this.journalChannel = FileChannel.open(this.journalFile(newGeneration), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.journalChunkPosition = 0;
+		this.journalBuffer = this.journalChannel.map(FileChannel.MapMode.READ_WRITE, 0, this.chunkSize);
+		this.generation = newGeneration;
+		if (previousChannel != null) {
+			previousChannel.close();
+		}
+	}
+
+	private void mapNextChunk() throws IOException {
+		this.journalChunkPosition += this.chunkSize;
+		this.journalBuffer = this.journalChannel.map(FileChannel.MapMode.READ_WRITE, this.journalChunkPosition, this.chunkSize);
+	}
+
+	private void writeSnapshot(long snapshotGeneration, ByteBuffer records) throws IOException {
+		final Path target = this.snapshotFile(snapshotGeneration);
+		final Path temporaryFile = this.directory.resolve(target.getFileName() + TEMPORARY_SUFFIX);
+		records.flip();
+		try (final FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			while (records.hasRemaining()) {
+				channel.write(records);
+			}
+			channel.force(true);
+		}
+		Files.move(temporaryFile, target, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void deleteGenerationsBefore(long oldestGeneration) throws IOException {
+		try (final DirectoryStream<Path> files = Files.newDirectoryStream(this.directory)) {
+			for (Path file : files) {
+				final String name = file.getFileName().toString();
+				if (name.endsWith(TEMPORARY_SUFFIX)) {
+					continue;
+				}
+				final String prefix = name.startsWith(SNAPSHOT_PREFIX) ? SNAPSHOT_PREFIX : JOURNAL_PREFIX;
+				if (name.startsWith(prefix) && parseGeneration(name, prefix).longValue() < oldestGeneration) {
+					Files.delete(file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the current generation
+	 */
+	public synchronized long getGeneration() {
+		return this.generation;
+	}
+
+	/**
+	 * Write the last snapshot of the table, and stop journaling
+	 * 
+	 * @param table
+	 * @throws IOException
+	 */
+	public void close(MatchingTable table) throws IOException {
+		synchronized (this.snapshotLock) {
+			this.snapshot(table);
+			synchronized (this) {
+				this.closed = true;
+				if (this.journalChannel == null) {
+					return;
+				}
+				if (this.journalBuffer != null) {
+					this.journalBuffer.force();
+					this.journalBuffer = null;
+				}
+				this.journalChannel.close();
+				this.journalChannel = null;
+			}
+		}
+	}
+
+	/**
+	 * An entry which has been read from the journal
+	 */
+	static final class Entry {
+		final int keyNumber;
+		final long addressHigh;
+		final long addressLow;
+		final int port;
+
+		Entry(int keyNumber, long addressHigh, long addressLow, int port) {
+			this.keyNumber = keyNumber;
+			this.addressHigh = addressHigh;
+			this.addressLow = addressLow;
+			this.port = port;
+		}
+	}
+
+	/**
+	 * A visitor which puts the registrations of the visited entries into a
+	 * buffer, which grows as needed
+	 */
+	static final class SnapshotWriter implements MatchingTable.EntryVisitor {
+		ByteBuffer records;
+
+		SnapshotWriter(int expectedEntries) {
+			this.records = ByteBuffer.allocate(Math.max(expectedEntries + 16, 16) * RECORD_SIZE);
+		}
+
+		@Override
+		public void visit(int keyNumber, long addressHigh, long addressLow, int port) {
+			if (this.records.remaining() < RECORD_SIZE) {
+				// entries may be added while the segments are visited
+				final ByteBuffer newRecords = ByteBuffer.allocate(this.records.capacity() * 2);
+				this.records.flip();
+				newRecords.put(this.records);
+				this.records = newRecords;
+			}
+			putRecord(this.records, REGISTERED, keyNumber, port, addressHigh, addressLow);
+		}
+	}
+}
@@ -0,0 +1,45 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+/**
+ * A log of the changes of the registered entries of a {@link MatchingTable},
+ * e.g. {@link MatchingTableJournal} and {@link ReplicationSource}. It is
+ * called in the lock of the segment of the entry so that the changes of a key
+ * are logged in order, so it must not block.
+ * 
+ * @author agent 2026/10/17
+ */
+interface MatchingTableLog {
+	/**
+	 * @param keyNumber
+	 *            key of the entry which has been enabled
+	 * @param addressHigh
+	 *            address of the inviter packed by
+	 *            {@link MatchingTable#packAddressHigh(byte[])}
+	 * @param addressLow
+	 *            address of the inviter packed by
+	 *            {@link MatchingTable#packAddressLow(byte[])}
+	 * @param port
+	 *            port of the inviter
+	 */
+	void registered(int keyNumber, long addressHigh, long addressLow, int port);
+
+	/**
+	 * @param keyNumber
+	 *            key of the entry which has been removed
+	 */
+	void released(int keyNumber);
+}
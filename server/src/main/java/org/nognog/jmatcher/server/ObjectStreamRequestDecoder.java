@@ -0,0 +1,303 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectStreamConstants;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nognog.jmatcher.tcp.request.PlainTCPRequest;
+import org.nognog.jmatcher.tcp.request.ReattachRequest;
+
+/**
+ * Incremental decoder of the requests which an inviter writes with
+ * {@link java.io.ObjectOutputStream}. A selector thread can't block in
+ * {@link java.io.ObjectInputStream#readObject()} until a whole object has
+ * arrived, so this decodes the small subset of the serialization stream
+ * protocol which the entry channel uses (the stream header, enum constants of
+ * {@link PlainTCPRequest}, {@link ReattachRequest}, strings, references and
+ * resets) from whatever bytes have arrived, and rolls back if the object is
+ * still incomplete.
+ * 
+ * @author agent 2026/10/17
+ */
+class ObjectStreamRequestDecoder implements ObjectStreamConstants {
+
+	/**
+	 * returned by {@link #decode(ByteBuffer)} if the buffer doesn't contain a
+	 * whole object yet
+	 */
+	static final Object INCOMPLETE = new Object();
+
+	private static final int maxStringLength = 1024;
+
+	// the serializable fields of ReattachRequest
+	private static final String reattachRequestFields = "IkeyNumber;"; //$NON-NLS-1$
+
+	private static final Underflow underflow = new Underflow();
+
+	private final List<Object> handles;
+	private final List<Object> newHandles;
+	private boolean hasReadHeader;
+
+	ObjectStreamRequestDecoder() {
+		this.handles = new ArrayList<>();
+		this.newHandles = new ArrayList<>();
+	}
+
+	/**
+	 * Decode next object from the buffer. The position of the buffer is
+	 * advanced only if an object is decoded.
+	 * 
+	 * @param buffer
+	 * @return a {@link PlainTCPRequest}, a {@link ReattachRequest}, a String or
+	 *         null which was written as
+	 *         the object, or {@link #INCOMPLETE} if more bytes are needed
+	 * @throws StreamCorruptedException
+	 *             thrown if the stream contains anything which isn't used by
+	 *             the entry channel
+	 */
+	Object decode(ByteBuffer buffer) throws StreamCorruptedException {
+		while (true) {
+			final int startPosition = buffer.position();
+			this.newHandles.clear();
+			try {
+				if (!this.hasReadHeader) {
+					this.readHeader(buffer);
+					continue;
+				}
+				final byte typeCode = readByte(buffer);
+				if (typeCode == TC_RESET) {
+					this.handles.clear();
+					continue;
+				}
+				final Object result = this.readObject(typeCode, buffer);
+				this.handles.addAll(this.newHandles);
+				return result;
+			} catch (Underflow e) {
+				buffer.position(startPosition);
+				return INCOMPLETE;
+			}
+		}
+	}
+
+	private void readHeader(ByteBuffer buffer) throws StreamCorruptedException {
+		final short magic = readShort(buffer);
+		final short version = readShort(buffer);
+		if (magic != STREAM_MAGIC || version != STREAM_VERSION) {
+			throw new StreamCorruptedException("invalid stream header"); //$NON-NLS-1$
+		}
+		this.hasReadHeader = true;
+	}
+
+	private Object readObject(byte typeCode, ByteBuffer buffer) throws StreamCorruptedException {
+		switch (typeCode) {
+		case TC_NULL:
+			return null;
+		case TC_REFERENCE:
+			return this.readReference(buffer);
+		case TC_STRING:
+			return this.readNewString(buffer, readUnsignedShort(buffer));
+		case TC_LONGSTRING:
+			if (buffer.remaining() < 8) {
+				throw underflow;
+			}
+			final long length = buffer.getLong();
+			if (length < 0 || length > maxStringLength) {
+				throw new StreamCorruptedException("too long string"); //$NON-NLS-1$
+			}
+			return this.readNewString(buffer, (int) length);
+		case TC_ENUM:
+			return this.readEnum(buffer);
+		case TC_OBJECT:
+			return this.readNewObject(buffer);
+		default:
+			throw new StreamCorruptedException("unsupported type code : " + typeCode); //$NON-NLS-1$
+		}
+	}
+
+	private Object readEnum(ByteBuffer buffer) throws StreamCorruptedException {
+		final ClassDescription description = this.readClassDescription(buffer);
+		final int enumHandleIndex = this.assignHandle(null);
+		final Object name = this.readObject(readByte(buffer), buffer);
+		if (description == null || !(name instanceof String)) {
+			throw new StreamCorruptedException("invalid enum"); //$NON-NLS-1$
+		}
+		if (!PlainTCPRequest.class.getName().equals(description.name)) {
+			throw new StreamCorruptedException("unsupported class : " + description.name); //$NON-NLS-1$
+		}
+		final PlainTCPRequest request;
+		try {
+			request = PlainTCPRequest.valueOf((String) name);
+		} catch (IllegalArgumentException e) {
+			throw new StreamCorruptedException("unknown request : " + name); //$NON-NLS-1$
+		}
+		this.setHandle(enumHandleIndex, request);
+		return request;
+	}
+
+	private Object readNewObject(ByteBuffer buffer) throws StreamCorruptedException {
+		final ClassDescription description = this.readClassDescription(buffer);
+		if (description == null || !ReattachRequest.class.getName().equals(description.name)) {
+			throw new StreamCorruptedException("unsupported class : " + (description == null ? null : description.name)); //$NON-NLS-1$
+		}
+		if (!reattachRequestFields.equals(description.fields) || description.superClass != null) {
+			throw new StreamCorruptedException("incompatible class : " + description.name); //$NON-NLS-1$
+		}
+		final int objectHandleIndex = this.assignHandle(null);
+		if (buffer.remaining() < 4) {
+			throw underflow;
+		}
+		final ReattachRequest request = new ReattachRequest(buffer.getInt());
+		this.setHandle(objectHandleIndex, request);
+		return request;
+	}
+
+	private ClassDescription readClassDescription(ByteBuffer buffer) throws StreamCorruptedException {
+		final byte typeCode = readByte(buffer);
+		switch (typeCode) {
+		case TC_NULL:
+			return null;
+		case TC_REFERENCE:
+			final Object referent = this.readReference(buffer);
+			if (!(referent instanceof ClassDescription)) {
+				throw new StreamCorruptedException("invalid class description reference"); //$NON-NLS-1$
+			}
+			return (ClassDescription) referent;
+		case TC_CLASSDESC:
+			final ClassDescription description = new ClassDescription(readUTF(buffer, readUnsignedShort(buffer)));
+			skip(buffer, 8); // serialVersionUID
+			this.assignHandle(description);
+			skip(buffer, 1); // flags
+			final int numberOfFields = readUnsignedShort(buffer);
+			final StringBuilder fields = new StringBuilder();
+			for (int i = 0; i < numberOfFields; i++) {
+				final byte fieldTypeCode = readByte(buffer);
+				fields.append((char) fieldTypeCode).append(readUTF(buffer, readUnsignedShort(buffer))).append(';');
+				if (fieldTypeCode == '[' || fieldTypeCode == 'L') {
+					this.readObject(readByte(buffer), buffer);
+				}
+			}
+			if (readByte(buffer) != TC_ENDBLOCKDATA) {
+				throw new StreamCorruptedException("class annotation is unsupported"); //$NON-NLS-1$
+			}
+			description.fields = fields.toString();
+			description.superClass = this.readClassDescription(buffer);
+			return description;
+		default:
+			throw new StreamCorruptedException("unsupported class description : " + typeCode); //$NON-NLS-1$
+		}
+	}
+
+	private Object readReference(ByteBuffer buffer) throws StreamCorruptedException {
+		if (buffer.remaining() < 4) {
+			throw underflow;
+		}
+		final int index = buffer.getInt() - baseWireHandle;
+		if (index >= 0 && index < this.handles.size()) {
+			return this.handles.get(index);
+		}
+		final int newHandleIndex = index - this.handles.size();
+		if (newHandleIndex >= 0 && newHandleIndex < this.newHandles.size()) {
+			return this.newHandles.get(newHandleIndex);
+		}
+		throw new StreamCorruptedException("invalid handle"); //$NON-NLS-1$
+	}
+
+	private String readNewString(ByteBuffer buffer, int length) throws StreamCorruptedException {
+		final String string = readUTF(buffer, length);
+		this.assignHandle(string);
+		return string;
+	}
+
+	private int assignHandle(Object object) {
+		this.newHandles.add(object);
+		return this.newHandles.size() - 1;
+	}
+
+	private void setHandle(int newHandleIndex, Object object) {
+		this.newHandles.set(newHandleIndex, object);
+	}
+
+	private static String readUTF(ByteBuffer buffer, int length) throws StreamCorruptedException {
+		if (length > maxStringLength) {
+			throw new StreamCorruptedException("too long string"); //$NON-NLS-1$
+		}
+		if (buffer.remaining() < length) {
+			throw underflow;
+		}
+		// the stream uses modified UTF-8, which DataInputStream can read
+		final byte[] bytes = new byte[length + 2];
+		bytes[0] = (byte) (length >>> 8);
+		bytes[1] = (byte) length;
+		buffer.get(bytes, 2, length);
+		try {
+			return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+		} catch (IOException e) {
+			throw new StreamCorruptedException("invalid string"); //$NON-NLS-1$
+		}
+	}
+
+	private static byte readByte(ByteBuffer buffer) {
+		if (!buffer.hasRemaining()) {
+			throw underflow;
+		}
+		return buffer.get();
+	}
+
+	private static short readShort(ByteBuffer buffer) {
+		if (buffer.remaining() < 2) {
+			throw underflow;
+		}
+		return buffer.getShort();
+	}
+
+	private static int readUnsignedShort(ByteBuffer buffer) {
+		return readShort(buffer) & 0xFFFF;
+	}
+
+	private static void skip(ByteBuffer buffer, int length) {
+		if (buffer.remaining() < length) {
+			throw underflow;
+		}
+		buffer.position(buffer.position() + length);
+	}
+
+	private static class ClassDescription {
+		final String name;
+		String fields; // type code, name and ';' of each field
+		ClassDescription superClass;
+
+		ClassDescription(String name) {
+			this.name = name;
+		}
+	}
+
+	/**
+	 * thrown when the buffer ends in the middle of an object
+	 */
+	private static class Underflow extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		Underflow() {
+			super(null, null, false, false);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.util.Random;
+
+/**
+ * A {@link KeyAllocator} of one partition of the key space of a cluster. The
+ * key k belongs to the partition k % numberOfPartitions, so any node can tell
+ * the owner of a key without asking the others. It allocates the keys of its
+ * partition in the same random order as {@link KeyAllocator} does over the
+ * whole space.
+ * 
+ * @author agent 2026/10/17
+ */
+public class PartitionedKeyAllocator extends KeyAllocator {
+
+	private final int globalBound;
+	private final int numberOfPartitions;
+	private final int partition;
+
+	/**
+	 * @param bound
+	 *            bound of the key numbers of the whole cluster (exclusive)
+	 * @param capacity
+	 *            max number of the allocated keys
+	 * @param numberOfAllocatedKeys
+	 *            the number of the keys which have already been allocated by
+	 *            the previous allocator, they are released to this
+	 * @param quarantineTime
+	 *            [msec]
+	 * @param random
+	 *            it creates the keys of the permutation
+	 * @param numberOfPartitions
+	 * @param partition
+	 *            in [0, numberOfPartitions)
+	 */
+	public PartitionedKeyAllocator(int bound, int capacity, int numberOfAllocatedKeys, long quarantineTime, Random random, int numberOfPartitions, int partition) {
+		super(localBound(bound, numberOfPartitions, partition), capacity, numberOfAllocatedKeys, quarantineTime, random);
+		this.globalBound = bound;
+		this.numberOfPartitions = numberOfPartitions;
+		this.partition = partition;
+	}
+
+	private static int localBound(int bound, int numberOfPartitions, int partition) {
+		if (numberOfPartitions <= 0 || partition < 0 || partition >= numberOfPartitions || bound <= partition) {
+			throw new IllegalArgumentException();
+		}
+		return (bound - partition + numberOfPartitions - 1) / numberOfPartitions;
+	}
+
+	/**
+	 * @param keyNumber
+	 * @param numberOfPartitions
+	 * @return the partition which the key belongs to
+	 */
+	public static int partitionOf(int keyNumber, int numberOfPartitions) {
+		return keyNumber % numberOfPartitions;
+	}
+
+	/**
+	 * @param keyNumber
+	 * @return true if the key belongs to the partition of this
+	 */
+	public boolean owns(int keyNumber) {
+		return keyNumber >= 0 && keyNumber < this.globalBound && partitionOf(keyNumber, this.numberOfPartitions) == this.partition;
+	}
+
+	@Override
+	public int allocate() {
+		final int localKeyNumber = super.allocate();
+		if (localKeyNumber < 0) {
+			return localKeyNumber;
+		}
+		return localKeyNumber * this.numberOfPartitions + this.partition;
+	}
+
+	@Override
+	public boolean claim(int keyNumber) {
+		return this.owns(keyNumber) && super.claim(keyNumber / this.numberOfPartitions);
+	}
+
+	@Override
+	public void release(int keyNumber) {
+		// a key of another partition is a key of the previous allocator
+		super.release(this.owns(keyNumber) ? keyNumber / this.numberOfPartitions : -1);
+	}
+
+	@Override
+	public void abandon(int keyNumber) {
+		super.abandon(this.owns(keyNumber) ? keyNumber / this.numberOfPartitions : -1);
+	}
+
+	@Override
+	public void adopt(int keyNumber) {
+		// a key of another partition is only counted
+		super.adopt(this.owns(keyNumber) ? keyNumber / this.numberOfPartitions : -1);
+	}
+
+	@Override
+	public int getBound() {
+		return this.globalBound;
+	}
+
+	/**
+	 * @return the number of the partitions
+	 */
+	public int getNumberOfPartitions() {
+		return this.numberOfPartitions;
+	}
+
+	/**
+	 * @return the partition of this
+	 */
+	public int getPartition() {
+		return this.partition;
+	}
+}
@@ -0,0 +1,177 @@
+/** Copyright 2015 Goshi Noguchi (noggon54@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.nognog.jmatcher.Host;
+import org.nognog.jmatcher.SpecialHostAddress;
+
+/**
+ * A ConnectionRequest which is waiting for the inviter to take it. It is
+ * completed exactly once, either by {@link #release(EncodedResponse, boolean)}
+ * when the inviter takes the requesting host, or by {@link #fail()} when the
+ * deadline has passed or the entry is removed, and the ConnectionResponse is
+ * sent from the thread which completes it.
+ * 
+ * @author goshi 2015/12/20
+ */
+public class PendingRendezvous implements Runnable {
+	private final UDPClientRequestHandler handler;
+	private final AtomicBoolean completed;
+	private final long requestedTime;
+	private volatile HashedTimingWheel.Timeout timeout;
+	private volatile MatchingTable matchingTable;
+	private volatile int keyNumber;
+	private volatile EncodedResponse response;
+	private volatile long completedTime;
+
+	/**
+	 * @param handler
+	 *            the handler which sends the response to the requesting host
+	 */
+	public PendingRendezvous(UDPClientRequestHandler handler) {
+		if (handler == null) {
+			throw new IllegalArgumentException();
+		}
+		this.handler = handler;
+		this.completed = new AtomicBoolean(false);
+		this.requestedTime = System.nanoTime();
+	}
+
+	/**
+	 * Schedule the timeout of this rendezvous
+	 * 
+	 * @param timingWheel
+	 * @param delay
+	 *            [msec]
+	 */
+	void scheduleTimeout(HashedTimingWheel timingWheel, long delay) {
+		this.timeout = timingWheel.newTimeout(this, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param table
+	 *            the table which contains the entry this is waiting for
+	 * @param entryKeyNumber
+	 */
+	void setWaitingEntry(MatchingTable table, int entryKeyNumber) {
+		this.keyNumber = entryKeyNumber;
+		this.matchingTable = table;
+	}
+
+	/**
+	 * @return true if this rendezvous has been released or has failed
+	 */
+	public boolean isCompleted() {
+		return this.completed.get();
+	}
+
+	/**
+	 * @return the response which has been sent to the requesting host, or null
+	 *         if it hasn't been sent yet
+	 */
+	public EncodedResponse getResponse() {
+		return this.response;
+	}
+
+	/**
+	 * @return System.nanoTime() when this was completed
+	 */
+	long getCompletedTime() {
+		return this.completedTime;
+	}
+
+	/**
+	 * Send the response of matching to the requesting host
+	 * 
+	 * @param entryResponse
+	 *            the response which tells the inviter
+	 * @param enabledToReturnSpecialInternalAddress
+	 * @return the requesting host which is told to the inviter, or null if
+	 *         this has already been completed
+	 */
+	public Host release(EncodedResponse entryResponse, boolean enabledToReturnSpecialInternalAddress) {
+		if (!this.completed.compareAndSet(false, true)) {
+			return null;
+		}
+		this.cancelTimeout();
+		final MatchingTable table = this.matchingTable;
+		if (table != null) {
+			table.getMetrics().requestMatched(System.nanoTime() - this.requestedTime);
+		}
+		final InetSocketAddress requestingAddress = this.handler.getClientAddress();
+		final EncodedResponse response = entryResponse.forRequester(requestingAddress.getAddress(), enabledToReturnSpecialInternalAddress);
+		final Host requestingHost;
+		if (response.isInternalNetworkResponse()) {
+			requestingHost = new Host(SpecialHostAddress.ON_INTERNAL_NETWORK_HOST.getAddress(), requestingAddress.getPort());
+		} else {
+			requestingHost = new Host(requestingAddress.getAddress().getHostAddress(), requestingAddress.getPort());
+		}
+		this.respond(response);
+		return requestingHost;
+	}
+
+	/**
+	 * It is called by the timing wheel when the deadline has passed
+	 */
+	@Override
+	public void run() {
+		this.fail(true);
+	}
+
+	/**
+	 * Send the failure response to the requesting host, and remove this from
+	 * the entry
+	 * 
+	 * @return true if this fails by this call, or false if this has already
+	 *         been completed. It is also used for a rendezvous which has never
+	 *         been added to the table.
+	 */
+	boolean fail() {
+		return this.fail(false);
+	}
+
+	private boolean fail(boolean timedOut) {
+		if (!this.completed.compareAndSet(false, true)) {
+			return false;
+		}
+		this.cancelTimeout();
+		final MatchingTable table = this.matchingTable;
+		if (table != null) {
+			table.removeRendezvous(this.keyNumber, this);
+			table.getMetrics().requestFailed(timedOut);
+		}
+		this.respond(EncodedResponse.NO_HOST);
+		return true;
+	}
+
+	private void respond(EncodedResponse encodedResponse) {
+		// the time is recorded first, so that a retransmission which sees the
+		// response sees the time
+		this.completedTime = System.nanoTime();
+		this.response = encodedResponse;
+		this.handler.sendResponseSafely(encodedResponse);
+	}
+
+	private void cancelTimeout() {
+		final HashedTimingWheel.Timeout currentTimeout = this.timeout;
+		if (currentTimeout != null) {
+			currentTimeout.cancel();
+		}
+	}
+}
@@ -0,0 +1,53 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+/**
+ * A listener which is told when the pre-entry of an inviter is enabled by its
+ * {@link org.nognog.jmatcher.udp.request.EnableEntryRequest}, or when it
+ * expires before that, and when hosts request connection to the entry. The
+ * listener is also the owner of the entry in the {@link MatchingTable}.
+ * 
+ * @author agent 2026/10/17
+ */
+public interface PreEntryListener {
+	/**
+	 * It is called by the thread which handles the EnableEntryRequest, so it
+	 * must not block.
+	 * 
+	 * @param keyNumber
+	 *            key of the enabled entry
+	 */
+	void enabled(int keyNumber);
+
+	/**
+	 * It is called by the thread of the timing wheel after the entry has been
+	 * removed from the matching table, so it must not block.
+	 * 
+	 * @param keyNumber
+	 *            key of the expired entry
+	 */
+	void expired(int keyNumber);
+
+	/**
+	 * It is called by the thread which handles a ConnectionRequest after the
+	 * request has been added to the registered entry. It isn't called again
+	 * until the waiting requests are taken, so it must not block.
+	 * 
+	 * @param keyNumber
+	 *            key of the requested entry
+	 */
+	void requested(int keyNumber);
+}
@@ -0,0 +1,341 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The primary side of the hot-standby replication. It accepts a
+ * {@link ReplicationStandby} on the replication port, sends it the registered
+ * entries of the matching table, and then streams the registrations and the
+ * removals in the records of {@link MatchingTableJournal}. The changes are
+ * queued in a ring and sent by this thread, so a handler never waits for the
+ * standby. If the standby falls behind by the whole ring, it is disconnected,
+ * and it gets the entries again when it comes back. The stream is
+ * 
+ * <pre>
+ * preamble : 'J' | 'R' | version (u8) | 0           (both sides)
+ * reset    : 1 (u8) | sequence (i64)                (the standby drops its entries)
+ * batch    : 2 (u8) | sequence of the last record (i64) | age of the oldest record [msec] (i32) | count (u16) | records
+ * </pre>
+ * 
+ * and the standby acknowledges each batch with the sequence (i64) which it has
+ * applied. A batch without records is sent as a heartbeat. Only one standby is
+ * served at once.
+ * 
+ * @author agent 2026/10/17
+ */
+public class ReplicationSource extends Thread implements MatchingTableLog {
+
+	/**
+	 * the version of the stream
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * the interval of the heartbeats [msec]
+	 */
+	static final int HEARTBEAT_INTERVAL = 500;
+
+	/**
+	 * The default number of the changes which can wait for the standby
+	 */
+	public static final int DEFAULT_RING_SIZE = 65536;
+
+	static final byte RESET = 1;
+	static final byte BATCH = 2;
+	static final int BATCH_HEADER_SIZE = 1 + 8 + 4 + 2;
+	static final int MAX_BATCH_RECORDS = 1024;
+
+	private final JMatcherDaemon jmatcherDaemon;
+	private final ServerSocket serverSocket;
+
+	// the changes which haven't been acknowledged, guarded by this
+	private final byte[] types;
+	private final int[] keys;
+	private final int[] ports;
+	private final long[] addressHighs;
+	private final long[] addressLows;
+	private final long[] times; // System.nanoTime() when it is changed
+	private final int ringMask;
+	private long sequence; // of the last change
+	private long sentSequence;
+	private volatile long acknowledgedSequence;
+	private boolean serving;
+	private boolean overflowed;
+	private volatile Socket standbySocket;
+
+	private static Logger logger = LogManager.getLogger(ReplicationSource.class);
+
+	/**
+	 * @param daemon
+	 * @param port
+	 *            the replication port
+	 * @param ringSize
+	 *            the number of the changes which can wait for the standby, it
+	 *            is rounded up to a power of 2
+	 * @throws IOException
+	 */
+	public ReplicationSource(JMatcherDaemon daemon, int port, int ringSize) throws IOException {
+		super("replication-source"); //$NON-NLS-1$
+		if (ringSize <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.jmatcherDaemon = daemon;
+		int capacity = 1;
+		while (capacity < ringSize) {
+			capacity <<= 1;
+		}
+		this.types = new byte[capacity];
+		this.keys = new int[capacity];
+		this.ports = new int[capacity];
+		this.addressHighs = new long[capacity];
+		this.addressLows = new long[capacity];
+		this.times = new long[capacity];
+		this.ringMask = capacity - 1;
+		this.serverSocket = new ServerSocket(port);
+	}
+
+	/**
+	 * @param out
+	 * @param in
+	 * @throws IOException
+	 *             thrown if an I/O error occurs or the other side doesn't
+	 *             speak the stream
+	 */
+	static void exchangePreambles(OutputStream out, DataInputStream in) throws IOException {
+		out.write(new byte[] { 'J', 'R', VERSION, 0 });
+		out.flush();
+		final byte[] preamble = new byte[4];
+		in.readFully(preamble);
+		if (preamble[0] != 'J' || preamble[1] != 'R' || preamble[2] != VERSION) {
+			throw new ProtocolException("invalid preamble of the replication"); //$NON-NLS-1$
+		}
+	}
+
+	@Override
+	public void run() {
+		logger.info("started replication source on port " + this.serverSocket.getLocalPort()); //$NON-NLS-1$
+		while (!this.jmatcherDaemon.isStopping()) {
+			try (final Socket socket = this.serverSocket.accept()) {
+				this.standbySocket = socket;
+				this.serve(socket);
+			} catch (IOException e) {
+				if (!this.jmatcherDaemon.isStopping()) {
+					logger.warn("replication to the standby has stopped : " + e); //$NON-NLS-1$
+				}
+			} catch (InterruptedException e) {
+				return;
+			} catch (Throwable t) {
+				logger.fatal("unexpected error occured", t); //$NON-NLS-1$
+			} finally {
+				synchronized (this) {
+					this.serving = false;
+				}
+				this.standbySocket = null;
+			}
+		}
+	}
+
+	private void serve(final Socket socket) throws IOException, InterruptedException {
+		socket.setTcpNoDelay(true);
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		exchangePreambles(out, in);
+		final long snapshotSequence;
+		synchronized (this) {
+			this.serving = true;
+			this.overflowed = false;
+			snapshotSequence = this.sequence;
+			this.sentSequence = this.sequence;
+			this.acknowledgedSequence = this.sequence;
+		}
+		logger.info("standby connected from " + socket.getRemoteSocketAddress()); //$NON-NLS-1$
+		// the changes from now on are queued, and they are sent after the
+		// entries, which they are applied to in order
+		out.writeByte(RESET);
+		out.writeLong(snapshotSequence);
+		final MatchingTableJournal.SnapshotWriter writer = new MatchingTableJournal.SnapshotWriter(this.jmatcherDaemon.getMatchingTable().size());
+		this.jmatcherDaemon.getMatchingTable().visitRegisteredEntries(writer);
+		final ByteBuffer entries = writer.records;
+		entries.flip();
+		while (entries.hasRemaining()) {
+			final int count = Math.min(entries.remaining() / MatchingTableJournal.RECORD_SIZE, MAX_BATCH_RECORDS);
+			out.writeByte(BATCH);
+			out.writeLong(snapshotSequence);
+			out.writeInt(0);
+			out.writeShort(count);
+			out.write(entries.array(), entries.position(), count * MatchingTableJournal.RECORD_SIZE);
+			entries.position(entries.position() + count * MatchingTableJournal.RECORD_SIZE);
+		}
+		out.flush();
+		this.startAcknowledgementReader(socket, in);
+		final ByteBuffer batch = ByteBuffer.allocate(BATCH_HEADER_SIZE + MAX_BATCH_RECORDS * MatchingTableJournal.RECORD_SIZE);
+		while (!this.jmatcherDaemon.isStopping()) {
+			this.takeBatch(batch);
+			out.write(batch.array(), 0, batch.position());
+			out.flush();
+		}
+	}
+
+	private void startAcknowledgementReader(final Socket socket, final DataInputStream in) {
+		final Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						ReplicationSource.this.acknowledgedSequence = in.readLong();
+					}
+				} catch (IOException e) {
+					// the standby has gone, and the sender fails to write
+					try {
+						socket.close();
+					} catch (IOException e1) {
+						// ignore
+					}
+				}
+			}
+		}, "replication-ack"); //$NON-NLS-1$
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * Put the next batch into the buffer. It waits for a change until the
+	 * heartbeat interval passes.
+	 */
+	private synchronized void takeBatch(ByteBuffer batch) throws IOException, InterruptedException {
+		if (this.sentSequence == this.sequence && !this.overflowed) {
+			this.wait(HEARTBEAT_INTERVAL);
+		}
+		if (this.overflowed) {
+			throw new IOException("the standby has fallen behind"); //$NON-NLS-1$
+		}
+		final int count = (int) Math.min(this.sequence - this.sentSequence, MAX_BATCH_RECORDS);
+		batch.clear();
+		batch.put(BATCH);
+		batch.putLong(this.sentSequence + count);
+		batch.putInt(count == 0 ? 0 : (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.times[(int) (this.sentSequence + 1) & this.ringMask]));
+		batch.putShort((short) count);
+		for (int i = 0; i < count; i++) {
+			final int index = (int) (this.sentSequence + 1 + i) & this.ringMask;
+			MatchingTableJournal.putRecord(batch, this.types[index], this.keys[index], this.ports[index], this.addressHighs[index], this.addressLows[index]);
+		}
+		this.sentSequence += count;
+	}
+
+	@Override
+	public synchronized void registered(int keyNumber, long addressHigh, long addressLow, int port) {
+		this.append(MatchingTableJournal.REGISTERED, keyNumber, port, addressHigh, addressLow);
+	}
+
+	@Override
+	public synchronized void released(int keyNumber) {
+		this.append(MatchingTableJournal.RELEASED, keyNumber, 0, 0, 0);
+	}
+
+	private void append(byte type, int keyNumber, int port, long addressHigh, long addressLow) {
+		if (!this.serving || this.overflowed) {
+			// the standby gets the whole table when it comes
+			return;
+		}
+		if (this.sequence - this.acknowledgedSequence > this.ringMask) {
+			this.overflowed = true;
+			this.notifyAll();
+			return;
+		}
+		this.sequence++;
+		final int index = (int) this.sequence & this.ringMask;
+		this.types[index] = type;
+		this.keys[index] = keyNumber;
+		this.ports[index] = port;
+		this.addressHighs[index] = addressHigh;
+		this.addressLows[index] = addressLow;
+		this.times[index] = System.nanoTime();
+		if (this.sequence - 1 == this.sentSequence) {
+			this.notifyAll();
+		}
+	}
+
+	/**
+	 * @return the number of the changes which the standby hasn't applied, or
+	 *         -1 if no standby is connected
+	 */
+	public synchronized long getLag() {
+		if (!this.serving) {
+			return -1;
+		}
+		return Math.max(this.sequence - this.acknowledgedSequence, 0);
+	}
+
+	/**
+	 * @return the time since the oldest change which the standby hasn't
+	 *         applied [msec], or -1 if no standby is connected
+	 */
+	public synchronized long getLagMillis() {
+		if (!this.serving) {
+			return -1;
+		}
+		final long acknowledged = this.acknowledgedSequence;
+		if (acknowledged >= this.sequence) {
+			return 0;
+		}
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.times[(int) (acknowledged + 1) & this.ringMask]);
+	}
+
+	/**
+	 * @return address of the connected standby, or null
+	 */
+	public InetSocketAddress getStandbyAddress() {
+		final Socket socket = this.standbySocket;
+		return (socket == null) ? null : (InetSocketAddress) socket.getRemoteSocketAddress();
+	}
+
+	/**
+	 * close the replication port and the connection to the standby
+	 */
+	public void closeSocket() {
+		try {
+			this.serverSocket.close();
+		} catch (IOException e) {
+			logger.error("Failed to close replication server socket", e); //$NON-NLS-1$
+		}
+		final Socket socket = this.standbySocket;
+		if (socket != null) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+		synchronized (this) {
+			this.notifyAll();
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The standby side of the hot-standby replication. It keeps a copy of the
+ * registered entries of the primary from its {@link ReplicationSource}, and
+ * when it has heard nothing from the primary for the failover time, it hands
+ * them to the daemon, which takes over the port of the primary and restores
+ * them to wait for their inviters to re-attach. It doesn't take over a primary
+ * which it has never reached, and there is no fencing: the primary must be
+ * gone (e.g. on the same host, its port is free) before the standby can serve.
+ * 
+ * @author agent 2026/10/17
+ */
+public class ReplicationStandby extends Thread {
+
+	/**
+	 * The default of the time without a word from the primary after which the
+	 * standby takes over [msec]
+	 */
+	public static final int DEFAULT_FAILOVER_TIME = 3000;
+
+	private static final int retryInterval = 200; // [msec]
+
+	private final JMatcherDaemon jmatcherDaemon;
+	private final InetSocketAddress primaryAddress;
+	private final int failoverTime;
+	// accessed by this thread only
+	private final Map<Integer, MatchingTableJournal.Entry> entries;
+	private long lastReceivedTime; // System.nanoTime()
+	private boolean hasSynchronized;
+	private volatile int numberOfEntries;
+	private volatile long lagMillis;
+	private volatile Socket socket;
+
+	private static Logger logger = LogManager.getLogger(ReplicationStandby.class);
+
+	/**
+	 * @param daemon
+	 * @param primaryAddress
+	 *            address of the replication port of the primary
+	 * @param failoverTime
+	 *            [msec]
+	 */
+	public ReplicationStandby(JMatcherDaemon daemon, InetSocketAddress primaryAddress, int failoverTime) {
+		super("replication-standby"); //$NON-NLS-1$
+		if (failoverTime <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.jmatcherDaemon = daemon;
+		this.primaryAddress = primaryAddress;
+		this.failoverTime = failoverTime;
+		this.entries = new LinkedHashMap<>();
+		this.lagMillis = -1;
+	}
+
+	@Override
+	public void run() {
+		logger.info("started replication standby of " + this.primaryAddress); //$NON-NLS-1$
+		while (!this.jmatcherDaemon.isStopping()) {
+			try {
+				this.replicate();
+			} catch (IOException e) {
+				// not to flood the log while the primary is unreachable
+				if (this.lagMillis >= 0 && !this.jmatcherDaemon.isStopping()) {
+					logger.warn("replication from the primary has stopped : " + e); //$NON-NLS-1$
+				}
+			} catch (Throwable t) {
+				logger.fatal("unexpected error occured", t); //$NON-NLS-1$
+			}
+			this.lagMillis = -1;
+			if (this.hasSynchronized && System.nanoTime() - this.lastReceivedTime >= TimeUnit.MILLISECONDS.toNanos(this.failoverTime)) {
+				this.takeOver();
+				return;
+			}
+			try {
+				Thread.sleep(retryInterval);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	private void replicate() throws IOException {
+		try (final Socket newSocket = new Socket()) {
+			this.socket = newSocket;
+			if (this.jmatcherDaemon.isStopping()) {
+				return;
+			}
+			newSocket.connect(this.primaryAddress, this.failoverTime);
+			newSocket.setTcpNoDelay(true);
+			// the primary sends a heartbeat at least every HEARTBEAT_INTERVAL
+			newSocket.setSoTimeout(this.failoverTime);
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(newSocket.getOutputStream()));
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(newSocket.getInputStream()));
+			ReplicationSource.exchangePreambles(out, in);
+			final ByteBuffer records = ByteBuffer.allocate(ReplicationSource.MAX_BATCH_RECORDS * MatchingTableJournal.RECORD_SIZE);
+			while (!this.jmatcherDaemon.isStopping()) {
+				final byte type = in.readByte();
+				final long sequence = in.readLong();
+				if (type == ReplicationSource.RESET) {
+					this.entries.clear();
+					this.hasSynchronized = true;
+					logger.info("synchronizing with the primary at " + this.primaryAddress); //$NON-NLS-1$
+				} else if (type == ReplicationSource.BATCH && this.hasSynchronized) {
+					final int age = in.readInt();
+					final int count = in.readUnsignedShort();
+					if (count > ReplicationSource.MAX_BATCH_RECORDS) {
+						throw new ProtocolException("too large batch : " + count); //$NON-NLS-1$
+					}
+					records.clear();
+					in.readFully(records.array(), 0, count * MatchingTableJournal.RECORD_SIZE);
+					records.limit(count * MatchingTableJournal.RECORD_SIZE);
+					while (records.hasRemaining()) {
+						if (!MatchingTableJournal.applyRecord(records, this.entries)) {
+							throw new ProtocolException("broken record"); //$NON-NLS-1$
+						}
+					}
+					this.numberOfEntries = this.entries.size();
+					this.lagMillis = age;
+					out.writeLong(sequence);
+					out.flush();
+				} else {
+					throw new ProtocolException("unexpected message : " + type); //$NON-NLS-1$
+				}
+				this.lastReceivedTime = System.nanoTime();
+			}
+		} finally {
+			this.socket = null;
+		}
+	}
+
+	private void takeOver() {
+		logger.warn("the primary at " + this.primaryAddress + " has been lost, taking over it with " + this.entries.size() + " entries"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		while (!this.jmatcherDaemon.isStopping()) {
+			try {
+				this.jmatcherDaemon.takeOver(new ArrayList<>(this.entries.values()));
+				return;
+			} catch (IOException e) {
+				// e.g. the port is still held by the primary
+				logger.warn("Failed to take over, retrying : " + e); //$NON-NLS-1$
+			}
+			try {
+				Thread.sleep(retryInterval);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of the entries which have been replicated
+	 */
+	public int getNumberOfEntries() {
+		return this.numberOfEntries;
+	}
+
+	/**
+	 * @return the age of the oldest change of the last batch when the primary
+	 *         sent it [msec], or -1 if it isn't connected to the primary
+	 */
+	public long getLagMillis() {
+		return this.lagMillis;
+	}
+
+	/**
+	 * close the connection to the primary and stop this
+	 */
+	public void closeSocket() {
+		final Socket currentSocket = this.socket;
+		if (currentSocket != null) {
+			try {
+				currentSocket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+		this.interrupt();
+	}
+}
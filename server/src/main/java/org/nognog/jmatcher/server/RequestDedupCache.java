@@ -0,0 +1,172 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Recent ConnectionRequests, keyed by their source address, type and key
+ * number. A client retransmits a request when it hasn't heard the response,
+ * and the copy finds the {@link PendingRendezvous} of the first one here. It
+ * joins the rendezvous while it is waiting, because the response goes to the
+ * same address, or it replays the response of the rendezvous for a while
+ * after it has been completed. A failure isn't replayed, because the key may
+ * be registered just after it, so a copy of a failed request is handled
+ * again.
+ * <p>
+ * The cache is a fixed table which is indexed by the hash of the key, so
+ * neither a lookup nor an insertion allocates. A request which collides with
+ * another one evicts it, and then a copy of the evicted request is just
+ * handled again.
+ * </p>
+ * 
+ * @author agent 2026/10/17
+ */
+public class RequestDedupCache {
+
+	/**
+	 * The default number of the slots
+	 */
+	public static final int DEFAULT_NUMBER_OF_SLOTS = 8192;
+
+	private final Slot[] slots;
+	private final int slotMask;
+	private final long replayTime; // [nsec]
+
+	/**
+	 * @param replayTime
+	 *            the time for which the response of a succeeded rendezvous is
+	 *            replayed [msec], or 0 if the requests aren't deduplicated
+	 * @param numberOfSlots
+	 *            it is rounded up to a power of 2
+	 */
+	public RequestDedupCache(int replayTime, int numberOfSlots) {
+		if (replayTime < 0 || numberOfSlots <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.replayTime = TimeUnit.MILLISECONDS.toNanos(replayTime);
+		if (replayTime == 0) {
+			this.slots = null;
+			this.slotMask = 0;
+			return;
+		}
+		int capacity = 1;
+		while (capacity < numberOfSlots) {
+			capacity <<= 1;
+		}
+		this.slots = new Slot[capacity];
+		for (int i = 0; i < capacity; i++) {
+			this.slots[i] = new Slot();
+		}
+		this.slotMask = capacity - 1;
+	}
+
+	/**
+	 * @param clientAddress
+	 * @param requestType
+	 * @param keyNumber
+	 * @param rendezvous
+	 *            the rendezvous of the request
+	 * @return the rendezvous of the same request which is waiting or has been
+	 *         completed recently, or null if the rendezvous is put
+	 */
+	public PendingRendezvous putIfAbsent(InetSocketAddress clientAddress, int requestType, int keyNumber, PendingRendezvous rendezvous) {
+		return this.putIfAbsent(clientAddress, requestType, keyNumber, rendezvous, System.nanoTime());
+	}
+
+	PendingRendezvous putIfAbsent(InetSocketAddress clientAddress, int requestType, int keyNumber, PendingRendezvous rendezvous, long now) {
+		if (this.slots == null) {
+			return null;
+		}
+		final Slot slot = this.slotOf(clientAddress, requestType, keyNumber);
+		slot.lock();
+		try {
+			final PendingRendezvous previous = this.find(slot, clientAddress, requestType, keyNumber, now);
+			if (previous != null) {
+				return previous;
+			}
+			slot.clientAddress = clientAddress;
+			slot.requestType = requestType;
+			slot.keyNumber = keyNumber;
+			slot.rendezvous = rendezvous;
+			return null;
+		} finally {
+			slot.unlock();
+		}
+	}
+
+	/**
+	 * It is looked up before a rendezvous is made for the request, so that a
+	 * retransmission doesn't allocate.
+	 * 
+	 * @param clientAddress
+	 * @param requestType
+	 * @param keyNumber
+	 * @return the rendezvous of the same request which is waiting or has been
+	 *         completed recently, or null
+	 */
+	public PendingRendezvous get(InetSocketAddress clientAddress, int requestType, int keyNumber) {
+		if (this.slots == null) {
+			return null;
+		}
+		final Slot slot = this.slotOf(clientAddress, requestType, keyNumber);
+		slot.lock();
+		try {
+			return this.find(slot, clientAddress, requestType, keyNumber, System.nanoTime());
+		} finally {
+			slot.unlock();
+		}
+	}
+
+	private Slot slotOf(InetSocketAddress clientAddress, int requestType, int keyNumber) {
+		int hash = clientAddress.hashCode() * 31 + keyNumber;
+		hash = hash * 31 + requestType;
+		return this.slots[(hash ^ (hash >>> 16)) & this.slotMask];
+	}
+
+	private PendingRendezvous find(Slot slot, InetSocketAddress clientAddress, int requestType, int keyNumber, long now) {
+		final PendingRendezvous previous = slot.rendezvous;
+		if (previous != null && slot.keyNumber == keyNumber && slot.requestType == requestType && clientAddress.equals(slot.clientAddress) && this.isAlive(previous, now)) {
+			return previous;
+		}
+		return null;
+	}
+
+	private boolean isAlive(PendingRendezvous rendezvous, long now) {
+		// it is waiting, or its response is about to be sent
+		final EncodedResponse response = rendezvous.getResponse();
+		if (response == null) {
+			return true;
+		}
+		if (response == EncodedResponse.NO_HOST) {
+			return false;
+		}
+		return now - rendezvous.getCompletedTime() < this.replayTime;
+	}
+
+	private static class Slot extends ReentrantLock {
+		private static final long serialVersionUID = 1L;
+
+		InetSocketAddress clientAddress;
+		int requestType;
+		int keyNumber;
+		PendingRendezvous rendezvous;
+
+		Slot() {
+		}
+	}
+}
@@ -14,41 +14,59 @@
 
 package org.nognog.jmatcher.server;
 
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.net.InetAddress;
 import java.net.Socket;
-import java.util.Date;
-import java.util.Random;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.nognog.jmatcher.Host;
+import org.nognog.jmatcher.tcp.TCPFrameSerializer;
+import org.nognog.jmatcher.tcp.TCPProtocol;
 import org.nognog.jmatcher.tcp.request.PlainTCPRequest;
+import org.nognog.jmatcher.tcp.request.ReattachRequest;
 import org.nognog.jmatcher.tcp.request.TCPRequest;
 import org.nognog.jmatcher.tcp.response.CheckConnectionResponse;
 import org.nognog.jmatcher.tcp.response.PlainTCPResponse;
 import org.nognog.jmatcher.tcp.response.PreEntryResponse;
+import org.nognog.jmatcher.tcp.response.TCPResponse;
 
 /**
  * @author goshi 2015/10/31
  */
 public class TCPClientRequestHandler implements Runnable {
 
-	private static final Random random = new Random(new Date().getTime());
-
 	private int number;
 	private String name;
 	private JMatcherDaemon jmatcherDaemon;
-	private ConcurrentMap<Integer, Host> matchingMap;
-	private ConcurrentMap<Integer, CopyOnWriteArraySet<RequestingConnectionHostHandler>> waitingForSyncHandlersMap;
+	private MatchingTable matchingTable;
 
 	private Integer entryKeyNumber;
 
 	private Socket socket;
+	private UDPEntryWaiter udpEntryWaiter;
+	private IdleEntryMonitor idleEntryMonitor;
+
+	private TCPProtocol protocol;
+	private ObjectInputStream ois;
+	private ObjectOutputStream oos;
+	private DataInputStream binaryInput;
+	private OutputStream binaryOutput;
+	private int binaryVersion;
+	private volatile boolean pushingRequestingHosts;
+	private final ReentrantLock writeLock = new ReentrantLock();
 
 	private static Logger logger = LogManager.getLogger(TCPClientRequestHandler.class);
 
@@ -64,9 +82,16 @@ public class TCPClientRequestHandler implements Runnable {
 	 */
 	public TCPClientRequestHandler(JMatcherDaemon jmatcherDaemon, Socket socket, int number) {
 		this.jmatcherDaemon = jmatcherDaemon;
-		this.matchingMap = this.jmatcherDaemon.getMatchingMap();
-		this.waitingForSyncHandlersMap = this.jmatcherDaemon.getWaitingHandlersMap();
+		this.matchingTable = this.jmatcherDaemon.getMatchingTable();
 		this.socket = socket;
+		this.udpEntryWaiter = new UDPEntryWaiter();
+		this.idleEntryMonitor = new IdleEntryMonitor(jmatcherDaemon, new Runnable() {
+			@Override
+			public void run() {
+				// the blocked read fails, then the handler finishes
+				TCPClientRequestHandler.this.close();
+			}
+		});
 		this.number = number;
 		this.name = createConcatenatedString("TCP(", Integer.valueOf(this.number), ")"); //$NON-NLS-1$ //$NON-NLS-2$
 	}
@@ -80,7 +105,9 @@ public class TCPClientRequestHandler implements Runnable {
 	}
 
 	private void log(String message, Level level) {
-		logger.log(level, this.createLappedMessage(message));
+		if (logger.isEnabled(level)) {
+			logger.log(level, this.createLappedMessage(message));
+		}
 	}
 
 	private void log(Throwable t, Level level) {
@@ -97,9 +124,12 @@ public class TCPClientRequestHandler implements Runnable {
 
 	@Override
 	public void run() {
-		try (final ObjectInputStream ois = new ObjectInputStream(this.socket.getInputStream()); final ObjectOutputStream oos = new ObjectOutputStream(this.socket.getOutputStream())) {
-			final TCPRequest request = (TCPRequest) ois.readObject();
-			this.handleRequest(request, ois, oos);
+		try (final PushbackInputStream input = new PushbackInputStream(this.socket.getInputStream(), 2)) {
+			if (!this.setupStreams(input)) {
+				return;
+			}
+			final TCPRequest request = this.readRequest();
+			this.handleRequest(request);
 		} catch (IOException | ClassNotFoundException e) {
 			this.log(e, Level.ERROR);
 		} catch (Throwable t) {
@@ -109,33 +139,97 @@ public class TCPClientRequestHandler implements Runnable {
 		}
 	}
 
+	/**
+	 * Tell the protocol of the inviter from its first two bytes, which are
+	 * either the stream header of ObjectOutputStream or the preamble of
+	 * {@link TCPFrameSerializer}
+	 * 
+	 * @param input
+	 * @return false if the inviter has closed the channel
+	 * @throws IOException
+	 */
+	private boolean setupStreams(PushbackInputStream input) throws IOException {
+		final int firstByte = input.read();
+		final int secondByte = (firstByte < 0) ? -1 : input.read();
+		if (secondByte < 0) {
+			return false;
+		}
+		input.unread(secondByte);
+		input.unread(firstByte);
+		if (TCPFrameSerializer.isPreamble(firstByte, secondByte)) {
+			this.protocol = TCPProtocol.BINARY;
+			this.binaryInput = new DataInputStream(input);
+			this.binaryOutput = this.socket.getOutputStream();
+			this.binaryVersion = Math.min(TCPFrameSerializer.readPreamble(this.binaryInput), TCPFrameSerializer.VERSION);
+			this.binaryOutput.write(TCPFrameSerializer.createPreamble(this.binaryVersion));
+			this.binaryOutput.flush();
+			return true;
+		}
+		this.protocol = TCPProtocol.OBJECT_STREAM;
+		this.ois = new ObjectInputStream(input);
+		this.oos = new ObjectOutputStream(this.socket.getOutputStream());
+		return true;
+	}
+
+	private TCPRequest readRequest() throws IOException, ClassNotFoundException {
+		if (this.protocol == TCPProtocol.BINARY) {
+			return TCPFrameSerializer.getInstance().readRequest(this.binaryInput);
+		}
+		return (TCPRequest) this.ois.readObject();
+	}
+
+	/**
+	 * It is locked because the requesting hosts are pushed from another
+	 * thread. The lock isn't a monitor so that a virtual thread doesn't pin
+	 * its carrier while it writes.
+	 * 
+	 * @param response
+	 * @throws IOException
+	 */
+	private void writeResponse(TCPResponse response) throws IOException {
+		this.writeLock.lock();
+		try {
+			if (this.protocol == TCPProtocol.BINARY) {
+				TCPFrameSerializer.getInstance().write(this.binaryOutput, response);
+				return;
+			}
+			this.oos.writeObject(response);
+		} finally {
+			this.writeLock.unlock();
+		}
+	}
+
 	/**
 	 * @param request
-	 * @param oos
-	 * @param ois
 	 * @throws IOException
 	 * @throws ClassNotFoundException
 	 */
-	private void handleRequest(TCPRequest request, ObjectInputStream ois, ObjectOutputStream oos) throws IOException, ClassNotFoundException {
+	private void handleRequest(TCPRequest request) throws IOException, ClassNotFoundException {
 		if (request.equals(PlainTCPRequest.ENTRY)) {
-			this.handleEntryRequest(ois, oos);
+			this.handleEntryRequest(null);
 			return;
 		}
-		sendFailureResponse(oos);
-	}
-
-	private static void sendFailureResponse(ObjectOutputStream oos) throws IOException {
-		oos.writeObject(PlainTCPResponse.FAILURE);
+		if (request instanceof ReattachRequest) {
+			this.handleEntryRequest((ReattachRequest) request);
+			return;
+		}
+		this.writeResponse(PlainTCPResponse.FAILURE);
 	}
 
-	private void handleEntryRequest(ObjectInputStream ois, ObjectOutputStream oos) throws IOException, ClassNotFoundException {
-		if (this.putPreEntryHostWithNewEntryKey() == false) {
-			sendFailureResponse(oos);
+	/**
+	 * @param reattachRequest
+	 *            null if the inviter requests a new key
+	 */
+	private void handleEntryRequest(ReattachRequest reattachRequest) throws IOException, ClassNotFoundException {
+		if (this.putPreEntryHost(reattachRequest) == false) {
+			this.writeResponse(PlainTCPResponse.FAILURE);
 			return;
 		}
-		this.log(createConcatenatedString("PreEntry : ", this.entryKeyNumber, " = ", this.matchingMap.get(this.entryKeyNumber)), Level.INFO); //$NON-NLS-1$ //$NON-NLS-2$
+		if (logger.isInfoEnabled()) {
+			this.log(createConcatenatedString("PreEntry : ", this.entryKeyNumber, " = ", this.matchingTable.get(this.entryKeyNumber.intValue())), Level.INFO); //$NON-NLS-1$ //$NON-NLS-2$
+		}
 		final PreEntryResponse entryResponse = new PreEntryResponse(this.entryKeyNumber);
-		oos.writeObject(entryResponse);
+		this.writeResponse(entryResponse);
 		try {
 			this.waitForUDPEntry();
 		} catch (InterruptedException e) {
@@ -143,55 +237,97 @@ public class TCPClientRequestHandler implements Runnable {
 			this.log(unexpectedInterruptMessage, Level.ERROR);
 			return;
 		}
-		final boolean isTimeout = this.matchingMap.get(this.entryKeyNumber) instanceof PreEntryHost;
-		if (isTimeout) {
+		if (!this.udpEntryWaiter.isEnabled()) {
 			final String timeoutMessage = createConcatenatedString(": ", this.entryKeyNumber, " timeout"); //$NON-NLS-1$ //$NON-NLS-2$
 			this.log(timeoutMessage, Level.INFO);
 			return;
 		}
-		this.jmatcherDaemon.logMatchingMap();
-		oos.writeObject(PlainTCPResponse.COMPLETE_ENTRY);
-		this.communicateWithRegisteredClientLoop(ois, oos);
+		this.writeResponse(PlainTCPResponse.COMPLETE_ENTRY);
+		// an inviter which doesn't send heartbeats may be silent for long
+		if (this.protocol == TCPProtocol.BINARY && this.binaryVersion >= TCPFrameSerializer.HEARTBEAT_VERSION) {
+			this.idleEntryMonitor.start(this.entryKeyNumber.intValue());
+		}
+		if (this.protocol == TCPProtocol.BINARY && this.binaryVersion >= TCPFrameSerializer.PUSH_VERSION) {
+			this.pushingRequestingHosts = true;
+			// hosts may have requested before the flag is set
+			this.pushRequestingHosts();
+		}
+		this.communicateWithRegisteredClientLoop();
 	}
 
-	private boolean putPreEntryHostWithNewEntryKey() {
-		synchronized (TCPClientRequestHandler.class) {
-			this.entryKeyNumber = this.createUnregistedKeyNumber();
-			if (this.entryKeyNumber != null) {
-				this.matchingMap.put(this.entryKeyNumber, new PreEntryHost(this.socket.getInetAddress().getHostAddress(), this.socket.getPort()));
-				return true;
-			}
-			return false;
+	private boolean putPreEntryHost(ReattachRequest reattachRequest) {
+		if (reattachRequest == null) {
+			this.entryKeyNumber = putPreEntryHostWithNewEntryKey(this.jmatcherDaemon, this.socket.getInetAddress(), this.socket.getPort(), this.udpEntryWaiter);
+		} else {
+			this.entryKeyNumber = reattachPreEntryHost(this.jmatcherDaemon, reattachRequest.getKeyNumber(), this.socket.getInetAddress(), this.socket.getPort(), this.udpEntryWaiter);
 		}
+		return this.entryKeyNumber != null;
 	}
 
-	private void waitForUDPEntry() throws InterruptedException {
-		synchronized (this.entryKeyNumber) {
-			this.entryKeyNumber.wait(WAIT_TIME_FOR_UDP_ENTRY);
+	/**
+	 * Put a pre-entry into the matching table with a new key of its key
+	 * allocator. It expires after {@link #WAIT_TIME_FOR_UDP_ENTRY} unless it
+	 * is enabled.
+	 * 
+	 * @param jmatcherDaemon
+	 * @param address
+	 *            address of the inviter
+	 * @param port
+	 *            port of the inviter
+	 * @param owner
+	 *            owner of the entry
+	 * @return the new key, or null if the matching table is full
+	 */
+	static Integer putPreEntryHostWithNewEntryKey(JMatcherDaemon jmatcherDaemon, InetAddress address, int port, PreEntryListener owner) {
+		final int keyNumber = jmatcherDaemon.getMatchingTable().putPreEntryWithNewKey(address, port, owner, WAIT_TIME_FOR_UDP_ENTRY);
+		if (keyNumber < 0) {
+			return null;
 		}
+		return Integer.valueOf(keyNumber);
 	}
 
-	private void communicateWithRegisteredClientLoop(ObjectInputStream ois, ObjectOutputStream oos) throws ClassNotFoundException {
+	/**
+	 * Put a pre-entry of the inviter which has come back under the key of its
+	 * restored entry. It expires after {@link #WAIT_TIME_FOR_UDP_ENTRY} unless
+	 * it is enabled.
+	 * 
+	 * @param jmatcherDaemon
+	 * @param keyNumber
+	 *            the key which the inviter had been given
+	 * @param address
+	 *            address of the inviter
+	 * @param port
+	 *            port of the inviter
+	 * @param owner
+	 *            owner of the entry
+	 * @return the key, or null if there is no restored entry of the inviter
+	 */
+	static Integer reattachPreEntryHost(JMatcherDaemon jmatcherDaemon, int keyNumber, InetAddress address, int port, PreEntryListener owner) {
+		if (!jmatcherDaemon.getMatchingTable().reattach(keyNumber, address, port, owner, WAIT_TIME_FOR_UDP_ENTRY)) {
+			return null;
+		}
+		return Integer.valueOf(keyNumber);
+	}
+
+	private void waitForUDPEntry() throws InterruptedException {
+		// the timing wheel of the daemon releases the waiter when the entry
+		// expires, the timeout of await is only a safeguard for stopping
+		this.udpEntryWaiter.await(2 * WAIT_TIME_FOR_UDP_ENTRY);
+	}
+
+	private void communicateWithRegisteredClientLoop() throws ClassNotFoundException {
 		try {
 			while (true) {
-				final Object readObject = ois.readObject();
 				final TCPRequest request;
 				try {
-					request = (TCPRequest) readObject;
+					request = this.readRequest();
 				} catch (ClassCastException e) {
-					this.log(createConcatenatedString("invalid request : ", readObject), Level.ERROR); //$NON-NLS-1$
+					this.log(createConcatenatedString("invalid request : ", e.getMessage()), Level.ERROR); //$NON-NLS-1$
 					return;
 				}
+				this.idleEntryMonitor.touch();
 				if (request == PlainTCPRequest.CHECK_CONNECTION_REQUEST) {
-					final CopyOnWriteArraySet<RequestingConnectionHostHandler> waitingHandlers = this.waitingForSyncHandlersMap.get(this.entryKeyNumber);
-					if (waitingHandlers == null) {
-						oos.writeObject(new CheckConnectionResponse(null));
-					} else {
-						final Object[] waitingHandlersArray = waitingHandlers.toArray();
-						final Host[] hosts = createHostsArray(waitingHandlersArray);
-						this.releaseWaitingHandlers(waitingHandlersArray, waitingHandlers);
-						oos.writeObject(new CheckConnectionResponse(hosts));
-					}
+					this.writeResponse(new CheckConnectionResponse(takeRequestingHosts(this.jmatcherDaemon, this.entryKeyNumber)));
 				} else { // catch invalid request
 					break;
 				}
@@ -201,49 +337,85 @@ public class TCPClientRequestHandler implements Runnable {
 		}
 	}
 
-	private static Host[] createHostsArray(final Object[] waitingHandlersArray) {
-		final Host[] hosts = new Host[waitingHandlersArray.length];
-		for (int i = 0; i < hosts.length; i++) {
-			hosts[i] = ((RequestingConnectionHostHandler) waitingHandlersArray[i]).getHost();
+	private void requested() {
+		if (!this.pushingRequestingHosts) {
+			return;
+		}
+		try {
+			this.jmatcherDaemon.getExecutorService().execute(new Runnable() {
+				@Override
+				public void run() {
+					TCPClientRequestHandler.this.pushRequestingHosts();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// the daemon is stopping
 		}
-		return hosts;
 	}
 
-	private void releaseWaitingHandlers(final Object[] targetsOfReleasing, CopyOnWriteArraySet<RequestingConnectionHostHandler> waitingHandlers) {
-		for (Object target : targetsOfReleasing) {
-			((RequestingConnectionHostHandler) target).getThread().interrupt();
-			waitingHandlers.remove(target);
+	private void pushRequestingHosts() {
+		final Host[] requestingHosts = takeRequestingHosts(this.jmatcherDaemon, this.entryKeyNumber);
+		if (requestingHosts == null || requestingHosts.length == 0) {
+			return;
 		}
-		synchronized (this.entryKeyNumber) {
-			if (waitingHandlers.size() == 0) {
-				this.waitingForSyncHandlersMap.remove(this.entryKeyNumber);
-			}
+		try {
+			this.writeResponse(new CheckConnectionResponse(requestingHosts));
+		} catch (IOException e) {
+			// mainly, The IOException is caused by closing socket
 		}
 	}
 
-	private Integer createUnregistedKeyNumber() {
-		if (this.matchingMap.size() >= this.jmatcherDaemon.getMatchingMapCapacity()) {
+	/**
+	 * Take the hosts which are requesting connection to the entry, and
+	 * release their rendezvous. The responses to the requesting hosts are sent
+	 * on the calling thread.
+	 * 
+	 * @param jmatcherDaemon
+	 * @param entryKeyNumber
+	 * @return the requesting hosts, or null if there is no requesting host
+	 */
+	static Host[] takeRequestingHosts(JMatcherDaemon jmatcherDaemon, Integer entryKeyNumber) {
+		final MatchingTable matchingTable = jmatcherDaemon.getMatchingTable();
+		final PendingRendezvous[] waitingRendezvous = matchingTable.takeRendezvous(entryKeyNumber.intValue());
+		if (waitingRendezvous == null) {
 			return null;
 		}
-		final Integer key = Integer.valueOf(random.nextInt(this.jmatcherDaemon.getBoundOfKeyNumber()));
-
-		if (!this.matchingMap.containsKey(key)) {
-			return key;
+		final EncodedResponse entryResponse = matchingTable.getResponse(entryKeyNumber.intValue());
+		final List<Host> hosts = new ArrayList<>();
+		for (PendingRendezvous rendezvous : waitingRendezvous) {
+			final Host requestingHost = (entryResponse == null) ? null : rendezvous.release(entryResponse, jmatcherDaemon.isEnabledToReturnSpecialInternalAddress());
+			if (requestingHost != null) {
+				hosts.add(requestingHost);
+			} else {
+				rendezvous.fail();
+			}
 		}
-		return this.createUnregistedKeyNumber();
+		return hosts.toArray(new Host[hosts.size()]);
 	}
 
 	/**
-	 * close this handler
+	 * Remove the entry from the matching table, and fail the rendezvous which
+	 * are waiting for it
+	 * 
+	 * @param jmatcherDaemon
+	 * @param entryKeyNumber
+	 * @param owner
+	 *            owner of the entry
+	 */
+	static void removeEntry(JMatcherDaemon jmatcherDaemon, Integer entryKeyNumber, PreEntryListener owner) {
+		jmatcherDaemon.getMatchingTable().remove(entryKeyNumber.intValue(), owner);
+	}
+
+	/**
+	 * close this handler. It is also called by the timing wheel when the
+	 * inviter has been idle.
 	 * 
 	 * @throws IOException
 	 */
 	private void close() {
+		this.idleEntryMonitor.stop();
 		if (this.entryKeyNumber != null) {
-			synchronized (this.entryKeyNumber) {
-				this.matchingMap.remove(this.entryKeyNumber);
-				this.waitingForSyncHandlersMap.remove(this.entryKeyNumber);
-			}
+			removeEntry(this.jmatcherDaemon, this.entryKeyNumber, this.udpEntryWaiter);
 		}
 		try {
 			this.socket.close();
@@ -251,4 +423,36 @@ public class TCPClientRequestHandler implements Runnable {
 			this.log("Failed to close socket", e, Level.ERROR); //$NON-NLS-1$
 		}
 	}
+
+	private class UDPEntryWaiter implements PreEntryListener {
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private volatile boolean enabled;
+
+		UDPEntryWaiter() {
+		}
+
+		@Override
+		public void enabled(int keyNumber) {
+			this.enabled = true;
+			this.latch.countDown();
+		}
+
+		@Override
+		public void expired(int keyNumber) {
+			this.latch.countDown();
+		}
+
+		@Override
+		public void requested(int keyNumber) {
+			TCPClientRequestHandler.this.requested();
+		}
+
+		void await(long timeout) throws InterruptedException {
+			this.latch.await(timeout, TimeUnit.MILLISECONDS);
+		}
+
+		boolean isEnabled() {
+			return this.enabled;
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,431 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nognog.jmatcher.Host;
+import org.nognog.jmatcher.tcp.TCPFrameSerializer;
+import org.nognog.jmatcher.tcp.TCPProtocol;
+import org.nognog.jmatcher.tcp.request.PlainTCPRequest;
+import org.nognog.jmatcher.tcp.request.ReattachRequest;
+import org.nognog.jmatcher.tcp.response.CheckConnectionResponse;
+import org.nognog.jmatcher.tcp.response.PlainTCPResponse;
+import org.nognog.jmatcher.tcp.response.PreEntryResponse;
+import org.nognog.jmatcher.tcp.response.TCPResponse;
+
+/**
+ * The entry channel of one inviter in {@link IOMode#REACTOR}. It is what
+ * {@link TCPClientRequestHandler} does, written as a state machine which is
+ * driven by its {@link TCPEventLoop} instead of a blocked thread. The protocol
+ * of the inviter is told from its first bytes, as the blocking handler does.
+ * All methods except {@link #enabled(int)}, {@link #expired(int)} and
+ * {@link #requested(int)} are called by the event loop only.
+ * 
+ * @author agent 2026/10/17
+ */
+class TCPEntrySession implements PreEntryListener {
+
+	private enum State {
+		WAITING_FOR_ENTRY, PRE_ENTRY, REGISTERED, CLOSING, CLOSED,
+	}
+
+	private static final int initialReadBufferSize = 256;
+	private static final int maxReadBufferSize = 16 * 1024;
+	// an inviter which doesn't read its responses is closed rather than
+	// buffered without limit
+	private static final int maxQueuedBytes = 64 * 1024;
+
+	private final JMatcherDaemon jmatcherDaemon;
+	private final TCPEventLoop eventLoop;
+	private final SocketChannel channel;
+	private final String name;
+	private final ObjectStreamRequestDecoder decoder;
+	private final ByteArrayOutputStream responseBuffer;
+	private final ObjectOutputStream oos;
+	private final ArrayDeque<ByteBuffer> writeQueue;
+	private int queuedBytes;
+	private final IdleEntryMonitor idleEntryMonitor;
+	private SelectionKey selectionKey;
+	private ByteBuffer readBuffer;
+	private State state;
+	private TCPProtocol protocol;
+	private boolean pushingRequestingHosts;
+	private boolean sendingHeartbeats;
+	private Integer entryKeyNumber;
+
+	private static Logger logger = LogManager.getLogger(TCPEntrySession.class);
+
+	/**
+	 * @param jmatcherDaemon
+	 * @param eventLoop
+	 * @param channel
+	 * @param number
+	 * @throws IOException
+	 */
+	TCPEntrySession(JMatcherDaemon jmatcherDaemon, TCPEventLoop eventLoop, SocketChannel channel, int number) throws IOException {
+		this.jmatcherDaemon = jmatcherDaemon;
+		this.eventLoop = eventLoop;
+		this.channel = channel;
+		this.name = new StringBuilder().append("TCP(").append(number).append(")").toString(); //$NON-NLS-1$ //$NON-NLS-2$
+		this.decoder = new ObjectStreamRequestDecoder();
+		this.responseBuffer = new ByteArrayOutputStream();
+		this.oos = new ObjectOutputStream(this.responseBuffer);
+		this.writeQueue = new ArrayDeque<>();
+		this.readBuffer = ByteBuffer.allocate(initialReadBufferSize);
+		this.idleEntryMonitor = new IdleEntryMonitor(jmatcherDaemon, new Runnable() {
+			@Override
+			public void run() {
+				TCPEntrySession.this.eventLoop.execute(new Runnable() {
+					@Override
+					public void run() {
+						TCPEntrySession.this.close();
+					}
+				});
+			}
+		});
+		this.state = State.WAITING_FOR_ENTRY;
+	}
+
+	private void log(String message, Level level) {
+		if (!logger.isEnabled(level)) {
+			return;
+		}
+		logger.log(level, new StringBuilder().append(this.name).append(" ").append(message).toString()); //$NON-NLS-1$
+	}
+
+	private void log(String message, Throwable t, Level level) {
+		logger.log(level, new StringBuilder().append(this.name).append(" ").append(message).toString(), t); //$NON-NLS-1$
+	}
+
+	/**
+	 * @param key
+	 *            key of the registered channel
+	 */
+	void open(SelectionKey key) {
+		this.selectionKey = key;
+	}
+
+	void handleReadable() {
+		final int readBytes;
+		try {
+			readBytes = this.channel.read(this.readBuffer);
+		} catch (IOException e) {
+			// mainly, The IOException is caused by closing socket
+			this.close();
+			return;
+		}
+		if (readBytes < 0) {
+			this.close();
+			return;
+		}
+		if (!this.readBuffer.hasRemaining() && !this.growReadBuffer()) {
+			this.log("too large request", Level.ERROR); //$NON-NLS-1$
+			this.close();
+			return;
+		}
+		this.handleReceivedRequests();
+	}
+
+	private boolean growReadBuffer() {
+		if (this.readBuffer.capacity() >= maxReadBufferSize) {
+			return false;
+		}
+		final ByteBuffer newBuffer = ByteBuffer.allocate(this.readBuffer.capacity() * 2);
+		this.readBuffer.flip();
+		newBuffer.put(this.readBuffer);
+		this.readBuffer = newBuffer;
+		return true;
+	}
+
+	private void handleReceivedRequests() {
+		this.readBuffer.flip();
+		try {
+			// a request which arrives during the pre-entry is handled after the
+			// entry is completed, as the blocking handler does
+			if (this.protocol == null && !this.detectProtocol()) {
+				return;
+			}
+			while (this.state == State.WAITING_FOR_ENTRY || this.state == State.REGISTERED) {
+				final Object request = this.decodeRequest();
+				if (request == ObjectStreamRequestDecoder.INCOMPLETE) {
+					break;
+				}
+				this.handleRequest(request);
+			}
+		} catch (IOException e) {
+			this.log("invalid request", e, Level.ERROR); //$NON-NLS-1$
+			this.close();
+		} finally {
+			this.readBuffer.compact();
+		}
+	}
+
+	/**
+	 * @return false if more bytes are needed to tell the protocol
+	 * @throws IOException
+	 *             thrown if the binary preamble is invalid
+	 */
+	private boolean detectProtocol() throws IOException {
+		if (this.readBuffer.remaining() < 2) {
+			return false;
+		}
+		final int position = this.readBuffer.position();
+		if (!TCPFrameSerializer.isPreamble(this.readBuffer.get(position), this.readBuffer.get(position + 1))) {
+			this.protocol = TCPProtocol.OBJECT_STREAM;
+			// the stream header of ObjectOutputStream, which the inviter waits
+			// for
+			this.flushResponses();
+			return true;
+		}
+		final int version = TCPFrameSerializer.readPreamble(this.readBuffer);
+		if (version < 0) {
+			return false;
+		}
+		final int versionInUse = Math.min(version, TCPFrameSerializer.VERSION);
+		this.protocol = TCPProtocol.BINARY;
+		this.pushingRequestingHosts = versionInUse >= TCPFrameSerializer.PUSH_VERSION;
+		this.sendingHeartbeats = versionInUse >= TCPFrameSerializer.HEARTBEAT_VERSION;
+		this.responseBuffer.reset();
+		this.enqueue(ByteBuffer.wrap(TCPFrameSerializer.createPreamble(versionInUse)));
+		return true;
+	}
+
+	private Object decodeRequest() throws IOException {
+		if (this.protocol == TCPProtocol.BINARY) {
+			final Object request = TCPFrameSerializer.getInstance().deserializeRequest(this.readBuffer);
+			return (request == null) ? ObjectStreamRequestDecoder.INCOMPLETE : request;
+		}
+		return this.decoder.decode(this.readBuffer);
+	}
+
+	private void handleRequest(Object request) {
+		if (this.state == State.WAITING_FOR_ENTRY) {
+			if (request == PlainTCPRequest.ENTRY) {
+				this.handleEntryRequest(null);
+			} else if (request instanceof ReattachRequest) {
+				this.handleEntryRequest((ReattachRequest) request);
+			} else {
+				this.closeAfterSending(PlainTCPResponse.FAILURE);
+			}
+			return;
+		}
+		this.idleEntryMonitor.touch();
+		if (request == PlainTCPRequest.CHECK_CONNECTION_REQUEST) {
+			this.send(new CheckConnectionResponse(TCPClientRequestHandler.takeRequestingHosts(this.jmatcherDaemon, this.entryKeyNumber)));
+			return;
+		}
+		// catch invalid request
+		this.log("invalid request : " + request, Level.ERROR); //$NON-NLS-1$
+		this.close();
+	}
+
+	/**
+	 * @param reattachRequest
+	 *            null if the inviter requests a new key
+	 */
+	private void handleEntryRequest(ReattachRequest reattachRequest) {
+		final InetSocketAddress remoteAddress = (InetSocketAddress) this.channel.socket().getRemoteSocketAddress();
+		if (reattachRequest == null) {
+			this.entryKeyNumber = TCPClientRequestHandler.putPreEntryHostWithNewEntryKey(this.jmatcherDaemon, remoteAddress.getAddress(), remoteAddress.getPort(), this);
+		} else {
+			this.entryKeyNumber = TCPClientRequestHandler.reattachPreEntryHost(this.jmatcherDaemon, reattachRequest.getKeyNumber(), remoteAddress.getAddress(), remoteAddress.getPort(), this);
+		}
+		if (this.entryKeyNumber == null) {
+			this.closeAfterSending(PlainTCPResponse.FAILURE);
+			return;
+		}
+		if (logger.isInfoEnabled()) {
+			this.log("PreEntry : " + this.entryKeyNumber + " = " + remoteAddress.getAddress().getHostAddress() + ":" + remoteAddress.getPort(), Level.INFO); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+		this.state = State.PRE_ENTRY;
+		this.send(new PreEntryResponse(this.entryKeyNumber));
+	}
+
+	@Override
+	public void enabled(int keyNumber) {
+		this.eventLoop.execute(new Runnable() {
+			@Override
+			public void run() {
+				TCPEntrySession.this.completeEntry();
+			}
+		});
+	}
+
+	private void completeEntry() {
+		if (this.state != State.PRE_ENTRY) {
+			return;
+		}
+		this.state = State.REGISTERED;
+		// an inviter which doesn't send heartbeats may be silent for long.
+		// It is stopped by close() if the response can't be sent.
+		if (this.sendingHeartbeats) {
+			this.idleEntryMonitor.start(this.entryKeyNumber.intValue());
+		}
+		this.send(PlainTCPResponse.COMPLETE_ENTRY);
+		// hosts may have requested before this is told
+		this.pushRequestingHosts();
+		this.handleReceivedRequests();
+	}
+
+	@Override
+	public void requested(int keyNumber) {
+		this.eventLoop.execute(new Runnable() {
+			@Override
+			public void run() {
+				TCPEntrySession.this.pushRequestingHosts();
+			}
+		});
+	}
+
+	private void pushRequestingHosts() {
+		if (this.state != State.REGISTERED || !this.pushingRequestingHosts) {
+			return;
+		}
+		final Host[] requestingHosts = TCPClientRequestHandler.takeRequestingHosts(this.jmatcherDaemon, this.entryKeyNumber);
+		if (requestingHosts == null || requestingHosts.length == 0) {
+			return;
+		}
+		this.send(new CheckConnectionResponse(requestingHosts));
+	}
+
+	@Override
+	public void expired(int keyNumber) {
+		this.eventLoop.execute(new Runnable() {
+			@Override
+			public void run() {
+				TCPEntrySession.this.expirePreEntry();
+			}
+		});
+	}
+
+	/**
+	 * Close this session because the timing wheel of the daemon has removed
+	 * its entry
+	 */
+	private void expirePreEntry() {
+		if (this.state != State.PRE_ENTRY) {
+			return;
+		}
+		this.log(": " + this.entryKeyNumber + " timeout", Level.INFO); //$NON-NLS-1$ //$NON-NLS-2$
+		this.close();
+	}
+
+	private void send(TCPResponse response) {
+		if (this.protocol == TCPProtocol.BINARY) {
+			this.enqueue(TCPFrameSerializer.getInstance().serialize(response));
+			return;
+		}
+		try {
+			this.oos.writeObject(response);
+			this.oos.flush();
+		} catch (IOException e) {
+			// ObjectOutputStream writes into the memory
+			throw new IllegalStateException(e);
+		}
+		this.flushResponses();
+	}
+
+	private void closeAfterSending(TCPResponse response) {
+		this.send(response);
+		if (this.state == State.CLOSED) {
+			return;
+		}
+		this.state = State.CLOSING;
+		if (this.writeQueue.isEmpty()) {
+			this.close();
+		}
+	}
+
+	private void flushResponses() {
+		if (this.responseBuffer.size() > 0) {
+			final ByteBuffer buffer = ByteBuffer.wrap(this.responseBuffer.toByteArray());
+			this.responseBuffer.reset();
+			this.enqueue(buffer);
+			return;
+		}
+		this.handleWritable();
+	}
+
+	private void enqueue(ByteBuffer buffer) {
+		if (this.state == State.CLOSED) {
+			return;
+		}
+		this.queuedBytes += buffer.remaining();
+		if (this.queuedBytes > maxQueuedBytes) {
+			this.log("too many responses which the inviter doesn't read", Level.ERROR); //$NON-NLS-1$
+			this.close();
+			return;
+		}
+		this.writeQueue.add(buffer);
+		this.handleWritable();
+	}
+
+	void handleWritable() {
+		if (this.state == State.CLOSED) {
+			return;
+		}
+		try {
+			while (!this.writeQueue.isEmpty()) {
+				final ByteBuffer buffer = this.writeQueue.peek();
+				this.queuedBytes -= this.channel.write(buffer);
+				if (buffer.hasRemaining()) {
+					this.selectionKey.interestOps(this.selectionKey.interestOps() | SelectionKey.OP_WRITE);
+					return;
+				}
+				this.writeQueue.poll();
+			}
+		} catch (IOException e) {
+			this.close();
+			return;
+		}
+		if (this.selectionKey.isValid()) {
+			this.selectionKey.interestOps(this.selectionKey.interestOps() & ~SelectionKey.OP_WRITE);
+		}
+		if (this.state == State.CLOSING) {
+			this.close();
+		}
+	}
+
+	/**
+	 * close this session
+	 */
+	void close() {
+		if (this.state == State.CLOSED) {
+			return;
+		}
+		this.state = State.CLOSED;
+		this.idleEntryMonitor.stop();
+		if (this.entryKeyNumber != null) {
+			TCPClientRequestHandler.removeEntry(this.jmatcherDaemon, this.entryKeyNumber, this);
+		}
+		this.selectionKey.cancel();
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			this.log("Failed to close socket", e, Level.ERROR); //$NON-NLS-1$
+		}
+	}
+}
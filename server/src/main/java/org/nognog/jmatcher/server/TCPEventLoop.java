@@ -0,0 +1,174 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * One of the selector threads of {@link TCPReactor}. It multiplexes the
+ * sockets of many inviters, and runs the tasks which other threads submit to
+ * its sessions so that every session is touched by this thread only.
+ * 
+ * @author agent 2026/10/17
+ */
+class TCPEventLoop extends Thread {
+	private final JMatcherDaemon jmatcherDaemon;
+	private final Selector selector;
+	private final Queue<Runnable> tasks;
+
+	private static Logger logger = LogManager.getLogger(TCPEventLoop.class);
+
+	/**
+	 * @param jmatcherDaemon
+	 * @param number
+	 * @throws IOException
+	 */
+	TCPEventLoop(JMatcherDaemon jmatcherDaemon, int number) throws IOException {
+		super("tcp-event-loop-" + number); //$NON-NLS-1$
+		this.jmatcherDaemon = jmatcherDaemon;
+		this.selector = Selector.open();
+		this.tasks = new ConcurrentLinkedQueue<>();
+	}
+
+	/**
+	 * @param channel
+	 *            accepted channel
+	 * @param number
+	 *            number of the session
+	 */
+	void register(final SocketChannel channel, final int number) {
+		this.execute(new Runnable() {
+			@Override
+			public void run() {
+				TCPEventLoop.this.openSession(channel, number);
+			}
+		});
+	}
+
+	/**
+	 * Run the task on this thread
+	 * 
+	 * @param task
+	 */
+	void execute(Runnable task) {
+		this.tasks.add(task);
+		this.selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		logger.info("started tcp event loop"); //$NON-NLS-1$
+		try {
+			while (!this.jmatcherDaemon.isStopping()) {
+				try {
+					this.selector.select();
+					this.runTasks();
+					this.handleSelectedKeys();
+				} catch (ClosedSelectorException e) {
+					return;
+				} catch (IOException e) {
+					if (!this.jmatcherDaemon.isStopping()) {
+						logger.fatal("TCP event loop thread : error occured", e); //$NON-NLS-1$
+					}
+				} catch (Throwable t) {
+					logger.fatal("unexpected error occured", t); //$NON-NLS-1$
+				}
+			}
+		} finally {
+			this.closeAllSessions();
+		}
+	}
+
+	private void openSession(SocketChannel channel, int number) {
+		try {
+			channel.configureBlocking(false);
+			final TCPEntrySession session = new TCPEntrySession(this.jmatcherDaemon, this, channel, number);
+			session.open(channel.register(this.selector, SelectionKey.OP_READ, session));
+		} catch (IOException e) {
+			logger.error("failed to register a channel", e); //$NON-NLS-1$
+			try {
+				channel.close();
+			} catch (IOException e1) {
+				// ignore
+			}
+		}
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = this.tasks.poll()) != null) {
+			task.run();
+		}
+	}
+
+	private void handleSelectedKeys() {
+		final Iterator<SelectionKey> iterator = this.selector.selectedKeys().iterator();
+		while (iterator.hasNext()) {
+			final SelectionKey key = iterator.next();
+			iterator.remove();
+			final TCPEntrySession session = (TCPEntrySession) key.attachment();
+			if (!key.isValid()) {
+				session.close();
+				continue;
+			}
+			if (key.isWritable()) {
+				session.handleWritable();
+			}
+			if (key.isValid() && key.isReadable()) {
+				session.handleReadable();
+			}
+		}
+	}
+
+	private void closeAllSessions() {
+		try {
+			for (SelectionKey key : new ArrayList<>(this.selector.keys())) {
+				((TCPEntrySession) key.attachment()).close();
+			}
+			this.selector.close();
+		} catch (IOException | ClosedSelectorException e) {
+			logger.error("Failed to close selector", e); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Close the selector of this loop which has never been started
+	 */
+	void closeSelector() {
+		try {
+			this.selector.close();
+		} catch (IOException e) {
+			logger.error("Failed to close selector", e); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * stop this loop
+	 */
+	void shutdown() {
+		this.selector.wakeup();
+	}
+}
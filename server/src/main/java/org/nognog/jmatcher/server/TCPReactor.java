@@ -0,0 +1,137 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * TCP front end of {@link IOMode#REACTOR}. This thread accepts inviters, and
+ * hands their channels to a few {@link TCPEventLoop}s in turn, so a registered
+ * inviter costs a socket and a small session instead of a blocked thread.
+ * 
+ * @author agent 2026/10/17
+ */
+public class TCPReactor extends Thread {
+	private final JMatcherDaemon jmatcherDaemon;
+	private final ServerSocketChannel serverChannel;
+	private final TCPEventLoop[] eventLoops;
+	private int countOfAcceptedTCPClient;
+	private int nextEventLoopIndex;
+	private boolean started;
+
+	private static Logger logger = LogManager.getLogger(TCPReactor.class);
+
+	/**
+	 * @param daemon
+	 * @param numberOfEventLoops
+	 * @throws IOException
+	 */
+	public TCPReactor(JMatcherDaemon daemon, int numberOfEventLoops) throws IOException {
+		super("tcp-acceptor"); //$NON-NLS-1$
+		if (numberOfEventLoops <= 0) {
+			throw new IllegalArgumentException("numberOfEventLoops must be positive"); //$NON-NLS-1$
+		}
+		this.jmatcherDaemon = daemon;
+		this.eventLoops = new TCPEventLoop[numberOfEventLoops];
+		try {
+			for (int i = 0; i < numberOfEventLoops; i++) {
+				this.eventLoops[i] = new TCPEventLoop(daemon, i);
+			}
+		} catch (IOException e) {
+			this.closeEventLoops();
+			throw e;
+		}
+		try {
+			this.serverChannel = ServerSocketChannel.open();
+		} catch (IOException e) {
+			this.closeEventLoops();
+			throw e;
+		}
+		try {
+			this.serverChannel.bind(new InetSocketAddress(daemon.getPort()));
+		} catch (IOException e) {
+			this.serverChannel.close();
+			this.closeEventLoops();
+			throw e;
+		}
+		this.countOfAcceptedTCPClient = 0;
+	}
+
+	@Override
+	public synchronized void start() {
+		this.started = true;
+		for (TCPEventLoop eventLoop : this.eventLoops) {
+			eventLoop.start();
+		}
+		super.start();
+	}
+
+	@Override
+	public void run() {
+		logger.info("started tcp acceptor loop"); //$NON-NLS-1$
+		while (!this.jmatcherDaemon.isStopping()) {
+			try {
+				final SocketChannel channel = this.serverChannel.accept();
+				this.eventLoops[this.nextEventLoopIndex].register(channel, this.countOfAcceptedTCPClient);
+				this.nextEventLoopIndex = (this.nextEventLoopIndex + 1) % this.eventLoops.length;
+				if (logger.isInfoEnabled()) {
+					final String logMessage = new StringBuilder().append("TCP(").append(this.countOfAcceptedTCPClient).append(") Connect to ").append(channel.socket().getInetAddress()).toString(); //$NON-NLS-1$ //$NON-NLS-2$
+					logger.info(logMessage);
+				}
+				this.countOfAcceptedTCPClient++;
+			} catch (IOException e) {
+				// A IOException is generated when the channel is closed in stop()
+				if (!this.jmatcherDaemon.isStopping()) {
+					logger.fatal("TCP acceptor loop thread : error occured", e); //$NON-NLS-1$
+				}
+			} catch (Throwable t) {
+				logger.fatal("unexpected error occured", t); //$NON-NLS-1$
+			}
+		}
+	}
+
+	/**
+	 * close the server channel and stop the event loops. The selectors of the
+	 * event loops are closed here if this reactor has never been started.
+	 */
+	public synchronized void closeSocket() {
+		try {
+			this.serverChannel.close();
+		} catch (IOException e) {
+			logger.error("Failed to close tcp server channel", e); //$NON-NLS-1$
+		}
+		if (!this.started) {
+			this.closeEventLoops();
+			return;
+		}
+		for (TCPEventLoop eventLoop : this.eventLoops) {
+			eventLoop.shutdown();
+		}
+	}
+
+	private void closeEventLoops() {
+		for (TCPEventLoop eventLoop : this.eventLoops) {
+			if (eventLoop != null) {
+				eventLoop.closeSelector();
+			}
+		}
+	}
+}
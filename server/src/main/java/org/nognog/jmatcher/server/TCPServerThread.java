@@ -17,10 +17,10 @@ package org.nognog.jmatcher.server;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.nognog.jmatcher.JMatcher;
 
 /**
  * @author goshi 2015/12/22
@@ -29,6 +29,7 @@ public class TCPServerThread extends Thread {
 	private final JMatcherDaemon jmatcherDaemon;
 	private final ServerSocket tcpServerSocket;
 	private int countOfAcceptedTCPClient;
+	private long countOfRejectedTCPClient;
 
 	private static Logger logger = LogManager.getLogger(TCPServerThread.class);
 
@@ -38,7 +39,7 @@ public class TCPServerThread extends Thread {
 	 */
 	public TCPServerThread(JMatcherDaemon daemon) throws IOException {
 		this.jmatcherDaemon = daemon;
-		this.tcpServerSocket = new ServerSocket(JMatcher.PORT);
+		this.tcpServerSocket = new ServerSocket(daemon.getPort());
 		this.countOfAcceptedTCPClient = 0;
 	}
 
@@ -50,9 +51,10 @@ public class TCPServerThread extends Thread {
 				@SuppressWarnings("resource")
 				final Socket socket = this.tcpServerSocket.accept();
 				final TCPClientRequestHandler handler = new TCPClientRequestHandler(this.jmatcherDaemon, socket, this.countOfAcceptedTCPClient);
-				this.jmatcherDaemon.getExecutorService().execute(handler);
-				final String logMessage = new StringBuilder().append("TCP(").append(this.countOfAcceptedTCPClient).append(") Connect to ").append(socket.getInetAddress()).toString(); //$NON-NLS-1$ //$NON-NLS-2$
-				logger.info(logMessage);
+				if (this.execute(handler, socket) && logger.isInfoEnabled()) {
+					final String logMessage = new StringBuilder().append("TCP(").append(this.countOfAcceptedTCPClient).append(") Connect to ").append(socket.getInetAddress()).toString(); //$NON-NLS-1$ //$NON-NLS-2$
+					logger.info(logMessage);
+				}
 				this.countOfAcceptedTCPClient++;
 			} catch (IOException e) {
 				/*
@@ -69,6 +71,35 @@ public class TCPServerThread extends Thread {
 		}
 	}
 
+	/**
+	 * @return false if the handler is rejected, and then the socket is closed
+	 */
+	private boolean execute(TCPClientRequestHandler handler, Socket socket) {
+		try {
+			this.jmatcherDaemon.getTCPExecutorService().execute(handler);
+			return true;
+		} catch (RejectedExecutionException e) {
+			final boolean stopping = this.jmatcherDaemon.isStopping();
+			if (!stopping) {
+				this.jmatcherDaemon.getMetrics().entryRejected();
+			}
+			try {
+				socket.close();
+			} catch (IOException e1) {
+				// ignore
+			}
+			if (stopping) {
+				return false;
+			}
+			this.countOfRejectedTCPClient++;
+			// not to flood the log while it is overloaded
+			if (Long.bitCount(this.countOfRejectedTCPClient) == 1) {
+				logger.warn("rejected " + this.countOfRejectedTCPClient + " inviters because the handlers are full"); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			return false;
+		}
+	}
+
 	/**
 	 * 
 	 */
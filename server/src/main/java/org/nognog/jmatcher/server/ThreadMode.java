@@ -0,0 +1,124 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Which threads run the handlers of the blocking front ends.
+ * 
+ * @author agent 2026/10/17
+ */
+public enum ThreadMode {
+	/**
+	 * a cached pool of platform threads, one of which is held by each inviter
+	 * for as long as it is registered
+	 */
+	PLATFORM,
+
+	/**
+	 * a virtual thread per handler (Java 21 or later). The handlers keep
+	 * blocking, but a blocked handler only holds its stack on the heap
+	 * instead of a platform thread. The state which the handlers share is
+	 * guarded by {@link java.util.concurrent.locks.ReentrantLock}s instead of
+	 * monitors, so that a handler which waits for it doesn't pin its carrier.
+	 */
+	VIRTUAL,
+
+	;
+
+	private static final long idleTimeOfBoundedThreads = 60; // [sec]
+
+	/**
+	 * @return the executor of this mode, or null if the runtime doesn't
+	 *         support it
+	 */
+	ExecutorService newExecutorService() {
+		if (this == PLATFORM) {
+			return Executors.newCachedThreadPool();
+		}
+		// it is looked up by reflection because the module targets Java 7
+		try {
+			final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor"); //$NON-NLS-1$
+			return (ExecutorService) factory.invoke(null);
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			return null;
+		} catch (InvocationTargetException e) {
+			// a preview feature which isn't enabled
+			if (e.getCause() instanceof UnsupportedOperationException) {
+				return null;
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * @param name
+	 *            prefix of the names of the threads
+	 * @param maxThreads
+	 *            the maximum number of handlers which run at once
+	 * @param queueSize
+	 *            the maximum number of handlers which wait for a thread, and
+	 *            a handler is rejected when it is full
+	 * @return the bounded executor of this mode, or null if the runtime
+	 *         doesn't support it
+	 */
+	ExecutorService newBoundedExecutorService(String name, int maxThreads, int queueSize) {
+		final ThreadFactory threadFactory = this.newThreadFactory(name);
+		if (threadFactory == null) {
+			return null;
+		}
+		final BlockingQueue<Runnable> queue = (queueSize == 0) ? new SynchronousQueue<Runnable>() : new ArrayBlockingQueue<Runnable>(queueSize);
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, idleTimeOfBoundedThreads, TimeUnit.SECONDS, queue, threadFactory);
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private ThreadFactory newThreadFactory(final String name) {
+		if (this == PLATFORM) {
+			return new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					return new Thread(runnable, name + "-" + this.count.getAndIncrement()); //$NON-NLS-1$
+				}
+			};
+		}
+		try {
+			final Object builder = Thread.class.getMethod("ofVirtual").invoke(null); //$NON-NLS-1$
+			final Class<?> builderClass = Class.forName("java.lang.Thread$Builder"); //$NON-NLS-1$
+			builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", Long.valueOf(0)); //$NON-NLS-1$ //$NON-NLS-2$
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder); //$NON-NLS-1$
+		} catch (NoSuchMethodException | ClassNotFoundException | IllegalAccessException e) {
+			return null;
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof UnsupportedOperationException) {
+				return null;
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+}
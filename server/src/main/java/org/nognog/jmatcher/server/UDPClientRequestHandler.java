@@ -15,25 +15,14 @@
 package org.nognog.jmatcher.server;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.TimeoutException;
+import java.nio.ByteBuffer;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.nognog.jmatcher.Host;
-import org.nognog.jmatcher.SpecialHostAddress;
-import org.nognog.jmatcher.udp.request.ConnectionRequest;
-import org.nognog.jmatcher.udp.request.EnableEntryRequest;
-import org.nognog.jmatcher.udp.request.UDPRequest;
+import org.nognog.jmatcher.udp.UDPProtocol;
 import org.nognog.jmatcher.udp.request.UDPRequestSerializer;
-import org.nognog.jmatcher.udp.response.ConnectionResponse;
-import org.nognog.jmatcher.udp.response.UDPResponse;
-import org.nognog.jmatcher.udp.response.UDPResponseSerializer;
 
 /**
  * @author goshi 2015/10/31
@@ -43,12 +32,15 @@ public class UDPClientRequestHandler implements Runnable {
 	private int number;
 	private String name;
 	private JMatcherDaemon jmatcherDaemon;
-	private ConcurrentMap<Integer, Host> matchingMap;
-	private ConcurrentMap<Integer, CopyOnWriteArraySet<RequestingConnectionHostHandler>> waitingForSyncHandlersMap;
+	private MatchingTable matchingTable;
 
-	private DatagramSocket socket;
+	private UDPResponseSender sender;
 	private InetSocketAddress clientAddress;
-	private String receivedMessage;
+	private UDPProtocol protocol;
+	private int requestType;
+	private int keyNumber;
+	private boolean forwarded;
+	private boolean retained;
 
 	private static Logger logger = LogManager.getLogger(UDPClientRequestHandler.class);
 
@@ -58,26 +50,91 @@ public class UDPClientRequestHandler implements Runnable {
 	public static final int WAIT_TIME_FOR_MATCHING_TIMING = 5000; //
 
 	/**
+	 * The request is decoded in the constructor, so the buffer of the received
+	 * message can be reused as soon as it returns. The message must have been
+	 * accepted by the {@link UDPRequestFilter}.
+	 * 
 	 * @param jmatcherDaemon
-	 * @param socket
-	 * @param receivedMessage
+	 * @param sender
 	 * @param clientAddress
+	 * @param receivedMessage
+	 *            from its position to its limit, in either {@link UDPProtocol}
 	 * @param number
 	 * 
 	 */
-	public UDPClientRequestHandler(JMatcherDaemon jmatcherDaemon, DatagramSocket socket, InetSocketAddress clientAddress, String receivedMessage, int number) {
+	public UDPClientRequestHandler(JMatcherDaemon jmatcherDaemon, UDPResponseSender sender, InetSocketAddress clientAddress, ByteBuffer receivedMessage, int number) {
 		this.jmatcherDaemon = jmatcherDaemon;
-		this.matchingMap = this.jmatcherDaemon.getMatchingMap();
-		this.waitingForSyncHandlersMap = this.jmatcherDaemon.getWaitingHandlersMap();
-		this.socket = socket;
+		this.matchingTable = this.jmatcherDaemon.getMatchingTable();
+		this.sender = sender;
+		this.reset(clientAddress, receivedMessage, number);
+	}
+
+	/**
+	 * Take the next request. A front end which handles the requests on its own
+	 * thread reuses a handler until {@link #isRetained()} tells that it waits
+	 * for a response, so that the request path doesn't allocate.
+	 * 
+	 * @param newClientAddress
+	 * @param receivedMessage
+	 *            from its position to its limit, in either {@link UDPProtocol}
+	 * @param newNumber
+	 */
+	void reset(InetSocketAddress newClientAddress, ByteBuffer receivedMessage, int newNumber) {
+		this.clientAddress = newClientAddress;
+		this.protocol = UDPProtocol.of(receivedMessage);
+		this.requestType = UDPRequestSerializer.readRequestType(receivedMessage);
+		this.keyNumber = UDPRequestSerializer.readKeyNumber(receivedMessage);
+		this.number = newNumber;
+		// it is made when it is logged
+		this.name = null;
+	}
+
+	/**
+	 * @return true if a {@link PendingRendezvous} holds this handler to send
+	 *         its response later, and then this can't be reused
+	 */
+	boolean isRetained() {
+		return this.retained;
+	}
+
+	private String getName() {
+		if (this.name == null) {
+			this.name = new StringBuilder().append("UDP(").append(this.number).append(")").toString(); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		return this.name;
+	}
+
+	/**
+	 * A request which another node of the cluster has forwarded
+	 * 
+	 * @param jmatcherDaemon
+	 * @param sender
+	 *            it sends the responses back to the node
+	 * @param clientAddress
+	 *            the address of the client which sent the request to the
+	 *            node
+	 * @param protocol
+	 * @param requestType
+	 * @param keyNumber
+	 * @param name
+	 *            for the log
+	 */
+	UDPClientRequestHandler(JMatcherDaemon jmatcherDaemon, UDPResponseSender sender, InetSocketAddress clientAddress, UDPProtocol protocol, int requestType, int keyNumber, String name) {
+		this.jmatcherDaemon = jmatcherDaemon;
+		this.matchingTable = this.jmatcherDaemon.getMatchingTable();
+		this.sender = sender;
 		this.clientAddress = clientAddress;
-		this.receivedMessage = receivedMessage;
-		this.number = number;
-		this.name = new StringBuilder().append("UDP(").append(this.number).append(")").toString(); //$NON-NLS-1$ //$NON-NLS-2$
+		this.protocol = protocol;
+		this.requestType = requestType;
+		this.keyNumber = keyNumber;
+		this.forwarded = true;
+		this.name = name;
 	}
 
 	private void log(String message, Level level) {
-		logger.log(level, createLappedMessage(message));
+		if (logger.isEnabled(level)) {
+			logger.log(level, createLappedMessage(message));
+		}
 	}
 
 	private void log(Throwable t, Level level) {
@@ -90,7 +147,7 @@ public class UDPClientRequestHandler implements Runnable {
 
 	private String createLappedMessage(String message) {
 		final StringBuilder sb = new StringBuilder();
-		sb.append(this.name).append(" ").append(message); //$NON-NLS-1$
+		sb.append(this.getName()).append(" ").append(message); //$NON-NLS-1$
 		return sb.toString();
 	}
 
@@ -101,14 +158,66 @@ public class UDPClientRequestHandler implements Runnable {
 		return this.clientAddress;
 	}
 
-	@Override
-	public void run() {
-		final UDPRequest request = UDPRequestSerializer.getInstance().deserialize(this.receivedMessage);
-		if (request == null) {
+	UDPResponseSender getSender() {
+		return this.sender;
+	}
+
+	UDPProtocol getProtocol() {
+		return this.protocol;
+	}
+
+	int getRequestType() {
+		return this.requestType;
+	}
+
+	int getKeyNumber() {
+		return this.keyNumber;
+	}
+
+	/**
+	 * @param sb
+	 *            which the request is appended to
+	 */
+	void appendRequestTo(StringBuilder sb) {
+		switch (this.requestType) {
+		case UDPRequestSerializer.CONNECTION_REQUEST:
+			sb.append("ConnectionRequest "); //$NON-NLS-1$
+			break;
+		case UDPRequestSerializer.ENABLE_ENTRY_REQUEST:
+			sb.append("EnableEntryRequest "); //$NON-NLS-1$
+			break;
+		case UDPRequestSerializer.LEASE_REQUEST:
+			sb.append("LeaseRequest "); //$NON-NLS-1$
+			break;
+		case UDPRequestSerializer.RENEW_LEASE_REQUEST:
+			sb.append("RenewLeaseRequest "); //$NON-NLS-1$
+			break;
+		case UDPRequestSerializer.RELEASE_LEASE_REQUEST:
+			sb.append("ReleaseLeaseRequest "); //$NON-NLS-1$
+			break;
+		default:
+			sb.append("invalid request"); //$NON-NLS-1$
 			return;
 		}
+		sb.append(this.keyNumber).append(" (").append(this.protocol).append(')'); //$NON-NLS-1$
+	}
+
+	/**
+	 * Answer the request at once without handling it, because the daemon is
+	 * overloaded. A ConnectionRequest is answered with a failure as if the
+	 * entry didn't exist, so its host can retry soon, and the other requests
+	 * are dropped.
+	 */
+	void reject() {
+		if (this.requestType == UDPRequestSerializer.CONNECTION_REQUEST) {
+			this.sendResponseSafely(EncodedResponse.NO_HOST);
+		}
+	}
+
+	@Override
+	public void run() {
 		try {
-			this.handleRequest(request);
+			this.handleRequest();
 		} catch (IOException e) {
 			this.log(e, Level.ERROR);
 		} catch (Throwable e) {
@@ -117,120 +226,110 @@ public class UDPClientRequestHandler implements Runnable {
 	}
 
 	/**
-	 * @param request
 	 * @throws IOException
 	 */
-	private void handleRequest(UDPRequest request) throws IOException {
-		if (request instanceof ConnectionRequest) {
-			this.handleConnectionRequest((ConnectionRequest) request);
-		} else if (request instanceof EnableEntryRequest) {
-			this.handleEnableEntryRequest((EnableEntryRequest) request);
+	private void handleRequest() throws IOException {
+		final ClusterLink clusterLink = this.jmatcherDaemon.getClusterLink();
+		// a forwarded request isn't forwarded again even if the nodes disagree,
+		// and a new key is leased by the node which is asked
+		if (clusterLink != null && !this.forwarded && this.requestType != UDPRequestSerializer.LEASE_REQUEST && !clusterLink.owns(this.keyNumber)) {
+			clusterLink.forward(this);
+			return;
+		}
+		switch (this.requestType) {
+		case UDPRequestSerializer.CONNECTION_REQUEST:
+			this.handleConnectionRequest();
+			break;
+		case UDPRequestSerializer.ENABLE_ENTRY_REQUEST:
+			this.handleEnableEntryRequest();
+			break;
+		case UDPRequestSerializer.LEASE_REQUEST:
+			UDPLease.grant(this.jmatcherDaemon, this.sender, this.clientAddress);
+			break;
+		case UDPRequestSerializer.RENEW_LEASE_REQUEST:
+			UDPLease.renew(this.jmatcherDaemon, this.sender, this.clientAddress, this.keyNumber);
+			break;
+		case UDPRequestSerializer.RELEASE_LEASE_REQUEST:
+			UDPLease.release(this.jmatcherDaemon, this.clientAddress, this.keyNumber);
+			break;
+		default:
+			break;
 		}
 	}
 
-	private void handleConnectionRequest(ConnectionRequest request) throws IOException {
-		final Host targetHost = this.matchingMap.get(request.getKeyNumber());
-		if (targetHost == null || targetHost instanceof PreEntryHost) {
-			this.sendResponse(new ConnectionResponse(null));
-			return;
+	private void handleConnectionRequest() throws IOException {
+		final RequestDedupCache dedupCache = this.jmatcherDaemon.getRequestDedupCache();
+		PendingRendezvous original = dedupCache.get(this.clientAddress, this.requestType, this.keyNumber);
+		PendingRendezvous rendezvous = null;
+		if (original == null) {
+			rendezvous = new PendingRendezvous(this);
+			original = dedupCache.putIfAbsent(this.clientAddress, this.requestType, this.keyNumber, rendezvous);
 		}
-		final Integer connectionTargetKeyNumber = this.getRealKeyNumberInstance(request.getKeyNumber());
-		if (connectionTargetKeyNumber == null) {
-			this.sendResponse(new ConnectionResponse(null));
+		if (original != null) {
+			// a retransmission joins the original, whose response goes to the
+			// same address, or gets its response again
+			this.matchingTable.getMetrics().requestDuplicated();
+			final EncodedResponse response = original.getResponse();
+			if (response != null) {
+				this.sendResponse(response);
+			}
 			return;
 		}
-		final boolean useSpecialInternalAddress = this.jmatcherDaemon.isEnabledToReturnSpecialInternalAddress() && targetHost.getAddress().equals(this.getClientHostAddress());
-		try {
-			this.waitToMatchConnectionTiming(connectionTargetKeyNumber, useSpecialInternalAddress);
-		} catch (TimeoutException e) {
-			this.sendResponse(new ConnectionResponse(null));
+		this.retained = true;
+		this.matchingTable.getMetrics().connectionRequested();
+		if (!this.matchingTable.addRendezvous(this.keyNumber, rendezvous)) {
+			// the failure isn't replayed, so a retransmission is handled again
+			rendezvous.fail();
 			return;
 		}
-		final ConnectionResponse response;
-		if (useSpecialInternalAddress) {
-			response = new ConnectionResponse(new Host(SpecialHostAddress.ON_INTERNAL_NETWORK_HOST.getAddress(), targetHost.getPort()));
-		} else {
-			response = new ConnectionResponse(targetHost);
-		}
-		this.sendResponse(response);
-	}
-
-	/**
-	 * @param requestKeyNumber
-	 * @return real key number, which is contained in the matchingMap
-	 */
-	private Integer getRealKeyNumberInstance(Integer requestKeyNumber) {
-		for (Integer key : this.matchingMap.keySet()) {
-			if (key.equals(requestKeyNumber)) {
-				return key;
-			}
-		}
-		return null;
+		// the response is sent by the thread which releases the rendezvous,
+		// or by the timing wheel of the daemon when it times out
+		rendezvous.scheduleTimeout(this.jmatcherDaemon.getTimingWheel(), WAIT_TIME_FOR_MATCHING_TIMING);
 	}
 
 	/**
-	 * @param connectionTargetKeyNumber
-	 * @param useSpecialInternalAddress
+	 * @param response
+	 * @throws IOException
 	 */
-	private void waitToMatchConnectionTiming(Integer connectionTargetKeyNumber, boolean useSpecialInternalAddress) throws TimeoutException {
-		final CopyOnWriteArraySet<RequestingConnectionHostHandler> newSet = new CopyOnWriteArraySet<>();
-		synchronized (connectionTargetKeyNumber) {
-			final CopyOnWriteArraySet<RequestingConnectionHostHandler> previousSet = this.waitingForSyncHandlersMap.putIfAbsent(connectionTargetKeyNumber, newSet);
-			final Host requestingConnectionHost = this.createClientHostInstance();
-			if (useSpecialInternalAddress) {
-				requestingConnectionHost.setAddress(SpecialHostAddress.ON_INTERNAL_NETWORK_HOST.getAddress());
-			}
-			final RequestingConnectionHostHandler waitingHandler = new RequestingConnectionHostHandler(Thread.currentThread(), requestingConnectionHost);
-			if (previousSet == null) { // in case new set is put
-				newSet.add(waitingHandler);
-			} else {
-				previousSet.add(waitingHandler);
+	private void sendResponse(EncodedResponse response) throws IOException {
+		final DirectBufferPool bufferPool = this.jmatcherDaemon.getResponseBufferPool();
+		if (response.size(this.protocol) > bufferPool.getBufferSize()) {
+			final ByteBuffer buffer = ByteBuffer.allocate(response.size(this.protocol));
+			response.put(this.protocol, buffer);
+			buffer.flip();
+			this.sender.send(buffer, this.clientAddress);
+		} else {
+			final ByteBuffer buffer = bufferPool.acquire();
+			try {
+				response.put(this.protocol, buffer);
+				buffer.flip();
+				this.sender.send(buffer, this.clientAddress);
+			} finally {
+				bufferPool.release(buffer);
 			}
 		}
-		try {
-			Thread.sleep(WAIT_TIME_FOR_MATCHING_TIMING);
-		} catch (InterruptedException e) {
-			return;
+		final AccessLog accessLog = this.jmatcherDaemon.getAccessLog();
+		if (accessLog.isSampled()) {
+			accessLog.log(new StringBuilder().append(this.getName()).append(" ").append(this.sender.getLocalSocketAddress()).append(" -> ") //$NON-NLS-1$ //$NON-NLS-2$
+					.append(this.clientAddress).append(" : ").append(response.getHost())); //$NON-NLS-1$
 		}
-		throw new TimeoutException();
-	}
-
-	private Host createClientHostInstance() {
-		return new Host(this.getClientHostAddress(), this.getClientHostPort());
-	}
-
-	private String getClientHostAddress() {
-		return this.clientAddress.getAddress().getHostAddress();
-	}
-
-	private int getClientHostPort() {
-		return this.clientAddress.getPort();
 	}
 
 	/**
+	 * Send the response, and log the error if it fails. It is used by the
+	 * threads which complete a {@link PendingRendezvous}.
+	 * 
 	 * @param response
-	 * @throws IOException
 	 */
-	private void sendResponse(UDPResponse response) throws IOException {
-		final String serializedResponse = UDPResponseSerializer.getInstance().serialize(response);
-		final byte[] buf = serializedResponse.getBytes();
-		final DatagramPacket packet = new DatagramPacket(buf, buf.length, this.clientAddress);
-		this.socket.send(packet);
-		final String logMessage = new StringBuilder().append(this.socket.getLocalAddress()).append(" -> ") //$NON-NLS-1$
-				.append(packet.getSocketAddress()).append(" : ").append(serializedResponse).toString(); //$NON-NLS-1$
-		this.log(logMessage, Level.INFO);
+	void sendResponseSafely(EncodedResponse response) {
+		try {
+			this.sendResponse(response);
+		} catch (IOException e) {
+			this.log(e, Level.ERROR);
+		}
 	}
 
-	/**
-	 * @param request
-	 */
-	private void handleEnableEntryRequest(EnableEntryRequest request) {
-		final Integer keyNumber = getRealKeyNumberInstance(request.getKeyNumber());
-		synchronized (keyNumber) {
-			if (this.matchingMap.get(keyNumber) instanceof PreEntryHost) {
-				this.matchingMap.put(keyNumber, this.createClientHostInstance());
-				keyNumber.notifyAll();
-			}
-		}
+	private void handleEnableEntryRequest() {
+		this.matchingTable.enable(this.keyNumber, this.clientAddress.getAddress(), this.clientAddress.getPort());
 	}
 }
\ No newline at end of file
@@ -0,0 +1,299 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+
+package org.nognog.jmatcher.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nognog.jmatcher.Host;
+import org.nognog.jmatcher.udp.response.LeaseResponse;
+import org.nognog.jmatcher.udp.response.UDPResponseSerializer;
+
+/**
+ * The owner of an entry which an inviter has registered by a
+ * {@link org.nognog.jmatcher.udp.request.LeaseRequest}, instead of keeping the
+ * entry channel of TCP open. The entry is registered at the UDP endpoint of
+ * the request at once, and it stays in the matching table while the inviter
+ * renews the lease by {@link org.nognog.jmatcher.udp.request.RenewLeaseRequest}
+ * s. A renewal only records its time, and the timing wheel of the daemon
+ * checks the lease when it would expire, so a lease costs neither a socket nor
+ * a thread of the daemon.
+ * <p>
+ * An endpoint holds at most one lease, and an address holds a limited number
+ * of them (see {@link UDPLeaseRegistry}). A renewal is matched by the address
+ * and the key, so a lease follows its inviter when the NAT maps the inviter to
+ * another port.
+ * </p>
+ * <p>
+ * The requesting hosts are pushed to the inviter in {@link LeaseResponse}s
+ * when they come, and are also returned to its renewals.
+ * </p>
+ * 
+ * @author agent 2026/10/17
+ */
+public class UDPLease implements PreEntryListener, Runnable {
+	private final JMatcherDaemon jmatcherDaemon;
+	private final int leaseTime;
+	private volatile int keyNumber = -1;
+	private volatile UDPResponseSender sender;
+	private volatile InetSocketAddress inviterAddress;
+	private volatile long renewedTime;
+	private volatile HashedTimingWheel.Timeout timeout;
+
+	private static Logger logger = LogManager.getLogger(UDPLease.class);
+
+	private UDPLease(JMatcherDaemon jmatcherDaemon, UDPResponseSender sender, InetSocketAddress inviterAddress) {
+		this.jmatcherDaemon = jmatcherDaemon;
+		this.leaseTime = jmatcherDaemon.getLeaseTime();
+		this.sender = sender;
+		this.inviterAddress = inviterAddress;
+		this.renewedTime = System.nanoTime();
+	}
+
+	/**
+	 * Register the inviter under a new key, and answer the lease. The lease
+	 * which the endpoint already holds is answered again instead.
+	 * 
+	 * @param jmatcherDaemon
+	 * @param sender
+	 * @param inviterAddress
+	 *            the UDP endpoint of the inviter
+	 * @throws IOException
+	 */
+	static void grant(JMatcherDaemon jmatcherDaemon, UDPResponseSender sender, InetSocketAddress inviterAddress) throws IOException {
+		if (jmatcherDaemon.getLeaseTime() <= 0) {
+			sendResponse(jmatcherDaemon, sender, inviterAddress, -1, 0, null);
+			return;
+		}
+		final UDPLeaseRegistry registry = jmatcherDaemon.getLeaseRegistry();
+		final UDPLease lease = new UDPLease(jmatcherDaemon, sender, inviterAddress);
+		final UDPLease current = registry.putIfAbsent(lease);
+		if (current == null) {
+			sendResponse(jmatcherDaemon, sender, inviterAddress, -1, 0, null);
+			return;
+		}
+		if (current != lease) {
+			// a retransmission, whose original is answered when it has a key
+			final int currentKeyNumber = current.keyNumber;
+			if (currentKeyNumber >= 0) {
+				sendResponse(jmatcherDaemon, sender, inviterAddress, currentKeyNumber, current.leaseTime, null);
+			}
+			return;
+		}
+		final MatchingTable matchingTable = jmatcherDaemon.getMatchingTable();
+		final int keyNumber = matchingTable.putPreEntryWithNewKey(inviterAddress.getAddress(), inviterAddress.getPort(), lease, 0);
+		if (keyNumber < 0) {
+			registry.remove(lease);
+			sendResponse(jmatcherDaemon, sender, inviterAddress, -1, 0, null);
+			return;
+		}
+		lease.start(keyNumber);
+		matchingTable.getMetrics().leaseGranted();
+		if (logger.isInfoEnabled()) {
+			logger.info(new StringBuilder().append("Lease : ").append(keyNumber).append(" = ").append(inviterAddress)); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		sendResponse(jmatcherDaemon, sender, inviterAddress, keyNumber, lease.leaseTime, null);
+	}
+
+	/**
+	 * Renew the lease of the inviter, and answer it with the requesting hosts.
+	 * The entry is moved to the port of the renewal if the inviter has been
+	 * mapped to another one. An entry which has been restored is re-attached
+	 * to the inviter at the address which it was registered from. The renewal
+	 * is refused if the address doesn't hold the lease.
+	 * 
+	 * @param jmatcherDaemon
+	 * @param sender
+	 * @param inviterAddress
+	 *            the UDP endpoint of the inviter
+	 * @param keyNumber
+	 * @throws IOException
+	 */
+	static void renew(JMatcherDaemon jmatcherDaemon, UDPResponseSender sender, InetSocketAddress inviterAddress, int keyNumber) throws IOException {
+		final MatchingTable matchingTable = jmatcherDaemon.getMatchingTable();
+		final PreEntryListener owner = matchingTable.getOwner(keyNumber, inviterAddress.getAddress());
+		if (owner instanceof UDPLease) {
+			final UDPLease lease = (UDPLease) owner;
+			if (matchingTable.rebind(keyNumber, lease, inviterAddress.getAddress(), inviterAddress.getPort())) {
+				if (lease.inviterAddress.getPort() != inviterAddress.getPort()) {
+					logger.info(new StringBuilder().append("Rebound lease : ").append(keyNumber).append(" = ").append(inviterAddress)); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+				lease.renewedTime = System.nanoTime();
+				lease.sender = sender;
+				lease.inviterAddress = inviterAddress;
+				lease.sendRequestingHosts(true);
+				return;
+			}
+		}
+		if (owner == null && jmatcherDaemon.getLeaseTime() > 0) {
+			final UDPLeaseRegistry registry = jmatcherDaemon.getLeaseRegistry();
+			final UDPLease lease = new UDPLease(jmatcherDaemon, sender, inviterAddress);
+			if (registry.putIfAbsent(lease) == lease) {
+				if (matchingTable.reattach(keyNumber, inviterAddress.getAddress(), inviterAddress.getPort(), lease, 0)) {
+					lease.start(keyNumber);
+					logger.info(new StringBuilder().append("Re-attached lease : ").append(keyNumber).append(" = ").append(inviterAddress)); //$NON-NLS-1$ //$NON-NLS-2$
+					sendResponse(jmatcherDaemon, sender, inviterAddress, keyNumber, lease.leaseTime, null);
+					return;
+				}
+				registry.remove(lease);
+			}
+		}
+		sendResponse(jmatcherDaemon, sender, inviterAddress, -1, 0, null);
+	}
+
+	/**
+	 * End the lease of the inviter at once
+	 * 
+	 * @param jmatcherDaemon
+	 * @param inviterAddress
+	 *            the UDP endpoint of the inviter
+	 * @param keyNumber
+	 */
+	static void release(JMatcherDaemon jmatcherDaemon, InetSocketAddress inviterAddress, int keyNumber) {
+		final PreEntryListener owner = jmatcherDaemon.getMatchingTable().getOwner(keyNumber, inviterAddress.getAddress());
+		if (!(owner instanceof UDPLease)) {
+			return;
+		}
+		final UDPLease lease = (UDPLease) owner;
+		final HashedTimingWheel.Timeout currentTimeout = lease.timeout;
+		if (currentTimeout != null) {
+			currentTimeout.cancel();
+		}
+		if (jmatcherDaemon.getMatchingTable().remove(keyNumber, lease)) {
+			logger.info(new StringBuilder().append("Released lease : ").append(keyNumber)); //$NON-NLS-1$
+		}
+		jmatcherDaemon.getLeaseRegistry().remove(lease);
+	}
+
+	/**
+	 * @return the UDP endpoint of the inviter
+	 */
+	InetSocketAddress getInviterAddress() {
+		return this.inviterAddress;
+	}
+
+	/**
+	 * Enable the pre-entry of this lease, and schedule its expiry
+	 */
+	private void start(int entryKeyNumber) {
+		this.keyNumber = entryKeyNumber;
+		this.jmatcherDaemon.getMatchingTable().enable(entryKeyNumber, this.inviterAddress.getAddress(), this.inviterAddress.getPort());
+		this.timeout = this.jmatcherDaemon.getTimingWheel().newTimeout(this, this.leaseTime, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * It is called by the timing wheel when the lease would expire. It is
+	 * scheduled again if the lease has been renewed since then.
+	 */
+	@Override
+	public void run() {
+		final long remainingTime = this.leaseTime - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.renewedTime);
+		if (remainingTime > 0) {
+			this.timeout = this.jmatcherDaemon.getTimingWheel().newTimeout(this, remainingTime, TimeUnit.MILLISECONDS);
+			return;
+		}
+		if (this.jmatcherDaemon.getMatchingTable().remove(this.keyNumber, this)) {
+			this.jmatcherDaemon.getMetrics().leaseExpired();
+			logger.info(new StringBuilder().append("Expired lease : ").append(this.keyNumber)); //$NON-NLS-1$
+		}
+		this.jmatcherDaemon.getLeaseRegistry().remove(this);
+	}
+
+	@Override
+	public void enabled(int entryKeyNumber) {
+		// the lease enables its entry by itself
+	}
+
+	@Override
+	public void expired(int entryKeyNumber) {
+		// the pre-entry of a lease doesn't expire
+	}
+
+	@Override
+	public void requested(int entryKeyNumber) {
+		try {
+			this.jmatcherDaemon.getExecutorService().execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						UDPLease.this.sendRequestingHosts(false);
+					} catch (IOException e) {
+						logger.error("failed to push the requesting hosts of " + UDPLease.this.keyNumber, e); //$NON-NLS-1$
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// the daemon is stopping
+		}
+	}
+
+	/**
+	 * Take the requesting hosts, and send them to the inviter
+	 * 
+	 * @param always
+	 *            true if the response is sent even if there is no requesting
+	 *            host
+	 */
+	private void sendRequestingHosts(boolean always) throws IOException {
+		final Host[] requestingHosts = TCPClientRequestHandler.takeRequestingHosts(this.jmatcherDaemon, Integer.valueOf(this.keyNumber));
+		if (!always && (requestingHosts == null || requestingHosts.length == 0)) {
+			return;
+		}
+		sendResponse(this.jmatcherDaemon, this.sender, this.inviterAddress, this.keyNumber, this.leaseTime, requestingHosts);
+	}
+
+	/**
+	 * Send the lease in as many datagrams as the hosts need. Each datagram is
+	 * put from a range of the hosts straight into a pooled buffer.
+	 * 
+	 * @param keyNumber
+	 *            -1 if the lease is refused
+	 * @param requestingHosts
+	 *            it can be null
+	 */
+	private static void sendResponse(JMatcherDaemon jmatcherDaemon, UDPResponseSender sender, InetSocketAddress inviterAddress, int keyNumber, int leaseTime, Host[] requestingHosts)
+			throws IOException {
+		final int numberOfHosts = (requestingHosts == null) ? 0 : requestingHosts.length;
+		final DirectBufferPool bufferPool = jmatcherDaemon.getResponseBufferPool();
+		final ByteBuffer buffer = bufferPool.acquire();
+		try {
+			int from = 0;
+			do {
+				int to = from;
+				int size = UDPResponseSerializer.LEASE_RESPONSE_HEADER_SIZE;
+				while (to < numberOfHosts && to - from < UDPResponseSerializer.MAX_HOSTS_IN_LEASE_RESPONSE) {
+					size += UDPResponseSerializer.getBinarySize(requestingHosts[to]);
+					if (size > UDPResponseSerializer.MAX_LEASE_RESPONSE_SIZE) {
+						break;
+					}
+					to++;
+				}
+				buffer.clear();
+				UDPResponseSerializer.getInstance().serializeLeaseResponse(keyNumber, leaseTime, requestingHosts, from, to, buffer);
+				buffer.flip();
+				sender.send(buffer, inviterAddress);
+				from = to;
+			} while (from < numberOfHosts);
+		} finally {
+			bufferPool.release(buffer);
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The {@link UDPLease}s which are held, by the address of their inviters. An
+ * endpoint holds at most one lease, so a retransmitted LeaseRequest gets the
+ * lease which its original has been granted, and an address holds a limited
+ * number of leases, so a single host can't take the keys of the daemon by
+ * LeaseRequests.
+ * 
+ * @author agent 2026/10/17
+ */
+public class UDPLeaseRegistry {
+	private final int maxLeasesPerAddress;
+	private final Map<InetAddress, List<UDPLease>> leases;
+	private final ReentrantLock lock;
+
+	/**
+	 * @param maxLeasesPerAddress
+	 *            the maximum number of the leases which an address holds at
+	 *            once
+	 */
+	public UDPLeaseRegistry(int maxLeasesPerAddress) {
+		this.maxLeasesPerAddress = maxLeasesPerAddress;
+		this.leases = new HashMap<>();
+		this.lock = new ReentrantLock();
+	}
+
+	/**
+	 * Add the lease unless its endpoint already holds one
+	 * 
+	 * @param lease
+	 * @return the lease which the endpoint already holds, the lease itself if
+	 *         it is added, or null if the address already holds the maximum
+	 *         number of the leases
+	 */
+	UDPLease putIfAbsent(UDPLease lease) {
+		final InetSocketAddress inviterAddress = lease.getInviterAddress();
+		this.lock.lock();
+		try {
+			List<UDPLease> leasesOfAddress = this.leases.get(inviterAddress.getAddress());
+			if (leasesOfAddress == null) {
+				leasesOfAddress = new ArrayList<>();
+				this.leases.put(inviterAddress.getAddress(), leasesOfAddress);
+			}
+			for (UDPLease current : leasesOfAddress) {
+				if (current.getInviterAddress().equals(inviterAddress)) {
+					return current;
+				}
+			}
+			if (leasesOfAddress.size() >= this.maxLeasesPerAddress) {
+				return null;
+			}
+			leasesOfAddress.add(lease);
+			return lease;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @param lease
+	 * @return true if the lease is removed
+	 */
+	boolean remove(UDPLease lease) {
+		final InetAddress address = lease.getInviterAddress().getAddress();
+		this.lock.lock();
+		try {
+			final List<UDPLease> leasesOfAddress = this.leases.get(address);
+			if (leasesOfAddress == null || !leasesOfAddress.remove(lease)) {
+				return false;
+			}
+			if (leasesOfAddress.isEmpty()) {
+				this.leases.remove(address);
+			}
+			return true;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @param address
+	 * @return the number of the leases which the address holds
+	 */
+	public int count(InetAddress address) {
+		this.lock.lock();
+		try {
+			final List<UDPLease> leasesOfAddress = this.leases.get(address);
+			return (leasesOfAddress == null) ? 0 : leasesOfAddress.size();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+}
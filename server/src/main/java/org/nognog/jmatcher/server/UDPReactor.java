@@ -0,0 +1,290 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nognog.jmatcher.udp.request.ConnectionRequest;
+
+/**
+ * UDP front end of {@link IOMode#REACTOR}. One event-loop thread receives
+ * datagrams from a non-blocking channel, decodes them, and handles them
+ * without handing them to the executor of the daemon. A
+ * {@link ConnectionRequest} doesn't block the loop either, because it waits
+ * for its inviter as a {@link PendingRendezvous}.
+ * <p>
+ * The daemon can run several reactors (see {@link #open(JMatcherDaemon, int)})
+ * so that the intake isn't capped at one core. Each of them has its own
+ * channel bound with SO_REUSEPORT, which lets the kernel spread datagrams by
+ * their source, or they share one channel when the option isn't available.
+ * </p>
+ * <p>
+ * A datagram is received into a direct buffer and is handled by a reused
+ * handler, and a response is sent from a pooled direct buffer, so a request
+ * which doesn't wait for its inviter doesn't allocate.
+ * </p>
+ * 
+ * @author agent 2026/10/17
+ */
+public class UDPReactor extends Thread implements UDPResponseSender {
+	private final JMatcherDaemon jmatcherDaemon;
+	private final DatagramChannel channel;
+	private final Selector selector;
+	private final ByteBuffer receiveBuffer;
+	private UDPClientRequestHandler spareHandler;
+	private final String name;
+	private int countOfReceivedUDPPacket;
+
+	private static Logger logger = LogManager.getLogger(UDPReactor.class);
+
+	/**
+	 * @param daemon
+	 * @throws IOException
+	 */
+	public UDPReactor(JMatcherDaemon daemon) throws IOException {
+		this(daemon, openChannel(daemon.getPort(), null), 0);
+	}
+
+	/**
+	 * @param daemon
+	 * @param channel
+	 *            a bound channel, which is closed if this fails to register it
+	 * @param number
+	 *            number of this reactor
+	 * @throws IOException
+	 */
+	UDPReactor(JMatcherDaemon daemon, DatagramChannel channel, int number) throws IOException {
+		super("udp-reactor-" + number); //$NON-NLS-1$
+		this.jmatcherDaemon = daemon;
+		this.channel = channel;
+		try {
+			this.selector = Selector.open();
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		try {
+			this.channel.configureBlocking(false);
+			this.channel.register(this.selector, SelectionKey.OP_READ);
+		} catch (IOException e) {
+			this.channel.close();
+			this.selector.close();
+			throw e;
+		}
+		this.receiveBuffer = ByteBuffer.allocateDirect(JMatcherDaemon.UDP_BUFFER_SIZE);
+		this.name = new StringBuilder().append("UDP-").append(number).append("(").toString(); //$NON-NLS-1$ //$NON-NLS-2$
+		this.countOfReceivedUDPPacket = 0;
+	}
+
+	/**
+	 * Open the reactors of the daemon. They are given their own channels if
+	 * SO_REUSEPORT is supported (it is looked up by reflection because it
+	 * appears in Java 9), or else they share one channel.
+	 * 
+	 * @param daemon
+	 * @param numberOfReactors
+	 * @return the reactors, which aren't started yet
+	 * @throws IOException
+	 */
+	static UDPReactor[] open(JMatcherDaemon daemon, int numberOfReactors) throws IOException {
+		if (numberOfReactors < 1) {
+			throw new IllegalArgumentException("invalid number of udp reactors : " + numberOfReactors); //$NON-NLS-1$
+		}
+		final SocketOption<Boolean> reusePort = (numberOfReactors > 1) ? findReusePortOption() : null;
+		if (numberOfReactors > 1 && reusePort == null) {
+			logger.warn("SO_REUSEPORT is not available, udp reactors share one channel"); //$NON-NLS-1$
+		}
+		final UDPReactor[] reactors = new UDPReactor[numberOfReactors];
+		try {
+			DatagramChannel sharedChannel = null;
+			for (int i = 0; i < numberOfReactors; i++) {
+				final DatagramChannel channel;
+				if (reusePort != null) {
+					channel = openChannel(daemon.getPort(), reusePort);
+				} else {
+					if (sharedChannel == null) {
+						sharedChannel = openChannel(daemon.getPort(), null);
+					}
+					channel = sharedChannel;
+				}
+				reactors[i] = new UDPReactor(daemon, channel, i);
+			}
+		} catch (IOException e) {
+			for (UDPReactor reactor : reactors) {
+				if (reactor != null) {
+					reactor.closeSocket();
+					reactor.closeSelector();
+				}
+			}
+			throw e;
+		}
+		return reactors;
+	}
+
+	/**
+	 * @param port
+	 * @param reusePort
+	 *            it can be null
+	 * @return a channel which is bound to the port
+	 * @throws IOException
+	 */
+	private static DatagramChannel openChannel(int port, SocketOption<Boolean> reusePort) throws IOException {
+		final DatagramChannel channel = DatagramChannel.open();
+		try {
+			if (reusePort != null) {
+				channel.setOption(reusePort, Boolean.TRUE);
+			}
+			channel.bind(new InetSocketAddress(port));
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		return channel;
+	}
+
+	/**
+	 * @return StandardSocketOptions.SO_REUSEPORT, or null if the runtime or
+	 *         the platform doesn't support it
+	 */
+	@SuppressWarnings("unchecked")
+	static SocketOption<Boolean> findReusePortOption() {
+		try {
+			final SocketOption<Boolean> reusePort = (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null); //$NON-NLS-1$
+			try (final DatagramChannel channel = DatagramChannel.open()) {
+				if (channel.supportedOptions().contains(reusePort)) {
+					return reusePort;
+				}
+			}
+		} catch (NoSuchFieldException | IllegalAccessException | IOException e) {
+			// older runtime
+		}
+		return null;
+	}
+
+	@Override
+	public void run() {
+		logger.info("started udp reactor loop"); //$NON-NLS-1$
+		try {
+			while (!this.jmatcherDaemon.isStopping()) {
+				try {
+					// the key is left in the selected-key set, because adding it
+					// again allocates, and the channel is drained on every
+					// wakeup anyway
+					this.selector.select();
+					this.receiveAll();
+				} catch (ClosedChannelException | ClosedSelectorException e) {
+					if (!this.jmatcherDaemon.isStopping()) {
+						logger.fatal("UDP reactor loop thread : channel is closed unexpectedly", e); //$NON-NLS-1$
+					}
+					return;
+				} catch (IOException e) {
+					if (!this.jmatcherDaemon.isStopping()) {
+						logger.fatal("UDP reactor loop thread : error occured", e); //$NON-NLS-1$
+					}
+				} catch (Throwable t) {
+					logger.fatal("unexpected error occured", t); //$NON-NLS-1$
+				}
+			}
+		} finally {
+			this.closeSelector();
+		}
+	}
+
+	private void receiveAll() throws IOException {
+		while (true) {
+			this.receiveBuffer.clear();
+			final InetSocketAddress clientAddress = (InetSocketAddress) this.channel.receive(this.receiveBuffer);
+			if (clientAddress == null) {
+				return;
+			}
+			this.receiveBuffer.flip();
+			final AccessLog accessLog = this.jmatcherDaemon.getAccessLog();
+			if (!this.jmatcherDaemon.getUDPRequestFilter().accept(this.receiveBuffer, clientAddress.getAddress())) {
+				if (accessLog.isSampled()) {
+					accessLog.log(new StringBuilder().append(this.name).append(this.countOfReceivedUDPPacket).append(") ").append(this.getLocalSocketAddress()).append(" <- ") //$NON-NLS-1$ //$NON-NLS-2$
+							.append(clientAddress).append(" : dropped")); //$NON-NLS-1$
+				}
+				this.countOfReceivedUDPPacket++;
+				continue;
+			}
+			final UDPClientRequestHandler handler = this.takeHandler(clientAddress);
+			if (accessLog.isSampled()) {
+				final StringBuilder logMessage = new StringBuilder().append(this.name).append(this.countOfReceivedUDPPacket).append(") ").append(this.getLocalSocketAddress()).append(" <- ") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+						.append(clientAddress).append(" : "); //$NON-NLS-1$
+				handler.appendRequestTo(logMessage);
+				accessLog.log(logMessage);
+			}
+			handler.run();
+			this.countOfReceivedUDPPacket++;
+		}
+	}
+
+	private UDPClientRequestHandler takeHandler(InetSocketAddress clientAddress) {
+		if (this.spareHandler == null || this.spareHandler.isRetained()) {
+			this.spareHandler = new UDPClientRequestHandler(this.jmatcherDaemon, this, clientAddress, this.receiveBuffer, this.countOfReceivedUDPPacket);
+		} else {
+			this.spareHandler.reset(clientAddress, this.receiveBuffer, this.countOfReceivedUDPPacket);
+		}
+		return this.spareHandler;
+	}
+
+	@Override
+	public void send(ByteBuffer message, InetSocketAddress address) throws IOException {
+		if (this.channel.send(message, address) == 0) {
+			logger.warn("dropped a response to " + address + " because the send buffer is full"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	@Override
+	public SocketAddress getLocalSocketAddress() {
+		try {
+			return this.channel.getLocalAddress();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 
+	 */
+	public void closeSocket() {
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			logger.error("Failed to close udp channel", e); //$NON-NLS-1$
+		}
+		this.selector.wakeup();
+	}
+
+	private void closeSelector() {
+		try {
+			this.selector.close();
+		} catch (IOException e) {
+			logger.error("Failed to close selector", e); //$NON-NLS-1$
+		}
+	}
+}
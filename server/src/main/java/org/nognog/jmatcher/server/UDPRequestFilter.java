@@ -0,0 +1,175 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.nognog.jmatcher.udp.request.UDPRequestSerializer;
+
+/**
+ * The check which the UDP front ends make on their receive threads before
+ * they create a handler for a datagram. A malformed datagram is dropped, and
+ * so is a request from a source address which has sent more than its share.
+ * <p>
+ * Each source has a token bucket which refills at the rate limit and holds up
+ * to the burst. A source is an IPv4 address or an IPv6 /64, because a single
+ * host is usually given a whole /64. The buckets are a fixed table which is
+ * indexed by the hash of the source, and each slot remembers its source
+ * exactly. A newcomer takes a slot over only when its bucket has refilled, so
+ * neither the debt of a flooder nor the budget of an innocent source is lost
+ * to a collision. Until then the newcomer is charged to a single overflow
+ * bucket, so a flooder throttles the sources which collide with it only as
+ * far as the overflow bucket is shared.
+ * </p>
+ * 
+ * @author agent 2026/10/17
+ */
+public class UDPRequestFilter {
+
+	/**
+	 * The default number of the buckets
+	 */
+	public static final int DEFAULT_NUMBER_OF_BUCKETS = 4096;
+
+	private final DaemonMetrics metrics;
+	private final Bucket[] buckets;
+	private final Bucket overflowBucket;
+	private final int bucketMask;
+	private final long emissionInterval; // [nsec] per request
+	private final long burstTolerance; // [nsec]
+
+	/**
+	 * @param metrics
+	 * @param rateLimit
+	 *            requests per second of a source address, or 0 if they aren't
+	 *            limited
+	 * @param burst
+	 *            the number of requests which a source can send at once
+	 * @param numberOfBuckets
+	 *            it is rounded up to a power of 2
+	 */
+	public UDPRequestFilter(DaemonMetrics metrics, int rateLimit, int burst, int numberOfBuckets) {
+		if (rateLimit < 0 || burst <= 0 || numberOfBuckets <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.metrics = metrics;
+		if (rateLimit == 0) {
+			this.buckets = null;
+			this.overflowBucket = null;
+			this.bucketMask = 0;
+			this.emissionInterval = 0;
+			this.burstTolerance = 0;
+			return;
+		}
+		int capacity = 1;
+		while (capacity < numberOfBuckets) {
+			capacity <<= 1;
+		}
+		final long now = System.nanoTime();
+		this.buckets = new Bucket[capacity];
+		for (int i = 0; i < capacity; i++) {
+			this.buckets[i] = new Bucket(now);
+		}
+		this.overflowBucket = new Bucket(now);
+		this.bucketMask = capacity - 1;
+		this.emissionInterval = TimeUnit.SECONDS.toNanos(1) / rateLimit;
+		this.burstTolerance = this.emissionInterval * (burst - 1);
+	}
+
+	/**
+	 * @param message
+	 *            from its position to its limit, which isn't changed
+	 * @param source
+	 * @return true if the request should be handled
+	 */
+	public boolean accept(ByteBuffer message, InetAddress source) {
+		return this.accept(message, source, System.nanoTime());
+	}
+
+	boolean accept(ByteBuffer message, InetAddress source, long now) {
+		if (UDPRequestSerializer.readRequestType(message) == UDPRequestSerializer.INVALID_REQUEST) {
+			this.metrics.requestInvalid();
+			return false;
+		}
+		if (this.buckets != null && !this.takeToken(source, now)) {
+			this.metrics.requestThrottled();
+			return false;
+		}
+		return true;
+	}
+
+	private boolean takeToken(InetAddress source, long now) {
+		final boolean ipv6 = source instanceof Inet6Address;
+		final long sourceKey;
+		if (ipv6) {
+			// the /64 prefix, a copy of 16 bytes is made only for IPv6
+			sourceKey = ByteBuffer.wrap(source.getAddress()).getLong();
+		} else {
+			// the address itself, without a copy
+			sourceKey = source.hashCode() & 0xFFFFFFFFL;
+		}
+		int hash = (int) (sourceKey ^ (sourceKey >>> 32));
+		hash ^= hash >>> 16;
+		final Bucket bucket = this.buckets[hash & this.bucketMask];
+		bucket.lock();
+		try {
+			if (bucket.ipv6 != ipv6 || bucket.source != sourceKey) {
+				if (bucket.theoreticalArrivalTime - now > 0) {
+					// another source is still using the slot
+					return this.takeToken(this.overflowBucket, now);
+				}
+				bucket.ipv6 = ipv6;
+				bucket.source = sourceKey;
+			}
+			return this.takeToken(bucket, now);
+		} finally {
+			bucket.unlock();
+		}
+	}
+
+	/**
+	 * It is the generic cell rate algorithm, which is a token bucket kept as
+	 * the time when the bucket becomes full again
+	 */
+	private boolean takeToken(Bucket bucket, long now) {
+		bucket.lock();
+		try {
+			final long theoreticalArrivalTime = Math.max(bucket.theoreticalArrivalTime - now, 0) + now;
+			if (theoreticalArrivalTime - now > this.burstTolerance) {
+				return false;
+			}
+			bucket.theoreticalArrivalTime = theoreticalArrivalTime + this.emissionInterval;
+			return true;
+		} finally {
+			bucket.unlock();
+		}
+	}
+
+	private static class Bucket extends ReentrantLock {
+		private static final long serialVersionUID = 1L;
+
+		boolean ipv6;
+		long source; // an IPv4 address or an IPv6 /64
+		long theoreticalArrivalTime; // [nsec]
+
+		Bucket(long now) {
+			this.theoreticalArrivalTime = now;
+		}
+	}
+}
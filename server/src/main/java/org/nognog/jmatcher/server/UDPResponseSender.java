@@ -1,4 +1,4 @@
-/** Copyright 2015 Goshi Noguchi (noggon54@gmail.com)
+/** Copyright 2026 agent (agent@local)
  *
  *  Licensed under the Apache License, Version 2.0 (the "License");
  *  you may not use this file except in compliance with the License.
@@ -14,38 +14,28 @@
 
 package org.nognog.jmatcher.server;
 
-import org.nognog.jmatcher.Host;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 
 /**
- * @author goshi 2015/12/20
+ * A socket which UDP responses are sent from.
+ * 
+ * @author agent 2026/10/17
  */
-public class RequestingConnectionHostHandler {
-	private final Thread thread;
-	private final Host host;
+public interface UDPResponseSender {
 
 	/**
-	 * @param thread
-	 * @param host
+	 * @param message
+	 *            from its position to its limit
+	 * @param address
+	 * @throws IOException
 	 */
-	public RequestingConnectionHostHandler(Thread thread, Host host) {
-		if (thread == null || host == null) {
-			throw new IllegalArgumentException();
-		}
-		this.thread = thread;
-		this.host = host;
-	}
+	void send(ByteBuffer message, InetSocketAddress address) throws IOException;
 
 	/**
-	 * @return the thread
+	 * @return local address of the socket
 	 */
-	public Thread getThread() {
-		return this.thread;
-	}
-
-	/**
-	 * @return the host
-	 */
-	public Host getHost() {
-		return this.host;
-	}
+	SocketAddress getLocalSocketAddress();
 }
@@ -15,21 +15,23 @@
 package org.nognog.jmatcher.server;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.nognog.jmatcher.JMatcher;
 
 /**
  * @author goshi 2015/12/22
  */
-public class UDPServerThread extends Thread {
+public class UDPServerThread extends Thread implements UDPResponseSender {
 	private final JMatcherDaemon jmatcherDaemon;
-	private final DatagramSocket udpServerSocket;
+	private final DatagramChannel udpServerChannel;
 	private int countOfReceivedUDPPacket;
+	private long countOfRejectedUDPPacket;
 
 	private static Logger logger = LogManager.getLogger(UDPServerThread.class);
 
@@ -39,42 +41,92 @@ public class UDPServerThread extends Thread {
 	 */
 	public UDPServerThread(JMatcherDaemon daemon) throws IOException {
 		this.jmatcherDaemon = daemon;
-		this.udpServerSocket = new DatagramSocket(JMatcher.PORT);
+		// a blocking channel receives into and sends from direct buffers
+		this.udpServerChannel = DatagramChannel.open();
+		try {
+			this.udpServerChannel.bind(new InetSocketAddress(daemon.getPort()));
+		} catch (IOException e) {
+			this.udpServerChannel.close();
+			throw e;
+		}
 		this.countOfReceivedUDPPacket = 0;
 	}
 
 	@Override
 	public void run() {
-		final byte[] buf = new byte[JMatcherDaemon.UDP_BUFFER_SIZE];
-		final DatagramPacket packet = new DatagramPacket(buf, buf.length);
+		final ByteBuffer message = ByteBuffer.allocateDirect(JMatcherDaemon.UDP_BUFFER_SIZE);
 		while (!this.jmatcherDaemon.isStopping()) {
 			try {
-				this.udpServerSocket.receive(packet);
-				String receivedMessage = new String(buf, 0, packet.getLength());
-				final InetSocketAddress clientAddress = new InetSocketAddress(packet.getAddress(), packet.getPort());
-				final UDPClientRequestHandler handler = new UDPClientRequestHandler(this.jmatcherDaemon, this.udpServerSocket, clientAddress, receivedMessage, this.countOfReceivedUDPPacket);
-				this.jmatcherDaemon.getExecutorService().execute(handler);
-				String logMessage = new StringBuilder().append("UDP(").append(this.countOfReceivedUDPPacket).append(") ").append(this.udpServerSocket.getLocalAddress()).append(" <- ") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-						.append(packet.getSocketAddress())
-						.append(" : ").append(receivedMessage).toString(); //$NON-NLS-1$
-				logger.info(logMessage);
+				message.clear();
+				final InetSocketAddress clientAddress = (InetSocketAddress) this.udpServerChannel.receive(message);
+				message.flip();
+				final AccessLog accessLog = this.jmatcherDaemon.getAccessLog();
+				if (!this.jmatcherDaemon.getUDPRequestFilter().accept(message, clientAddress.getAddress())) {
+					if (accessLog.isSampled()) {
+						accessLog.log(new StringBuilder().append("UDP(").append(this.countOfReceivedUDPPacket).append(") ").append(this.getLocalSocketAddress()).append(" <- ") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+								.append(clientAddress).append(" : dropped")); //$NON-NLS-1$
+					}
+					this.countOfReceivedUDPPacket++;
+					continue;
+				}
+				final UDPClientRequestHandler handler = new UDPClientRequestHandler(this.jmatcherDaemon, this, clientAddress, message, this.countOfReceivedUDPPacket);
+				this.execute(handler);
+				if (accessLog.isSampled()) {
+					final StringBuilder logMessage = new StringBuilder().append("UDP(").append(this.countOfReceivedUDPPacket).append(") ").append(this.getLocalSocketAddress()).append(" <- ") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+							.append(clientAddress).append(" : "); //$NON-NLS-1$
+					handler.appendRequestTo(logMessage);
+					accessLog.log(logMessage);
+				}
 				this.countOfReceivedUDPPacket++;
 			} catch (IOException e) {
 				if (!this.jmatcherDaemon.isStopping()) {
 					logger.fatal("UDP acceptor loop thread : error occured", e); //$NON-NLS-1$
 				}
-			} catch (NumberFormatException e) {
-				logger.error(e);
 			} catch (Throwable t) {
 				logger.fatal("unexpected error occured", t); //$NON-NLS-1$
 			}
 		}
 	}
 
+	private void execute(UDPClientRequestHandler handler) {
+		try {
+			this.jmatcherDaemon.getUDPExecutorService().execute(handler);
+		} catch (RejectedExecutionException e) {
+			if (this.jmatcherDaemon.isStopping()) {
+				return;
+			}
+			this.jmatcherDaemon.getMetrics().requestRejected();
+			handler.reject();
+			this.countOfRejectedUDPPacket++;
+			// not to flood the log while it is overloaded
+			if (Long.bitCount(this.countOfRejectedUDPPacket) == 1) {
+				logger.warn("rejected " + this.countOfRejectedUDPPacket + " udp requests because the handlers are full"); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+	}
+
+	@Override
+	public void send(ByteBuffer message, InetSocketAddress address) throws IOException {
+		this.udpServerChannel.send(message, address);
+	}
+
+	@Override
+	public SocketAddress getLocalSocketAddress() {
+		try {
+			return this.udpServerChannel.getLocalAddress();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
 	/**
 	 * 
 	 */
 	public void closeSocket() {
-		this.udpServerSocket.close();
+		try {
+			this.udpServerChannel.close();
+		} catch (IOException e) {
+			logger.error("Failed to close udp channel", e); //$NON-NLS-1$
+		}
 	}
 }
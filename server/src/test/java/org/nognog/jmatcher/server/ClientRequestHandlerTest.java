@@ -20,28 +20,28 @@ import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.net.InetAddress;
+import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 
 import org.junit.Test;
 import org.nognog.jmatcher.JMatcher;
+import org.nognog.jmatcher.tcp.TCPFrameSerializer;
 import org.nognog.jmatcher.tcp.request.PlainTCPRequest;
 import org.nognog.jmatcher.tcp.request.TCPRequest;
 import org.nognog.jmatcher.tcp.response.PlainTCPResponse;
 import org.nognog.jmatcher.tcp.response.PreEntryResponse;
 import org.nognog.jmatcher.tcp.response.TCPResponse;
 
-import mockit.Deencapsulation;
-
 /**
  * @author goshi 2015/12/01
  */
@@ -82,7 +82,7 @@ public class ClientRequestHandlerTest {
 				assertThat(entryResponse.getKeyNumber(), is(greaterThanOrEqualTo(0)));
 				assertThat(entryResponse.getKeyNumber(), is(lessThan(daemon.getBoundOfKeyNumber())));
 			}
-			final Map<Integer, InetAddress> map = Deencapsulation.getField(daemon, "matchingMap"); //$NON-NLS-1$
+			final MatchingTable map = daemon.getMatchingTable();
 			assertThat(map.size(), is(numberOfClients));
 			for (int i = 0; i < 10; i++) {
 				try (final Socket socket = new Socket("localhost", JMatcher.PORT)) {
@@ -109,6 +109,80 @@ public class ClientRequestHandlerTest {
 		return response;
 	}
 
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public final void testPreEntryWithBinaryProtocol() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(null);
+		daemon.start();
+		try {
+			this.doBinaryPreEntryTest(daemon);
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public final void testPreEntryWithBinaryProtocolOnTCPReactor() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext(JMatcherDaemon.TCP_MODE_ARGUMENT + "=reactor"));
+		daemon.start();
+		try {
+			this.doBinaryPreEntryTest(daemon);
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	private void doBinaryPreEntryTest(final JMatcherDaemon daemon) throws IOException {
+		final TCPFrameSerializer serializer = TCPFrameSerializer.getInstance();
+		try (final Socket socket = new Socket("localhost", JMatcher.PORT)) {
+			final OutputStream output = socket.getOutputStream();
+			final DataInputStream input = new DataInputStream(socket.getInputStream());
+			output.write(TCPFrameSerializer.createPreamble(TCPFrameSerializer.VERSION));
+			assertThat(TCPFrameSerializer.readPreamble(input), is(TCPFrameSerializer.VERSION));
+			serializer.write(output, PlainTCPRequest.ENTRY);
+			final TCPResponse response = serializer.readResponse(input);
+			assertThat(response instanceof PreEntryResponse, is(true));
+			final Integer keyNumber = ((PreEntryResponse) response).getKeyNumber();
+			assertThat(keyNumber, is(greaterThanOrEqualTo(0)));
+			assertThat(keyNumber, is(lessThan(daemon.getBoundOfKeyNumber())));
+			assertThat(daemon.getMatchingTable().containsKey(keyNumber.intValue()), is(true));
+		}
+
+		// a request which isn't ENTRY is refused
+		try (final Socket socket = new Socket("localhost", JMatcher.PORT)) {
+			final OutputStream output = socket.getOutputStream();
+			final DataInputStream input = new DataInputStream(socket.getInputStream());
+			output.write(TCPFrameSerializer.createPreamble(TCPFrameSerializer.VERSION));
+			serializer.write(output, PlainTCPRequest.CHECK_CONNECTION_REQUEST);
+			assertThat(TCPFrameSerializer.readPreamble(input), is(TCPFrameSerializer.VERSION));
+			assertThat(serializer.readResponse(input) == PlainTCPResponse.FAILURE, is(true));
+		}
+
+		// an unknown frame closes the channel
+		try (final Socket socket = new Socket("localhost", JMatcher.PORT)) {
+			final OutputStream output = socket.getOutputStream();
+			final DataInputStream input = new DataInputStream(socket.getInputStream());
+			output.write(TCPFrameSerializer.createPreamble(TCPFrameSerializer.VERSION));
+			output.write(new byte[] { 0, 1, 0x7F });
+			assertThat(TCPFrameSerializer.readPreamble(input), is(TCPFrameSerializer.VERSION));
+			try {
+				serializer.readResponse(input);
+				fail();
+			} catch (EOFException e) {
+				// ok
+			}
+		}
+	}
+
 	/**
 	 * @throws Exception
 	 */
@@ -129,6 +203,22 @@ public class ClientRequestHandlerTest {
 		}
 	}
 
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public final void testPreEntryWithMultiThreadOnTCPReactor() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext(JMatcherDaemon.TCP_MODE_ARGUMENT + "=reactor"));
+		daemon.start();
+		try {
+			this.doPreEntryTestWithMultiThread(daemon);
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
 	private void doPreEntryTestWithMultiThread(final JMatcherDaemon daemon) {
 		daemon.setBoundOfKeyNumber(JMatcherDaemon.DEFAULT_MATCHING_MAP_CAPACITY);
 		final int numberOfClients = JMatcherDaemon.DEFAULT_MATCHING_MAP_CAPACITY;
@@ -145,7 +235,7 @@ public class ClientRequestHandlerTest {
 		System.out.println("socketExceptionThreadsCount = " + socketExceptionThreads.size());
 		System.out.println("failedThreadsCount = " + failedThreads.size());
 		assertThat(failedThreads.size(), is(0));
-		final Map<Integer, InetAddress> map = Deencapsulation.getField(daemon, "matchingMap"); //$NON-NLS-1$
+		final MatchingTable map = daemon.getMatchingTable();
 		assertThat(map.size(), is(numberOfClients - socketExceptionThreads.size()));
 		daemon.setMatchingMapCapacity(daemon.getMatchingMapCapacity() - socketExceptionThreads.size());
 		final Thread cannotGetEntryThread = this.craeteCannotGetEntryClientThread();
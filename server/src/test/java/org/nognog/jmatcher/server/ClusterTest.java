@@ -0,0 +1,189 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nognog.jmatcher.Host;
+import org.nognog.jmatcher.tcp.request.PlainTCPRequest;
+import org.nognog.jmatcher.tcp.response.CheckConnectionResponse;
+import org.nognog.jmatcher.tcp.response.PlainTCPResponse;
+import org.nognog.jmatcher.tcp.response.PreEntryResponse;
+import org.nognog.jmatcher.udp.UDPProtocol;
+import org.nognog.jmatcher.udp.request.ConnectionRequest;
+import org.nognog.jmatcher.udp.request.EnableEntryRequest;
+import org.nognog.jmatcher.udp.request.UDPRequest;
+import org.nognog.jmatcher.udp.request.UDPRequestSerializer;
+import org.nognog.jmatcher.udp.response.ConnectionResponse;
+import org.nognog.jmatcher.udp.response.UDPResponseSerializer;
+
+/**
+ * Test of a cluster of two daemons on loopback ports
+ * 
+ * @author agent 2026/10/17
+ */
+@SuppressWarnings({ "static-method", "nls", "boxing" })
+public class ClusterTest {
+
+	private static final int[] ports = { 11610, 11611 };
+	private static final String clusterNodes = "127.0.0.1:11620,127.0.0.1:11621";
+	private static final int soTimeout = TCPClientRequestHandler.WAIT_TIME_FOR_UDP_ENTRY;
+
+	private JMatcherDaemon[] daemons;
+
+	/**
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.daemons = new JMatcherDaemon[ports.length];
+		for (int i = 0; i < ports.length; i++) {
+			this.daemons[i] = new JMatcherDaemon();
+			this.daemons[i].init(new TestDaemonContext(JMatcherDaemon.PORT_ARGUMENT + "=" + ports[i], JMatcherDaemon.CLUSTER_NODES_ARGUMENT + "=" + clusterNodes,
+					JMatcherDaemon.CLUSTER_NODE_ARGUMENT + "=" + i));
+			this.daemons[i].start();
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		for (JMatcherDaemon daemon : this.daemons) {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	/**
+	 * An inviter registers with the second node, and connectors ask the first
+	 * node for its key in both formats
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testForwardToOwner() throws Exception {
+		try (final Socket inviterSocket = new Socket("localhost", ports[1]);
+				final ObjectOutputStream oos = new ObjectOutputStream(inviterSocket.getOutputStream());
+				final ObjectInputStream ois = new ObjectInputStream(inviterSocket.getInputStream());
+				final DatagramSocket inviterUDPSocket = new DatagramSocket()) {
+			inviterSocket.setSoTimeout(soTimeout);
+			oos.writeObject(PlainTCPRequest.ENTRY);
+			final int key = ((PreEntryResponse) ois.readObject()).getKeyNumber();
+			assertThat(this.daemons[1].getClusterLink().owns(key), is(true));
+			assertThat(this.daemons[0].getClusterLink().owns(key), is(false));
+
+			// even the EnableEntryRequest can be sent to the other node
+			this.sendUDPRequest(inviterUDPSocket, new EnableEntryRequest(key), ports[0], UDPProtocol.BINARY);
+			assertThat(ois.readObject() == PlainTCPResponse.COMPLETE_ENTRY, is(true));
+			assertThat(this.daemons[1].getMatchingTable().get(key).getPort(), is(inviterUDPSocket.getLocalPort()));
+
+			for (UDPProtocol protocol : UDPProtocol.values()) {
+				// a new connector each time, because the same request from the
+				// same address would be taken as a retransmission
+				try (final DatagramSocket connectorSocket = new DatagramSocket()) {
+					connectorSocket.setSoTimeout(soTimeout);
+					this.sendUDPRequest(connectorSocket, new ConnectionRequest(key), ports[0], protocol);
+					Thread.sleep(200);
+					oos.writeObject(PlainTCPRequest.CHECK_CONNECTION_REQUEST);
+					final Host[] requestingHosts = ((CheckConnectionResponse) ois.readObject()).getRequestingHosts();
+					assertThat(requestingHosts.length, is(1));
+					// the owner sees the address which the first node saw
+					assertThat(requestingHosts[0].getPort(), is(connectorSocket.getLocalPort()));
+					final DatagramPacket packet = this.receiveUDPPacket(connectorSocket);
+					// the response is relayed from the port which the request was sent to
+					assertThat(packet.getPort(), is(ports[0]));
+					final ConnectionResponse response = (ConnectionResponse) UDPResponseSerializer.getInstance().deserialize(ByteBuffer.wrap(packet.getData(), 0, packet.getLength()));
+					assertThat(response.getHost(), is(not(nullValue())));
+					assertThat(response.getHost().getPort(), is(inviterUDPSocket.getLocalPort()));
+				}
+			}
+			assertThat(this.daemons[0].getMetrics().getForwardedRequestCount(), is(3L));
+			assertThat(this.daemons[1].getMetrics().getMatchCount(), is(2L));
+		}
+	}
+
+	/**
+	 * A ConnectionRequest for a key which isn't registered on its owner fails
+	 * through the node which it is sent to
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testForwardUnknownKey() throws Exception {
+		try (final DatagramSocket connectorSocket = new DatagramSocket()) {
+			connectorSocket.setSoTimeout(soTimeout);
+			final int key = 12345; // an odd key belongs to the second node
+			this.sendUDPRequest(connectorSocket, new ConnectionRequest(key), ports[0], UDPProtocol.BINARY);
+			final DatagramPacket packet = this.receiveUDPPacket(connectorSocket);
+			assertThat(packet.getPort(), is(ports[0]));
+			final ConnectionResponse response = (ConnectionResponse) UDPResponseSerializer.getInstance().deserialize(ByteBuffer.wrap(packet.getData(), 0, packet.getLength()));
+			assertThat(response.getHost(), is(nullValue()));
+		}
+	}
+
+	/**
+	 * Each node allocates the keys of its partition
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testKeysOfNodes() throws Exception {
+		for (int i = 0; i < ports.length; i++) {
+			try (final Socket inviterSocket = new Socket("localhost", ports[i]);
+					final ObjectOutputStream oos = new ObjectOutputStream(inviterSocket.getOutputStream());
+					final ObjectInputStream ois = new ObjectInputStream(inviterSocket.getInputStream())) {
+				inviterSocket.setSoTimeout(soTimeout);
+				oos.writeObject(PlainTCPRequest.ENTRY);
+				final int key = ((PreEntryResponse) ois.readObject()).getKeyNumber();
+				assertThat(key % ports.length, is(i));
+			}
+		}
+	}
+
+	private void sendUDPRequest(DatagramSocket socket, UDPRequest request, int port, UDPProtocol protocol) throws Exception {
+		final byte[] bytes;
+		if (protocol == UDPProtocol.BINARY) {
+			final ByteBuffer buffer = ByteBuffer.allocate(UDPRequestSerializer.BINARY_REQUEST_SIZE);
+			UDPRequestSerializer.getInstance().serialize(request, buffer);
+			bytes = buffer.array();
+		} else {
+			bytes = UDPRequestSerializer.getInstance().serialize(request).getBytes();
+		}
+		socket.send(new DatagramPacket(bytes, bytes.length, new InetSocketAddress("localhost", port)));
+	}
+
+	private DatagramPacket receiveUDPPacket(DatagramSocket socket) throws Exception {
+		final byte[] buf = new byte[UDPResponseSerializer.MAX_BINARY_RESPONSE_SIZE];
+		final DatagramPacket packet = new DatagramPacket(buf, buf.length);
+		socket.receive(packet);
+		return packet;
+	}
+}
@@ -0,0 +1,126 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author agent 2026/10/17
+ */
+@SuppressWarnings({ "static-method", "nls", "boxing" })
+public class HashedTimingWheelTest {
+
+	private HashedTimingWheel timingWheel;
+
+	/**
+	 * 
+	 */
+	@Before
+	public void setUp() {
+		this.timingWheel = new HashedTimingWheel("test-timer", 10, TimeUnit.MILLISECONDS, 8);
+		this.timingWheel.start();
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		this.timingWheel.stop();
+	}
+
+	/**
+	 * Test method for
+	 * {@link HashedTimingWheel#newTimeout(Runnable, long, TimeUnit)}.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testNewTimeout() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final long startTime = System.nanoTime();
+		final HashedTimingWheel.Timeout timeout = this.timingWheel.newTimeout(new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		}, 200, TimeUnit.MILLISECONDS);
+		assertThat(latch.await(2, TimeUnit.SECONDS), is(true));
+		final long elapsedTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+		assertThat(elapsedTime >= 200, is(true));
+		assertThat(timeout.isExpired(), is(true));
+		assertThat(timeout.cancel(), is(false));
+	}
+
+	/**
+	 * Test method for
+	 * {@link HashedTimingWheel#newTimeout(Runnable, long, TimeUnit)} with
+	 * delays which are longer than a round of the wheel.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testNewTimeoutOverRounds() throws Exception {
+		final int numberOfTimeouts = 50;
+		final CountDownLatch latch = new CountDownLatch(numberOfTimeouts);
+		final AtomicInteger numberOfEarlyTimeouts = new AtomicInteger();
+		for (int i = 0; i < numberOfTimeouts; i++) {
+			final long delay = 5 * i;
+			final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+			this.timingWheel.newTimeout(new Runnable() {
+				@Override
+				public void run() {
+					if (System.nanoTime() < deadline) {
+						numberOfEarlyTimeouts.incrementAndGet();
+					}
+					latch.countDown();
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+		assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(numberOfEarlyTimeouts.get(), is(0));
+	}
+
+	/**
+	 * Test method for {@link HashedTimingWheel.Timeout#cancel()}.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testCancel() throws Exception {
+		final AtomicInteger count = new AtomicInteger();
+		final HashedTimingWheel.Timeout timeout = this.timingWheel.newTimeout(new Runnable() {
+			@Override
+			public void run() {
+				count.incrementAndGet();
+			}
+		}, 100, TimeUnit.MILLISECONDS);
+		assertThat(timeout.cancel(), is(true));
+		assertThat(timeout.cancel(), is(false));
+		Thread.sleep(300);
+		assertThat(count.get(), is(0));
+		assertThat(timeout.isCancelled(), is(true));
+		assertThat(timeout.isExpired(), is(false));
+	}
+}
@@ -0,0 +1,252 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+
+package org.nognog.jmatcher.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import org.nognog.jmatcher.tcp.TCPFrameSerializer;
+import org.nognog.jmatcher.tcp.request.PlainTCPRequest;
+import org.nognog.jmatcher.tcp.response.CheckConnectionResponse;
+import org.nognog.jmatcher.tcp.response.PlainTCPResponse;
+import org.nognog.jmatcher.tcp.response.PreEntryResponse;
+import org.nognog.jmatcher.udp.request.EnableEntryRequest;
+import org.nognog.jmatcher.udp.request.UDPRequestSerializer;
+
+/**
+ * @author agent 2026/10/17
+ */
+@SuppressWarnings({ "static-method", "nls", "boxing" })
+public class IdleEntryMonitorTest {
+
+	private static final int idleTimeout = 500;
+	private static final int soTimeout = TCPClientRequestHandler.WAIT_TIME_FOR_UDP_ENTRY;
+
+	/**
+	 * Test method for an idle entry channel of the blocking handler
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testReclaim() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext(JMatcherDaemon.ENTRY_IDLE_TIMEOUT_ARGUMENT + "=" + idleTimeout));
+		daemon.start();
+		try {
+			this.doReclaimTest(daemon);
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	/**
+	 * Test method for an idle entry channel of the TCP reactor
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testReclaimOnTCPReactor() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext(JMatcherDaemon.ENTRY_IDLE_TIMEOUT_ARGUMENT + "=" + idleTimeout, JMatcherDaemon.TCP_MODE_ARGUMENT + "=reactor", JMatcherDaemon.TCP_EVENT_LOOPS_ARGUMENT + "=1"));
+		assertThat(daemon.getTCPMode(), is(IOMode.REACTOR));
+		daemon.start();
+		try {
+			this.doReclaimTest(daemon);
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	/**
+	 * Test method for a daemon which doesn't close idle entry channels
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testDisabled() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext(JMatcherDaemon.ENTRY_IDLE_TIMEOUT_ARGUMENT + "=0"));
+		daemon.start();
+		try (final Socket inviterSocket = new Socket("localhost", daemon.getPort()); final DatagramSocket inviterUDPSocket = new DatagramSocket()) {
+			inviterSocket.setSoTimeout(soTimeout);
+			final OutputStream output = inviterSocket.getOutputStream();
+			final DataInputStream input = new DataInputStream(inviterSocket.getInputStream());
+			final int key = this.register(daemon, TCPFrameSerializer.HEARTBEAT_VERSION, output, input, inviterUDPSocket);
+			Thread.sleep(2 * idleTimeout);
+			assertThat(daemon.getMatchingTable().containsKey(key), is(true));
+			assertThat(daemon.getMetrics().getReclaimedEntryCount(), is(0L));
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	/**
+	 * Test method for the inviters which were built without the heartbeats.
+	 * They stop asking the server when their connecting hosts are full, and
+	 * keep their entries however long the channels are silent.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testInvitersWithoutHeartbeats() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext(JMatcherDaemon.ENTRY_IDLE_TIMEOUT_ARGUMENT + "=" + idleTimeout));
+		daemon.start();
+		try {
+			this.doInvitersWithoutHeartbeatsTest(daemon);
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	/**
+	 * Test method for the inviters which were built without the heartbeats on
+	 * the TCP reactor
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testInvitersWithoutHeartbeatsOnTCPReactor() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext(JMatcherDaemon.ENTRY_IDLE_TIMEOUT_ARGUMENT + "=" + idleTimeout, JMatcherDaemon.TCP_MODE_ARGUMENT + "=reactor", JMatcherDaemon.TCP_EVENT_LOOPS_ARGUMENT + "=1"));
+		daemon.start();
+		try {
+			this.doInvitersWithoutHeartbeatsTest(daemon);
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	/**
+	 * Test method for the default idle timeout
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testDefault() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(null);
+		daemon.start();
+		try {
+			assertThat(daemon.getEntryIdleTimeout(), is(JMatcherDaemon.DEFAULT_ENTRY_IDLE_TIMEOUT));
+			assertThat(daemon.getEntryIdleTimeout(), is(greaterThan(0)));
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	private void doReclaimTest(JMatcherDaemon daemon) throws Exception {
+		final TCPFrameSerializer serializer = TCPFrameSerializer.getInstance();
+		try (final Socket inviterSocket = new Socket("localhost", daemon.getPort()); final DatagramSocket inviterUDPSocket = new DatagramSocket()) {
+			inviterSocket.setSoTimeout(soTimeout);
+			final OutputStream output = inviterSocket.getOutputStream();
+			final DataInputStream input = new DataInputStream(inviterSocket.getInputStream());
+			final int key = this.register(daemon, TCPFrameSerializer.HEARTBEAT_VERSION, output, input, inviterUDPSocket);
+
+			// the heartbeats keep the channel beyond the idle timeout
+			for (int i = 0; i < 6; i++) {
+				Thread.sleep(idleTimeout / 3);
+				serializer.write(output, PlainTCPRequest.CHECK_CONNECTION_REQUEST);
+				assertThat(serializer.readResponse(input) instanceof CheckConnectionResponse, is(true));
+			}
+			assertThat(daemon.getMatchingTable().containsKey(key), is(true));
+			assertThat(daemon.getMetrics().getReclaimedEntryCount(), is(0L));
+
+			// the silent inviter loses its key and its channel
+			Thread.sleep(idleTimeout + 3 * HashedTimingWheel.DEFAULT_TICK_DURATION);
+			assertThat(daemon.getMatchingTable().containsKey(key), is(false));
+			assertThat(daemon.getMetrics().getReclaimedEntryCount(), is(1L));
+			try {
+				serializer.readResponse(input);
+				fail();
+			} catch (IOException e) {
+				// the channel has been closed by the daemon
+			}
+		}
+	}
+
+	private void doInvitersWithoutHeartbeatsTest(JMatcherDaemon daemon) throws Exception {
+		final TCPFrameSerializer serializer = TCPFrameSerializer.getInstance();
+		try (final Socket objectStreamSocket = new Socket("localhost", daemon.getPort());
+				final ObjectOutputStream oos = new ObjectOutputStream(objectStreamSocket.getOutputStream());
+				final ObjectInputStream ois = new ObjectInputStream(objectStreamSocket.getInputStream());
+				final Socket binarySocket = new Socket("localhost", daemon.getPort());
+				final DatagramSocket objectStreamUDPSocket = new DatagramSocket();
+				final DatagramSocket binaryUDPSocket = new DatagramSocket()) {
+			objectStreamSocket.setSoTimeout(soTimeout);
+			binarySocket.setSoTimeout(soTimeout);
+			final OutputStream output = binarySocket.getOutputStream();
+			final DataInputStream input = new DataInputStream(binarySocket.getInputStream());
+			final int objectStreamKey = this.register(daemon, oos, ois, objectStreamUDPSocket);
+			final int binaryKey = this.register(daemon, TCPFrameSerializer.PUSH_VERSION, output, input, binaryUDPSocket);
+
+			// they are silent on the healthy channels
+			Thread.sleep(4 * idleTimeout);
+			assertThat(daemon.getMatchingTable().containsKey(objectStreamKey), is(true));
+			assertThat(daemon.getMatchingTable().containsKey(binaryKey), is(true));
+			assertThat(daemon.getMetrics().getReclaimedEntryCount(), is(0L));
+			oos.writeObject(PlainTCPRequest.CHECK_CONNECTION_REQUEST);
+			assertThat(ois.readObject() instanceof CheckConnectionResponse, is(true));
+			serializer.write(output, PlainTCPRequest.CHECK_CONNECTION_REQUEST);
+			assertThat(serializer.readResponse(input) instanceof CheckConnectionResponse, is(true));
+		}
+	}
+
+	private int register(JMatcherDaemon daemon, ObjectOutputStream oos, ObjectInputStream ois, DatagramSocket inviterUDPSocket) throws Exception {
+		oos.writeObject(PlainTCPRequest.ENTRY);
+		final int key = ((PreEntryResponse) ois.readObject()).getKeyNumber();
+		this.enable(daemon, key, inviterUDPSocket);
+		assertThat(ois.readObject() == PlainTCPResponse.COMPLETE_ENTRY, is(true));
+		return key;
+	}
+
+	private int register(JMatcherDaemon daemon, int version, OutputStream output, DataInputStream input, DatagramSocket inviterUDPSocket) throws Exception {
+		final TCPFrameSerializer serializer = TCPFrameSerializer.getInstance();
+		output.write(TCPFrameSerializer.createPreamble(version));
+		assertThat(TCPFrameSerializer.readPreamble(input), is(version));
+		serializer.write(output, PlainTCPRequest.ENTRY);
+		final int key = ((PreEntryResponse) serializer.readResponse(input)).getKeyNumber();
+		this.enable(daemon, key, inviterUDPSocket);
+		assertThat(serializer.readResponse(input) == PlainTCPResponse.COMPLETE_ENTRY, is(true));
+		return key;
+	}
+
+	private void enable(JMatcherDaemon daemon, int key, DatagramSocket inviterUDPSocket) throws Exception {
+		final ByteBuffer buffer = ByteBuffer.allocate(UDPRequestSerializer.BINARY_REQUEST_SIZE);
+		UDPRequestSerializer.getInstance().serialize(new EnableEntryRequest(key), buffer);
+		inviterUDPSocket.send(new DatagramPacket(buffer.array(), buffer.position(), new InetSocketAddress("localhost", daemon.getPort())));
+	}
+}
@@ -20,13 +20,26 @@ import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
+import java.lang.management.ManagementFactory;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Selector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.junit.Test;
 import org.nognog.jmatcher.JMatcher;
+import org.nognog.jmatcher.udp.request.ConnectionRequest;
+import org.nognog.jmatcher.udp.request.UDPRequestSerializer;
+import org.nognog.jmatcher.udp.response.ConnectionResponse;
+import org.nognog.jmatcher.udp.response.UDPResponseSerializer;
 
 import mockit.Deencapsulation;
 import mockit.Mocked;
@@ -49,15 +62,13 @@ public class JMatcherDaemonTest {
 	@Test
 	public final void testInit() throws Exception {
 		final JMatcherDaemon daemon = new JMatcherDaemon();
-		assertThat(daemon.getMatchingMap(), is(nullValue()));
-		assertThat(daemon.getWaitingHandlersMap(), is(nullValue()));
+		assertThat(daemon.getMatchingTable(), is(nullValue()));
 		assertThat(daemon.getExecutorService(), is(nullValue()));
 		assertThat(daemon.getMatchingMapCapacity(), is(0));
 		assertThat(daemon.getBoundOfKeyNumber(), is(0));
 		try {
 			daemon.init(null);
-			assertThat(daemon.getMatchingMap(), is(not(nullValue())));
-			assertThat(daemon.getWaitingHandlersMap(), is(not(nullValue())));
+			assertThat(daemon.getMatchingTable(), is(not(nullValue())));
 			assertThat(daemon.getExecutorService(), is(not(nullValue())));
 			assertThat(daemon.getMatchingMapCapacity(), is(not(0)));
 			assertThat(daemon.getBoundOfKeyNumber(), is(not(0)));
@@ -67,6 +78,37 @@ public class JMatcherDaemonTest {
 		}
 	}
 
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public final void testInitWithVirtualThreads() throws Exception {
+		boolean supported;
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor"); //$NON-NLS-1$
+			supported = true;
+		} catch (NoSuchMethodException e) {
+			supported = false;
+		}
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		try {
+			daemon.init(new TestDaemonContext(JMatcherDaemon.HANDLER_THREADS_ARGUMENT + "=virtual")); //$NON-NLS-1$
+			// it falls back to platform threads on an older runtime
+			assertThat(daemon.getThreadMode(), is(supported ? ThreadMode.VIRTUAL : ThreadMode.PLATFORM));
+			final CountDownLatch latch = new CountDownLatch(1);
+			daemon.getExecutorService().execute(new Runnable() {
+				@Override
+				public void run() {
+					latch.countDown();
+				}
+			});
+			assertThat(latch.await(1, TimeUnit.SECONDS), is(true));
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
 	/**
 	 * Test method for {@link org.nognog.jmatcher.JMatcherDaemon#start()}.
 	 * 
@@ -96,6 +138,30 @@ public class JMatcherDaemonTest {
 		daemon.destroy();
 	}
 
+	/**
+	 * Test method for a TCP reactor which is closed without being started, as
+	 * it is when the UDP port can't be bound
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testCloseUnstartedTCPReactor() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext(JMatcherDaemon.PORT_ARGUMENT + "=11650")); //$NON-NLS-1$
+		// the front ends of the daemon release the port
+		daemon.stop();
+		final TCPReactor tcpReactor = new TCPReactor(daemon, 2);
+		tcpReactor.closeSocket();
+		final TCPEventLoop[] eventLoops = Deencapsulation.getField(tcpReactor, "eventLoops"); //$NON-NLS-1$
+		for (TCPEventLoop eventLoop : eventLoops) {
+			final Selector selector = Deencapsulation.getField(eventLoop, "selector"); //$NON-NLS-1$
+			assertThat(selector.isOpen(), is(false));
+		}
+		// the port is free again
+		new TCPReactor(daemon, 1).closeSocket();
+		daemon.destroy();
+	}
+
 	/**
 	 * Test method for {@link org.nognog.jmatcher.JMatcherDaemon#run()}.
 	 * 
@@ -111,7 +177,7 @@ public class JMatcherDaemonTest {
 			{
 				new TCPClientRequestHandler((JMatcherDaemon) any, (Socket) any, anyInt);
 				result = tcpHandler;
-				new UDPClientRequestHandler((JMatcherDaemon) any, (DatagramSocket) any, (InetSocketAddress) any, (String) any, anyInt);
+				new UDPClientRequestHandler((JMatcherDaemon) any, (UDPResponseSender) any, (InetSocketAddress) any, (ByteBuffer) any, anyInt);
 				result = udpHandler;
 			}
 		};
@@ -131,7 +197,11 @@ public class JMatcherDaemonTest {
 			};
 		}
 		try (DatagramSocket socket = new DatagramSocket()) {
-			final byte[] buf = "test".getBytes(); //$NON-NLS-1$
+			// a datagram which isn't a request is dropped before a handler is
+			// created
+			final byte[] invalid = "test".getBytes(); //$NON-NLS-1$
+			socket.send(new DatagramPacket(invalid, invalid.length, new InetSocketAddress("localhost", JMatcher.PORT))); //$NON-NLS-1$
+			final byte[] buf = "012345".getBytes(); //$NON-NLS-1$
 			final DatagramPacket packet = new DatagramPacket(buf, buf.length, new InetSocketAddress("localhost", JMatcher.PORT)); //$NON-NLS-1$
 			socket.send(packet);
 			Thread.sleep(100);
@@ -148,4 +218,61 @@ public class JMatcherDaemonTest {
 		daemon.stop();
 		daemon.destroy();
 	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public final void testRejectWhenHandlersAreFull() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext(JMatcherDaemon.TCP_HANDLERS_ARGUMENT + "=1", JMatcherDaemon.TCP_QUEUE_ARGUMENT + "=0", JMatcherDaemon.UDP_HANDLERS_ARGUMENT + "=1", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				JMatcherDaemon.UDP_QUEUE_ARGUMENT + "=0")); //$NON-NLS-1$
+		daemon.start();
+		final CountDownLatch latch = new CountDownLatch(1);
+		final Runnable blockingTask = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					latch.await();
+				} catch (InterruptedException e) {
+					// end
+				}
+			}
+		};
+		try {
+			daemon.getTCPExecutorService().execute(blockingTask);
+			daemon.getUDPExecutorService().execute(blockingTask);
+
+			// an inviter is disconnected at once
+			try (final Socket socket = new Socket("localhost", JMatcher.PORT)) { //$NON-NLS-1$
+				socket.setSoTimeout(1000);
+				assertThat(socket.getInputStream().read(), is(-1));
+			}
+
+			// a ConnectionRequest is answered with a failure at once
+			try (DatagramSocket socket = new DatagramSocket()) {
+				socket.setSoTimeout(1000);
+				final byte[] request = UDPRequestSerializer.getInstance().serialize(new ConnectionRequest(Integer.valueOf(1))).getBytes();
+				socket.send(new DatagramPacket(request, request.length, new InetSocketAddress("localhost", JMatcher.PORT))); //$NON-NLS-1$
+				final byte[] buf = new byte[64];
+				final DatagramPacket packet = new DatagramPacket(buf, buf.length);
+				socket.receive(packet);
+				final ConnectionResponse response = (ConnectionResponse) UDPResponseSerializer.getInstance().deserialize(ByteBuffer.wrap(buf, 0, packet.getLength()));
+				assertThat(response.getHost(), is(nullValue()));
+			}
+
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName statusName = new ObjectName(JMatcherDaemon.STATUS_MBEAN_NAME);
+			assertThat(server.getAttribute(statusName, "RejectedEntryCount"), is((Object) Long.valueOf(1)));
+			assertThat(server.getAttribute(statusName, "RejectedRequestCount"), is((Object) Long.valueOf(1)));
+			assertThat(server.getAttribute(statusName, "TCPActiveHandlers"), is((Object) Integer.valueOf(1)));
+			assertThat(server.getAttribute(statusName, "MatchingTableCapacity"), is((Object) Integer.valueOf(JMatcherDaemon.DEFAULT_MATCHING_MAP_CAPACITY)));
+			assertThat(server.isRegistered(new ObjectName(JMatcherDaemon.MATCH_LATENCY_MBEAN_NAME)), is(true));
+		} finally {
+			latch.countDown();
+			daemon.stop();
+			daemon.destroy();
+		}
+		assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(JMatcherDaemon.STATUS_MBEAN_NAME)), is(false));
+	}
 }
@@ -0,0 +1,247 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+/**
+ * @author agent 2026/10/17
+ */
+@SuppressWarnings({ "static-method", "boxing" })
+public class KeyAllocatorTest {
+
+	/**
+	 * Test method for {@link KeyAllocator#permute(long)}.
+	 */
+	@Test
+	public final void testPermute() {
+		final int[] bounds = { 1, 2, 3, 100, 256, 1000, 65537 };
+		for (int bound : bounds) {
+			final KeyAllocator allocator = new KeyAllocator(bound, bound, 0, 0, new Random(bound));
+			final Set<Integer> keys = new HashSet<>();
+			for (int i = 0; i < bound; i++) {
+				final int key = allocator.permute(i);
+				assertThat(key, is(greaterThanOrEqualTo(0)));
+				assertThat(key, is(lessThan(bound)));
+				keys.add(key);
+			}
+			assertThat(keys.size(), is(bound));
+		}
+	}
+
+	/**
+	 * Test method for {@link KeyAllocator#allocate()}.
+	 */
+	@Test
+	public final void testAllocate() {
+		final int bound = 1000;
+		final KeyAllocator allocator = new KeyAllocator(bound, bound, 0, 0, new Random(54));
+		final Set<Integer> keys = new HashSet<>();
+		int numberOfAscendingKeys = 0;
+		int previousKey = -1;
+		for (int i = 0; i < bound; i++) {
+			final int key = allocator.allocate();
+			assertThat(keys.add(key), is(true));
+			if (key == previousKey + 1) {
+				numberOfAscendingKeys++;
+			}
+			previousKey = key;
+		}
+		assertThat(numberOfAscendingKeys < bound / 10, is(true));
+		assertThat(allocator.allocate(), is(-1));
+		allocator.release(123);
+		assertThat(allocator.allocate(), is(123));
+	}
+
+	/**
+	 * Test method for {@link PartitionedKeyAllocator#allocate()}.
+	 */
+	@Test
+	public final void testPartitionedAllocate() {
+		final int bound = 1000;
+		final int numberOfPartitions = 3;
+		final Set<Integer> keys = new HashSet<>();
+		for (int partition = 0; partition < numberOfPartitions; partition++) {
+			final PartitionedKeyAllocator allocator = new PartitionedKeyAllocator(bound, bound, 0, 0, new Random(54), numberOfPartitions, partition);
+			int key;
+			while ((key = allocator.allocate()) >= 0) {
+				assertThat(key, is(lessThan(bound)));
+				assertThat(PartitionedKeyAllocator.partitionOf(key, numberOfPartitions), is(partition));
+				assertThat(allocator.owns(key), is(true));
+				assertThat(keys.add(key), is(true));
+			}
+			allocator.release(partition + numberOfPartitions);
+			assertThat(allocator.allocate(), is(partition + numberOfPartitions));
+			// a key of another partition only gives back its capacity
+			allocator.release(partition + 1);
+			assertThat(allocator.owns(partition + 1), is(false));
+			assertThat(allocator.allocate(), is(-1));
+		}
+		// the partitions cover the whole key space
+		assertThat(keys.size(), is(bound));
+	}
+
+	/**
+	 * Test method for the capacity of {@link KeyAllocator}.
+	 */
+	@Test
+	public final void testCapacity() {
+		final KeyAllocator allocator = new KeyAllocator(JMatcherDaemon.DEFAULT_BOUND_OF_KEY_NUMBER, 10);
+		final int[] keys = new int[10];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = allocator.allocate();
+			assertThat(keys[i], is(greaterThanOrEqualTo(0)));
+		}
+		assertThat(allocator.allocate(), is(-1));
+		assertThat(allocator.getNumberOfAllocatedKeys(), is(10));
+		allocator.release(keys[0]);
+		assertThat(allocator.allocate(), is(greaterThanOrEqualTo(0)));
+		allocator.setCapacity(5);
+		allocator.release(keys[1]);
+		assertThat(allocator.allocate(), is(-1));
+	}
+
+	/**
+	 * Test method for the quarantine of {@link KeyAllocator}.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testQuarantine() throws Exception {
+		final int bound = 64;
+		final KeyAllocator allocator = new KeyAllocator(bound, bound, 0, 200, new Random(54));
+		final int releasedKey = allocator.allocate();
+		allocator.release(releasedKey);
+		for (int i = 0; i < bound - 1; i++) {
+			final int key = allocator.allocate();
+			assertThat(key == releasedKey, is(false));
+			allocator.release(key);
+		}
+		// every other key is quarantined too, so the oldest one is reused
+		assertThat(allocator.allocate(), is(releasedKey));
+
+		final KeyAllocator anotherAllocator = new KeyAllocator(bound, bound, 0, 200, new Random(54));
+		final int anotherReleasedKey = anotherAllocator.allocate();
+		anotherAllocator.release(anotherReleasedKey);
+		Thread.sleep(300);
+		final Set<Integer> keys = new HashSet<>();
+		for (int i = 0; i < bound; i++) {
+			keys.add(anotherAllocator.allocate());
+		}
+		assertThat(keys.contains(anotherReleasedKey), is(true));
+	}
+
+	/**
+	 * Test method for the bounded probes of {@link KeyAllocator#allocate()}.
+	 */
+	@Test
+	public final void testMaxProbes() {
+		final int bound = 1024;
+		final KeyAllocator allocator = new KeyAllocator(bound, bound, 0, 0, new Random(54));
+		// the only free key is far from the cursor
+		final int freeKey = allocator.permute(KeyAllocator.MAX_PROBES * 4);
+		for (int key = 0; key < bound; key++) {
+			if (key != freeKey) {
+				assertThat(allocator.claim(key), is(true));
+			}
+		}
+		assertThat(allocator.allocate(), is(-1));
+		assertThat(allocator.getNumberOfAllocatedKeys(), is(bound - 1));
+		// it is found by a later allocation
+		final Set<Integer> keys = new HashSet<>();
+		for (int i = 0; i < 4; i++) {
+			keys.add(allocator.allocate());
+		}
+		assertThat(keys.contains(freeKey), is(true));
+	}
+
+	/**
+	 * Test method for {@link KeyAllocator#abandon(int)}.
+	 */
+	@Test
+	public final void testAbandon() {
+		final int bound = 8;
+		final KeyAllocator allocator = new KeyAllocator(bound, bound, 0, 10000, new Random(54));
+		final int abandonedKey = allocator.allocate();
+		allocator.abandon(abandonedKey);
+		assertThat(allocator.getNumberOfAllocatedKeys(), is(0));
+		// it is reused without the quarantine
+		final Set<Integer> keys = new HashSet<>();
+		for (int i = 0; i < bound; i++) {
+			keys.add(allocator.allocate());
+		}
+		assertThat(keys.size(), is(bound));
+		assertThat(keys.contains(abandonedKey), is(true));
+	}
+
+	/**
+	 * Test method for {@link KeyAllocator#adopt(int)}.
+	 */
+	@Test
+	public final void testAdopt() {
+		final int bound = 16;
+		final KeyAllocator allocator = new KeyAllocator(bound, bound + 1, 0, 0, new Random(54));
+		for (int key = 1; key < bound; key++) {
+			allocator.adopt(key);
+		}
+		// a key beyond the bound is only counted
+		allocator.adopt(bound);
+		assertThat(allocator.getNumberOfAllocatedKeys(), is(bound));
+		assertThat(allocator.allocate(), is(0));
+		assertThat(allocator.allocate(), is(-1));
+	}
+
+	/**
+	 * Test method for {@link KeyAllocator#allocate()} with multiple threads.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testAllocateWithMultiThread() throws Exception {
+		final int numberOfThreads = 8;
+		final int numberOfKeysPerThread = 10000;
+		final KeyAllocator allocator = new KeyAllocator(numberOfThreads * numberOfKeysPerThread, numberOfThreads * numberOfKeysPerThread);
+		final Set<Integer> keys = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+		final Thread[] threads = new Thread[numberOfThreads];
+		for (int i = 0; i < numberOfThreads; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < numberOfKeysPerThread; j++) {
+						keys.add(allocator.allocate());
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertThat(keys.size(), is(numberOfThreads * numberOfKeysPerThread));
+		assertThat(keys.contains(-1), is(false));
+		assertThat(allocator.allocate(), is(-1));
+	}
+}
@@ -0,0 +1,54 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author agent 2026/10/17
+ */
+@SuppressWarnings({ "static-method", "nls", "boxing" })
+public class LatencyHistogramTest {
+
+	/**
+	 * Test method for {@link LatencyHistogram#getPercentileMicros(double)}.
+	 */
+	@Test
+	public final void testPercentiles() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		assertThat(histogram.getCount(), is(0L));
+		assertThat(histogram.get99thPercentileMicros(), is(0L));
+
+		for (int i = 0; i < 90; i++) {
+			histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+		}
+		for (int i = 0; i < 10; i++) {
+			histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+		}
+		assertThat(histogram.getCount(), is(100L));
+		assertThat(histogram.getMeanMicros(), is(1090L));
+		assertThat(histogram.getMaxMicros(), is(10000L));
+		// 100 is in [64, 127]
+		assertThat(histogram.get50thPercentileMicros(), is(127L));
+		assertThat(histogram.get90thPercentileMicros(), is(127L));
+		// 10000 is in [8192, 16383], which is cut by the maximum
+		assertThat(histogram.get99thPercentileMicros(), is(10000L));
+	}
+}
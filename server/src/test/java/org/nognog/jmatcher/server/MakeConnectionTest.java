@@ -20,27 +20,32 @@ import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.Set;
 
 import org.junit.Test;
 import org.nognog.jmatcher.Host;
 import org.nognog.jmatcher.JMatcher;
+import org.nognog.jmatcher.tcp.TCPFrameSerializer;
 import org.nognog.jmatcher.tcp.request.PlainTCPRequest;
 import org.nognog.jmatcher.tcp.request.TCPRequest;
 import org.nognog.jmatcher.tcp.response.CheckConnectionResponse;
 import org.nognog.jmatcher.tcp.response.PlainTCPResponse;
 import org.nognog.jmatcher.tcp.response.PreEntryResponse;
 import org.nognog.jmatcher.tcp.response.TCPResponse;
+import org.nognog.jmatcher.udp.UDPProtocol;
 import org.nognog.jmatcher.udp.request.ConnectionRequest;
 import org.nognog.jmatcher.udp.request.EnableEntryRequest;
 import org.nognog.jmatcher.udp.request.UDPRequest;
@@ -84,6 +89,124 @@ public class MakeConnectionTest {
 		}
 	}
 
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public final void testConnectRequestOnUDPReactor() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext(JMatcherDaemon.UDP_MODE_ARGUMENT + "=reactor"));
+		assertThat(daemon.getUDPMode(), is(IOMode.REACTOR));
+		daemon.start();
+		try {
+			daemon.setEnabledToReturnSpecialInternalAddress(false);
+			this.doConnectTest(daemon);
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public final void testConnectRequestOnUDPReactors() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext(JMatcherDaemon.UDP_MODE_ARGUMENT + "=reactor", JMatcherDaemon.UDP_REACTORS_ARGUMENT + "=3"));
+		assertThat(daemon.getNumberOfUDPReceivers(), is(3));
+		daemon.start();
+		try {
+			daemon.setEnabledToReturnSpecialInternalAddress(false);
+			this.doConnectTest(daemon);
+			this.doPushTest(daemon);
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public final void testConnectRequestOnTCPReactor() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext(JMatcherDaemon.TCP_MODE_ARGUMENT + "=reactor", JMatcherDaemon.TCP_EVENT_LOOPS_ARGUMENT + "=1"));
+		assertThat(daemon.getTCPMode(), is(IOMode.REACTOR));
+		daemon.start();
+		try {
+			daemon.setEnabledToReturnSpecialInternalAddress(false);
+			this.doConnectTest(daemon);
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public final void testPushRequestingHosts() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(null);
+		daemon.start();
+		try {
+			daemon.setEnabledToReturnSpecialInternalAddress(false);
+			this.doPushTest(daemon);
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public final void testPushRequestingHostsOnTCPReactor() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext(JMatcherDaemon.TCP_MODE_ARGUMENT + "=reactor", JMatcherDaemon.TCP_EVENT_LOOPS_ARGUMENT + "=1"));
+		daemon.start();
+		try {
+			daemon.setEnabledToReturnSpecialInternalAddress(false);
+			this.doPushTest(daemon);
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	private void doPushTest(JMatcherDaemon daemon) throws Exception {
+		final TCPFrameSerializer serializer = TCPFrameSerializer.getInstance();
+		try (final Socket entryHostTCPSocket = new Socket("localhost", JMatcher.PORT)) {
+			entryHostTCPSocket.setSoTimeout(soTimeout);
+			final OutputStream output = entryHostTCPSocket.getOutputStream();
+			final DataInputStream input = new DataInputStream(entryHostTCPSocket.getInputStream());
+			output.write(TCPFrameSerializer.createPreamble(TCPFrameSerializer.PUSH_VERSION));
+			assertThat(TCPFrameSerializer.readPreamble(input), is(TCPFrameSerializer.PUSH_VERSION));
+			serializer.write(output, PlainTCPRequest.ENTRY);
+			final int key = ((PreEntryResponse) serializer.readResponse(input)).getKeyNumber().intValue();
+			try (DatagramSocket entryHostUDPSocket = new DatagramSocket(); DatagramSocket requestingHostSocket = new DatagramSocket()) {
+				this.sendUDPRequest(entryHostUDPSocket, new EnableEntryRequest(key), new InetSocketAddress("localhost", JMatcher.PORT), UDPProtocol.BINARY);
+				assertThat(serializer.readResponse(input) == PlainTCPResponse.COMPLETE_ENTRY, is(true));
+
+				requestingHostSocket.setSoTimeout(soTimeout);
+				this.sendUDPRequest(requestingHostSocket, new ConnectionRequest(key), new InetSocketAddress("localhost", JMatcher.PORT), UDPProtocol.BINARY);
+				// the inviter doesn't ask, and the hosts come before the interval
+				// of polling
+				entryHostTCPSocket.setSoTimeout(1000);
+				final Host[] requestingHosts = ((CheckConnectionResponse) serializer.readResponse(input)).getRequestingHosts();
+				assertThat(requestingHosts.length, is(1));
+				assertThat(requestingHosts[0].getPort(), is(requestingHostSocket.getLocalPort()));
+				final Host connectionTargetHost = ((ConnectionResponse) this.receiveUDPResponse(requestingHostSocket)).getHost();
+				assertThat(connectionTargetHost.getPort(), is(entryHostUDPSocket.getLocalPort()));
+				assertThat(daemon.getMatchingTable().takeRendezvous(key), is(nullValue()));
+			}
+		}
+	}
+
 	/**
 	 * @param daemon
 	 * @throws IOException
@@ -105,7 +228,9 @@ public class MakeConnectionTest {
 				final int numberOfConnectionRequestHosts = 2;
 				final Thread[] connectionRequestThreads = new Thread[numberOfConnectionRequestHosts];
 				for (int i = 0; i < numberOfConnectionRequestHosts; i++) {
-					connectionRequestThreads[i] = this.createConnectionRequestHostThread(key, failedThreads);
+					// the formats of UDP requests can be mixed
+					final UDPProtocol protocol = (i % 2 == 0) ? UDPProtocol.TEXT : UDPProtocol.BINARY;
+					connectionRequestThreads[i] = this.createConnectionRequestHostThread(key, protocol, failedThreads);
 					connectionRequestThreads[i].start();
 				}
 
@@ -118,13 +243,13 @@ public class MakeConnectionTest {
 		}
 	}
 
-	private Thread createConnectionRequestHostThread(final int key, final Set<Thread> failedThreads) {
+	private Thread createConnectionRequestHostThread(final int key, final UDPProtocol protocol, final Set<Thread> failedThreads) {
 		return new Thread(new Runnable() {
 			@Override
 			public void run() {
 				try (DatagramSocket socket = new DatagramSocket()) {
 					socket.setSoTimeout(soTimeout);
-					sendUDPRequest(socket, new ConnectionRequest(key), new InetSocketAddress("localhost", JMatcher.PORT));
+					sendUDPRequest(socket, new ConnectionRequest(key), new InetSocketAddress("localhost", JMatcher.PORT), protocol);
 					ConnectionResponse response = (ConnectionResponse) receiveUDPResponse(socket);
 					final Host connectionTargetHost = response.getHost();
 					assertThat(connectionTargetHost, is(not(nullValue())));
@@ -195,8 +320,19 @@ public class MakeConnectionTest {
 	}
 
 	void sendUDPRequest(DatagramSocket socket, UDPRequest request, SocketAddress address) throws IOException {
-		final String serializedRequest = UDPRequestSerializer.getInstance().serialize(request);
-		this.sendUDPPacket(socket, serializedRequest, address);
+		this.sendUDPRequest(socket, request, address, UDPProtocol.TEXT);
+	}
+
+	void sendUDPRequest(DatagramSocket socket, UDPRequest request, SocketAddress address, UDPProtocol protocol) throws IOException {
+		if (protocol == UDPProtocol.TEXT) {
+			final String serializedRequest = UDPRequestSerializer.getInstance().serialize(request);
+			this.sendUDPPacket(socket, serializedRequest, address);
+			return;
+		}
+		final ByteBuffer buffer = ByteBuffer.allocate(UDPRequestSerializer.BINARY_REQUEST_SIZE);
+		UDPRequestSerializer.getInstance().serialize(request, buffer);
+		socket.send(new DatagramPacket(buffer.array(), buffer.position(), address));
+		System.out.println(socket.getLocalSocketAddress() + " -> " + address + " : " + request.getClass().getSimpleName() + " " + request.getKeyNumber());
 	}
 
 	void sendUDPPacket(DatagramSocket socket, String message, SocketAddress address) throws IOException {
@@ -207,7 +343,12 @@ public class MakeConnectionTest {
 	}
 
 	UDPResponse receiveUDPResponse(DatagramSocket socket) throws IOException {
-		return UDPResponseSerializer.getInstance().deserialize(this.receiveUDPMessage(socket));
+		final byte[] buf = new byte[1024];
+		final DatagramPacket packet = new DatagramPacket(buf, buf.length);
+		socket.receive(packet);
+		final UDPResponse response = UDPResponseSerializer.getInstance().deserialize(ByteBuffer.wrap(buf, 0, packet.getLength()));
+		System.out.println(socket.getLocalSocketAddress() + " <- " + packet.getSocketAddress() + " : " + ((ConnectionResponse) response).getHost());
+		return response;
 	}
 
 	String receiveUDPMessage(DatagramSocket socket) throws IOException {
@@ -0,0 +1,296 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nognog.jmatcher.tcp.request.PlainTCPRequest;
+import org.nognog.jmatcher.tcp.request.ReattachRequest;
+import org.nognog.jmatcher.tcp.response.PlainTCPResponse;
+import org.nognog.jmatcher.tcp.response.PreEntryResponse;
+import org.nognog.jmatcher.udp.request.EnableEntryRequest;
+import org.nognog.jmatcher.udp.request.UDPRequestSerializer;
+
+/**
+ * @author agent 2026/10/17
+ */
+@SuppressWarnings({ "static-method", "nls", "boxing" })
+public class MatchingTableJournalTest {
+
+	/**
+	 * directory of the journal
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private HashedTimingWheel timingWheel;
+
+	/**
+	 * 
+	 */
+	@Before
+	public void setUp() {
+		this.timingWheel = new HashedTimingWheel("test-timer", 10, TimeUnit.MILLISECONDS, 8);
+		this.timingWheel.start();
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		this.timingWheel.stop();
+	}
+
+	/**
+	 * The registered entries are read again even if the journal wasn't closed
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testOpenAfterCrash() throws Exception {
+		final File directory = this.folder.getRoot();
+		final MatchingTableJournal journal = new MatchingTableJournal(directory, 4);
+		assertThat(journal.open().size(), is(0));
+		final MatchingTable table = new MatchingTable(this.timingWheel);
+		table.addLog(journal);
+		final PreEntryListener owner = new NopListener();
+		// more records than a chunk
+		for (int key = 0; key < 10; key++) {
+			table.putPreEntry(key, InetAddress.getByName("192.168.0.1"), 10000, owner, 0);
+			table.enable(key, InetAddress.getByName("192.168.0.1"), 20000 + key);
+		}
+		table.putPreEntry(10, InetAddress.getByName("192.168.0.1"), 10000, owner, 0);
+		table.remove(3, owner);
+		table.remove(7, owner);
+		table.enable(10, InetAddress.getByName("::1"), 30000);
+
+		final List<MatchingTableJournal.Entry> entries = new MatchingTableJournal(directory, 4).open();
+		assertThat(entries.size(), is(9));
+		final int[] keys = new int[entries.size()];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = entries.get(i).keyNumber;
+		}
+		assertThat(Arrays.toString(keys), is("[0, 1, 2, 4, 5, 6, 8, 9, 10]"));
+		final MatchingTableJournal.Entry last = entries.get(entries.size() - 1);
+		assertThat(MatchingTable.unpackAddress(last.addressHigh, last.addressLow), is(InetAddress.getByName("::1").getHostAddress()));
+		assertThat(last.port, is(30000));
+		assertThat(MatchingTable.unpackAddress(entries.get(0).addressHigh, entries.get(0).addressLow), is("192.168.0.1"));
+		assertThat(entries.get(0).port, is(20000));
+	}
+
+	/**
+	 * A snapshot begins a new generation, and the files of the previous one
+	 * are deleted
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testSnapshot() throws Exception {
+		final File directory = this.folder.getRoot();
+		final MatchingTableJournal journal = new MatchingTableJournal(directory);
+		journal.open();
+		final MatchingTable table = new MatchingTable(this.timingWheel);
+		table.addLog(journal);
+		final PreEntryListener owner = new NopListener();
+		for (int key = 0; key < 3; key++) {
+			table.putPreEntry(key, InetAddress.getByName("127.0.0.1"), 10000, owner, 0);
+			table.enable(key, InetAddress.getByName("127.0.0.1"), 20000 + key);
+		}
+		final long generation = journal.getGeneration();
+		journal.snapshot(table);
+		assertThat(journal.getGeneration(), is(generation + 1));
+		final String[] files = directory.list();
+		Arrays.sort(files);
+		assertThat(Arrays.toString(files), is("[journal." + (generation + 1) + ", snapshot." + (generation + 1) + "]"));
+		table.remove(1, owner);
+
+		final MatchingTableJournal reopenedJournal = new MatchingTableJournal(directory);
+		assertThat(reopenedJournal.open().size(), is(2));
+		assertThat(reopenedJournal.getGeneration(), is(generation + 2));
+	}
+
+	/**
+	 * The journal is read up to a broken record
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testBrokenRecord() throws Exception {
+		final File directory = this.folder.getRoot();
+		final MatchingTableJournal journal = new MatchingTableJournal(directory);
+		journal.open();
+		final long generation = journal.getGeneration();
+		journal.registered(1, 0, 1, 10000);
+		journal.registered(2, 0, 2, 10000);
+		journal.registered(3, 0, 3, 10000);
+		try (final RandomAccessFile file = new RandomAccessFile(new File(directory, "journal." + generation), "rw")) {
+			// a torn write of the second record
+			file.seek(MatchingTableJournal.RECORD_SIZE + 20);
+			file.writeLong(new Random().nextLong() | 1);
+		}
+		final List<MatchingTableJournal.Entry> entries = new MatchingTableJournal(directory).open();
+		assertThat(entries.size(), is(1));
+		assertThat(entries.get(0).keyNumber, is(1));
+	}
+
+	/**
+	 * A restored entry waits for its inviter, and it is removed if the inviter
+	 * doesn't come back
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testRestoreAndReattach() throws Exception {
+		final File directory = this.folder.getRoot();
+		final MatchingTableJournal journal = new MatchingTableJournal(directory);
+		journal.open();
+		final MatchingTable table = new MatchingTable(this.timingWheel);
+		table.setKeyAllocator(new KeyAllocator(100, 100));
+		table.addLog(journal);
+		final byte[] address = InetAddress.getByName("192.168.0.1").getAddress();
+		assertThat(table.restore(1, MatchingTable.packAddressHigh(address), MatchingTable.packAddressLow(address), 20000, 0), is(true));
+		assertThat(table.restore(2, MatchingTable.packAddressHigh(address), MatchingTable.packAddressLow(address), 20001, 100), is(true));
+		assertThat(table.restore(1, MatchingTable.packAddressHigh(address), MatchingTable.packAddressLow(address), 20000, 0), is(false));
+		assertThat(table.getKeyAllocator().getNumberOfAllocatedKeys(), is(2));
+		assertThat(table.get(1), is(instanceOf(PreEntryHost.class)));
+
+		final PreEntryListener owner = new NopListener();
+		assertThat(table.reattach(1, InetAddress.getByName("192.168.0.2"), 10000, owner, 0), is(false));
+		assertThat(table.reattach(1, InetAddress.getByName("192.168.0.1"), 10000, owner, 0), is(true));
+		assertThat(table.reattach(1, InetAddress.getByName("192.168.0.1"), 10000, owner, 0), is(false));
+		assertThat(table.enable(1, InetAddress.getByName("192.168.0.1"), 20002), is(true));
+		assertThat(table.get(1), is(not(instanceOf(PreEntryHost.class))));
+		assertThat(table.get(1).getPort(), is(20002));
+
+		// the inviter of the key 2 doesn't come back
+		Thread.sleep(300);
+		assertThat(table.get(2), is(nullValue()));
+		assertThat(table.size(), is(1));
+		assertThat(table.getKeyAllocator().getNumberOfAllocatedKeys(), is(1));
+		final List<MatchingTableJournal.Entry> entries = new MatchingTableJournal(directory).open();
+		assertThat(entries.size(), is(1));
+		assertThat(entries.get(0).port, is(20002));
+	}
+
+	/**
+	 * An inviter which has been registered re-attaches to the restarted daemon
+	 * under its key
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testWarmRestart() throws Exception {
+		final String journalArgument = JMatcherDaemon.JOURNAL_ARGUMENT + "=" + this.folder.getRoot().getPath();
+		for (IOMode tcpMode : IOMode.values()) {
+			final String tcpModeArgument = JMatcherDaemon.TCP_MODE_ARGUMENT + "=" + tcpMode;
+			final int keyNumber;
+			try (final DatagramSocket udpSocket = new DatagramSocket()) {
+				JMatcherDaemon daemon = new JMatcherDaemon();
+				daemon.init(new TestDaemonContext(journalArgument, tcpModeArgument));
+				daemon.start();
+				try (final Socket socket = new Socket("localhost", daemon.getPort());
+						final ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
+						final ObjectInputStream ois = new ObjectInputStream(socket.getInputStream())) {
+					socket.setSoTimeout(TCPClientRequestHandler.WAIT_TIME_FOR_UDP_ENTRY);
+					oos.writeObject(PlainTCPRequest.ENTRY);
+					keyNumber = ((PreEntryResponse) ois.readObject()).getKeyNumber();
+					enableEntry(udpSocket, keyNumber, daemon.getPort());
+					assertThat(ois.readObject() == PlainTCPResponse.COMPLETE_ENTRY, is(true));
+					daemon.stop();
+					daemon.destroy();
+				}
+
+				daemon = new JMatcherDaemon();
+				daemon.init(new TestDaemonContext(journalArgument, tcpModeArgument));
+				daemon.start();
+				try {
+					assertThat(daemon.getMatchingTable().get(keyNumber), is(instanceOf(PreEntryHost.class)));
+					// a new inviter doesn't get the key
+					assertThat(daemon.getMatchingTable().getKeyAllocator().getNumberOfAllocatedKeys(), is(1));
+					try (final Socket socket = new Socket("localhost", daemon.getPort());
+							final ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
+							final ObjectInputStream ois = new ObjectInputStream(socket.getInputStream())) {
+						socket.setSoTimeout(TCPClientRequestHandler.WAIT_TIME_FOR_UDP_ENTRY);
+						oos.writeObject(new ReattachRequest(keyNumber));
+						assertThat(((PreEntryResponse) ois.readObject()).getKeyNumber(), is(keyNumber));
+						enableEntry(udpSocket, keyNumber, daemon.getPort());
+						assertThat(ois.readObject() == PlainTCPResponse.COMPLETE_ENTRY, is(true));
+						assertThat(daemon.getMatchingTable().get(keyNumber).getPort(), is(udpSocket.getLocalPort()));
+					}
+					// the key can't be taken twice
+					try (final Socket socket = new Socket("localhost", daemon.getPort());
+							final ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
+							final ObjectInputStream ois = new ObjectInputStream(socket.getInputStream())) {
+						socket.setSoTimeout(TCPClientRequestHandler.WAIT_TIME_FOR_UDP_ENTRY);
+						oos.writeObject(new ReattachRequest(keyNumber));
+						assertThat(ois.readObject() == PlainTCPResponse.FAILURE, is(true));
+					}
+				} finally {
+					daemon.stop();
+					daemon.destroy();
+				}
+			}
+		}
+	}
+
+	private static void enableEntry(DatagramSocket udpSocket, int keyNumber, int port) throws Exception {
+		final byte[] bytes = UDPRequestSerializer.getInstance().serialize(new EnableEntryRequest(keyNumber)).getBytes();
+		udpSocket.send(new DatagramPacket(bytes, bytes.length, new InetSocketAddress("localhost", port)));
+	}
+
+	private static class NopListener implements PreEntryListener {
+		NopListener() {
+		}
+
+		@Override
+		public void enabled(int keyNumber) {
+			// nothing
+		}
+
+		@Override
+		public void expired(int keyNumber) {
+			// nothing
+		}
+
+		@Override
+		public void requested(int keyNumber) {
+			// nothing
+		}
+	}
+}
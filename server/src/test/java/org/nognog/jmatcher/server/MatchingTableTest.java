@@ -0,0 +1,216 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.net.InetAddress;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nognog.jmatcher.Host;
+
+import mockit.Mocked;
+
+/**
+ * @author agent 2026/10/17
+ */
+@SuppressWarnings({ "static-method", "nls", "boxing" })
+public class MatchingTableTest {
+
+	private HashedTimingWheel timingWheel;
+	private MatchingTable table;
+
+	/**
+	 * 
+	 */
+	@Before
+	public void setUp() {
+		this.timingWheel = new HashedTimingWheel("test-timer", 10, TimeUnit.MILLISECONDS, 8);
+		this.timingWheel.start();
+		this.table = new MatchingTable(this.timingWheel);
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		this.timingWheel.stop();
+	}
+
+	/**
+	 * Test method for {@link MatchingTable#adoptKeys(KeyAllocator)}.
+	 * 
+	 * @param owner
+	 * @throws Exception
+	 */
+	@Test
+	public final void testAdoptKeys(@Mocked final PreEntryListener owner) throws Exception {
+		final int bound = 4;
+		this.table.setKeyAllocator(new KeyAllocator(bound, bound, 0, 0, new Random(54)));
+		final InetAddress address = InetAddress.getByName("192.168.0.1");
+		final Set<Integer> keys = new HashSet<>();
+		for (int i = 0; i < bound - 1; i++) {
+			keys.add(this.table.putPreEntryWithNewKey(address, 10000 + i, owner, 0));
+		}
+		final KeyAllocator newAllocator = new KeyAllocator(bound, bound, 0, 0, new Random(55));
+		this.table.adoptKeys(newAllocator);
+		this.table.setKeyAllocator(newAllocator);
+		assertThat(newAllocator.getNumberOfAllocatedKeys(), is(bound - 1));
+		// the new allocator gives the only free key without a collision
+		final int newKey = this.table.putPreEntryWithNewKey(address, 20000, owner, 0);
+		assertThat(keys.contains(newKey), is(false));
+		assertThat(newKey >= 0, is(true));
+		assertThat(this.table.putPreEntryWithNewKey(address, 20001, owner, 0), is(-1));
+		assertThat(this.table.size(), is(bound));
+	}
+
+	/**
+	 * Test method for the entry lifecycle of {@link MatchingTable}.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testPutEnableRemove() throws Exception {
+		final CountingListener owner = new CountingListener();
+		assertThat(this.table.putPreEntry(1, InetAddress.getByName("192.168.0.1"), 10000, owner, 0), is(true));
+		assertThat(this.table.putPreEntry(1, InetAddress.getByName("192.168.0.2"), 10000, new CountingListener(), 0), is(false));
+		assertThat(this.table.size(), is(1));
+		assertThat(this.table.get(1), is(instanceOf(PreEntryHost.class)));
+		assertThat(this.table.get(1).toString(), is("192.168.0.1:10000"));
+
+		assertThat(this.table.enable(1, InetAddress.getByName("::1"), 20000), is(true));
+		assertThat(this.table.enable(1, InetAddress.getByName("::1"), 20000), is(false));
+		assertThat(owner.enabledCount.get(), is(1));
+		assertThat(this.table.getMetrics().getPreEntryCount(), is(1L));
+		assertThat(this.table.getMetrics().getEnabledEntryCount(), is(1L));
+		assertThat(this.table.getMetrics().getEnableLatency().getCount(), is(1L));
+		final Host host = this.table.get(1);
+		assertThat(host, is(not(instanceOf(PreEntryHost.class))));
+		assertThat(host.getAddress(), is(InetAddress.getByName("::1").getHostAddress()));
+		assertThat(host.getPort(), is(20000));
+
+		assertThat(this.table.remove(1, new CountingListener()), is(false));
+		assertThat(this.table.remove(1, owner), is(true));
+		assertThat(this.table.get(1), is(nullValue()));
+		assertThat(this.table.containsKey(1), is(false));
+		assertThat(this.table.size(), is(0));
+	}
+
+	/**
+	 * Test method for the expiry of pre-entries.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testExpire() throws Exception {
+		final CountingListener expiringOwner = new CountingListener();
+		final CountingListener enabledOwner = new CountingListener();
+		this.table.putPreEntry(1, InetAddress.getByName("127.0.0.1"), 10000, expiringOwner, 50);
+		this.table.putPreEntry(2, InetAddress.getByName("127.0.0.1"), 10001, enabledOwner, 50);
+		this.table.enable(2, InetAddress.getByName("127.0.0.1"), 10002);
+		assertThat(expiringOwner.expiredLatch.await(2, TimeUnit.SECONDS), is(true));
+		Thread.sleep(100);
+		assertThat(this.table.containsKey(1), is(false));
+		assertThat(this.table.containsKey(2), is(true));
+		assertThat(enabledOwner.expiredLatch.getCount(), is(1L));
+		assertThat(this.table.size(), is(1));
+		assertThat(this.table.getMetrics().getExpiredEntryCount(), is(1L));
+	}
+
+	/**
+	 * Test method for the cap of the rendezvous which wait for an entry.
+	 * 
+	 * @param handler
+	 * @throws Exception
+	 */
+	@Test
+	public final void testMaxWaitingRequests(@Mocked final UDPClientRequestHandler handler) throws Exception {
+		this.table.setMaxWaitingRequests(2);
+		final CountingListener owner = new CountingListener();
+		this.table.putPreEntry(1, InetAddress.getByName("127.0.0.1"), 10000, owner, 0);
+		this.table.enable(1, InetAddress.getByName("127.0.0.1"), 10001);
+		final PendingRendezvous[] rendezvous = { new PendingRendezvous(handler), new PendingRendezvous(handler), new PendingRendezvous(handler) };
+		assertThat(this.table.addRendezvous(1, rendezvous[0]), is(true));
+		assertThat(this.table.addRendezvous(1, rendezvous[1]), is(true));
+		assertThat(this.table.addRendezvous(1, rendezvous[2]), is(false));
+		assertThat(this.table.getMetrics().getThrottledRequestCount(), is(1L));
+		assertThat(this.table.getMetrics().getWaitingRequestCount(), is(2L));
+
+		// a place is freed when a rendezvous is taken
+		assertThat(this.table.takeRendezvous(1).length, is(2));
+		assertThat(this.table.addRendezvous(1, rendezvous[2]), is(true));
+	}
+
+	/**
+	 * Test method for the growth of the segments with many entries.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testManyEntries() throws Exception {
+		final int numberOfEntries = 100000;
+		final InetAddress address = InetAddress.getByName("10.0.0.1");
+		final CountingListener owner = new CountingListener();
+		for (int i = 0; i < numberOfEntries; i++) {
+			assertThat(this.table.putPreEntry(i * 7, address, i & 0xFFFF, owner, 0), is(true));
+		}
+		assertThat(this.table.size(), is(numberOfEntries));
+		for (int i = 0; i < numberOfEntries; i += 2) {
+			assertThat(this.table.remove(i * 7, owner), is(true));
+		}
+		for (int i = 0; i < numberOfEntries; i++) {
+			assertThat(this.table.containsKey(i * 7), is(i % 2 == 1));
+			assertThat(this.table.containsKey(i * 7 + 1), is(false));
+		}
+		assertThat(this.table.get(7).getPort(), is(1));
+		assertThat(this.table.size(), is(numberOfEntries / 2));
+	}
+
+	private static class CountingListener implements PreEntryListener {
+		final AtomicInteger enabledCount = new AtomicInteger();
+		final CountDownLatch expiredLatch = new CountDownLatch(1);
+
+		CountingListener() {
+		}
+
+		@Override
+		public void enabled(int keyNumber) {
+			this.enabledCount.incrementAndGet();
+		}
+
+		@Override
+		public void expired(int keyNumber) {
+			this.expiredLatch.countDown();
+		}
+
+		@Override
+		public void requested(int keyNumber) {
+			// nothing to do
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.nognog.jmatcher.Host;
+import org.nognog.jmatcher.tcp.request.PlainTCPRequest;
+import org.nognog.jmatcher.tcp.request.ReattachRequest;
+
+/**
+ * @author agent 2026/10/17
+ */
+@SuppressWarnings({ "static-method", "nls" })
+public class ObjectStreamRequestDecoderTest {
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public final void testDecodeWholeStream() throws Exception {
+		final byte[] stream = this.createStream();
+		final List<Object> decoded = this.decode(stream, stream.length);
+		this.assertDecodedObjects(decoded);
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public final void testDecodeFragmentedStream() throws Exception {
+		final byte[] stream = this.createStream();
+		for (int fragmentSize = 1; fragmentSize < 8; fragmentSize++) {
+			this.assertDecodedObjects(this.decode(stream, fragmentSize));
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public final void testDecodeUnsupportedObject() throws Exception {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (final ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+			oos.writeObject(new Host("localhost", 1));
+		}
+		try {
+			this.decode(bytes.toByteArray(), bytes.size());
+			fail();
+		} catch (StreamCorruptedException e) {
+			// success
+		}
+	}
+
+	private byte[] createStream() throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (final ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+			oos.writeObject(PlainTCPRequest.ENTRY);
+			oos.writeObject(PlainTCPRequest.CHECK_CONNECTION_REQUEST);
+			oos.writeObject(PlainTCPRequest.CHECK_CONNECTION_REQUEST);
+			oos.reset();
+			oos.writeObject(PlainTCPRequest.CHECK_CONNECTION_REQUEST);
+			oos.writeObject(null);
+			oos.writeObject("invalid request");
+			final ReattachRequest reattachRequest = new ReattachRequest(12345);
+			oos.writeObject(reattachRequest);
+			oos.writeObject(new ReattachRequest(54));
+			oos.writeObject(reattachRequest);
+		}
+		return bytes.toByteArray();
+	}
+
+	private List<Object> decode(byte[] stream, int fragmentSize) throws StreamCorruptedException {
+		final ObjectStreamRequestDecoder decoder = new ObjectStreamRequestDecoder();
+		final ByteBuffer buffer = ByteBuffer.allocate(stream.length);
+		final List<Object> result = new ArrayList<>();
+		for (int offset = 0; offset < stream.length; offset += fragmentSize) {
+			buffer.put(stream, offset, Math.min(fragmentSize, stream.length - offset));
+			buffer.flip();
+			Object decoded;
+			while ((decoded = decoder.decode(buffer)) != ObjectStreamRequestDecoder.INCOMPLETE) {
+				result.add(decoded);
+			}
+			buffer.compact();
+		}
+		assertThat(buffer.position(), is(0));
+		return result;
+	}
+
+	private void assertDecodedObjects(List<Object> decoded) {
+		assertThat(decoded.size(), is(9));
+		assertThat(decoded.get(0), is((Object) PlainTCPRequest.ENTRY));
+		assertThat(decoded.get(1), is((Object) PlainTCPRequest.CHECK_CONNECTION_REQUEST));
+		assertThat(decoded.get(2), is((Object) PlainTCPRequest.CHECK_CONNECTION_REQUEST));
+		assertThat(decoded.get(3), is((Object) PlainTCPRequest.CHECK_CONNECTION_REQUEST));
+		assertThat(decoded.get(4), is(nullValue()));
+		assertThat(decoded.get(5), is((Object) "invalid request"));
+		assertThat(decoded.get(6), is((Object) new ReattachRequest(12345)));
+		assertThat(decoded.get(7), is((Object) new ReattachRequest(54)));
+		assertThat(decoded.get(8), is(decoded.get(6)));
+	}
+}
@@ -0,0 +1,195 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nognog.jmatcher.tcp.request.PlainTCPRequest;
+import org.nognog.jmatcher.tcp.request.ReattachRequest;
+import org.nognog.jmatcher.tcp.response.PlainTCPResponse;
+import org.nognog.jmatcher.tcp.response.PreEntryResponse;
+import org.nognog.jmatcher.udp.request.EnableEntryRequest;
+import org.nognog.jmatcher.udp.request.UDPRequestSerializer;
+
+/**
+ * Test of a primary and its standby on loopback ports
+ * 
+ * @author agent 2026/10/17
+ */
+@SuppressWarnings({ "static-method", "nls", "boxing" })
+public class ReplicationTest {
+
+	private static final int port = 11630;
+	private static final int replicationPort = 11640;
+	private static final int failoverTime = 1000;
+	private static final int soTimeout = TCPClientRequestHandler.WAIT_TIME_FOR_UDP_ENTRY;
+
+	private JMatcherDaemon primary;
+	private JMatcherDaemon standby;
+
+	/**
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.primary = new JMatcherDaemon();
+		this.primary.init(new TestDaemonContext(JMatcherDaemon.PORT_ARGUMENT + "=" + port, JMatcherDaemon.REPLICATION_PORT_ARGUMENT + "=" + replicationPort));
+		this.primary.start();
+		this.standby = new JMatcherDaemon();
+		this.standby.init(new TestDaemonContext(JMatcherDaemon.PORT_ARGUMENT + "=" + port, JMatcherDaemon.STANDBY_OF_ARGUMENT + "=127.0.0.1:" + replicationPort,
+				JMatcherDaemon.FAILOVER_TIME_ARGUMENT + "=" + failoverTime));
+		this.standby.start();
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		if (this.primary != null) {
+			this.primary.stop();
+			this.primary.destroy();
+		}
+		this.standby.stop();
+		this.standby.destroy();
+	}
+
+	/**
+	 * The registrations and releases of the primary are replicated to the
+	 * standby
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testReplicate() throws Exception {
+		final ReplicationSource source = this.primary.getReplicationSource();
+		final ReplicationStandby replicationStandby = this.standby.getReplicationStandby();
+		this.waitUntilConnected(source);
+		assertThat(replicationStandby.getNumberOfEntries(), is(0));
+		try (final DatagramSocket udpSocket = new DatagramSocket()) {
+			try (final Socket socket = new Socket("localhost", port);
+					final ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
+					final ObjectInputStream ois = new ObjectInputStream(socket.getInputStream())) {
+				socket.setSoTimeout(soTimeout);
+				oos.writeObject(PlainTCPRequest.ENTRY);
+				final int keyNumber = ((PreEntryResponse) ois.readObject()).getKeyNumber();
+				// a pre-entry isn't replicated
+				this.waitUntilApplied(source);
+				assertThat(replicationStandby.getNumberOfEntries(), is(0));
+				enableEntry(udpSocket, keyNumber);
+				assertThat(ois.readObject() == PlainTCPResponse.COMPLETE_ENTRY, is(true));
+				this.waitUntilApplied(source);
+				assertThat(replicationStandby.getNumberOfEntries(), is(1));
+				assertThat(this.primary.getMatchingTable().size(), is(1));
+				assertThat(this.standby.getMatchingTable().size(), is(0));
+				assertThat(new DaemonStatus(this.standby).getReplicatedEntryCount(), is(1));
+				assertThat(new DaemonStatus(this.primary).getReplicationLag(), is(0L));
+			}
+			// the inviter has left
+			this.waitUntilTableIsEmpty(this.primary);
+			this.waitUntilApplied(source);
+			assertThat(replicationStandby.getNumberOfEntries(), is(0));
+		}
+	}
+
+	/**
+	 * The standby takes over the port when the primary has gone, and the
+	 * inviter re-attaches to its key
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testTakeOver() throws Exception {
+		final ReplicationSource source = this.primary.getReplicationSource();
+		this.waitUntilConnected(source);
+		final int keyNumber;
+		try (final DatagramSocket udpSocket = new DatagramSocket()) {
+			try (final Socket socket = new Socket("localhost", port);
+					final ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
+					final ObjectInputStream ois = new ObjectInputStream(socket.getInputStream())) {
+				socket.setSoTimeout(soTimeout);
+				oos.writeObject(PlainTCPRequest.ENTRY);
+				keyNumber = ((PreEntryResponse) ois.readObject()).getKeyNumber();
+				enableEntry(udpSocket, keyNumber);
+				assertThat(ois.readObject() == PlainTCPResponse.COMPLETE_ENTRY, is(true));
+				this.waitUntilApplied(source);
+				assertThat(this.standby.isStandby(), is(true));
+
+				this.primary.stop();
+				this.primary.destroy();
+				this.primary = null;
+			}
+			this.waitUntilTakenOver();
+			assertThat(this.standby.getMatchingTable().get(keyNumber), is(instanceOf(PreEntryHost.class)));
+			assertThat(new DaemonStatus(this.standby).getReplicatedEntryCount(), is(-1));
+			try (final Socket socket = new Socket("localhost", port);
+					final ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
+					final ObjectInputStream ois = new ObjectInputStream(socket.getInputStream())) {
+				socket.setSoTimeout(soTimeout);
+				oos.writeObject(new ReattachRequest(keyNumber));
+				assertThat(((PreEntryResponse) ois.readObject()).getKeyNumber(), is(keyNumber));
+				enableEntry(udpSocket, keyNumber);
+				assertThat(ois.readObject() == PlainTCPResponse.COMPLETE_ENTRY, is(true));
+				assertThat(this.standby.getMatchingTable().get(keyNumber).getPort(), is(udpSocket.getLocalPort()));
+			}
+		}
+	}
+
+	private void waitUntilConnected(ReplicationSource source) throws InterruptedException {
+		for (int i = 0; i < 100 && (source.getLag() != 0 || this.standby.getReplicationStandby().getLagMillis() < 0); i++) {
+			Thread.sleep(50);
+		}
+		assertThat(source.getLag(), is(0L));
+	}
+
+	private void waitUntilApplied(ReplicationSource source) throws InterruptedException {
+		// the standby acknowledges the changes of a batch after it applies them
+		for (int i = 0; i < 100 && source.getLag() != 0; i++) {
+			Thread.sleep(50);
+		}
+		assertThat(source.getLag(), is(0L));
+	}
+
+	private void waitUntilTableIsEmpty(JMatcherDaemon daemon) throws InterruptedException {
+		for (int i = 0; i < 100 && daemon.getMatchingTable().size() != 0; i++) {
+			Thread.sleep(50);
+		}
+		assertThat(daemon.getMatchingTable().size(), is(0));
+	}
+
+	private void waitUntilTakenOver() throws InterruptedException {
+		for (int i = 0; i < 200 && this.standby.isStandby(); i++) {
+			Thread.sleep(50);
+		}
+		assertThat(this.standby.isStandby(), is(false));
+	}
+
+	private static void enableEntry(DatagramSocket udpSocket, int keyNumber) throws Exception {
+		final byte[] bytes = UDPRequestSerializer.getInstance().serialize(new EnableEntryRequest(keyNumber)).getBytes();
+		udpSocket.send(new DatagramPacket(bytes, bytes.length, new InetSocketAddress("localhost", port)));
+	}
+}
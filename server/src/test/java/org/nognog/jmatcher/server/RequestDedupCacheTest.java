@@ -0,0 +1,216 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.nognog.jmatcher.Host;
+import org.nognog.jmatcher.tcp.request.PlainTCPRequest;
+import org.nognog.jmatcher.tcp.response.CheckConnectionResponse;
+import org.nognog.jmatcher.tcp.response.PlainTCPResponse;
+import org.nognog.jmatcher.tcp.response.PreEntryResponse;
+import org.nognog.jmatcher.udp.request.ConnectionRequest;
+import org.nognog.jmatcher.udp.request.EnableEntryRequest;
+import org.nognog.jmatcher.udp.request.UDPRequestSerializer;
+import org.nognog.jmatcher.udp.response.ConnectionResponse;
+import org.nognog.jmatcher.udp.response.UDPResponseSerializer;
+
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+
+/**
+ * @author agent 2026/10/17
+ */
+@SuppressWarnings({ "static-method", "nls", "boxing" })
+public class RequestDedupCacheTest {
+
+	/**
+	 * Test method for the lifetime of the requests in the cache
+	 * 
+	 * @param handler
+	 * @throws Exception
+	 */
+	@Test
+	public final void testPutIfAbsent(@Mocked final UDPClientRequestHandler handler) throws Exception {
+		final RequestDedupCache cache = new RequestDedupCache(1000, 16);
+		final InetSocketAddress client = new InetSocketAddress("192.168.0.1", 10000);
+		final PendingRendezvous original = new PendingRendezvous(handler);
+		final long start = System.nanoTime();
+		assertThat(cache.putIfAbsent(client, UDPRequestSerializer.CONNECTION_REQUEST, 1, original, start), is(nullValue()));
+		// a waiting request is joined however long it waits
+		final long later = start + TimeUnit.SECONDS.toNanos(10);
+		assertThat(cache.putIfAbsent(client, UDPRequestSerializer.CONNECTION_REQUEST, 1, new PendingRendezvous(handler), later), is(sameInstance(original)));
+		// another address, key or type is another request
+		assertThat(cache.putIfAbsent(new InetSocketAddress("192.168.0.1", 10001), UDPRequestSerializer.CONNECTION_REQUEST, 1, new PendingRendezvous(handler), start), is(nullValue()));
+		assertThat(cache.putIfAbsent(client, UDPRequestSerializer.CONNECTION_REQUEST, 2, new PendingRendezvous(handler), start), is(nullValue()));
+		assertThat(cache.putIfAbsent(client, UDPRequestSerializer.ENABLE_ENTRY_REQUEST, 1, new PendingRendezvous(handler), start), is(nullValue()));
+
+		// the response of a succeeded request is replayed for a while
+		new NonStrictExpectations() {
+			{
+				handler.getClientAddress();
+				result = client;
+			}
+		};
+		assertThat(original.release(EncodedResponse.of(InetAddress.getByName("192.168.0.2"), 20000), false), is(not(nullValue())));
+		final long completed = System.nanoTime();
+		assertThat(original.getResponse(), is(not(nullValue())));
+		assertThat(cache.putIfAbsent(client, UDPRequestSerializer.CONNECTION_REQUEST, 1, new PendingRendezvous(handler), completed), is(sameInstance(original)));
+		final PendingRendezvous next = new PendingRendezvous(handler);
+		assertThat(cache.putIfAbsent(client, UDPRequestSerializer.CONNECTION_REQUEST, 1, next, completed + TimeUnit.SECONDS.toNanos(1)), is(nullValue()));
+		assertThat(cache.putIfAbsent(client, UDPRequestSerializer.CONNECTION_REQUEST, 1, new PendingRendezvous(handler), completed + TimeUnit.SECONDS.toNanos(1)), is(sameInstance(next)));
+
+		// a failure isn't replayed, because the key may be registered soon
+		assertThat(next.fail(), is(true));
+		final PendingRendezvous retry = new PendingRendezvous(handler);
+		assertThat(cache.putIfAbsent(client, UDPRequestSerializer.CONNECTION_REQUEST, 1, retry, completed + TimeUnit.SECONDS.toNanos(1)), is(nullValue()));
+		assertThat(cache.putIfAbsent(client, UDPRequestSerializer.CONNECTION_REQUEST, 1, new PendingRendezvous(handler), completed + TimeUnit.SECONDS.toNanos(1)), is(sameInstance(retry)));
+	}
+
+	/**
+	 * Test method for the requests which aren't deduplicated
+	 * 
+	 * @param handler
+	 * @throws Exception
+	 */
+	@Test
+	public final void testDisabled(@Mocked final UDPClientRequestHandler handler) throws Exception {
+		final RequestDedupCache cache = new RequestDedupCache(0, 16);
+		final InetSocketAddress client = new InetSocketAddress("192.168.0.1", 10000);
+		assertThat(cache.putIfAbsent(client, UDPRequestSerializer.CONNECTION_REQUEST, 1, new PendingRendezvous(handler)), is(nullValue()));
+		assertThat(cache.putIfAbsent(client, UDPRequestSerializer.CONNECTION_REQUEST, 1, new PendingRendezvous(handler)), is(nullValue()));
+	}
+
+	/**
+	 * A retransmitted ConnectionRequest joins its original, and gets the
+	 * response again after it has been completed
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testRetransmission() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext());
+		daemon.start();
+		try (final Socket inviterSocket = new Socket("localhost", daemon.getPort());
+				final ObjectOutputStream oos = new ObjectOutputStream(inviterSocket.getOutputStream());
+				final ObjectInputStream ois = new ObjectInputStream(inviterSocket.getInputStream());
+				final DatagramSocket inviterUDPSocket = new DatagramSocket();
+				final DatagramSocket connectorSocket = new DatagramSocket()) {
+			inviterSocket.setSoTimeout(TCPClientRequestHandler.WAIT_TIME_FOR_UDP_ENTRY);
+			connectorSocket.setSoTimeout(500);
+			oos.writeObject(PlainTCPRequest.ENTRY);
+			final int key = ((PreEntryResponse) ois.readObject()).getKeyNumber();
+			send(inviterUDPSocket, UDPRequestSerializer.getInstance().serialize(new EnableEntryRequest(key)), daemon.getPort());
+			assertThat(ois.readObject() == PlainTCPResponse.COMPLETE_ENTRY, is(true));
+
+			final String request = UDPRequestSerializer.getInstance().serialize(new ConnectionRequest(key));
+			send(connectorSocket, request, daemon.getPort());
+			send(connectorSocket, request, daemon.getPort());
+			Thread.sleep(200);
+			oos.writeObject(PlainTCPRequest.CHECK_CONNECTION_REQUEST);
+			final Host[] requestingHosts = ((CheckConnectionResponse) ois.readObject()).getRequestingHosts();
+			assertThat(requestingHosts.length, is(1));
+			final ConnectionResponse response = receive(connectorSocket);
+			assertThat(response.getHost().getPort(), is(inviterUDPSocket.getLocalPort()));
+			try {
+				receive(connectorSocket);
+				fail();
+			} catch (SocketTimeoutException e) {
+				// the copy has joined the original
+			}
+
+			// the response is lost, and the request is sent again
+			send(connectorSocket, request, daemon.getPort());
+			assertThat(receive(connectorSocket).getHost().getPort(), is(inviterUDPSocket.getLocalPort()));
+			assertThat(daemon.getMetrics().getConnectionRequestCount(), is(1L));
+			assertThat(daemon.getMetrics().getDuplicateRequestCount(), is(2L));
+			assertThat(daemon.getMetrics().getMatchCount(), is(1L));
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	/**
+	 * A ConnectionRequest which has failed before the inviter registers its
+	 * key succeeds when it is sent again
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testRetransmissionAfterFailure() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext());
+		daemon.start();
+		try (final Socket inviterSocket = new Socket("localhost", daemon.getPort());
+				final ObjectOutputStream oos = new ObjectOutputStream(inviterSocket.getOutputStream());
+				final ObjectInputStream ois = new ObjectInputStream(inviterSocket.getInputStream());
+				final DatagramSocket inviterUDPSocket = new DatagramSocket();
+				final DatagramSocket connectorSocket = new DatagramSocket()) {
+			inviterSocket.setSoTimeout(TCPClientRequestHandler.WAIT_TIME_FOR_UDP_ENTRY);
+			connectorSocket.setSoTimeout(500);
+			oos.writeObject(PlainTCPRequest.ENTRY);
+			final int key = ((PreEntryResponse) ois.readObject()).getKeyNumber();
+
+			// the key hasn't been registered yet
+			final String request = UDPRequestSerializer.getInstance().serialize(new ConnectionRequest(key));
+			send(connectorSocket, request, daemon.getPort());
+			assertThat(receive(connectorSocket).getHost(), is(nullValue()));
+
+			send(inviterUDPSocket, UDPRequestSerializer.getInstance().serialize(new EnableEntryRequest(key)), daemon.getPort());
+			assertThat(ois.readObject() == PlainTCPResponse.COMPLETE_ENTRY, is(true));
+			send(connectorSocket, request, daemon.getPort());
+			Thread.sleep(200);
+			oos.writeObject(PlainTCPRequest.CHECK_CONNECTION_REQUEST);
+			assertThat(((CheckConnectionResponse) ois.readObject()).getRequestingHosts().length, is(1));
+			assertThat(receive(connectorSocket).getHost().getPort(), is(inviterUDPSocket.getLocalPort()));
+			assertThat(daemon.getMetrics().getConnectionRequestCount(), is(2L));
+			assertThat(daemon.getMetrics().getDuplicateRequestCount(), is(0L));
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	private static void send(DatagramSocket socket, String message, int port) throws Exception {
+		final byte[] bytes = message.getBytes();
+		socket.send(new DatagramPacket(bytes, bytes.length, new InetSocketAddress("localhost", port)));
+	}
+
+	private static ConnectionResponse receive(DatagramSocket socket) throws Exception {
+		final byte[] buf = new byte[UDPResponseSerializer.MAX_BINARY_RESPONSE_SIZE];
+		final DatagramPacket packet = new DatagramPacket(buf, buf.length);
+		socket.receive(packet);
+		return (ConnectionResponse) UDPResponseSerializer.getInstance().deserialize(ByteBuffer.wrap(packet.getData(), 0, packet.getLength()));
+	}
+}
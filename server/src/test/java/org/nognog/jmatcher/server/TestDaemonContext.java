@@ -0,0 +1,45 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import org.apache.commons.daemon.DaemonContext;
+import org.apache.commons.daemon.DaemonController;
+
+/**
+ * DaemonContext which only gives arguments to the daemon
+ * 
+ * @author agent 2026/10/17
+ */
+class TestDaemonContext implements DaemonContext {
+
+	private final String[] arguments;
+
+	/**
+	 * @param arguments
+	 */
+	TestDaemonContext(String... arguments) {
+		this.arguments = arguments;
+	}
+
+	@Override
+	public DaemonController getController() {
+		return null;
+	}
+
+	@Override
+	public String[] getArguments() {
+		return this.arguments;
+	}
+}
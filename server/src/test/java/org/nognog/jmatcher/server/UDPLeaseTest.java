@@ -0,0 +1,277 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+
+package org.nognog.jmatcher.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import org.nognog.jmatcher.Host;
+import org.nognog.jmatcher.udp.request.ConnectionRequest;
+import org.nognog.jmatcher.udp.request.LeaseRequest;
+import org.nognog.jmatcher.udp.request.ReleaseLeaseRequest;
+import org.nognog.jmatcher.udp.request.RenewLeaseRequest;
+import org.nognog.jmatcher.udp.request.UDPRequest;
+import org.nognog.jmatcher.udp.request.UDPRequestSerializer;
+import org.nognog.jmatcher.udp.response.ConnectionResponse;
+import org.nognog.jmatcher.udp.response.LeaseResponse;
+import org.nognog.jmatcher.udp.response.UDPResponseSerializer;
+
+/**
+ * @author agent 2026/10/17
+ */
+@SuppressWarnings({ "static-method", "nls", "boxing" })
+public class UDPLeaseTest {
+
+	private static final int leaseTime = 1000;
+
+	/**
+	 * Test method for a lease which is renewed and then expires
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testLease() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext(JMatcherDaemon.LEASE_TIME_ARGUMENT + "=" + leaseTime));
+		daemon.start();
+		try (final DatagramSocket inviterSocket = new DatagramSocket(); final DatagramSocket connectorSocket = new DatagramSocket()) {
+			inviterSocket.setSoTimeout(leaseTime);
+			connectorSocket.setSoTimeout(leaseTime);
+			// one round trip registers the inviter
+			send(inviterSocket, new LeaseRequest(), daemon.getPort());
+			final LeaseResponse leaseResponse = receiveLease(inviterSocket);
+			final Integer key = leaseResponse.getKeyNumber();
+			assertThat(key, is(not(nullValue())));
+			assertThat(leaseResponse.getLeaseTime(), is(leaseTime));
+			assertThat(leaseResponse.getRequestingHosts().length, is(0));
+			assertThat(daemon.getMatchingTable().get(key).getPort(), is(inviterSocket.getLocalPort()));
+			assertThat(daemon.getMetrics().getGrantedLeaseCount(), is(1L));
+
+			// the requesting host is pushed to the inviter
+			send(connectorSocket, new ConnectionRequest(key), daemon.getPort());
+			final Host[] pushedHosts = receiveLease(inviterSocket).getRequestingHosts();
+			assertThat(pushedHosts.length, is(1));
+			assertThat(pushedHosts[0].getPort(), is(connectorSocket.getLocalPort()));
+			assertThat(receiveConnection(connectorSocket).getHost().getPort(), is(inviterSocket.getLocalPort()));
+
+			// the renewals keep the key beyond the lease time
+			for (int i = 0; i < 6; i++) {
+				Thread.sleep(leaseTime / 3);
+				send(inviterSocket, new RenewLeaseRequest(key), daemon.getPort());
+				final LeaseResponse renewal = receiveLease(inviterSocket);
+				assertThat(renewal.getKeyNumber(), is(key));
+				assertThat(renewal.getRequestingHosts().length, is(0));
+			}
+			assertThat(daemon.getMatchingTable().containsKey(key), is(true));
+
+			// the lease expires without renewals
+			Thread.sleep(leaseTime + 2 * HashedTimingWheel.DEFAULT_TICK_DURATION);
+			assertThat(daemon.getMatchingTable().containsKey(key), is(false));
+			assertThat(daemon.getMetrics().getExpiredLeaseCount(), is(1L));
+			send(inviterSocket, new RenewLeaseRequest(key), daemon.getPort());
+			assertThat(receiveLease(inviterSocket).getKeyNumber(), is(nullValue()));
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	/**
+	 * Test method for a lease which is released, and for the requests from
+	 * another address
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testRelease() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext(JMatcherDaemon.LEASE_TIME_ARGUMENT + "=" + leaseTime));
+		daemon.start();
+		try (final DatagramSocket inviterSocket = new DatagramSocket(); final DatagramSocket otherSocket = new DatagramSocket(new InetSocketAddress("127.0.0.2", 0))) {
+			inviterSocket.setSoTimeout(leaseTime);
+			otherSocket.setSoTimeout(leaseTime);
+			send(inviterSocket, new LeaseRequest(), daemon.getPort());
+			final Integer key = receiveLease(inviterSocket).getKeyNumber();
+
+			// only the address of the inviter can renew or release its lease
+			send(otherSocket, new RenewLeaseRequest(key), daemon.getPort());
+			assertThat(receiveLease(otherSocket).getKeyNumber(), is(nullValue()));
+			send(otherSocket, new ReleaseLeaseRequest(key), daemon.getPort());
+			Thread.sleep(200);
+			assertThat(daemon.getMatchingTable().containsKey(key), is(true));
+
+			send(inviterSocket, new ReleaseLeaseRequest(key), daemon.getPort());
+			Thread.sleep(200);
+			assertThat(daemon.getMatchingTable().containsKey(key), is(false));
+			assertThat(daemon.getMetrics().getExpiredLeaseCount(), is(0L));
+			assertThat(daemon.getLeaseRegistry().count(InetAddress.getByName("127.0.0.1")), is(0));
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	/**
+	 * Test method for a renewal from another port of the inviter, which the
+	 * NAT of the inviter has mapped it to
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testRebind() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext(JMatcherDaemon.LEASE_TIME_ARGUMENT + "=" + leaseTime));
+		daemon.start();
+		try (final DatagramSocket inviterSocket = new DatagramSocket(); final DatagramSocket reboundSocket = new DatagramSocket(); final DatagramSocket connectorSocket = new DatagramSocket()) {
+			inviterSocket.setSoTimeout(leaseTime);
+			reboundSocket.setSoTimeout(leaseTime);
+			connectorSocket.setSoTimeout(leaseTime);
+			send(inviterSocket, new LeaseRequest(), daemon.getPort());
+			final Integer key = receiveLease(inviterSocket).getKeyNumber();
+
+			send(reboundSocket, new RenewLeaseRequest(key), daemon.getPort());
+			assertThat(receiveLease(reboundSocket).getKeyNumber(), is(key));
+			assertThat(daemon.getMatchingTable().get(key).getPort(), is(reboundSocket.getLocalPort()));
+
+			// the requesting hosts are pushed to the new port
+			send(connectorSocket, new ConnectionRequest(key), daemon.getPort());
+			final Host[] requestingHosts = receiveLease(reboundSocket).getRequestingHosts();
+			assertThat(requestingHosts.length, is(1));
+			assertThat(receiveConnection(connectorSocket).getHost().getPort(), is(reboundSocket.getLocalPort()));
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	/**
+	 * Test method for a retransmitted LeaseRequest, and for the maximum number
+	 * of the leases of an address
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testMaxLeasesPerAddress() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext(JMatcherDaemon.LEASE_TIME_ARGUMENT + "=" + leaseTime, JMatcherDaemon.MAX_LEASES_PER_ADDRESS_ARGUMENT + "=2"));
+		daemon.start();
+		try (final DatagramSocket firstSocket = new DatagramSocket(); final DatagramSocket secondSocket = new DatagramSocket(); final DatagramSocket thirdSocket = new DatagramSocket()) {
+			firstSocket.setSoTimeout(leaseTime);
+			secondSocket.setSoTimeout(leaseTime);
+			thirdSocket.setSoTimeout(leaseTime);
+			send(firstSocket, new LeaseRequest(), daemon.getPort());
+			final Integer key = receiveLease(firstSocket).getKeyNumber();
+			assertThat(key, is(not(nullValue())));
+
+			// a retransmission gets the lease of its original
+			send(firstSocket, new LeaseRequest(), daemon.getPort());
+			assertThat(receiveLease(firstSocket).getKeyNumber(), is(key));
+			assertThat(daemon.getMatchingTable().size(), is(1));
+			assertThat(daemon.getMetrics().getGrantedLeaseCount(), is(1L));
+
+			send(secondSocket, new LeaseRequest(), daemon.getPort());
+			assertThat(receiveLease(secondSocket).getKeyNumber(), is(not(nullValue())));
+			send(thirdSocket, new LeaseRequest(), daemon.getPort());
+			assertThat(receiveLease(thirdSocket).getKeyNumber(), is(nullValue()));
+
+			send(firstSocket, new ReleaseLeaseRequest(key), daemon.getPort());
+			Thread.sleep(200);
+			send(thirdSocket, new LeaseRequest(), daemon.getPort());
+			assertThat(receiveLease(thirdSocket).getKeyNumber(), is(not(nullValue())));
+			assertThat(daemon.getLeaseRegistry().count(InetAddress.getByName("127.0.0.1")), is(2));
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	/**
+	 * Test method for an entry which is re-attached by a renewal after it has
+	 * been restored
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testReattach() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext(JMatcherDaemon.LEASE_TIME_ARGUMENT + "=" + leaseTime));
+		daemon.start();
+		try (final DatagramSocket inviterSocket = new DatagramSocket()) {
+			inviterSocket.setSoTimeout(leaseTime);
+			final int key = 12345;
+			final byte[] address = InetAddress.getByName("127.0.0.1").getAddress();
+			assertThat(daemon.getMatchingTable().restore(key, MatchingTable.packAddressHigh(address), MatchingTable.packAddressLow(address), 1, 0), is(true));
+			send(inviterSocket, new RenewLeaseRequest(key), daemon.getPort());
+			final LeaseResponse leaseResponse = receiveLease(inviterSocket);
+			assertThat(leaseResponse.getKeyNumber(), is(key));
+			assertThat(leaseResponse.getLeaseTime(), is(leaseTime));
+			assertThat(daemon.getMatchingTable().get(key).getPort(), is(inviterSocket.getLocalPort()));
+			Thread.sleep(leaseTime + 2 * HashedTimingWheel.DEFAULT_TICK_DURATION);
+			assertThat(daemon.getMatchingTable().containsKey(key), is(false));
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	/**
+	 * Test method for a daemon which doesn't lease keys, which is the default
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testDisabled() throws Exception {
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext());
+		daemon.start();
+		try (final DatagramSocket inviterSocket = new DatagramSocket()) {
+			inviterSocket.setSoTimeout(leaseTime);
+			send(inviterSocket, new LeaseRequest(), daemon.getPort());
+			assertThat(receiveLease(inviterSocket).getKeyNumber(), is(nullValue()));
+			assertThat(daemon.getMatchingTable().size(), is(0));
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	private static void send(DatagramSocket socket, UDPRequest request, int port) throws Exception {
+		final ByteBuffer buffer = ByteBuffer.allocate(UDPRequestSerializer.BINARY_REQUEST_SIZE);
+		UDPRequestSerializer.getInstance().serialize(request, buffer);
+		socket.send(new DatagramPacket(buffer.array(), buffer.position(), new InetSocketAddress("localhost", port)));
+	}
+
+	private static LeaseResponse receiveLease(DatagramSocket socket) throws Exception {
+		final DatagramPacket packet = new DatagramPacket(new byte[UDPResponseSerializer.MAX_LEASE_RESPONSE_SIZE], UDPResponseSerializer.MAX_LEASE_RESPONSE_SIZE);
+		socket.receive(packet);
+		return (LeaseResponse) UDPResponseSerializer.getInstance().deserialize(ByteBuffer.wrap(packet.getData(), 0, packet.getLength()));
+	}
+
+	private static ConnectionResponse receiveConnection(DatagramSocket socket) throws Exception {
+		final DatagramPacket packet = new DatagramPacket(new byte[UDPResponseSerializer.MAX_BINARY_RESPONSE_SIZE], UDPResponseSerializer.MAX_BINARY_RESPONSE_SIZE);
+		socket.receive(packet);
+		return (ConnectionResponse) UDPResponseSerializer.getInstance().deserialize(ByteBuffer.wrap(packet.getData(), 0, packet.getLength()));
+	}
+}
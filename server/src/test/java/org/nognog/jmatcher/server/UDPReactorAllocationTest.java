@@ -0,0 +1,142 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import org.nognog.jmatcher.Host;
+import org.nognog.jmatcher.tcp.request.PlainTCPRequest;
+import org.nognog.jmatcher.tcp.response.CheckConnectionResponse;
+import org.nognog.jmatcher.tcp.response.PlainTCPResponse;
+import org.nognog.jmatcher.tcp.response.PreEntryResponse;
+import org.nognog.jmatcher.udp.UDPProtocol;
+import org.nognog.jmatcher.udp.request.ConnectionRequest;
+import org.nognog.jmatcher.udp.request.EnableEntryRequest;
+import org.nognog.jmatcher.udp.request.UDPRequest;
+import org.nognog.jmatcher.udp.request.UDPRequestSerializer;
+import org.nognog.jmatcher.udp.response.ConnectionResponse;
+import org.nognog.jmatcher.udp.response.UDPResponseSerializer;
+
+import mockit.Deencapsulation;
+
+/**
+ * Measures the memory which the UDP reactor allocates on the steady-state
+ * request path: retransmitted ConnectionRequests which are answered from the
+ * recorded responses, repeated EnableEntryRequests and invalid datagrams. They
+ * are sent from one socket, because the channel decodes the address of the
+ * sender again whenever it changes.
+ * 
+ * @author agent 2026/10/17
+ */
+@SuppressWarnings({ "static-method", "nls", "boxing" })
+public class UDPReactorAllocationTest {
+
+	private static final int warmUpRounds = 20000;
+	private static final int measuredRounds = 10000;
+
+	/**
+	 * @throws Exception
+	 */
+	@Test
+	public final void testSteadyStateDoesNotAllocate() throws Exception {
+		final java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+		final com.sun.management.ThreadMXBean allocationCounter = (com.sun.management.ThreadMXBean) threadMXBean;
+		assumeTrue(allocationCounter.isThreadAllocatedMemorySupported());
+		allocationCounter.setThreadAllocatedMemoryEnabled(true);
+
+		final JMatcherDaemon daemon = new JMatcherDaemon();
+		daemon.init(new TestDaemonContext(JMatcherDaemon.UDP_MODE_ARGUMENT + "=reactor", JMatcherDaemon.REQUEST_DEDUP_TIME_ARGUMENT + "=600000",
+				JMatcherDaemon.ACCESS_LOG_SAMPLING_ARGUMENT + "=" + Integer.MAX_VALUE));
+		daemon.start();
+		try (final Socket inviterSocket = new Socket("localhost", daemon.getPort());
+				final ObjectOutputStream oos = new ObjectOutputStream(inviterSocket.getOutputStream());
+				final ObjectInputStream ois = new ObjectInputStream(inviterSocket.getInputStream());
+				final DatagramSocket inviterUDPSocket = new DatagramSocket();
+				final DatagramSocket connectorSocket = new DatagramSocket()) {
+			inviterSocket.setSoTimeout(TCPClientRequestHandler.WAIT_TIME_FOR_UDP_ENTRY);
+			connectorSocket.setSoTimeout(TCPClientRequestHandler.WAIT_TIME_FOR_UDP_ENTRY);
+			oos.writeObject(PlainTCPRequest.ENTRY);
+			final int key = ((PreEntryResponse) ois.readObject()).getKeyNumber();
+			final DatagramPacket enableEntryRequest = packet(new EnableEntryRequest(key), daemon.getPort());
+			inviterUDPSocket.send(enableEntryRequest);
+			assertThat(ois.readObject() == PlainTCPResponse.COMPLETE_ENTRY, is(true));
+
+			// the first request is released by the inviter
+			final DatagramPacket connectionRequest = packet(new ConnectionRequest(key), daemon.getPort());
+			connectorSocket.send(connectionRequest);
+			Thread.sleep(200);
+			oos.writeObject(PlainTCPRequest.CHECK_CONNECTION_REQUEST);
+			final Host[] requestingHosts = ((CheckConnectionResponse) ois.readObject()).getRequestingHosts();
+			assertThat(requestingHosts.length, is(1));
+			final DatagramPacket response = new DatagramPacket(new byte[UDPResponseSerializer.MAX_BINARY_RESPONSE_SIZE], UDPResponseSerializer.MAX_BINARY_RESPONSE_SIZE);
+			connectorSocket.receive(response);
+			assertThat(deserialize(response).getHost().getPort(), is(inviterUDPSocket.getLocalPort()));
+
+			final byte[] invalidBytes = "test".getBytes();
+			final DatagramPacket invalidDatagram = new DatagramPacket(invalidBytes, invalidBytes.length, new InetSocketAddress("localhost", daemon.getPort()));
+			final Thread reactor = ((UDPReactor[]) Deencapsulation.getField(daemon, "udpReactors"))[0];
+			for (int i = 0; i < warmUpRounds; i++) {
+				sendRound(connectorSocket, connectionRequest, enableEntryRequest, invalidDatagram, response);
+			}
+			final long allocatedBytesBefore = allocationCounter.getThreadAllocatedBytes(reactor.getId());
+			for (int i = 0; i < measuredRounds; i++) {
+				sendRound(connectorSocket, connectionRequest, enableEntryRequest, invalidDatagram, response);
+			}
+			final long allocatedBytes = allocationCounter.getThreadAllocatedBytes(reactor.getId()) - allocatedBytesBefore;
+			assertThat(deserialize(response).getHost().getPort(), is(inviterUDPSocket.getLocalPort()));
+			assertThat(daemon.getMetrics().getDuplicateRequestCount(), is((long) warmUpRounds + measuredRounds));
+			assertThat(daemon.getMetrics().getEnabledEntryCount(), is(1L));
+			// less than a byte per round, which is what the reactor may
+			// allocate for itself, e.g. when the JIT deoptimizes it
+			assertThat("allocated " + allocatedBytes + " bytes in " + measuredRounds + " rounds", allocatedBytes < measuredRounds, is(true));
+		} finally {
+			daemon.stop();
+			daemon.destroy();
+		}
+	}
+
+	private static void sendRound(DatagramSocket connectorSocket, DatagramPacket connectionRequest, DatagramPacket enableEntryRequest, DatagramPacket invalidDatagram, DatagramPacket response)
+			throws Exception {
+		// the entry is already enabled, so it is ignored
+		connectorSocket.send(enableEntryRequest);
+		connectorSocket.send(invalidDatagram);
+		connectorSocket.send(connectionRequest);
+		response.setLength(UDPResponseSerializer.MAX_BINARY_RESPONSE_SIZE);
+		connectorSocket.receive(response);
+	}
+
+	private static DatagramPacket packet(UDPRequest request, int port) {
+		final ByteBuffer buffer = ByteBuffer.allocate(UDPRequestSerializer.BINARY_REQUEST_SIZE);
+		UDPRequestSerializer.getInstance().serialize(request, buffer);
+		return new DatagramPacket(buffer.array(), buffer.position(), new InetSocketAddress("localhost", port));
+	}
+
+	private static ConnectionResponse deserialize(DatagramPacket packet) {
+		return (ConnectionResponse) UDPResponseSerializer.getInstance().deserialize(ByteBuffer.wrap(packet.getData(), 0, packet.getLength()));
+	}
+}
@@ -0,0 +1,181 @@
+/** Copyright 2026 agent (agent@local)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. */
+
+package org.nognog.jmatcher.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.nognog.jmatcher.udp.request.ConnectionRequest;
+import org.nognog.jmatcher.udp.request.UDPRequestSerializer;
+
+/**
+ * @author agent 2026/10/17
+ */
+@SuppressWarnings({ "static-method", "nls", "boxing" })
+public class UDPRequestFilterTest {
+
+	private static final long second = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Test method for the datagrams which aren't requests
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testInvalidRequest() throws Exception {
+		final DaemonMetrics metrics = new DaemonMetrics();
+		final UDPRequestFilter filter = new UDPRequestFilter(metrics, 0, 1, 16);
+		final InetAddress source = InetAddress.getByName("192.168.0.1");
+		for (String message : new String[] { "", "0", "test", "2123", "0-1", "012345678901", "099999999999" }) {
+			assertThat(message, filter.accept(ByteBuffer.wrap(message.getBytes()), source), is(false));
+		}
+		final ByteBuffer truncated = binaryRequest(1);
+		truncated.limit(truncated.limit() - 1);
+		assertThat(filter.accept(truncated, source), is(false));
+		assertThat(metrics.getInvalidRequestCount(), is(8L));
+
+		assertThat(filter.accept(ByteBuffer.wrap("012345".getBytes()), source), is(true));
+		assertThat(filter.accept(binaryRequest(12345), source), is(true));
+		assertThat(metrics.getInvalidRequestCount(), is(8L));
+		assertThat(metrics.getThrottledRequestCount(), is(0L));
+	}
+
+	/**
+	 * Test method for the rate limit of each source
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testRateLimit() throws Exception {
+		final DaemonMetrics metrics = new DaemonMetrics();
+		final UDPRequestFilter filter = new UDPRequestFilter(metrics, 10, 5, 16);
+		final InetAddress flooder = InetAddress.getByName("192.168.0.1");
+		final InetAddress other = InetAddress.getByName("192.168.0.2");
+		final ByteBuffer request = binaryRequest(1);
+		final long start = System.nanoTime();
+		for (int i = 0; i < 5; i++) {
+			assertThat(filter.accept(request, flooder, start), is(true));
+		}
+		assertThat(filter.accept(request, flooder, start), is(false));
+		// the others aren't limited by the flooder
+		assertThat(filter.accept(request, other, start), is(true));
+		// a token comes back every 100 ms
+		assertThat(filter.accept(request, flooder, start + second / 10 - 1000), is(false));
+		assertThat(filter.accept(request, flooder, start + second / 10), is(true));
+		assertThat(filter.accept(request, flooder, start + second / 10), is(false));
+		// and the bucket is full again after the burst
+		for (int i = 0; i < 5; i++) {
+			assertThat(filter.accept(request, flooder, start + 2 * second), is(true));
+		}
+		assertThat(filter.accept(request, flooder, start + 2 * second), is(false));
+		assertThat(metrics.getThrottledRequestCount(), is(4L));
+		assertThat(metrics.getInvalidRequestCount(), is(0L));
+	}
+
+	/**
+	 * Test method for the sources which collide in the table of the buckets
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testCollidingSources() throws Exception {
+		final DaemonMetrics metrics = new DaemonMetrics();
+		// every source falls into the only bucket
+		final UDPRequestFilter filter = new UDPRequestFilter(metrics, 10, 5, 1);
+		final InetAddress[] sources = { InetAddress.getByName("192.168.0.1"), InetAddress.getByName("10.0.0.1") };
+		final ByteBuffer request = binaryRequest(1);
+		final long start = System.nanoTime();
+		// the alternating sources don't reset each other's bucket: the
+		// newcomer is charged to the overflow bucket
+		for (int i = 0; i < 10; i++) {
+			assertThat(filter.accept(request, sources[i % 2], start), is(true));
+		}
+		for (int i = 0; i < 10; i++) {
+			assertThat(filter.accept(request, sources[i % 2], start + i), is(false));
+		}
+		assertThat(metrics.getThrottledRequestCount(), is(10L));
+		// the slot is taken over after it has refilled
+		final InetAddress newcomer = InetAddress.getByName("172.16.0.1");
+		for (int i = 0; i < 5; i++) {
+			assertThat(filter.accept(request, newcomer, start + 2 * second), is(true));
+		}
+		assertThat(filter.accept(request, newcomer, start + 2 * second), is(false));
+	}
+
+	/**
+	 * Test method for an innocent source which collides with a flooder
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testInnocentSourceInFloodersSlot() throws Exception {
+		final DaemonMetrics metrics = new DaemonMetrics();
+		final UDPRequestFilter filter = new UDPRequestFilter(metrics, 10, 5, 1);
+		final InetAddress flooder = InetAddress.getByName("192.168.0.1");
+		final InetAddress innocent = InetAddress.getByName("10.0.0.1");
+		final ByteBuffer request = binaryRequest(1);
+		final long start = System.nanoTime();
+		int acceptedFlooderRequests = 0;
+		for (int i = 0; i < 2000; i++) {
+			final long now = start + i * (second / 1000);
+			if (filter.accept(request, flooder, now)) {
+				acceptedFlooderRequests++;
+			}
+			if (i % 200 == 100) {
+				// the innocent source is admitted while the flooder holds the
+				// slot
+				assertThat(filter.accept(request, innocent, now), is(true));
+			}
+		}
+		// the flooder gets only its burst and its rate
+		assertThat(acceptedFlooderRequests, is(lessThanOrEqualTo(5 + 20 + 1)));
+		assertThat(metrics.getThrottledRequestCount(), is((long) (2000 - acceptedFlooderRequests)));
+	}
+
+	/**
+	 * Test method for the IPv6 sources, which are aggregated by /64
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testIPv6Prefix() throws Exception {
+		final DaemonMetrics metrics = new DaemonMetrics();
+		final UDPRequestFilter filter = new UDPRequestFilter(metrics, 10, 5, 16);
+		final InetAddress[] sameNetwork = { InetAddress.getByName("2001:db8:1:2::1"), InetAddress.getByName("2001:db8:1:2:ffff::2") };
+		final InetAddress otherNetwork = InetAddress.getByName("2001:db8:1:3::1");
+		final ByteBuffer request = binaryRequest(1);
+		final long start = System.nanoTime();
+		// the hosts of a /64 share their bucket
+		for (int i = 0; i < 5; i++) {
+			assertThat(filter.accept(request, sameNetwork[i % 2], start), is(true));
+		}
+		assertThat(filter.accept(request, sameNetwork[0], start), is(false));
+		assertThat(filter.accept(request, sameNetwork[1], start), is(false));
+		assertThat(filter.accept(request, otherNetwork, start), is(true));
+	}
+
+	private static ByteBuffer binaryRequest(int keyNumber) {
+		final ByteBuffer buffer = ByteBuffer.allocate(UDPRequestSerializer.BINARY_REQUEST_SIZE);
+		UDPRequestSerializer.getInstance().serialize(new ConnectionRequest(keyNumber), buffer);
+		buffer.flip();
+		return buffer;
+	}
+}